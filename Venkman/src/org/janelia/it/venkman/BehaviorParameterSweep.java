@@ -0,0 +1,608 @@
+/*
+ * Copyright (c) 2014 Howard Hughes Medical Institute.
+ * All rights reserved.
+ * Use is subject to Janelia Farm Research Campus Software Copyright 1.1
+ * license terms (http://license.janelia.org/license/jfrc_copyright_1_1.html).
+ */
+
+package org.janelia.it.venkman;
+
+import org.apache.log4j.Logger;
+import org.janelia.it.venkman.config.LarvaBehaviorParameters;
+import org.janelia.it.venkman.data.BehaviorModeComparison;
+import org.janelia.it.venkman.data.BulkKinematics;
+import org.janelia.it.venkman.data.LarvaBehaviorMode;
+import org.janelia.it.venkman.data.LarvaFrameData;
+import org.janelia.it.venkman.data.LarvaSkeleton;
+import org.janelia.it.venkman.log.LogReader;
+import org.janelia.it.venkman.log.LogSession;
+
+import java.io.File;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Headless tool for tuning {@link LarvaBehaviorParameters}.
+ *
+ * Behavior modes are re-derived for one or more reference (annotated) runs
+ * with every combination of a grid of parameter values and each combination
+ * is scored against the reference modes.  The skeletons for each reference
+ * run are parsed once into a {@link BulkKinematics} kernel that is shared
+ * (read-only) by all worker threads.
+ *
+ * @author Eric Trautman
+ */
+public class BehaviorParameterSweep {
+
+    private LarvaBehaviorParameters baseParameters;
+    private int numberOfThreads;
+    private List<ReferenceRun> referenceRuns;
+    private Map<String, double[]> parameterNameToValuesMap;
+
+    /**
+     * Constructs a sweep based upon the specified parameters.
+     *
+     * @param  baseParameters   parameters to use for all values that
+     *                          are not being varied.
+     * @param  numberOfThreads  number of worker threads.
+     */
+    public BehaviorParameterSweep(LarvaBehaviorParameters baseParameters,
+                                  int numberOfThreads) {
+        this.baseParameters = baseParameters;
+        this.numberOfThreads = numberOfThreads;
+        this.referenceRuns = new ArrayList<ReferenceRun>();
+        this.parameterNameToValuesMap = new LinkedHashMap<String, double[]>();
+    }
+
+    /**
+     * Adds a reference run to the set of runs used to score
+     * each parameter combination.
+     *
+     * @param  name           name of the run (for reporting).
+     * @param  frameDataList  reference frames with expected behavior modes.
+     */
+    public void addReferenceRun(String name,
+                                List<LarvaFrameData> frameDataList) {
+        referenceRuns.add(new ReferenceRun(name, frameDataList));
+    }
+
+    /**
+     * Adds a parameter to be varied.
+     *
+     * @param  parameterName  name of the {@link LarvaBehaviorParameters}
+     *                        field to vary.
+     * @param  values         values to use for the parameter.
+     *
+     * @throws IllegalArgumentException
+     *   if the parameter is not a numeric behavior parameter or
+     *   no values are specified.
+     */
+    public void addParameterValues(String parameterName,
+                                   double[] values)
+            throws IllegalArgumentException {
+        getParameterField(parameterName); // validate name
+        if ((values == null) || (values.length == 0)) {
+            throw new IllegalArgumentException(
+                    "no values specified for parameter " + parameterName);
+        }
+        parameterNameToValuesMap.put(parameterName, values);
+    }
+
+    /**
+     * @return the total number of parameter combinations in the grid.
+     */
+    public int getCombinationCount() {
+        int count = 1;
+        for (double[] values : parameterNameToValuesMap.values()) {
+            count = count * values.length;
+        }
+        return count;
+    }
+
+    /**
+     * Derives and scores behavior modes for every parameter combination.
+     *
+     * @return list of results ranked from best to worst score.
+     *
+     * @throws IllegalStateException
+     *   if no reference runs have been added.
+     *
+     * @throws InterruptedException
+     *   if the sweep is interrupted.
+     *
+     * @throws ExecutionException
+     *   if any combination fails.
+     */
+    public List<Result> run()
+            throws IllegalStateException, InterruptedException, ExecutionException {
+
+        if (referenceRuns.size() == 0) {
+            throw new IllegalStateException("no reference runs specified");
+        }
+
+        final int combinationCount = getCombinationCount();
+        final List<String> names =
+                new ArrayList<String>(parameterNameToValuesMap.keySet());
+
+        LOG.info("run: scoring " + combinationCount +
+                 " parameter combinations against " + referenceRuns.size() +
+                 " reference runs with " + numberOfThreads + " threads");
+
+        final long startTime = System.currentTimeMillis();
+
+        final ExecutorService executor =
+                Executors.newFixedThreadPool(numberOfThreads);
+        final List<Future<Result>> futures =
+                new ArrayList<Future<Result>>(combinationCount);
+        final List<Result> results = new ArrayList<Result>(combinationCount);
+        try {
+            for (int i = 0; i < combinationCount; i++) {
+                final double[] values = getCombinationValues(names, i);
+                final LarvaBehaviorParameters parameters =
+                        getParameters(names, values);
+                futures.add(executor.submit(new Callable<Result>() {
+                    @Override
+                    public Result call() throws Exception {
+                        return score(parameters, values);
+                    }
+                }));
+            }
+
+            for (Future<Result> future : futures) {
+                results.add(future.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        Collections.sort(results, new Comparator<Result>() {
+            @Override
+            public int compare(Result o1,
+                               Result o2) {
+                int c = Double.compare(o2.getScore(), o1.getScore());
+                if (c == 0) {
+                    c = Double.compare(o2.getSimilarityPercentage(),
+                                       o1.getSimilarityPercentage());
+                }
+                return c;
+            }
+        });
+
+        LOG.info("run: scored " + combinationCount + " combinations in " +
+                 (System.currentTimeMillis() - startTime) + " ms");
+
+        return results;
+    }
+
+    /**
+     * @param  results     ranked results.
+     * @param  maxResults  maximum number of results to include.
+     *
+     * @return formatted (ranked) table of the specified results.
+     */
+    public String formatResults(List<Result> results,
+                                int maxResults) {
+
+        final Set<LarvaBehaviorMode> modes = LarvaBehaviorMode.getDiscreteModes();
+
+        final StringBuilder sb = new StringBuilder(4096);
+        sb.append(String.format("%5s %9s %9s", "rank", "score", "similar"));
+        for (LarvaBehaviorMode mode : modes) {
+            sb.append(String.format(" %10s", mode.getName()));
+        }
+        for (String name : parameterNameToValuesMap.keySet()) {
+            sb.append("  ").append(name);
+        }
+        sb.append('\n');
+
+        int rank = 0;
+        for (Result result : results) {
+            rank++;
+            if (rank > maxResults) {
+                break;
+            }
+            sb.append(String.format("%5d %9.4f %8.2f%%",
+                                    rank,
+                                    result.getScore(),
+                                    result.getSimilarityPercentage()));
+            for (LarvaBehaviorMode mode : modes) {
+                sb.append(String.format(" %10.4f",
+                                        result.getModeStatistics(mode).getF1Score()));
+            }
+            for (double value : result.getValues()) {
+                sb.append("  ").append(value);
+            }
+            sb.append('\n');
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     * Derives the behavior mode for each of the specified skeletons.
+     * Skeletons are not modified, so the specified array
+     * may be safely shared across threads.
+     *
+     * @param  skeletons   skeletons to process (in capture order).
+     * @param  parameters  behavior parameters for derivation.
+     *
+     * @return array of encoded modes for each skeleton.
+     */
+    public static byte[] deriveModes(LarvaSkeleton[] skeletons,
+                                     LarvaBehaviorParameters parameters) {
+        return deriveModes(new BulkKinematics(skeletons), parameters);
+    }
+
+    /**
+     * Derives the behavior mode for each frame of the specified run.
+     *
+     * @param  kinematics  columnar skeleton data for the run
+     *                     (may be shared across threads).
+     * @param  parameters  behavior parameters for derivation.
+     *
+     * @return array of encoded modes for each frame.
+     */
+    public static byte[] deriveModes(BulkKinematics kinematics,
+                                     LarvaBehaviorParameters parameters) {
+        final LarvaBehaviorMode[] derivedModes =
+                kinematics.derive(parameters).getBehaviorModes();
+        final byte[] modes = new byte[derivedModes.length];
+        for (int i = 0; i < derivedModes.length; i++) {
+            modes[i] = BehaviorModeComparison.encode(derivedModes[i]);
+        }
+        return modes;
+    }
+
+    private Result score(LarvaBehaviorParameters parameters,
+                         double[] values) {
+
+        final Set<LarvaBehaviorMode> modes = LarvaBehaviorMode.getDiscreteModes();
+        final Map<LarvaBehaviorMode, int[]> modeCounts =
+                new LinkedHashMap<LarvaBehaviorMode, int[]>();
+        for (LarvaBehaviorMode mode : modes) {
+            modeCounts.put(mode, new int[3]);
+        }
+
+        int alignedFrameCount = 0;
+        int differenceCount = 0;
+        BehaviorModeComparison comparison;
+        BehaviorModeComparison.ModeStatistics stats;
+        int[] counts;
+        for (ReferenceRun run : referenceRuns) {
+            comparison = new BehaviorModeComparison(
+                    run.times,
+                    deriveModes(run.kinematics, parameters),
+                    run.times,
+                    run.expectedModes,
+                    BehaviorModeComparison.DEFAULT_MAX_ALIGNMENT_MILLISECONDS);
+            // similarity is based upon aligned frames only
+            alignedFrameCount += comparison.getAlignedFrameCount();
+            differenceCount += comparison.getDifferenceCount();
+            for (LarvaBehaviorMode mode : modes) {
+                stats = comparison.getModeStatistics(mode);
+                counts = modeCounts.get(mode);
+                counts[0] += stats.getTruePositives();
+                counts[1] += stats.getFalsePositives();
+                counts[2] += stats.getFalseNegatives();
+            }
+        }
+
+        final Map<LarvaBehaviorMode, BehaviorModeComparison.ModeStatistics> modeToStats =
+                new LinkedHashMap<LarvaBehaviorMode, BehaviorModeComparison.ModeStatistics>();
+        for (LarvaBehaviorMode mode : modes) {
+            counts = modeCounts.get(mode);
+            modeToStats.put(mode,
+                            new BehaviorModeComparison.ModeStatistics(
+                                    mode, counts[0], counts[1], counts[2]));
+        }
+
+        double similarityPercentage = -1;
+        if (alignedFrameCount > 0) {
+            similarityPercentage =
+                    100.0 - (((double) differenceCount / alignedFrameCount) * 100.0);
+        }
+
+        return new Result(parameters, values, modeToStats, similarityPercentage);
+    }
+
+    /**
+     * @return the parameter values for the specified combination index
+     *         (the last parameter varies fastest).
+     */
+    private double[] getCombinationValues(List<String> names,
+                                          int combinationIndex) {
+        final double[] combination = new double[names.size()];
+        int remainder = combinationIndex;
+        double[] values;
+        for (int i = names.size() - 1; i >= 0; i--) {
+            values = parameterNameToValuesMap.get(names.get(i));
+            combination[i] = values[remainder % values.length];
+            remainder = remainder / values.length;
+        }
+        return combination;
+    }
+
+    private LarvaBehaviorParameters getParameters(List<String> names,
+                                                  double[] values) {
+        final LarvaBehaviorParameters parameters = new LarvaBehaviorParameters();
+        try {
+            for (Field field : LarvaBehaviorParameters.class.getDeclaredFields()) {
+                if (! Modifier.isStatic(field.getModifiers())) {
+                    field.setAccessible(true);
+                    field.set(parameters, field.get(baseParameters));
+                }
+            }
+            for (int i = 0; i < names.size(); i++) {
+                setValue(parameters, getParameterField(names.get(i)), values[i]);
+            }
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(
+                    "failed to copy behavior parameters", e);
+        }
+        return parameters;
+    }
+
+    private static Field getParameterField(String parameterName)
+            throws IllegalArgumentException {
+        final Field field;
+        try {
+            field = LarvaBehaviorParameters.class.getDeclaredField(parameterName);
+        } catch (NoSuchFieldException e) {
+            throw new IllegalArgumentException(
+                    "unknown behavior parameter '" + parameterName + "'", e);
+        }
+        final Class<?> type = field.getType();
+        if ((type != Double.TYPE) && (type != Long.TYPE) && (type != Integer.TYPE)) {
+            throw new IllegalArgumentException(
+                    "behavior parameter '" + parameterName + "' is not numeric");
+        }
+        field.setAccessible(true);
+        return field;
+    }
+
+    private static void setValue(LarvaBehaviorParameters parameters,
+                                 Field field,
+                                 double value)
+            throws IllegalAccessException {
+        final Class<?> type = field.getType();
+        if (type == Double.TYPE) {
+            field.setDouble(parameters, value);
+        } else if (type == Long.TYPE) {
+            field.setLong(parameters, Math.round(value));
+        } else {
+            field.setInt(parameters, (int) Math.round(value));
+        }
+    }
+
+    /**
+     * Parses a value specification that is either a comma separated list
+     * (e.g. 1.0,1.5,2.0) or an inclusive range with a step
+     * (e.g. 1.0:2.0:0.5).
+     *
+     * @param  specification  value specification.
+     *
+     * @return array of specified values.
+     *
+     * @throws IllegalArgumentException
+     *   if the specification cannot be parsed.
+     */
+    public static double[] parseValues(String specification)
+            throws IllegalArgumentException {
+
+        final double[] values;
+        try {
+            final String[] range = specification.split(":");
+            if (range.length == 3) {
+                final double start = Double.parseDouble(range[0]);
+                final double stop = Double.parseDouble(range[1]);
+                final double step = Double.parseDouble(range[2]);
+                if ((step <= 0) || (stop < start)) {
+                    throw new IllegalArgumentException(
+                            "invalid range '" + specification + "'");
+                }
+                final int count = (int) Math.floor(((stop - start) / step) + 1e-9) + 1;
+                values = new double[count];
+                for (int i = 0; i < count; i++) {
+                    values[i] = start + (i * step);
+                }
+            } else {
+                final String[] list = specification.split(",");
+                values = new double[list.length];
+                for (int i = 0; i < list.length; i++) {
+                    values[i] = Double.parseDouble(list[i].trim());
+                }
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(
+                    "invalid value specification '" + specification + "'", e);
+        }
+
+        return values;
+    }
+
+    /**
+     * Shared (read-only) data for a reference run.
+     */
+    private static class ReferenceRun {
+
+        private String name;
+        private BulkKinematics kinematics;
+        private long[] times;
+        private byte[] expectedModes;
+
+        public ReferenceRun(String name,
+                            List<LarvaFrameData> frameDataList) {
+            this.name = name;
+            final int size = frameDataList.size();
+            final LarvaSkeleton[] skeletons = new LarvaSkeleton[size];
+            this.times = new long[size];
+            this.expectedModes = new byte[size];
+            int i = 0;
+            LarvaSkeleton skeleton;
+            for (LarvaFrameData frameData : frameDataList) {
+                // use original tracker coordinates for frames that were skipped
+                skeleton = frameData.getSkippedSkeleton();
+                if (skeleton == null) {
+                    skeleton = frameData.getSkeleton();
+                }
+                skeletons[i] = skeleton;
+                this.times[i] = frameData.getTime();
+                this.expectedModes[i] =
+                        BehaviorModeComparison.encode(frameData.getBehaviorMode());
+                i++;
+            }
+            this.kinematics = new BulkKinematics(skeletons);
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    /**
+     * Score for a single parameter combination.
+     */
+    public static class Result {
+
+        private LarvaBehaviorParameters parameters;
+        private double[] values;
+        private Map<LarvaBehaviorMode, BehaviorModeComparison.ModeStatistics> modeToStats;
+        private double similarityPercentage;
+        private double score;
+
+        public Result(LarvaBehaviorParameters parameters,
+                      double[] values,
+                      Map<LarvaBehaviorMode, BehaviorModeComparison.ModeStatistics> modeToStats,
+                      double similarityPercentage) {
+            this.parameters = parameters;
+            this.values = values;
+            this.modeToStats = modeToStats;
+            this.similarityPercentage = similarityPercentage;
+
+            // score is the mean F1 for all modes present in the reference runs
+            double sum = 0;
+            int count = 0;
+            for (BehaviorModeComparison.ModeStatistics stats : modeToStats.values()) {
+                if ((stats.getTruePositives() + stats.getFalseNegatives()) > 0) {
+                    sum += stats.getF1Score();
+                    count++;
+                }
+            }
+            this.score = (count > 0) ? sum / count : 0;
+        }
+
+        public LarvaBehaviorParameters getParameters() {
+            return parameters;
+        }
+
+        public double[] getValues() {
+            return values;
+        }
+
+        public BehaviorModeComparison.ModeStatistics getModeStatistics(LarvaBehaviorMode mode) {
+            return modeToStats.get(mode);
+        }
+
+        public double getSimilarityPercentage() {
+            return similarityPercentage;
+        }
+
+        /**
+         * @return the mean F1 score across all modes present in
+         *         the reference runs.
+         */
+        public double getScore() {
+            return score;
+        }
+    }
+
+    private static final Logger LOG = Logger.getLogger(BehaviorParameterSweep.class);
+
+    public static void main(String[] args) {
+
+        final String usage =
+                "\nUSAGE: java -cp venkman.jar " +
+                BehaviorParameterSweep.class.getName() +
+                " <reference log file> [reference log file ...]" +
+                " <parameter>=<v1,v2,...|start:stop:step> [...]" +
+                " [-top <number of results>]\n\n" +
+                "       Base parameters are taken from the first reference log.\n";
+
+        final List<File> logFiles = new ArrayList<File>();
+        final Map<String, double[]> sweepParameters =
+                new LinkedHashMap<String, double[]>();
+        int maxResults = 20;
+
+        try {
+            String arg;
+            int equalsIndex;
+            for (int i = 0; i < args.length; i++) {
+                arg = args[i];
+                equalsIndex = arg.indexOf('=');
+                if ("-top".equals(arg) && ((i + 1) < args.length)) {
+                    i++;
+                    maxResults = Integer.parseInt(args[i]);
+                } else if (equalsIndex > 0) {
+                    sweepParameters.put(arg.substring(0, equalsIndex),
+                                        parseValues(arg.substring(equalsIndex + 1)));
+                } else {
+                    logFiles.add(new File(arg));
+                }
+            }
+
+            if ((logFiles.size() == 0) || (sweepParameters.size() == 0)) {
+                System.out.println(usage);
+                System.exit(1);
+            }
+
+            BehaviorParameterSweep sweep = null;
+            LogReader reader;
+            LogSession session;
+            for (File logFile : logFiles) {
+                reader = new LogReader(logFile);
+                reader.read();
+                session = reader.getSession();
+                if (sweep == null) {
+                    final LarvaBehaviorParameters baseParameters =
+                            session.getLarvaBehaviorParameters();
+                    if (baseParameters == null) {
+                        throw new IllegalArgumentException(
+                                "behavior parameters missing from " +
+                                logFile.getAbsolutePath());
+                    }
+                    sweep = new BehaviorParameterSweep(
+                            baseParameters,
+                            Runtime.getRuntime().availableProcessors());
+                }
+                sweep.addReferenceRun(logFile.getName(),
+                                      session.getFrameDataList());
+            }
+
+            for (String name : sweepParameters.keySet()) {
+                //noinspection ConstantConditions
+                sweep.addParameterValues(name, sweepParameters.get(name));
+            }
+
+            //noinspection ConstantConditions
+            final List<Result> results = sweep.run();
+            System.out.println("\n" + sweep.formatResults(results, maxResults));
+
+        } catch (Throwable t) {
+            LOG.error("parameter sweep failed", t);
+            System.exit(1);
+        }
+    }
+}
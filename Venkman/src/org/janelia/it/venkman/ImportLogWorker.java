@@ -125,8 +125,8 @@ public class ImportLogWorker
 
             LogReader reader = new LogReader(logFile);
 
-            // TODO: handle large files in some reasonable manner
-            reader.read();
+            // large logs can be limited to a frame range (see LogReader.readConfiguredRange)
+            reader.readConfiguredRange();
             final LogSession logSession = reader.getSession();
 
             ResponseMessage openResponse;
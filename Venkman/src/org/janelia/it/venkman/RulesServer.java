@@ -28,21 +28,37 @@ public class RulesServer implements Runnable {
     private int port;
     private List<RulesSession> sessions;
     private boolean continueProcessing;
-    private ServerSocket serverSocket;
+    private volatile ServerSocket serverSocket;
     private ConfigurationManager configurationManager;
+    private SessionThreadFactory sessionThreadFactory;
 
     public RulesServer(int port,
                        File workDirectory) {
+        this(port, workDirectory, SessionThreadFactory.getDefault());
+    }
+
+    /**
+     * @param  port                  port for tracker connections
+     *                               (or 0 for any free port).
+     * @param  workDirectory         directory containing configuration
+     *                               and log files.
+     * @param  sessionThreadFactory  factory for session and log writer threads.
+     */
+    public RulesServer(int port,
+                       File workDirectory,
+                       SessionThreadFactory sessionThreadFactory) {
         this.port = port;
         this.sessions = new ArrayList<RulesSession>();
         this.continueProcessing = true;
         this.serverSocket = null;
         this.configurationManager = new ConfigurationManager(workDirectory);
+        this.sessionThreadFactory = sessionThreadFactory;
     }
 
     public void run() {
 
-        LOG.info("run: entry, accepting requests on port " + port);
+        LOG.info("run: entry, accepting requests on port " + port +
+                 " with " + sessionThreadFactory);
 
         try {
             serverSocket = new ServerSocket(port);
@@ -54,7 +70,7 @@ public class RulesServer implements Runnable {
                 clientSocket = serverSocket.accept();
                 sessionId = "sid-" + sessions.size();
                 session = buildSession(sessionId, clientSocket);
-                sessionThread = new Thread(session);
+                sessionThread = sessionThreadFactory.newThread(session);
                 sessionThread.start();
 
                 cleanUpClosedSessionReferences();
@@ -85,12 +101,25 @@ public class RulesServer implements Runnable {
         }
 
         for (RulesSession session : sessions) {
-            if (session != null) {
+            if ((session != null) && (! session.isClosed())) {
                 session.close();
             }
         }
     }
 
+    /**
+     * @return the port this server is listening on
+     *         (or -1 if the server is not listening).
+     */
+    public int getLocalPort() {
+        final ServerSocket socket = serverSocket;
+        int localPort = -1;
+        if (socket != null) {
+            localPort = socket.getLocalPort();
+        }
+        return localPort;
+    }
+
     protected ConfigurationManager getConfigurationManager() {
         return configurationManager;
     }
@@ -101,7 +130,8 @@ public class RulesServer implements Runnable {
         return new RulesSession(sessionId,
                                 clientSocket.getInputStream(),
                                 clientSocket.getOutputStream(),
-                                configurationManager);
+                                configurationManager,
+                                sessionThreadFactory);
     }
 
     private void cleanUpClosedSessionReferences() {
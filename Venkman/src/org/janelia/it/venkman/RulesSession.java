@@ -11,22 +11,29 @@ import org.apache.log4j.Logger;
 import org.janelia.it.venkman.config.Configuration;
 import org.janelia.it.venkman.config.ConfigurationManager;
 import org.janelia.it.venkman.config.LarvaBehaviorParameters;
+import org.janelia.it.venkman.config.ParameterCollectionCategory;
 import org.janelia.it.venkman.config.ParameterCollectionId;
 import org.janelia.it.venkman.config.rules.Stimulus;
 import org.janelia.it.venkman.data.LarvaFrameData;
 import org.janelia.it.venkman.data.LarvaSkeleton;
 import org.janelia.it.venkman.jaxb.MarshallerCache;
+import org.janelia.it.venkman.log.FrameLoggingPolicy;
 import org.janelia.it.venkman.message.ArenaBackgroundResponse;
 import org.janelia.it.venkman.message.GetSessionParametersResponse;
 import org.janelia.it.venkman.message.ListConfigurationsResponse;
 import org.janelia.it.venkman.message.Message;
 import org.janelia.it.venkman.message.MessageType;
 import org.janelia.it.venkman.message.OpenSessionResponse;
+import org.janelia.it.venkman.message.ProcessLarvaSkeletonBatchResponse;
 import org.janelia.it.venkman.message.ProcessLarvaSkeletonResponse;
+import org.janelia.it.venkman.message.ProcessMultiLarvaSkeletonResponse;
 import org.janelia.it.venkman.message.ResponseMessage;
 import org.janelia.it.venkman.message.StatusResponse;
+import org.janelia.it.venkman.rules.DerivedDataDependent;
 import org.janelia.it.venkman.rules.LarvaStimulusRules;
+import org.janelia.it.venkman.rules.RuleData;
 import org.janelia.it.venkman.rules.TrackerArenaProvider;
+import org.janelia.it.venkman.rules.TransientStateCarrier;
 
 import javax.xml.bind.JAXBException;
 import java.io.BufferedReader;
@@ -39,8 +46,19 @@ import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Manages communication with tracker for a single rules session.
@@ -58,17 +76,38 @@ public class RulesSession implements Runnable {
     /** The session logger (or null if logging is disabled) */
     private org.janelia.it.venkman.log.Logger logger;
 
-    /**
-     * History of data derived for received video frames.
-     * Data for the most recent frame is at the beginning of the list.
-     */
-    private LinkedList<LarvaFrameData> frameHistory;
+    /** Decides which frames are logged in full. */
+    private FrameLoggingPolicy frameLoggingPolicy;
+
+    /** Warm-up run each time the session is opened. */
+    private SessionWarmUp sessionWarmUp;
+
+    /** Evaluates (and logs) shadow rules for default track frames. */
+    private ShadowRulesEvaluator shadowRulesEvaluator;
+
+    /** The configuration used to open this session (or null if not opened). */
+    private Configuration configuration;
+
+    /** The configured behavior parameters (before any rule overrides). */
+    private LarvaBehaviorParameters configuredBehaviorParameters;
 
     /** The configurable behavior parameters for frame data calculations. */
     private LarvaBehaviorParameters behaviorParameters;
 
     private LarvaStimulusRules stimulusRules;
 
+    /** State for frames received without a track id. */
+    private RulesTrack defaultTrack;
+
+    /** State for each larva identified in multi-larva requests. */
+    private Map<String, RulesTrack> trackIdToTrackMap;
+
+    /**
+     * Multi-larva frames with at least this many tracks are processed
+     * in parallel (smaller frames are processed on the session thread).
+     */
+    private int parallelTrackThreshold;
+
     /** Cache of JAXB marshaller instances (for writing stimulus parameters). */
     private MarshallerCache marshallerCache;
 
@@ -79,18 +118,51 @@ public class RulesSession implements Runnable {
                         InputStream in,
                         OutputStream out,
                         ConfigurationManager configurationManager) {
+        this(sessionId, in, out, configurationManager, null);
+    }
+
+    /**
+     * @param  sessionId             session identifier.
+     * @param  in                    stream of tracker requests.
+     * @param  out                   stream for responses.
+     * @param  configurationManager  manager for configured parameters.
+     * @param  logThreadFactory      factory for the session's log writer
+     *                               thread (or null for a dedicated
+     *                               platform thread).
+     */
+    public RulesSession(String sessionId,
+                        InputStream in,
+                        OutputStream out,
+                        ConfigurationManager configurationManager,
+                        ThreadFactory logThreadFactory) {
         this.sessionId = sessionId;
         this.in = new BufferedReader(new InputStreamReader(in));
-        this.out = new PrintWriter(out, true);
+        // responses are flushed explicitly once all pipelined requests
+        // have been processed (see run)
+        this.out = new PrintWriter(out, false);
         this.configurationManager = configurationManager;
         this.continueProcessing = true;
         this.logger = new org.janelia.it.venkman.log.Logger(
+                org.janelia.it.venkman.log.Logger.DEFAULT_ITEMS_TO_BUFFER,
+                org.janelia.it.venkman.log.Logger.DEFAULT_WRITE_PAUSE,
                 configurationManager.getLogDirectory(),
-                sessionId);
-
-        this.frameHistory = new LinkedList<LarvaFrameData>();
+                sessionId,
+                logThreadFactory);
+        this.frameLoggingPolicy = FrameLoggingPolicy.getDefault();
+        this.sessionWarmUp = SessionWarmUp.getDefault();
+        this.shadowRulesEvaluator =
+                new ShadowRulesEvaluator(sessionId,
+                                         logger,
+                                         ShadowRulesEvaluator.getDefaultQueueCapacity());
+
+        this.configuration = null;
+        this.configuredBehaviorParameters = null;
         this.behaviorParameters = null;
         this.stimulusRules = null;
+        this.defaultTrack = new RulesTrack(null, null, null);
+        this.trackIdToTrackMap = new HashMap<String, RulesTrack>();
+        this.parallelTrackThreshold = Integer.getInteger("venkman-parallel-track-threshold",
+                                                         DEFAULT_PARALLEL_TRACK_THRESHOLD);
         this.marshallerCache = new MarshallerCache();
         this.totalLarvaSkeletonRequestNanoseconds = 0;
         this.numberOfLarvaSkeletonRequests = 0;
@@ -108,14 +180,63 @@ public class RulesSession implements Runnable {
         return pathAndName;
     }
 
+    /**
+     * Overrides the default (system property based) frame logging policy
+     * for this session.  Must be called before any frames are processed.
+     *
+     * @param  frameLoggingPolicy  policy for this session.
+     */
+    public void setFrameLoggingPolicy(FrameLoggingPolicy frameLoggingPolicy) {
+        this.frameLoggingPolicy = frameLoggingPolicy;
+    }
+
+    /**
+     * Overrides the default (system property based) warm-up
+     * for this session.  Must be called before the session is opened.
+     *
+     * @param  sessionWarmUp  warm-up for this session.
+     */
+    public void setSessionWarmUp(SessionWarmUp sessionWarmUp) {
+        this.sessionWarmUp = sessionWarmUp;
+    }
+
+    /**
+     * Adds shadow stimulus rules that are evaluated (on a separate thread)
+     * against the frames processed for the session's default track.
+     * Shadow stimulus results are logged but never sent to the tracker.
+     * Must be called before the session is opened.
+     *
+     * @param  name   name for the rules (included in log entries).
+     * @param  rules  uninitialized rules instance dedicated to this session.
+     */
+    public void addShadowStimulusRules(String name,
+                                       LarvaStimulusRules rules) {
+        shadowRulesEvaluator.addRules(name, rules);
+    }
+
+    /**
+     * Overrides the default (system property based) minimum number of
+     * tracks required for parallel processing of multi-larva frames.
+     *
+     * @param  parallelTrackThreshold  minimum number of tracks.
+     */
+    public void setParallelTrackThreshold(int parallelTrackThreshold) {
+        this.parallelTrackThreshold = parallelTrackThreshold;
+    }
+
     /**
      * Process request messages from this session's input stream until
      * a close session message is received or an unrecoverable error occurs.
+     *
+     * Clients may pipeline requests (send requests before receiving
+     * responses for prior requests).  Responses are always written in
+     * request order but are only flushed when no further request is
+     * waiting to be read.
      */
     @Override
     public void run() {
 
-        boolean isLarvaSkeletonRequest;
+        int numberOfSkeletonsProcessed;
         long requestStartTime;
 
         ResponseMessage response;
@@ -126,13 +247,13 @@ public class RulesSession implements Runnable {
             MessageType type = null;
             while (continueProcessing && (request = in.readLine()) != null) {
 
-                isLarvaSkeletonRequest = false;
+                numberOfSkeletonsProcessed = 0;
                 requestStartTime = System.nanoTime();
 
                 try {
                     message = Message.getRequestMessage(request);
 
-                    if (type != MessageType.PROCESS_LARVA_SKELETON_REQUEST) {
+                    if (! isLarvaSkeletonType(type)) {
                         logMessageToConsole("received", message);
                     }
 
@@ -141,28 +262,37 @@ public class RulesSession implements Runnable {
 
                         case PROCESS_LARVA_SKELETON_REQUEST:
 
-                            isLarvaSkeletonRequest = true;
+                            numberOfSkeletonsProcessed = 1;
 
                             response = validateSessionId(message);
                             if (response == null) {
-                                final LarvaSkeleton skeleton = new LarvaSkeleton(
-                                        message.getField(1),   // frame time
-                                        message.getField(2),   // head x
-                                        message.getField(3),   // head y
-                                        message.getField(4),   // midpoint x
-                                        message.getField(5),   // midpoint y
-                                        message.getField(6),   // tail x
-                                        message.getField(7),   // tail y
-                                        message.getField(8),   // length
-                                        message.getField(9),   // centroid x
-                                        message.getField(10),  // centroid y
-                                        message.getField(11),  // head to body angle
-                                        message.getField(12)); // tail bearing
-
+                                final LarvaSkeleton skeleton = getLarvaSkeleton(message, 1);
                                 response = processLarvaSkeleton(skeleton, message.getVersion());
                             }
                             break;
 
+                        case PROCESS_LARVA_SKELETON_BATCH_REQUEST:
+
+                            response = validateSessionId(message);
+                            if (response == null) {
+                                numberOfSkeletonsProcessed =
+                                        getRepeatedGroupCount(message, SKELETON_FIELD_COUNT);
+                                response = processLarvaSkeletonBatch(message,
+                                                                     numberOfSkeletonsProcessed);
+                            }
+                            break;
+
+                        case PROCESS_MULTI_LARVA_SKELETON_REQUEST:
+
+                            response = validateSessionId(message);
+                            if (response == null) {
+                                numberOfSkeletonsProcessed =
+                                        getRepeatedGroupCount(message, TRACK_FIELD_COUNT);
+                                response = processMultiLarvaSkeleton(message,
+                                                                     numberOfSkeletonsProcessed);
+                            }
+                            break;
+
                         case LIST_CONFIGURATIONS_REQUEST:
                             response = listConfigurations(message.getVersion());
                             break;
@@ -185,6 +315,13 @@ public class RulesSession implements Runnable {
                             }
                             break;
 
+                        case UPDATE_SESSION_PARAMETERS_REQUEST:
+                            response = validateSessionId(message);
+                            if (response == null) {
+                                response = updateSessionParameters(message);
+                            }
+                            break;
+
                         case CLOSE_SESSION_REQUEST:
                             response = validateSessionId(message);
                             if (response == null) {
@@ -213,15 +350,18 @@ public class RulesSession implements Runnable {
 
                 }
 
-                if (type != MessageType.PROCESS_LARVA_SKELETON_REQUEST) {
+                if (! isLarvaSkeletonType(type)) {
                     logMessageToConsole("returning", response);
                 }
 
                 out.println(response);
+                if (! in.ready()) {
+                    out.flush();
+                }
 
-                if (isLarvaSkeletonRequest) {
+                if (numberOfSkeletonsProcessed > 0) {
                     totalLarvaSkeletonRequestNanoseconds += System.nanoTime() - requestStartTime;
-                    numberOfLarvaSkeletonRequests++;
+                    numberOfLarvaSkeletonRequests += numberOfSkeletonsProcessed;
                 }
             }
 
@@ -233,6 +373,7 @@ public class RulesSession implements Runnable {
 
             try {
                 out.println(response);
+                out.flush();
                 logMessageToConsole("returning", response);
             } catch (Exception e1) {
                 LOG.error("run: failed to send error response", e1);
@@ -260,44 +401,137 @@ public class RulesSession implements Runnable {
         }
     }
 
-    public ResponseMessage processLarvaSkeleton(LarvaSkeleton skeleton,
-                                                String version) {
+    public ProcessLarvaSkeletonResponse processLarvaSkeleton(LarvaSkeleton skeleton,
+                                                             String version) {
 
-        LarvaFrameData frameData = new LarvaFrameData(skeleton);
+        final LarvaFrameData frameData = defaultTrack.processSkeleton(skeleton);
 
-        frameData.calculateDerivedData(frameHistory, behaviorParameters);
+        // log frame data after determineStimulus call in case
+        // call changes any of the data
+        final Object logEntry = frameLoggingPolicy.getLogEntry(frameData);
+        if (logEntry == frameData) {
+            frameData.calculateDeferredData();
+        }
+        logger.log(logEntry);
 
-        frameHistory.addFirst(frameData);
+        if (shadowRulesEvaluator.isStarted()) {
+            shadowRulesEvaluator.submit(frameData, version);
+        }
 
-        final List<? extends Stimulus> currentStimulusList;
-        if (stimulusRules == null) {
-            currentStimulusList = null;
-        } else {
-            currentStimulusList =
-                    stimulusRules.determineStimulus(frameHistory,
-                                                    behaviorParameters);
-            frameData.setStimulusList(currentStimulusList);
+        return getSkeletonResponse(frameData, version);
+    }
+
+    /**
+     * Processes each skeleton in a batch request (in order) and
+     * returns the combined results.  All skeletons are parsed before
+     * any are processed so that an invalid batch is rejected without
+     * changing (or logging) session state.
+     *
+     * @param  message         batch request message.
+     * @param  numberOfFrames  number of skeletons in the batch.
+     *
+     * @return batch response with the results for each skeleton.
+     */
+    public ProcessLarvaSkeletonBatchResponse processLarvaSkeletonBatch(Message message,
+                                                                       int numberOfFrames) {
+        final String version = message.getVersion();
+        final LarvaSkeleton[] skeletons = new LarvaSkeleton[numberOfFrames];
+        for (int i = 0; i < numberOfFrames; i++) {
+            skeletons[i] = getLarvaSkeleton(message, 2 + (i * SKELETON_FIELD_COUNT));
         }
 
-        // log frame data after determineStimulus call in case
-        // call changes any of the data
-        logger.log(frameData);
+        final ProcessLarvaSkeletonBatchResponse batchResponse =
+                new ProcessLarvaSkeletonBatchResponse(version, numberOfFrames);
+        for (LarvaSkeleton skeleton : skeletons) {
+            batchResponse.addFrameResponse(processLarvaSkeleton(skeleton, version));
+        }
+        return batchResponse;
+    }
 
-        // TODO: manage frame history size?
+    /**
+     * Processes the skeleton for each track in a multi-larva request
+     * and returns the results grouped in a single response.
+     * Tracks are processed in parallel when the number of tracks
+     * reaches the parallel track threshold.  Frame data for all tracks
+     * is logged (in full) in request order.
+     *
+     * @param  message         multi-larva request message.
+     * @param  numberOfTracks  number of tracks in the request.
+     *
+     * @return multi-larva response with the results for each track.
+     *
+     * @throws IllegalArgumentException
+     *   if the request is invalid.
+     *
+     * @throws Exception
+     *   if any track cannot be processed.
+     */
+    public ProcessMultiLarvaSkeletonResponse processMultiLarvaSkeleton(Message message,
+                                                                       int numberOfTracks)
+            throws IllegalArgumentException, Exception {
+
+        final String[] trackIds = new String[numberOfTracks];
+        final LarvaSkeleton[] skeletons = new LarvaSkeleton[numberOfTracks];
+        final Set<String> uniqueTrackIds = new HashSet<String>();
+        int firstField;
+        for (int i = 0; i < numberOfTracks; i++) {
+            firstField = 2 + (i * TRACK_FIELD_COUNT);
+            trackIds[i] = message.getField(firstField);
+            if (! uniqueTrackIds.add(trackIds[i])) {
+                throw new IllegalArgumentException(
+                        "invalid request: track '" + trackIds[i] +
+                        "' is specified more than once");
+            }
+            skeletons[i] = getLarvaSkeleton(message, firstField + 1);
+        }
 
-        ProcessLarvaSkeletonResponse skeletonResponse =
-                new ProcessLarvaSkeletonResponse(
-                        version,
-                        String.valueOf(skeleton.getCaptureTime()),
-                        String.valueOf(frameData.getBehaviorMode()));
+        // only create new tracks once the whole request has been validated
+        final RulesTrack[] tracks = new RulesTrack[numberOfTracks];
+        for (int i = 0; i < numberOfTracks; i++) {
+            tracks[i] = getTrack(trackIds[i]);
+        }
 
-        if (currentStimulusList != null) {
-            for (Stimulus currentStimulus : currentStimulusList) {
-                currentStimulus.addFieldsToMessage(skeletonResponse);
+        final LarvaFrameData[] frames = new LarvaFrameData[numberOfTracks];
+        if (numberOfTracks < parallelTrackThreshold) {
+            for (int i = 0; i < numberOfTracks; i++) {
+                frames[i] = tracks[i].processSkeleton(skeletons[i]);
+            }
+        } else {
+            final List<Callable<LarvaFrameData>> tasks =
+                    new ArrayList<Callable<LarvaFrameData>>(numberOfTracks);
+            for (int i = 0; i < numberOfTracks; i++) {
+                final RulesTrack track = tracks[i];
+                final LarvaSkeleton skeleton = skeletons[i];
+                tasks.add(new Callable<LarvaFrameData>() {
+                    @Override
+                    public LarvaFrameData call() {
+                        return track.processSkeleton(skeleton);
+                    }
+                });
+            }
+            final List<Future<LarvaFrameData>> results =
+                    TrackExecutorHolder.EXECUTOR.invokeAll(tasks);
+            for (int i = 0; i < numberOfTracks; i++) {
+                try {
+                    frames[i] = results.get(i).get();
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException(
+                            "failed to process track '" + tracks[i].getTrackId() + "'",
+                            e.getCause());
+                }
             }
         }
 
-        return skeletonResponse;
+        final String version = message.getVersion();
+        final ProcessMultiLarvaSkeletonResponse response =
+                new ProcessMultiLarvaSkeletonResponse(version, numberOfTracks);
+        for (int i = 0; i < numberOfTracks; i++) {
+            frames[i].calculateDeferredData();
+            logger.log(frames[i]);
+            response.addTrackResponse(tracks[i].getTrackId(),
+                                      getSkeletonResponse(frames[i], version));
+        }
+        return response;
     }
 
     public void close() {
@@ -305,7 +539,13 @@ public class RulesSession implements Runnable {
 
         try {
             logLarvaRequestProcessingStats();
+            logFrameLoggingStats();
+            stopShadowRulesEvaluator();
             logger.stopLogging();
+            if (! awaitLogTermination(LOG_STOP_WAIT_MILLISECONDS)) {
+                LOG.warn("close: log writer for session " + sessionId + " did not finish within " +
+                         LOG_STOP_WAIT_MILLISECONDS + " ms");
+            }
         } catch (Throwable t) {
             LOG.error("failed to stop rules processor logging", t);
         }
@@ -317,6 +557,22 @@ public class RulesSession implements Runnable {
         out = null;
     }
 
+    /**
+     * Waits for this session's log writer to finish writing all remaining
+     * entries (and parameter snapshots) after the session has been closed.
+     *
+     * @param  maxWaitMilliseconds  maximum number of milliseconds to wait.
+     *
+     * @return true if the log writer has finished; otherwise false.
+     *
+     * @throws InterruptedException
+     *   if the calling thread is interrupted while waiting.
+     */
+    public boolean awaitLogTermination(long maxWaitMilliseconds)
+            throws InterruptedException {
+        return logger.awaitTermination(maxWaitMilliseconds);
+    }
+
     public boolean isClosed() {
         return (! continueProcessing);
     }
@@ -420,24 +676,263 @@ public class RulesSession implements Runnable {
                                           LarvaStimulusRules stimulusRules,
                                           String version) {
 
+        this.configuration = configuration;
+        this.configuredBehaviorParameters = behaviorParameters;
         this.behaviorParameters = behaviorParameters;
         this.stimulusRules = stimulusRules;
         if (stimulusRules != null) {
             stimulusRules.init(logger);
             this.behaviorParameters = stimulusRules.overrideBehaviorParameters(behaviorParameters);
         }
+        defaultTrack.setParameters(this.behaviorParameters, stimulusRules);
 
-        ResponseMessage response = new OpenSessionResponse(version, sessionId);
-
-        logger.log(configuration);
-        logger.log(behaviorParameters);
+        logger.logParameters(configuration);
+        logger.logParameters(behaviorParameters);
         if (stimulusRules != null) {
-            logger.log(stimulusRules);
+            logger.logParameters(stimulusRules);
+        }
+        if (stimulusRules instanceof DerivedDataDependent) {
+            final DerivedDataDependent dependent = (DerivedDataDependent) stimulusRules;
+            logger.logMessage("stimulus rules depend upon kinematic variables " +
+                              dependent.getKinematicVariableDependencies() +
+                              " and positional variables " +
+                              dependent.getPositionalVariableDependencies());
+        }
+
+        startShadowRulesEvaluator();
+
+        ResponseMessage response;
+        if (sessionWarmUp.isEnabled()) {
+            final long warmUpMilliseconds =
+                    sessionWarmUp.run(behaviorParameters,
+                                      getStimulusRulesCopy(),
+                                      configurationManager.getLogDirectory());
+            logger.logMessage("warmed up session with " + sessionWarmUp.getNumberOfFrames() +
+                              " synthetic frames in " + warmUpMilliseconds + " ms");
+            response = new OpenSessionResponse(version, sessionId, warmUpMilliseconds);
+        } else {
+            response = new OpenSessionResponse(version, sessionId);
+        }
+
+        return response;
+    }
+
+    /**
+     * Swaps in new behavior parameters or stimulus rules for subsequent
+     * frames without reopening the session.  The frame history (and all
+     * data derived from it) is retained for every track.  Replacement
+     * stimulus rules continue from the transient state of the rules they
+     * replace when they implement {@link TransientStateCarrier}.
+     * Requests are processed sequentially, so the swap always occurs
+     * between frames.  Shadow rules are not affected.
+     *
+     * @param  message  update request (session id, parameter category,
+     *                  and full name of the parameter collection).
+     *
+     * @return status response describing the update.
+     *
+     * @throws IllegalArgumentException
+     *   if the request is invalid or the session has not been opened.
+     */
+    protected ResponseMessage updateSessionParameters(Message message)
+            throws IllegalArgumentException {
+
+        if (message.size() != 3) {
+            throw new IllegalArgumentException(
+                    "invalid request: update requires 5 fields but message has " +
+                    (message.size() + 2) + " fields");
+        }
+
+        if (configuration == null) {
+            throw new IllegalArgumentException(
+                    "invalid request: parameters cannot be updated before session is opened");
+        }
+
+        final String categoryName = message.getField(1);
+        final String fullName = message.getField(2);
+
+        // identify the last frame processed with the prior parameters
+        final Long lastFrameTime = getLatestFrameTime();
+
+        ResponseMessage response;
+        String description = null;
+        if (ParameterCollectionCategory.BEHAVIOR.getName().equals(categoryName)) {
+
+            final ParameterCollectionId behaviorId = ParameterCollectionId.getBehaviorId(fullName);
+            final LarvaBehaviorParameters updatedParameters =
+                    configurationManager.getBehaviorParameters(behaviorId);
+            if (updatedParameters == null) {
+                response = StatusResponse.notFound(
+                        "invalid update session parameters request: behavior parameters '" +
+                        fullName + "' not found");
+            } else {
+                updateBehaviorParameters(behaviorId, updatedParameters, lastFrameTime);
+                description = "behavior parameters " + fullName;
+                response = null;
+            }
+
+        } else if (ParameterCollectionCategory.STIMULUS.getName().equals(categoryName)) {
+
+            final ParameterCollectionId stimulusId = ParameterCollectionId.getStimulusId(fullName);
+            final LarvaStimulusRules updatedRules = configurationManager.getStimulusRules(stimulusId);
+            if (updatedRules == null) {
+                response = StatusResponse.notFound(
+                        "invalid update session parameters request: stimulus parameters '" +
+                        fullName + "' not found");
+            } else if (! updatedRules.supportsVersion(message.getVersion())) {
+                response = StatusResponse.badRequest(
+                        "invalid update session parameters request: stimulus parameters '" +
+                        fullName + "' do not support version " + message.getVersion());
+            } else {
+                final boolean isStateCarriedOver =
+                        updateStimulusRules(stimulusId, updatedRules, lastFrameTime);
+                if (isStateCarriedOver) {
+                    description = "stimulus parameters " + fullName + " (transient state carried over)";
+                } else {
+                    description = "stimulus parameters " + fullName + " (transient state reset)";
+                }
+                response = null;
+            }
+
+        } else {
+            throw new IllegalArgumentException(
+                    "invalid request: parameter category '" + categoryName + "' must be '" +
+                    ParameterCollectionCategory.BEHAVIOR + "' or '" +
+                    ParameterCollectionCategory.STIMULUS + "'");
+        }
+
+        if (description != null) {
+            logger.log(new RuleData(lastFrameTime == null ? 0 : lastFrameTime,
+                                    RuleData.PARAMETERS_UPDATE_NAME,
+                                    description));
+            response = new StatusResponse(ResponseMessage.STATUS_OK,
+                                          "updated " + description + " for session " + sessionId);
         }
 
         return response;
     }
 
+    /**
+     * @return capture time of the most recent frame processed for any
+     *         track in this session (or null if no frames have been processed).
+     */
+    private Long getLatestFrameTime() {
+        Long latestFrameTime = null;
+        if (defaultTrack.hasFrames()) {
+            latestFrameTime = defaultTrack.getLatestFrameTime();
+        }
+        for (RulesTrack track : trackIdToTrackMap.values()) {
+            if (track.hasFrames() &&
+                ((latestFrameTime == null) || (track.getLatestFrameTime() > latestFrameTime))) {
+                latestFrameTime = track.getLatestFrameTime();
+            }
+        }
+        return latestFrameTime;
+    }
+
+    private void updateBehaviorParameters(ParameterCollectionId behaviorId,
+                                          LarvaBehaviorParameters updatedParameters,
+                                          Long lastFrameTime) {
+
+        configuration = new Configuration(configuration.getId(),
+                                          behaviorId,
+                                          configuration.getStimulusParametersId());
+        configuredBehaviorParameters = updatedParameters;
+        behaviorParameters = updatedParameters;
+        if (stimulusRules != null) {
+            behaviorParameters = stimulusRules.overrideBehaviorParameters(updatedParameters);
+        }
+        defaultTrack.setParameters(behaviorParameters, stimulusRules);
+
+        LarvaStimulusRules trackStimulusRules;
+        LarvaBehaviorParameters trackBehaviorParameters;
+        for (RulesTrack track : trackIdToTrackMap.values()) {
+            trackStimulusRules = track.getStimulusRules();
+            trackBehaviorParameters = updatedParameters;
+            if (trackStimulusRules != null) {
+                trackBehaviorParameters =
+                        trackStimulusRules.overrideBehaviorParameters(updatedParameters);
+            }
+            track.setParameters(trackBehaviorParameters, trackStimulusRules);
+        }
+
+        logger.logParameterUpdate(configuration, lastFrameTime);
+        logger.logParameterUpdate(updatedParameters, lastFrameTime);
+    }
+
+    /**
+     * @return true if transient state was carried over to the
+     *         default track's replacement rules; otherwise false.
+     */
+    private boolean updateStimulusRules(ParameterCollectionId stimulusId,
+                                        LarvaStimulusRules updatedRules,
+                                        Long lastFrameTime) {
+
+        // load all track copies before changing anything so that a load
+        // failure leaves the session unchanged
+        final List<RulesTrack> tracks = new ArrayList<RulesTrack>(trackIdToTrackMap.values());
+        final List<LarvaStimulusRules> trackRulesList =
+                new ArrayList<LarvaStimulusRules>(tracks.size());
+        LarvaStimulusRules trackRules;
+        for (RulesTrack track : tracks) {
+            trackRules = configurationManager.getStimulusRules(stimulusId);
+            if (trackRules == null) {
+                throw new IllegalStateException(
+                        "failed to load stimulus rules " + stimulusId +
+                        " for track '" + track.getTrackId() + "'");
+            }
+            trackRulesList.add(trackRules);
+        }
+
+        configuration = new Configuration(configuration.getId(),
+                                          configuration.getBehaviorParametersId(),
+                                          stimulusId);
+
+        final boolean isStateCarriedOver =
+                initReplacementRules(updatedRules, stimulusRules, logger);
+        stimulusRules = updatedRules;
+        behaviorParameters = updatedRules.overrideBehaviorParameters(configuredBehaviorParameters);
+        defaultTrack.setParameters(behaviorParameters, updatedRules);
+
+        RulesTrack track;
+        for (int i = 0; i < tracks.size(); i++) {
+            track = tracks.get(i);
+            trackRules = trackRulesList.get(i);
+            initReplacementRules(trackRules,
+                                 track.getStimulusRules(),
+                                 getTrackLogger(track.getTrackId()));
+            track.setParameters(trackRules.overrideBehaviorParameters(configuredBehaviorParameters),
+                                trackRules);
+        }
+
+        logger.logParameterUpdate(configuration, lastFrameTime);
+        logger.logParameterUpdate(updatedRules, lastFrameTime);
+
+        return isStateCarriedOver;
+    }
+
+    /**
+     * Initializes the specified rules and carries over any compatible
+     * transient state from the rules they replace.
+     *
+     * @param  rules          uninitialized replacement rules.
+     * @param  replacedRules  rules being replaced (or null).
+     * @param  rulesLogger    logger for the replacement rules.
+     *
+     * @return true if any transient state was carried over; otherwise false.
+     */
+    private boolean initReplacementRules(LarvaStimulusRules rules,
+                                         LarvaStimulusRules replacedRules,
+                                         org.janelia.it.venkman.log.Logger rulesLogger) {
+        rules.init(rulesLogger);
+        boolean isStateCarriedOver = false;
+        if ((replacedRules != null) && (rules instanceof TransientStateCarrier)) {
+            isStateCarriedOver =
+                    ((TransientStateCarrier) rules).carryOverTransientState(replacedRules);
+        }
+        return isStateCarriedOver;
+    }
+
     private ResponseMessage getSessionParameters()
             throws JAXBException, IOException {
         final int bufferSize = 2000000; // default to 2MB buffer
@@ -482,6 +977,200 @@ public class RulesSession implements Runnable {
         }
     }
 
+    private static boolean isLarvaSkeletonType(MessageType type) {
+        return (type == MessageType.PROCESS_LARVA_SKELETON_REQUEST) ||
+               (type == MessageType.PROCESS_LARVA_SKELETON_BATCH_REQUEST) ||
+               (type == MessageType.PROCESS_MULTI_LARVA_SKELETON_REQUEST);
+    }
+
+    static ProcessLarvaSkeletonResponse getSkeletonResponse(LarvaFrameData frameData,
+                                                                    String version) {
+        ProcessLarvaSkeletonResponse skeletonResponse =
+                new ProcessLarvaSkeletonResponse(
+                        version,
+                        String.valueOf(frameData.getTime()),
+                        String.valueOf(frameData.getBehaviorMode()));
+
+        final List<? extends Stimulus> currentStimulusList = frameData.getStimulusList();
+        if (currentStimulusList != null) {
+            for (Stimulus currentStimulus : currentStimulusList) {
+                currentStimulus.addFieldsToMessage(skeletonResponse);
+            }
+        }
+
+        return skeletonResponse;
+    }
+
+    /**
+     * @return a new (uninitialized) instance of the session's stimulus
+     *         rules or null if the session has no rules or the rules
+     *         cannot be loaded.
+     */
+    private LarvaStimulusRules getStimulusRulesCopy() {
+        LarvaStimulusRules copy = null;
+        if ((stimulusRules != null) && (configuration != null)) {
+            copy = configurationManager.getStimulusRules(configuration.getStimulusParametersId());
+        }
+        return copy;
+    }
+
+    /**
+     * @param  trackId  identifies the track.
+     *
+     * @return logger for the stimulus rules of the specified track.
+     */
+    private TrackLogger getTrackLogger(String trackId) {
+        return new TrackLogger(logger, configurationManager.getLogDirectory(), trackId);
+    }
+
+    /**
+     * @param  trackId  identifies the track.
+     *
+     * @return the state for the specified track, creating it (with
+     *         its own stimulus rules instance) if this is the first
+     *         frame received for the track.
+     *
+     * @throws IllegalArgumentException
+     *   if the session has not been opened.
+     */
+    private RulesTrack getTrack(String trackId)
+            throws IllegalArgumentException {
+
+        RulesTrack track = trackIdToTrackMap.get(trackId);
+        if (track == null) {
+
+            if (configuration == null) {
+                throw new IllegalArgumentException(
+                        "invalid request: track '" + trackId +
+                        "' received before session was opened");
+            }
+
+            LarvaBehaviorParameters trackBehaviorParameters = configuredBehaviorParameters;
+            LarvaStimulusRules trackStimulusRules = null;
+            if (stimulusRules != null) {
+                trackStimulusRules = getStimulusRulesCopy();
+                if (trackStimulusRules == null) {
+                    throw new IllegalStateException(
+                            "failed to load stimulus rules " +
+                            configuration.getStimulusParametersId() +
+                            " for track '" + trackId + "'");
+                }
+                trackStimulusRules.init(getTrackLogger(trackId));
+                trackBehaviorParameters =
+                        trackStimulusRules.overrideBehaviorParameters(configuredBehaviorParameters);
+            }
+
+            track = new RulesTrack(trackId, trackBehaviorParameters, trackStimulusRules);
+            trackIdToTrackMap.put(trackId, track);
+        }
+
+        return track;
+    }
+
+    private static LarvaSkeleton getLarvaSkeleton(Message message,
+                                                  int firstField) {
+        return new LarvaSkeleton(
+                message.getField(firstField),        // frame time
+                message.getField(firstField + 1),    // head x
+                message.getField(firstField + 2),    // head y
+                message.getField(firstField + 3),    // midpoint x
+                message.getField(firstField + 4),    // midpoint y
+                message.getField(firstField + 5),    // tail x
+                message.getField(firstField + 6),    // tail y
+                message.getField(firstField + 7),    // length
+                message.getField(firstField + 8),    // centroid x
+                message.getField(firstField + 9),    // centroid y
+                message.getField(firstField + 10),   // head to body angle
+                message.getField(firstField + 11));  // tail bearing
+    }
+
+    /**
+     * @param  message     batch or multi-larva request (session id and
+     *                     group count followed by the groups).
+     * @param  groupSize   number of fields in each group.
+     *
+     * @return the validated number of groups in the request.
+     *
+     * @throws IllegalArgumentException
+     *   if the count is invalid or does not match the number of fields.
+     */
+    private static int getRepeatedGroupCount(Message message,
+                                             int groupSize)
+            throws IllegalArgumentException {
+        final String countField = message.getField(1);
+        final int numberOfGroups;
+        try {
+            numberOfGroups = Integer.parseInt(countField);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(
+                    "invalid request: count '" + countField +
+                    "' is not an integer", e);
+        }
+        final int expectedSize = 2 + (numberOfGroups * groupSize);
+        if ((numberOfGroups < 1) || (message.size() != expectedSize)) {
+            throw new IllegalArgumentException(
+                    "invalid request: count of " + numberOfGroups +
+                    " requires " + (expectedSize + 2) +
+                    " fields but message has " + (message.size() + 2) + " fields");
+        }
+        return numberOfGroups;
+    }
+
+    /**
+     * Adds any shadow rules identified by the venkman-shadow-stimulus-rules
+     * system property (a comma separated list of full stimulus collection
+     * names) and then starts evaluating shadow rules.  Shadow rules that
+     * cannot be loaded are logged and skipped since they should never
+     * prevent a session from being opened.
+     */
+    private void startShadowRulesEvaluator() {
+        if (shadowRulesEvaluator.isStarted()) {
+            return;
+        }
+
+        final String shadowRulesNames = System.getProperty("venkman-shadow-stimulus-rules");
+        if (shadowRulesNames != null) {
+            LarvaStimulusRules rules;
+            for (String fullName : shadowRulesNames.split(",")) {
+                fullName = fullName.trim();
+                if (fullName.length() > 0) {
+                    rules = null;
+                    try {
+                        rules = configurationManager.getStimulusRules(
+                                ParameterCollectionId.getStimulusId(fullName));
+                    } catch (Exception e) {
+                        LOG.warn("startShadowRulesEvaluator: failed to load " + fullName, e);
+                    }
+                    if (rules == null) {
+                        logger.logMessage("skipped shadow stimulus rules " + fullName +
+                                          " because they could not be loaded");
+                    } else {
+                        shadowRulesEvaluator.addRules(fullName, rules);
+                    }
+                }
+            }
+        }
+
+        if (shadowRulesEvaluator.hasRules()) {
+            shadowRulesEvaluator.start(configuredBehaviorParameters,
+                                       configurationManager.getLogDirectory());
+            logger.logMessage("evaluating shadow stimulus rules " +
+                              shadowRulesEvaluator.getRulesNames());
+        }
+    }
+
+    private void stopShadowRulesEvaluator() {
+        if (shadowRulesEvaluator.isStarted()) {
+            shadowRulesEvaluator.stop(SHADOW_RULES_STOP_WAIT_MILLISECONDS);
+            final String message = "evaluated " + shadowRulesEvaluator.getEvaluatedFrameCount() +
+                                   " frames with shadow stimulus rules (" +
+                                   shadowRulesEvaluator.getDroppedFrameCount() + " dropped, " +
+                                   shadowRulesEvaluator.getFailureCount() + " rule failures)";
+            LOG.info(sessionId + ": " + message);
+            logger.logMessage(message);
+        }
+    }
+
     private void logLarvaRequestProcessingStats() {
         if (totalLarvaSkeletonRequestNanoseconds > 0) {
 
@@ -500,5 +1189,54 @@ public class RulesSession implements Runnable {
         }
     }
 
+    private void logFrameLoggingStats() {
+        if (frameLoggingPolicy.isTiered()) {
+            final long fullFrameCount = frameLoggingPolicy.getFullFrameCount();
+            final long totalFrameCount = fullFrameCount + frameLoggingPolicy.getCompactFrameCount();
+            if (totalFrameCount > 0) {
+                final String message = "logged " + fullFrameCount + " of " + totalFrameCount +
+                                       " frames in full (" +
+                                       ((fullFrameCount * 100) / totalFrameCount) + "%), " +
+                                       frameLoggingPolicy;
+                LOG.info(sessionId + ": " + message);
+                logger.logMessage(message);
+            }
+        }
+    }
+
+    /** Number of message fields for each skeleton (frame time and 11 skeleton values). */
+    private static final int SKELETON_FIELD_COUNT = 12;
+
+    /** Number of message fields for each track (track id and skeleton fields). */
+    private static final int TRACK_FIELD_COUNT = SKELETON_FIELD_COUNT + 1;
+
+    private static final int DEFAULT_PARALLEL_TRACK_THRESHOLD = 8;
+
+    /** Maximum time to wait for the log writer when a session is closed. */
+    private static final long LOG_STOP_WAIT_MILLISECONDS = 10000;
+
+    /** Maximum time to wait for queued shadow frames when a session is closed. */
+    private static final long SHADOW_RULES_STOP_WAIT_MILLISECONDS = 5000;
+
+    /**
+     * Lazily created pool shared by all sessions for parallel
+     * processing of multi-larva frames.
+     */
+    private static class TrackExecutorHolder {
+        private static final ExecutorService EXECUTOR =
+                Executors.newFixedThreadPool(
+                        Runtime.getRuntime().availableProcessors(),
+                        new ThreadFactory() {
+                            private final AtomicInteger count = new AtomicInteger();
+                            @Override
+                            public Thread newThread(Runnable r) {
+                                final Thread thread =
+                                        new Thread(r, "track-worker-" + count.incrementAndGet());
+                                thread.setDaemon(true);
+                                return thread;
+                            }
+                        });
+    }
+
     private static final Logger LOG = Logger.getLogger(RulesSession.class);
 }
@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2014 Howard Hughes Medical Institute.
+ * All rights reserved.
+ * Use is subject to Janelia Farm Research Campus Software Copyright 1.1
+ * license terms (http://license.janelia.org/license/jfrc_copyright_1_1.html).
+ */
+
+package org.janelia.it.venkman;
+
+import org.janelia.it.venkman.config.LarvaBehaviorParameters;
+import org.janelia.it.venkman.config.rules.KinematicVariable;
+import org.janelia.it.venkman.config.rules.Stimulus;
+import org.janelia.it.venkman.data.LarvaFrameData;
+import org.janelia.it.venkman.data.LarvaSkeleton;
+import org.janelia.it.venkman.rules.DerivedDataDependent;
+import org.janelia.it.venkman.rules.LarvaStimulusRules;
+
+import java.util.EnumSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Processing state for one tracked larva within a rules session.
+ * Single larva sessions use one (default) track while multi-larva
+ * sessions maintain a track for each larva identified by the tracker.
+ *
+ * Each track has its own stimulus rules instance because rules
+ * implementations keep transient state between frames.
+ *
+ * @author Eric Trautman
+ */
+public class RulesTrack {
+
+    /** Identifier for this track (or null for the default track). */
+    private String trackId;
+
+    /**
+     * History of data derived for received video frames.
+     * Data for the most recent frame is at the beginning of the list.
+     */
+    private LinkedList<LarvaFrameData> frameHistory;
+
+    /** The configurable behavior parameters for frame data calculations. */
+    private LarvaBehaviorParameters behaviorParameters;
+
+    private LarvaStimulusRules stimulusRules;
+
+    /**
+     * Kinematic variables that must be calculated before the stimulus
+     * rules are applied (or null if the rules may read any variable).
+     */
+    private Set<KinematicVariable> requiredVariables;
+
+    public RulesTrack(String trackId,
+                      LarvaBehaviorParameters behaviorParameters,
+                      LarvaStimulusRules stimulusRules) {
+        this.trackId = trackId;
+        this.frameHistory = new LinkedList<LarvaFrameData>();
+        setParameters(behaviorParameters, stimulusRules);
+    }
+
+    public String getTrackId() {
+        return trackId;
+    }
+
+    public LarvaBehaviorParameters getBehaviorParameters() {
+        return behaviorParameters;
+    }
+
+    public LarvaStimulusRules getStimulusRules() {
+        return stimulusRules;
+    }
+
+    /**
+     * @return true if any frames have been processed for this track.
+     */
+    public boolean hasFrames() {
+        return frameHistory.size() > 0;
+    }
+
+    /**
+     * @return capture time of the most recent frame processed for
+     *         this track (or 0 if no frames have been processed).
+     */
+    public long getLatestFrameTime() {
+        long time = 0;
+        if (frameHistory.size() > 0) {
+            time = frameHistory.getFirst().getTime();
+        }
+        return time;
+    }
+
+    /**
+     * Replaces the parameters used to process subsequent frames
+     * (the frame history is retained).
+     *
+     * @param  behaviorParameters  behavior parameters (with any rule
+     *                             overrides already applied).
+     * @param  stimulusRules       initialized stimulus rules (or null if
+     *                             no stimulus should be determined).
+     */
+    public void setParameters(LarvaBehaviorParameters behaviorParameters,
+                              LarvaStimulusRules stimulusRules) {
+        this.behaviorParameters = behaviorParameters;
+        this.stimulusRules = stimulusRules;
+        if (stimulusRules == null) {
+            this.requiredVariables = EnumSet.noneOf(KinematicVariable.class);
+        } else if (stimulusRules instanceof DerivedDataDependent) {
+            this.requiredVariables =
+                    ((DerivedDataDependent) stimulusRules).getKinematicVariableDependencies();
+        } else {
+            this.requiredVariables = null;
+        }
+    }
+
+    /**
+     * Derives data for the specified skeleton, adds it to this
+     * track's history, and determines the stimulus for the frame.
+     * Only the kinematic variables needed by the stimulus rules are
+     * calculated, so {@link LarvaFrameData#calculateDeferredData} must
+     * be called before the returned frame is logged in full.
+     *
+     * @param  skeleton  skeleton for the current frame.
+     *
+     * @return data derived for the frame (including any stimulus).
+     */
+    public LarvaFrameData processSkeleton(LarvaSkeleton skeleton) {
+
+        LarvaFrameData frameData = new LarvaFrameData(skeleton);
+        frameData.setTrackId(trackId);
+
+        frameData.calculateDerivedData(frameHistory, behaviorParameters, requiredVariables);
+
+        frameHistory.addFirst(frameData);
+
+        if (stimulusRules != null) {
+            final List<? extends Stimulus> currentStimulusList =
+                    stimulusRules.determineStimulus(frameHistory,
+                                                    behaviorParameters);
+            frameData.setStimulusList(currentStimulusList);
+        }
+
+        // TODO: manage frame history size?
+
+        return frameData;
+    }
+
+    @Override
+    public String toString() {
+        return "RulesTrack{" +
+               "trackId='" + trackId + '\'' +
+               ", numberOfFrames=" + frameHistory.size() +
+               '}';
+    }
+}
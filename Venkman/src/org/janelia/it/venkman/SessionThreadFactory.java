@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2014 Howard Hughes Medical Institute.
+ * All rights reserved.
+ * Use is subject to Janelia Farm Research Campus Software Copyright 1.1
+ * license terms (http://license.janelia.org/license/jfrc_copyright_1_1.html).
+ */
+
+package org.janelia.it.venkman;
+
+import org.apache.log4j.Logger;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Creates the threads that run rules sessions and their log writers.
+ *
+ * When virtual threads are requested and the JVM supports them
+ * (Java 21 or later), sessions are run on virtual threads that share a
+ * small pool of carrier threads.  The scheduler's maximum pool size is
+ * left at its default so that it can still add carriers to compensate
+ * for log writers blocked in file I/O.  Virtual threads are created through
+ * reflection so that the server can still be built and run on older JVMs,
+ * where this factory falls back to creating platform threads.
+ *
+ * @author Eric Trautman
+ */
+public class SessionThreadFactory implements ThreadFactory {
+
+    private ThreadFactory virtualThreadFactory;
+
+    /**
+     * Constructs a factory.
+     *
+     * @param  useVirtualThreads      indicates whether virtual threads
+     *                                should be created (if supported).
+     * @param  maximumCarrierThreads  number of carrier threads that run
+     *                                virtual threads concurrently (the
+     *                                scheduler parallelism, only applied if
+     *                                the JVM has not created any virtual
+     *                                threads).
+     */
+    public SessionThreadFactory(boolean useVirtualThreads,
+                                int maximumCarrierThreads) {
+        if (useVirtualThreads) {
+            this.virtualThreadFactory = buildVirtualThreadFactory(maximumCarrierThreads);
+        } else {
+            this.virtualThreadFactory = null;
+        }
+    }
+
+    /**
+     * @return factory built from the venkman-virtual-threads and
+     *         venkman-virtual-thread-carriers system properties
+     *         (defaults to platform threads).
+     */
+    public static SessionThreadFactory getDefault() {
+        return new SessionThreadFactory(
+                Boolean.getBoolean("venkman-virtual-threads"),
+                Integer.getInteger("venkman-virtual-thread-carriers",
+                                   Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * @return true if this factory creates virtual threads.
+     */
+    public boolean isVirtual() {
+        return virtualThreadFactory != null;
+    }
+
+    @Override
+    public Thread newThread(Runnable runnable) {
+        final Thread thread;
+        if (virtualThreadFactory == null) {
+            thread = new Thread(runnable);
+        } else {
+            thread = virtualThreadFactory.newThread(runnable);
+        }
+        return thread;
+    }
+
+    @Override
+    public String toString() {
+        return "SessionThreadFactory{" +
+               "virtual=" + isVirtual() +
+               '}';
+    }
+
+    private static ThreadFactory buildVirtualThreadFactory(int maximumCarrierThreads) {
+
+        ThreadFactory factory = null;
+        try {
+            final Method ofVirtual = Thread.class.getMethod("ofVirtual");
+
+            // the scheduler reads this property when the first virtual
+            // thread is created (maxPoolSize is not set so that carriers
+            // can still be added while virtual threads block in file I/O)
+            final String carrierCount = String.valueOf(Math.max(1, maximumCarrierThreads));
+            setPropertyIfMissing("jdk.virtualThreadScheduler.parallelism", carrierCount);
+
+            final Object builder = ofVirtual.invoke(null);
+            final Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builderClass.getMethod("name", String.class, long.class).invoke(builder, "venkman-session-", 0L);
+            factory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+
+            LOG.info("buildVirtualThreadFactory: using virtual threads with " +
+                     "jdk.virtualThreadScheduler.parallelism=" +
+                     System.getProperty("jdk.virtualThreadScheduler.parallelism") +
+                     " (ignored by the scheduler if virtual threads were created " +
+                     "before this factory)");
+
+        } catch (NoSuchMethodException e) {
+            LOG.warn("buildVirtualThreadFactory: virtual threads are not supported by Java " +
+                     System.getProperty("java.version") + ", using platform threads");
+        } catch (Exception e) {
+            LOG.warn("buildVirtualThreadFactory: failed to create virtual thread factory, " +
+                     "using platform threads", e);
+        }
+
+        return factory;
+    }
+
+    private static void setPropertyIfMissing(String key,
+                                             String value) {
+        if (System.getProperty(key) == null) {
+            System.setProperty(key, value);
+        }
+    }
+
+    private static final Logger LOG = Logger.getLogger(SessionThreadFactory.class);
+}
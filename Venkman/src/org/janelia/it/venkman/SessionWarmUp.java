@@ -0,0 +1,194 @@
+/*
+ * Copyright (c) 2014 Howard Hughes Medical Institute.
+ * All rights reserved.
+ * Use is subject to Janelia Farm Research Campus Software Copyright 1.1
+ * license terms (http://license.janelia.org/license/jfrc_copyright_1_1.html).
+ */
+
+package org.janelia.it.venkman;
+
+import org.apache.log4j.Logger;
+import org.janelia.it.venkman.config.LarvaBehaviorParameters;
+import org.janelia.it.venkman.data.LarvaFrameData;
+import org.janelia.it.venkman.data.LarvaSkeleton;
+import org.janelia.it.venkman.data.TrackerPoint;
+import org.janelia.it.venkman.log.LogEntryXmlWriter;
+import org.janelia.it.venkman.rules.LarvaStimulusRules;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Drives the frame processing code path (derived data calculation,
+ * stimulus rules, and log entry serialization) with synthetic skeletons
+ * when a session is opened so that the code is loaded and compiled before
+ * the tracker starts sending real frames.  All processing is done with
+ * scratch copies of the session state and nothing is written to the
+ * session log.
+ *
+ * @author Eric Trautman
+ */
+public class SessionWarmUp {
+
+    /** Number of milliseconds between synthetic frames (~30 frames per second). */
+    public static final long FRAME_INTERVAL = 33;
+
+    private int numberOfFrames;
+
+    /**
+     * @param  numberOfFrames  number of synthetic frames to process
+     *                         (zero disables warm-up).
+     */
+    public SessionWarmUp(int numberOfFrames) {
+        this.numberOfFrames = numberOfFrames;
+    }
+
+    /**
+     * @return warm-up built from the venkman-warm-up-frames system
+     *         property (disabled by default).
+     */
+    public static SessionWarmUp getDefault() {
+        return new SessionWarmUp(Integer.getInteger("venkman-warm-up-frames", 0));
+    }
+
+    public boolean isEnabled() {
+        return numberOfFrames > 0;
+    }
+
+    public int getNumberOfFrames() {
+        return numberOfFrames;
+    }
+
+    /**
+     * Processes the synthetic frames.  Warm-up failures (e.g. rules that
+     * reject the synthetic positions) are logged and end the warm-up early
+     * since they should never prevent a session from being opened.
+     *
+     * @param  configuredBehaviorParameters  configured session parameters
+     *                                       (before any rule overrides).
+     * @param  scratchStimulusRules          uninitialized copy of the
+     *                                       session rules (or null).
+     * @param  logDirectory                  session log directory.
+     *
+     * @return number of milliseconds spent warming up.
+     */
+    public long run(LarvaBehaviorParameters configuredBehaviorParameters,
+                    LarvaStimulusRules scratchStimulusRules,
+                    File logDirectory) {
+
+        final long startTime = System.currentTimeMillis();
+
+        final ScratchLogger scratchLogger = new ScratchLogger(logDirectory);
+        int frameCount = 0;
+        try {
+            LarvaBehaviorParameters behaviorParameters = configuredBehaviorParameters;
+            if (scratchStimulusRules != null) {
+                scratchStimulusRules.init(scratchLogger);
+                behaviorParameters =
+                        scratchStimulusRules.overrideBehaviorParameters(configuredBehaviorParameters);
+            }
+
+            final RulesTrack track = new RulesTrack(null,
+                                                    behaviorParameters,
+                                                    scratchStimulusRules);
+            LarvaFrameData frameData;
+            for (; frameCount < numberOfFrames; frameCount++) {
+                frameData = track.processSkeleton(getSyntheticSkeleton(frameCount));
+                frameData.calculateDeferredData();
+                scratchLogger.log(frameData);
+            }
+        } catch (Throwable t) {
+            LOG.warn("run: stopping warm-up after " + frameCount + " frames", t);
+        }
+
+        final long elapsedTime = System.currentTimeMillis() - startTime;
+
+        LOG.info("run: processed " + frameCount + " warm-up frames in " +
+                 elapsedTime + "ms");
+
+        return elapsedTime;
+    }
+
+    @Override
+    public String toString() {
+        return "SessionWarmUp{" +
+               "numberOfFrames=" + numberOfFrames +
+               '}';
+    }
+
+    /**
+     * @param  frame  frame number.
+     *
+     * @return skeleton for a larva crawling around a circle with its head
+     *         periodically sweeping from side to side (so that rules see
+     *         runs, turns, and casts).
+     */
+    private static LarvaSkeleton getSyntheticSkeleton(int frame) {
+        final double bodyLength = 4.0;
+        final double radius = 20.0;
+        final double bearing = frame * 0.01;
+        final double headToBodyAngle = 45.0 * Math.sin(frame * 0.05);
+
+        final TrackerPoint tail = new TrackerPoint(100.0 + radius * Math.cos(bearing),
+                                                   100.0 + radius * Math.sin(bearing));
+        final double bodyBearing = bearing + (Math.PI / 2);
+        final TrackerPoint midpoint =
+                new TrackerPoint(tail.getX() + (bodyLength / 2) * Math.cos(bodyBearing),
+                                 tail.getY() + (bodyLength / 2) * Math.sin(bodyBearing));
+        final double headBearing = bodyBearing + Math.toRadians(headToBodyAngle);
+        final TrackerPoint head =
+                new TrackerPoint(midpoint.getX() + (bodyLength / 2) * Math.cos(headBearing),
+                                 midpoint.getY() + (bodyLength / 2) * Math.sin(headBearing));
+        final TrackerPoint centroid =
+                new TrackerPoint((head.getX() + midpoint.getX() + tail.getX()) / 3,
+                                 (head.getY() + midpoint.getY() + tail.getY()) / 3);
+
+        return new LarvaSkeleton(frame * FRAME_INTERVAL,
+                                 head,
+                                 midpoint,
+                                 tail,
+                                 bodyLength,
+                                 centroid,
+                                 headToBodyAngle,
+                                 Math.toDegrees(bodyBearing) % 360.0);
+    }
+
+    /**
+     * Logger for scratch rules that serializes entries (to exercise
+     * the log writer) but discards the result.
+     */
+    private static class ScratchLogger
+            extends org.janelia.it.venkman.log.Logger {
+
+        private LogEntryXmlWriter writer;
+        private OutputStream discardingStream;
+
+        public ScratchLogger(File logDirectory) {
+            super(logDirectory, "warm-up");
+            this.writer = new LogEntryXmlWriter();
+            this.discardingStream = new OutputStream() {
+                @Override
+                public void write(int b) {
+                }
+                @Override
+                public void write(byte[] b, int off, int len) {
+                }
+            };
+        }
+
+        @Override
+        public void log(Object logObject)
+                throws IllegalStateException {
+            if (writer.isSupported(logObject)) {
+                try {
+                    writer.write(logObject, discardingStream);
+                } catch (IOException e) {
+                    throw new IllegalStateException("failed to write " + logObject, e);
+                }
+            }
+        }
+    }
+
+    private static final Logger LOG = Logger.getLogger(SessionWarmUp.class);
+}
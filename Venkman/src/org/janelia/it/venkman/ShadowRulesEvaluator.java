@@ -0,0 +1,357 @@
+/*
+ * Copyright (c) 2014 Howard Hughes Medical Institute.
+ * All rights reserved.
+ * Use is subject to Janelia Farm Research Campus Software Copyright 1.1
+ * license terms (http://license.janelia.org/license/jfrc_copyright_1_1.html).
+ */
+
+package org.janelia.it.venkman;
+
+import org.apache.log4j.Logger;
+import org.janelia.it.venkman.config.LarvaBehaviorParameters;
+import org.janelia.it.venkman.config.rules.Stimulus;
+import org.janelia.it.venkman.data.LarvaFrameData;
+import org.janelia.it.venkman.log.ParameterSnapshot;
+import org.janelia.it.venkman.rules.LarvaStimulusRules;
+import org.janelia.it.venkman.rules.RuleData;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Evaluates "shadow" stimulus rules against the frames processed by a
+ * rules session so that candidate rules can be compared with the session's
+ * rules on live data.  Shadow stimulus results are only logged (as
+ * {@link RuleData} entries) and are never sent to the tracker.
+ *
+ * Shadow rules are evaluated on a separate worker thread so that they
+ * never add latency to the session's responses.  The session hands off
+ * immutable frame snapshots through a bounded queue and snapshots are
+ * dropped (and counted) whenever the worker falls behind.
+ *
+ * Shadow rules see the frame data derived with the session's behavior
+ * parameters, so each shadow history matches the session's history
+ * (less any dropped frames).
+ *
+ * @author Eric Trautman
+ */
+public class ShadowRulesEvaluator {
+
+    /** Prefix for the names of all shadow rule data log entries. */
+    public static final String DATA_NAME_PREFIX = "shadow ";
+
+    public static final int DEFAULT_QUEUE_CAPACITY = 256;
+
+    private String sessionId;
+    private org.janelia.it.venkman.log.Logger sessionLogger;
+    private int queueCapacity;
+    private List<ShadowRules> shadowRulesList;
+
+    private BlockingQueue<ShadowFrame> queue;
+    private Thread workerThread;
+    private volatile boolean stopRequested;
+
+    private AtomicLong evaluatedFrameCount;
+    private AtomicLong droppedFrameCount;
+    private AtomicLong failureCount;
+
+    /**
+     * @param  sessionId      identifies the session being shadowed.
+     * @param  sessionLogger  logger for the session.
+     * @param  queueCapacity  maximum number of frames waiting to be
+     *                        evaluated before frames are dropped.
+     */
+    public ShadowRulesEvaluator(String sessionId,
+                                org.janelia.it.venkman.log.Logger sessionLogger,
+                                int queueCapacity) {
+        this.sessionId = sessionId;
+        this.sessionLogger = sessionLogger;
+        this.queueCapacity = queueCapacity;
+        this.shadowRulesList = new ArrayList<ShadowRules>();
+        this.queue = null;
+        this.workerThread = null;
+        this.stopRequested = false;
+        this.evaluatedFrameCount = new AtomicLong();
+        this.droppedFrameCount = new AtomicLong();
+        this.failureCount = new AtomicLong();
+    }
+
+    /**
+     * @return the queue capacity from the venkman-shadow-queue-capacity
+     *         system property (or the default capacity).
+     */
+    public static int getDefaultQueueCapacity() {
+        return Integer.getInteger("venkman-shadow-queue-capacity",
+                                  DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * Adds shadow rules to be evaluated once the evaluator is started.
+     *
+     * @param  name   name for the rules (included in log entries).
+     * @param  rules  uninitialized rules instance dedicated to this
+     *                evaluator.
+     *
+     * @throws IllegalStateException
+     *   if the evaluator has already been started.
+     */
+    public void addRules(String name,
+                         LarvaStimulusRules rules)
+            throws IllegalStateException {
+        if (workerThread != null) {
+            throw new IllegalStateException(
+                    "shadow rules cannot be added after evaluation has started");
+        }
+        shadowRulesList.add(new ShadowRules(name, rules));
+    }
+
+    public List<String> getRulesNames() {
+        final List<String> names = new ArrayList<String>(shadowRulesList.size());
+        for (ShadowRules shadowRules : shadowRulesList) {
+            names.add(shadowRules.name);
+        }
+        return names;
+    }
+
+    public boolean hasRules() {
+        return shadowRulesList.size() > 0;
+    }
+
+    /**
+     * @return true if the worker thread has been started
+     *         (and frames should be submitted).
+     */
+    public boolean isStarted() {
+        return workerThread != null;
+    }
+
+    public long getEvaluatedFrameCount() {
+        return evaluatedFrameCount.get();
+    }
+
+    public long getDroppedFrameCount() {
+        return droppedFrameCount.get();
+    }
+
+    public long getFailureCount() {
+        return failureCount.get();
+    }
+
+    /**
+     * Initializes all shadow rules and starts the worker thread.
+     * Evaluators without any rules are not started.
+     *
+     * @param  configuredBehaviorParameters  configured session parameters
+     *                                       (before any rule overrides).
+     * @param  logDirectory                  session log directory.
+     */
+    public void start(LarvaBehaviorParameters configuredBehaviorParameters,
+                      File logDirectory) {
+
+        if ((workerThread != null) || (! hasRules())) {
+            return;
+        }
+
+        for (ShadowRules shadowRules : shadowRulesList) {
+            shadowRules.init(configuredBehaviorParameters, logDirectory);
+        }
+
+        queue = new ArrayBlockingQueue<ShadowFrame>(queueCapacity);
+        workerThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                evaluateQueuedFrames();
+            }
+        }, "shadow-rules-" + sessionId);
+        workerThread.setDaemon(true);
+        workerThread.start();
+    }
+
+    /**
+     * Queues a snapshot of the specified frame for evaluation.
+     * This never blocks - the frame is dropped if the queue is full.
+     *
+     * @param  frameData  frame processed by the session.
+     * @param  version    version of the request message.
+     *
+     * @return true if the frame was queued; otherwise false.
+     */
+    public boolean submit(LarvaFrameData frameData,
+                          String version) {
+        boolean isQueued = false;
+        if ((workerThread != null) && (! stopRequested)) {
+            isQueued = queue.offer(new ShadowFrame(frameData.getSnapshot(), version));
+            if (! isQueued) {
+                droppedFrameCount.incrementAndGet();
+            }
+        }
+        return isQueued;
+    }
+
+    /**
+     * Stops the worker thread once all queued frames have been evaluated.
+     *
+     * @param  maxWaitMilliseconds  maximum time to wait for queued frames
+     *                              to be evaluated before the worker
+     *                              is interrupted.
+     */
+    public void stop(long maxWaitMilliseconds) {
+        if (workerThread != null) {
+            stopRequested = true;
+            try {
+                workerThread.join(maxWaitMilliseconds);
+            } catch (InterruptedException e) {
+                LOG.warn("stop: interrupted while waiting for " + workerThread.getName());
+            }
+            if (workerThread.isAlive()) {
+                workerThread.interrupt();
+            }
+            droppedFrameCount.addAndGet(queue.size());
+            queue.clear();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ShadowRulesEvaluator{" +
+               "sessionId='" + sessionId + '\'' +
+               ", rulesNames=" + getRulesNames() +
+               ", queueCapacity=" + queueCapacity +
+               ", evaluatedFrameCount=" + evaluatedFrameCount +
+               ", droppedFrameCount=" + droppedFrameCount +
+               ", failureCount=" + failureCount +
+               '}';
+    }
+
+    private void evaluateQueuedFrames() {
+        ShadowFrame shadowFrame;
+        try {
+            while (! (stopRequested && queue.isEmpty())) {
+                shadowFrame = queue.poll(POLL_MILLISECONDS, TimeUnit.MILLISECONDS);
+                if (shadowFrame != null) {
+                    evaluate(shadowFrame);
+                }
+            }
+        } catch (InterruptedException e) {
+            LOG.warn("evaluateQueuedFrames: interrupted with " + queue.size() +
+                     " frames remaining for session " + sessionId);
+        }
+    }
+
+    private void evaluate(ShadowFrame shadowFrame) {
+
+        final LarvaFrameData snapshot = shadowFrame.frameData;
+        snapshot.calculateDeferredData();
+
+        // give each shadow its own copy since rules may change frame data
+        for (ShadowRules shadowRules : shadowRulesList) {
+            try {
+                shadowRules.evaluate(snapshot.getSnapshot(), shadowFrame.version);
+            } catch (Throwable t) {
+                if (failureCount.incrementAndGet() == 1) {
+                    LOG.warn("evaluate: shadow rules '" + shadowRules.name +
+                             "' failed for session " + sessionId +
+                             " (subsequent failures will only be counted)", t);
+                }
+            }
+        }
+
+        evaluatedFrameCount.incrementAndGet();
+    }
+
+    private static final long POLL_MILLISECONDS = 100;
+
+    /** Frame snapshot and the version of the request that included it. */
+    private static class ShadowFrame {
+        private final LarvaFrameData frameData;
+        private final String version;
+
+        public ShadowFrame(LarvaFrameData frameData,
+                           String version) {
+            this.frameData = frameData;
+            this.version = version;
+        }
+    }
+
+    /** State for one set of shadow rules (only accessed by the worker). */
+    private class ShadowRules {
+        private final String name;
+        private final LarvaStimulusRules rules;
+        private final LinkedList<LarvaFrameData> frameHistory;
+        private LarvaBehaviorParameters behaviorParameters;
+
+        public ShadowRules(String name,
+                           LarvaStimulusRules rules) {
+            this.name = name;
+            this.rules = rules;
+            this.frameHistory = new LinkedList<LarvaFrameData>();
+            this.behaviorParameters = null;
+        }
+
+        public void init(LarvaBehaviorParameters configuredBehaviorParameters,
+                         File logDirectory) {
+            rules.init(new ShadowLogger(logDirectory, name));
+            behaviorParameters = rules.overrideBehaviorParameters(configuredBehaviorParameters);
+        }
+
+        public void evaluate(LarvaFrameData frameData,
+                             String version) {
+
+            frameHistory.addFirst(frameData);
+
+            final List<? extends Stimulus> stimulusList =
+                    rules.determineStimulus(frameHistory, behaviorParameters);
+            frameData.setStimulusList(stimulusList);
+
+            // log the response that would have been sent to the tracker
+            sessionLogger.log(new RuleData(frameData.getTime(),
+                                           DATA_NAME_PREFIX + name,
+                                           RulesSession.getSkeletonResponse(frameData,
+                                                                            version).toString()));
+        }
+    }
+
+    /**
+     * Forwards entries logged by shadow rules to the session logger,
+     * prefixing names and messages with the shadow rules name.
+     * Parameter snapshots are dropped so that shadow rules are never
+     * mistaken for the session's rules when the log is read.
+     */
+    private class ShadowLogger
+            extends org.janelia.it.venkman.log.Logger {
+
+        private String prefix;
+
+        public ShadowLogger(File logDirectory,
+                            String name) {
+            super(logDirectory, "shadow");
+            this.prefix = DATA_NAME_PREFIX + name + " ";
+        }
+
+        @Override
+        public void log(Object logObject)
+                throws IllegalStateException {
+            if (logObject instanceof RuleData) {
+                final RuleData ruleData = (RuleData) logObject;
+                sessionLogger.log(new RuleData(ruleData.getCaptureTime(),
+                                               prefix + ruleData.getName(),
+                                               ruleData.getValue()));
+            } else if (! (logObject instanceof ParameterSnapshot)) {
+                sessionLogger.log(logObject);
+            }
+        }
+
+        @Override
+        public void logMessage(String message) {
+            sessionLogger.logMessage(prefix + message);
+        }
+    }
+
+    private static final Logger LOG = Logger.getLogger(ShadowRulesEvaluator.class);
+}
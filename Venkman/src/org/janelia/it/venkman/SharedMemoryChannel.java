@@ -0,0 +1,764 @@
+/*
+ * Copyright (c) 2014 Howard Hughes Medical Institute.
+ * All rights reserved.
+ * Use is subject to Janelia Farm Research Campus Software Copyright 1.1
+ * license terms (http://license.janelia.org/license/jfrc_copyright_1_1.html).
+ */
+
+package org.janelia.it.venkman;
+
+import org.apache.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Local (same machine) transport for tracker messages built on a
+ * memory-mapped file that contains two single-producer, single-consumer
+ * byte rings: one for requests sent by the tracker and one for responses
+ * sent by the rules server.  Each side of the channel is exposed as a pair
+ * of streams so that a {@link RulesSession} can process messages exactly as
+ * it does for socket connections.
+ *
+ * The channel file is created and mapped once by the rules server and then
+ * reused for each tracker connection (session).  Mapped buffers are only
+ * unmapped when they are garbage collected, so the file is never deleted
+ * or recreated while the server is running.  Instead, each new session
+ * resets the ring positions and increments a generation counter in the
+ * header.
+ *
+ * Only one client may attach to each session (generation).  Both sides
+ * periodically increment a heartbeat counter in the header while the
+ * channel is open.  A side waiting on a ring fails with an IOException
+ * when the other side's heartbeat stops (e.g. because the tracker process
+ * crashed without closing its streams) and a client also fails when the
+ * server has started a new session.
+ *
+ * <pre>
+ * File layout (all values use the platform's native byte order):
+ *
+ *   header (64 bytes)
+ *      0  int   magic number (written last when the channel is ready)
+ *      4  int   layout version
+ *      8  int   ring capacity (power of 2)
+ *     12  int   generation (incremented for each session)
+ *     16  long  server heartbeat
+ *     24  long  client heartbeat
+ *     32  int   generation attached by a client
+ *
+ *   request ring followed by response ring, each with layout:
+ *      0  long  write position (total number of bytes published)
+ *     64  long  read position (total number of bytes consumed)
+ *    128  int   writer closed flag
+ *    132  int   reader closed flag
+ *    192        ring data (capacity bytes)
+ * </pre>
+ *
+ * Positions only increase, so the unread bytes of a ring are at
+ * indexes (readPosition mod capacity) up to (writePosition mod capacity).
+ * Writers publish their position when a stream is flushed (or the ring is
+ * full) and readers publish their position after each read.
+ * Positions are published and read around volatile accesses, which
+ * act as memory barriers for the mapped data.
+ *
+ * @author Eric Trautman
+ */
+public class SharedMemoryChannel {
+
+    /** Controls how a side waits for the other side of a ring. */
+    public enum WaitMode {
+        /**
+         * Busy-spin, yielding the processor between checks after a
+         * brief spin (lowest latency, occupies a core while waiting).
+         */
+        SPIN,
+        /** Spin briefly and then park the thread between checks. */
+        PARK
+    }
+
+    /** Default number of data bytes in each ring. */
+    public static final int DEFAULT_RING_CAPACITY = 64 * 1024;
+
+    /**
+     * Default number of milliseconds without a heartbeat from the other
+     * side before a waiting side gives up.
+     */
+    public static final long DEFAULT_PEER_TIMEOUT = 5000;
+
+    private static final int MAGIC = 0x564b4d52; // VKMR
+    private static final int VERSION = 3;
+    private static final int HEADER_SIZE = 64;
+    private static final int MAGIC_OFFSET = 0;
+    private static final int VERSION_OFFSET = 4;
+    private static final int CAPACITY_OFFSET = 8;
+    private static final int GENERATION_OFFSET = 12;
+    private static final int SERVER_HEARTBEAT_OFFSET = 16;
+    private static final int CLIENT_HEARTBEAT_OFFSET = 24;
+    private static final int CLIENT_GENERATION_OFFSET = 32;
+    private static final int WRITE_POSITION_OFFSET = 0;
+    private static final int READ_POSITION_OFFSET = 64;
+    private static final int WRITER_CLOSED_OFFSET = 128;
+    private static final int READER_CLOSED_OFFSET = 132;
+    private static final int RING_CONTROL_SIZE = 192;
+
+    private static final int SPIN_TRIES = 1000;
+    private static final long PARK_NANOSECONDS = 50000;
+    private static final long HEARTBEAT_MILLISECONDS = 100;
+
+    /** Target of volatile accesses used as memory barriers. */
+    private static volatile int barrier;
+
+    private File file;
+    private RandomAccessFile randomAccessFile;
+    private MappedByteBuffer buffer;
+    private WaitMode waitMode;
+    private boolean isServer;
+    private int attachedGeneration;
+    private long peerTimeoutNanoseconds;
+    private Thread heartbeatThread;
+    private Ring requestRing;
+    private Ring responseRing;
+
+    private SharedMemoryChannel(File file,
+                                RandomAccessFile randomAccessFile,
+                                int ringCapacity,
+                                WaitMode waitMode,
+                                boolean isServer)
+            throws IOException {
+        this.file = file;
+        this.randomAccessFile = randomAccessFile;
+        this.buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE,
+                                                        0,
+                                                        getFileSize(ringCapacity));
+        this.buffer.order(ByteOrder.nativeOrder());
+        this.waitMode = waitMode;
+        this.isServer = isServer;
+        this.attachedGeneration = 0;
+        this.heartbeatThread = null;
+        this.requestRing = new Ring(HEADER_SIZE, ringCapacity);
+        this.responseRing = new Ring(HEADER_SIZE + RING_CONTROL_SIZE + ringCapacity, ringCapacity);
+        setPeerTimeout(DEFAULT_PEER_TIMEOUT);
+    }
+
+    /**
+     * Creates (or reuses) the channel file, maps it, and initializes it for
+     * the first connection.  This is called once by the rules server,
+     * which then calls {@link #startSession} before each later connection.
+     *
+     * @param  file          channel file.
+     * @param  ringCapacity  number of data bytes in each ring (power of 2).
+     * @param  waitMode      controls how the server waits for the tracker.
+     *
+     * @return the initialized channel.
+     *
+     * @throws IllegalArgumentException
+     *   if the capacity is not a power of 2.
+     *
+     * @throws IOException
+     *   if the file cannot be created or mapped.
+     */
+    public static SharedMemoryChannel create(File file,
+                                             int ringCapacity,
+                                             WaitMode waitMode)
+            throws IllegalArgumentException, IOException {
+
+        if ((ringCapacity < 1) || (Integer.bitCount(ringCapacity) != 1)) {
+            throw new IllegalArgumentException("ring capacity " + ringCapacity +
+                                               " must be a power of 2");
+        }
+
+        final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        final long size = getFileSize(ringCapacity);
+        if (randomAccessFile.length() != size) {
+            randomAccessFile.setLength(size);
+        }
+
+        final SharedMemoryChannel channel =
+                new SharedMemoryChannel(file,
+                                        randomAccessFile,
+                                        ringCapacity,
+                                        waitMode,
+                                        true);
+        final ByteBuffer buffer = channel.buffer;
+        // hide any channel left by a prior server until it is initialized
+        buffer.putInt(MAGIC_OFFSET, 0);
+        storeBarrier();
+        buffer.putInt(VERSION_OFFSET, VERSION);
+        buffer.putInt(CAPACITY_OFFSET, ringCapacity);
+        buffer.putInt(GENERATION_OFFSET, 0);
+        buffer.putInt(CLIENT_GENERATION_OFFSET, 0);
+        channel.startHeartbeat(SERVER_HEARTBEAT_OFFSET);
+        channel.startSession();
+        return channel;
+    }
+
+    /**
+     * Opens an existing channel file and attaches to its current session.
+     * This is called by the tracker (or a test client) after the rules
+     * server has created the channel.
+     *
+     * @param  file                 channel file.
+     * @param  waitMode             controls how the client waits for the server.
+     * @param  timeoutMilliseconds  maximum time to wait for the server
+     *                              to create the channel.
+     *
+     * @return the opened channel.
+     *
+     * @throws IOException
+     *   if the channel is not created within the timeout, is invalid,
+     *   or another client has already attached to the current session.
+     */
+    public static SharedMemoryChannel open(File file,
+                                           WaitMode waitMode,
+                                           long timeoutMilliseconds)
+            throws IOException {
+
+        final long stopTime = System.currentTimeMillis() + timeoutMilliseconds;
+        SharedMemoryChannel channel = null;
+        while (channel == null) {
+            if (file.length() >= HEADER_SIZE) {
+                final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+                final MappedByteBuffer header =
+                        randomAccessFile.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+                header.order(ByteOrder.nativeOrder());
+                if (header.getInt(MAGIC_OFFSET) == MAGIC) {
+                    if (header.getInt(VERSION_OFFSET) != VERSION) {
+                        randomAccessFile.close();
+                        throw new IOException("channel file " + file.getAbsolutePath() +
+                                              " has unsupported version " +
+                                              header.getInt(VERSION_OFFSET));
+                    }
+                    loadBarrier();
+                    channel = new SharedMemoryChannel(file,
+                                                      randomAccessFile,
+                                                      header.getInt(CAPACITY_OFFSET),
+                                                      waitMode,
+                                                      false);
+                    channel.attach();
+                } else {
+                    randomAccessFile.close();
+                }
+            }
+            if (channel == null) {
+                if (System.currentTimeMillis() > stopTime) {
+                    throw new IOException("timed out waiting for channel file " +
+                                          file.getAbsolutePath());
+                }
+                LockSupport.parkNanos(1000000);
+            }
+        }
+        return channel;
+    }
+
+    /**
+     * Attaches this client to the channel's current session.
+     *
+     * @throws IOException
+     *   if another client has already attached to the session.
+     */
+    private void attach()
+            throws IOException {
+
+        // lock a region beyond the mapped data so that concurrent
+        // attach attempts from different processes are serialized
+        final FileLock lock;
+        try {
+            lock = randomAccessFile.getChannel().lock(buffer.capacity(), 1, false);
+        } catch (OverlappingFileLockException e) {
+            close();
+            throw new IOException("another client is attaching to " + this, e);
+        }
+
+        final int generation = getGeneration();
+        final boolean isAttached;
+        try {
+            isAttached = (buffer.getInt(CLIENT_GENERATION_OFFSET) != generation);
+            if (isAttached) {
+                attachedGeneration = generation;
+                storeBarrier();
+                buffer.putInt(CLIENT_GENERATION_OFFSET, generation);
+            }
+        } finally {
+            lock.release();
+        }
+
+        if (! isAttached) {
+            close();
+            throw new IOException("another client is already attached to " + this);
+        }
+
+        startHeartbeat(CLIENT_HEARTBEAT_OFFSET);
+    }
+
+    /**
+     * Prepares the (already mapped) channel for a new connection by
+     * resetting both rings and incrementing the generation.  Streams
+     * retrieved before this call must not be used afterwards.
+     * This is called by the rules server after the prior session's
+     * streams have been closed.
+     */
+    public synchronized void startSession() {
+        buffer.putInt(MAGIC_OFFSET, 0);
+        storeBarrier();
+        requestRing.reset();
+        responseRing.reset();
+        buffer.putInt(GENERATION_OFFSET, buffer.getInt(GENERATION_OFFSET) + 1);
+        storeBarrier();
+        buffer.putInt(MAGIC_OFFSET, MAGIC);
+    }
+
+    /**
+     * Ends the current session from the server side.  Pending reads of
+     * requests return the end of the stream (once all published requests
+     * have been read) and writes of responses fail, so that the session
+     * processing the requests stops even if the tracker is unresponsive.
+     */
+    public void endSession() {
+        requestRing.markClosed(WRITER_CLOSED_OFFSET);
+        responseRing.markClosed(READER_CLOSED_OFFSET);
+    }
+
+    /**
+     * @param  peerTimeoutMilliseconds  number of milliseconds without a
+     *                                  heartbeat from the other side before
+     *                                  a waiting side gives up.
+     */
+    public void setPeerTimeout(long peerTimeoutMilliseconds) {
+        this.peerTimeoutNanoseconds = peerTimeoutMilliseconds * 1000000;
+    }
+
+    /**
+     * @return the session generation of this channel
+     *         (1 for the first session).
+     */
+    public int getGeneration() {
+        final int generation = buffer.getInt(GENERATION_OFFSET);
+        loadBarrier();
+        return generation;
+    }
+
+    /** @return stream of requests received from the tracker. */
+    public InputStream getServerInputStream() {
+        return requestRing.getInputStream();
+    }
+
+    /** @return stream for responses sent to the tracker. */
+    public OutputStream getServerOutputStream() {
+        return responseRing.getOutputStream();
+    }
+
+    /** @return stream of responses received from the server. */
+    public InputStream getClientInputStream() {
+        return responseRing.getInputStream();
+    }
+
+    /** @return stream for requests sent to the server. */
+    public OutputStream getClientOutputStream() {
+        return requestRing.getOutputStream();
+    }
+
+    /**
+     * Stops this side's heartbeat and closes the channel file.
+     * The streams for each side should be closed first so that the
+     * other side sees the end of its streams.
+     */
+    public void close() {
+        if (heartbeatThread != null) {
+            heartbeatThread.interrupt();
+        }
+        try {
+            randomAccessFile.close();
+        } catch (IOException e) {
+            LOG.warn("failed to close channel file " + file.getAbsolutePath(), e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "SharedMemoryChannel{" +
+               "file=" + file.getAbsolutePath() +
+               ", waitMode=" + waitMode +
+               ", generation=" + getGeneration() +
+               '}';
+    }
+
+    private static long getFileSize(int ringCapacity) {
+        return HEADER_SIZE + (2L * (RING_CONTROL_SIZE + ringCapacity));
+    }
+
+    private static void storeBarrier() {
+        barrier = 0;
+    }
+
+    private static void loadBarrier() {
+        @SuppressWarnings("UnusedDeclaration")
+        final int value = barrier;
+    }
+
+    /**
+     * @return false if this is a client channel and the server has
+     *         started a new session since the client attached;
+     *         otherwise true.
+     */
+    private boolean isCurrentSession() {
+        return isServer || (getGeneration() == attachedGeneration);
+    }
+
+    /**
+     * @throws IOException
+     *   if this is a client channel and the server has started
+     *   a new session since the client attached.
+     */
+    private void checkSession() throws IOException {
+        if (! isCurrentSession()) {
+            throw new IOException("server started a new session for " + this);
+        }
+    }
+
+    /**
+     * Starts a daemon thread that periodically increments the
+     * specified heartbeat counter until this channel is closed.
+     *
+     * @param  heartbeatOffset  header offset of the counter.
+     */
+    private void startHeartbeat(final int heartbeatOffset) {
+        heartbeatThread = new Thread("shared-memory-heartbeat-" + file.getName()) {
+            @Override
+            public void run() {
+                long heartbeat = buffer.getLong(heartbeatOffset);
+                while (! isInterrupted()) {
+                    heartbeat++;
+                    buffer.putLong(heartbeatOffset, heartbeat);
+                    try {
+                        Thread.sleep(HEARTBEAT_MILLISECONDS);
+                    } catch (InterruptedException e) {
+                        break;
+                    }
+                }
+            }
+        };
+        heartbeatThread.setDaemon(true);
+        heartbeatThread.start();
+    }
+
+    /**
+     * Waits for the other side of a ring to make progress.
+     *
+     * @param  tries      number of times the caller has already waited.
+     * @param  peerWatch  watch for the other side's heartbeat.
+     *
+     * @throws InterruptedIOException
+     *   if the waiting thread is interrupted.
+     *
+     * @throws IOException
+     *   if the other side has stopped or (for clients) the server
+     *   has started a new session.
+     */
+    private void waitForProgress(int tries,
+                                 PeerWatch peerWatch) throws IOException {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new InterruptedIOException("interrupted while waiting for " + this);
+        }
+        if (tries > SPIN_TRIES) {
+            peerWatch.check();
+            if (waitMode == WaitMode.PARK) {
+                LockSupport.parkNanos(PARK_NANOSECONDS);
+            } else {
+                Thread.yield();
+            }
+        }
+    }
+
+    /**
+     * Tracks the other side's heartbeat for a waiting stream.
+     */
+    private class PeerWatch {
+
+        private long heartbeat;
+        private long heartbeatTime;
+
+        public PeerWatch() {
+            this.heartbeat = getPeerHeartbeat();
+            this.heartbeatTime = System.nanoTime();
+        }
+
+        public void check() throws IOException {
+            final long now = System.nanoTime();
+            checkSession();
+            if (isServer && (buffer.getInt(CLIENT_GENERATION_OFFSET) != getGeneration())) {
+                // no client has attached yet, so there is nothing to watch
+                heartbeatTime = now;
+                return;
+            }
+
+            final long currentHeartbeat = getPeerHeartbeat();
+            if (currentHeartbeat != heartbeat) {
+                heartbeat = currentHeartbeat;
+                heartbeatTime = now;
+            } else if ((now - heartbeatTime) > peerTimeoutNanoseconds) {
+                throw new IOException("no heartbeat from " + (isServer ? "client" : "server") +
+                                      " for " + ((now - heartbeatTime) / 1000000) +
+                                      " ms, giving up on " + SharedMemoryChannel.this);
+            }
+        }
+
+        private long getPeerHeartbeat() {
+            final long value =
+                    buffer.getLong(isServer ? CLIENT_HEARTBEAT_OFFSET : SERVER_HEARTBEAT_OFFSET);
+            loadBarrier();
+            return value;
+        }
+    }
+
+    /**
+     * A single-producer, single-consumer ring within the mapped file.
+     */
+    private class Ring {
+
+        private int controlOffset;
+        private int dataOffset;
+        private int capacity;
+        private int mask;
+        private RingInputStream inputStream;
+        private RingOutputStream outputStream;
+
+        public Ring(int controlOffset,
+                    int capacity) {
+            this.controlOffset = controlOffset;
+            this.dataOffset = controlOffset + RING_CONTROL_SIZE;
+            this.capacity = capacity;
+            this.mask = capacity - 1;
+        }
+
+        public synchronized void reset() {
+            buffer.putLong(controlOffset + WRITE_POSITION_OFFSET, 0);
+            buffer.putLong(controlOffset + READ_POSITION_OFFSET, 0);
+            buffer.putInt(controlOffset + WRITER_CLOSED_OFFSET, 0);
+            buffer.putInt(controlOffset + READER_CLOSED_OFFSET, 0);
+            // streams track their own positions, so new ones are needed
+            inputStream = null;
+            outputStream = null;
+        }
+
+        public synchronized InputStream getInputStream() {
+            if (inputStream == null) {
+                inputStream = new RingInputStream();
+            }
+            return inputStream;
+        }
+
+        public synchronized OutputStream getOutputStream() {
+            if (outputStream == null) {
+                outputStream = new RingOutputStream();
+            }
+            return outputStream;
+        }
+
+        private long getPosition(int offset) {
+            final long position = buffer.getLong(controlOffset + offset);
+            loadBarrier();
+            return position;
+        }
+
+        private void publishPosition(int offset,
+                                     long position) {
+            storeBarrier();
+            buffer.putLong(controlOffset + offset, position);
+        }
+
+        private boolean isClosed(int offset) {
+            final boolean isClosed = (buffer.getInt(controlOffset + offset) != 0);
+            loadBarrier();
+            return isClosed;
+        }
+
+        private void markClosed(int offset) {
+            storeBarrier();
+            buffer.putInt(controlOffset + offset, 1);
+        }
+
+        private class RingInputStream extends InputStream {
+
+            private ByteBuffer data;
+            private long readPosition;
+            private boolean isClosed;
+            private PeerWatch peerWatch;
+
+            public RingInputStream() {
+                this.data = buffer.duplicate();
+                this.readPosition = getPosition(READ_POSITION_OFFSET);
+                this.isClosed = false;
+                this.peerWatch = new PeerWatch();
+            }
+
+            @Override
+            public int read() throws IOException {
+                final byte[] b = new byte[1];
+                int value = -1;
+                if (read(b, 0, 1) == 1) {
+                    value = b[0] & 0xff;
+                }
+                return value;
+            }
+
+            @Override
+            public int read(byte[] b,
+                            int off,
+                            int len) throws IOException {
+
+                if (isClosed) {
+                    throw new IOException("stream closed for " + SharedMemoryChannel.this);
+                }
+                checkSession();
+
+                int count = 0;
+                if (len > 0) {
+                    long available = getPosition(WRITE_POSITION_OFFSET) - readPosition;
+                    int tries = 0;
+                    while ((available == 0) && (! isClosed) && (! isClosed(WRITER_CLOSED_OFFSET))) {
+                        waitForProgress(tries++, peerWatch);
+                        available = getPosition(WRITE_POSITION_OFFSET) - readPosition;
+                    }
+                    if (available == 0) {
+                        // writer closed, re-check for data published before close
+                        available = getPosition(WRITE_POSITION_OFFSET) - readPosition;
+                    }
+
+                    if (available == 0) {
+                        count = -1;
+                    } else {
+                        count = (int) Math.min(len, available);
+                        final int index = (int) (readPosition & mask);
+                        final int firstCount = Math.min(count, capacity - index);
+                        data.position(dataOffset + index);
+                        data.get(b, off, firstCount);
+                        if (firstCount < count) {
+                            data.position(dataOffset);
+                            data.get(b, off + firstCount, count - firstCount);
+                        }
+                        readPosition += count;
+                        publishPosition(READ_POSITION_OFFSET, readPosition);
+                    }
+                }
+                return count;
+            }
+
+            @Override
+            public int available() throws IOException {
+                return (int) Math.min(Integer.MAX_VALUE,
+                                      getPosition(WRITE_POSITION_OFFSET) - readPosition);
+            }
+
+            @Override
+            public void close() throws IOException {
+                if (! isClosed) {
+                    isClosed = true;
+                    // never close the rings of a session started after a client left
+                    if (isCurrentSession()) {
+                        markClosed(READER_CLOSED_OFFSET);
+                    }
+                }
+            }
+        }
+
+        private class RingOutputStream extends OutputStream {
+
+            private ByteBuffer data;
+            private long writePosition;
+            private long publishedWritePosition;
+            private boolean isClosed;
+            private PeerWatch peerWatch;
+
+            public RingOutputStream() {
+                this.data = buffer.duplicate();
+                this.writePosition = getPosition(WRITE_POSITION_OFFSET);
+                this.publishedWritePosition = writePosition;
+                this.isClosed = false;
+                this.peerWatch = new PeerWatch();
+            }
+
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[] { (byte) b }, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b,
+                              int off,
+                              int len) throws IOException {
+
+                if (isClosed) {
+                    throw new IOException("stream closed for " + SharedMemoryChannel.this);
+                }
+
+                int remaining = len;
+                int offset = off;
+                long free;
+                int count;
+                int index;
+                int firstCount;
+                int tries;
+                while (remaining > 0) {
+                    free = capacity - (writePosition - getPosition(READ_POSITION_OFFSET));
+                    tries = 0;
+                    while (free == 0) {
+                        // ring is full, publish everything and wait for reader
+                        flush();
+                        if (isClosed(READER_CLOSED_OFFSET)) {
+                            throw new IOException("reader closed for " + SharedMemoryChannel.this);
+                        }
+                        waitForProgress(tries++, peerWatch);
+                        free = capacity - (writePosition - getPosition(READ_POSITION_OFFSET));
+                    }
+
+                    count = (int) Math.min(remaining, free);
+                    index = (int) (writePosition & mask);
+                    firstCount = Math.min(count, capacity - index);
+                    data.position(dataOffset + index);
+                    data.put(b, offset, firstCount);
+                    if (firstCount < count) {
+                        data.position(dataOffset);
+                        data.put(b, offset + firstCount, count - firstCount);
+                    }
+                    writePosition += count;
+                    offset += count;
+                    remaining -= count;
+                }
+            }
+
+            @Override
+            public void flush() throws IOException {
+                if (writePosition != publishedWritePosition) {
+                    checkSession();
+                    publishPosition(WRITE_POSITION_OFFSET, writePosition);
+                    publishedWritePosition = writePosition;
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                if (! isClosed) {
+                    isClosed = true;
+                    // never close the rings of a session started after a client left
+                    if (isCurrentSession()) {
+                        flush();
+                        markClosed(WRITER_CLOSED_OFFSET);
+                    }
+                }
+            }
+        }
+    }
+
+    private static final Logger LOG = Logger.getLogger(SharedMemoryChannel.class);
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2014 Howard Hughes Medical Institute.
+ * All rights reserved.
+ * Use is subject to Janelia Farm Research Campus Software Copyright 1.1
+ * license terms (http://license.janelia.org/license/jfrc_copyright_1_1.html).
+ */
+
+package org.janelia.it.venkman;
+
+import org.apache.log4j.Logger;
+import org.janelia.it.venkman.config.ConfigurationManager;
+
+import java.io.File;
+
+/**
+ * Server for a tracker running on the same machine that exchanges
+ * messages through a {@link SharedMemoryChannel} instead of a socket.
+ * Sessions are processed one at a time through a single channel file
+ * that is mapped once and reset for each new session.  Sessions whose
+ * tracker stops without closing the channel streams end when the
+ * tracker's heartbeat times out (see {@link SharedMemoryChannel}).
+ *
+ * @author Eric Trautman
+ */
+public class SharedMemoryRulesServer implements Runnable {
+
+    private File channelFile;
+    private int ringCapacity;
+    private SharedMemoryChannel.WaitMode waitMode;
+    private ConfigurationManager configurationManager;
+    private volatile boolean continueProcessing;
+    private int sessionCount;
+    private volatile SharedMemoryChannel channel;
+    private RulesSession session;
+
+    public SharedMemoryRulesServer(File channelFile,
+                                   File workDirectory,
+                                   SharedMemoryChannel.WaitMode waitMode) {
+        this.channelFile = channelFile;
+        this.ringCapacity = SharedMemoryChannel.DEFAULT_RING_CAPACITY;
+        this.waitMode = waitMode;
+        this.configurationManager = new ConfigurationManager(workDirectory);
+        this.continueProcessing = true;
+        this.sessionCount = 0;
+        this.channel = null;
+        this.session = null;
+    }
+
+    public void run() {
+
+        LOG.info("run: entry, accepting requests through " + channelFile.getAbsolutePath() +
+                 " with wait mode " + waitMode);
+
+        try {
+            channel = SharedMemoryChannel.create(channelFile, ringCapacity, waitMode);
+            try {
+                while (continueProcessing) {
+                    session = new RulesSession("sid-" + sessionCount,
+                                               channel.getServerInputStream(),
+                                               channel.getServerOutputStream(),
+                                               configurationManager);
+                    sessionCount++;
+                    session.run();
+                    if (continueProcessing) {
+                        channel.startSession();
+                    }
+                }
+            } finally {
+                channel.close();
+            }
+        } catch (Exception e) {
+            LOG.error("run: caught exception while processing requests through " +
+                      channelFile.getAbsolutePath() + ", session=" + session, e);
+        } finally {
+            stop();
+        }
+
+        LOG.info("run: exit");
+    }
+
+    public void stop() {
+        continueProcessing = false;
+
+        // Closing the session here would block on its reader while it is
+        // waiting for a request, so end the channel session instead.
+        // The current session then sees the end of its requests and
+        // closes itself.
+        final SharedMemoryChannel currentChannel = channel;
+        if (currentChannel != null) {
+            currentChannel.endSession();
+        }
+    }
+
+    private static final Logger LOG = Logger.getLogger(SharedMemoryRulesServer.class);
+}
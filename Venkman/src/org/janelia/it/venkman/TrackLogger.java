@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2014 Howard Hughes Medical Institute.
+ * All rights reserved.
+ * Use is subject to Janelia Farm Research Campus Software Copyright 1.1
+ * license terms (http://license.janelia.org/license/jfrc_copyright_1_1.html).
+ */
+
+package org.janelia.it.venkman;
+
+import org.janelia.it.venkman.log.Logger;
+import org.janelia.it.venkman.log.ParameterSnapshot;
+import org.janelia.it.venkman.rules.RuleData;
+
+import java.io.File;
+
+/**
+ * Forwards entries logged by the stimulus rules for one track of a
+ * multi-larva session to the session logger, prefixing rule data names
+ * and messages with the track id so that data for different tracks
+ * can be distinguished.  Parameter snapshots are dropped so that track
+ * rules are never mistaken for the session's rules when the log is read.
+ *
+ * @author Eric Trautman
+ */
+class TrackLogger
+        extends Logger {
+
+    /** Prefix for the names of rule data logged for a track. */
+    public static final String DATA_NAME_PREFIX = "track ";
+
+    private Logger sessionLogger;
+    private String prefix;
+
+    /**
+     * @param  sessionLogger  logger for the session that owns the track.
+     * @param  logDirectory   session log directory.
+     * @param  trackId        identifies the track.
+     */
+    public TrackLogger(Logger sessionLogger,
+                       File logDirectory,
+                       String trackId) {
+        super(logDirectory, "track");
+        this.sessionLogger = sessionLogger;
+        this.prefix = DATA_NAME_PREFIX + trackId + " ";
+    }
+
+    @Override
+    public void log(Object logObject)
+            throws IllegalStateException {
+        if (logObject instanceof RuleData) {
+            final RuleData ruleData = (RuleData) logObject;
+            sessionLogger.log(new RuleData(ruleData.getCaptureTime(),
+                                           prefix + ruleData.getName(),
+                                           ruleData.getValue()));
+        } else if (! (logObject instanceof ParameterSnapshot)) {
+            sessionLogger.log(logObject);
+        }
+    }
+
+    @Override
+    public void logMessage(String message) {
+        sessionLogger.logMessage(prefix + message);
+    }
+}
@@ -21,7 +21,22 @@ public class Venkman {
     public static void main(String[] args) {
         try {
 
-            if (args.length > 0) {
+            if ((args.length > 1) && SHARED_MEMORY_OPTION.equals(args[0])) {
+
+                final File channelFile = new File(args[1]);
+                File workDirectory = new File(".");
+                if (args.length > 2) {
+                    workDirectory = new File(args[2]);
+                }
+                SharedMemoryChannel.WaitMode waitMode = SharedMemoryChannel.WaitMode.PARK;
+                if (args.length > 3) {
+                    waitMode = SharedMemoryChannel.WaitMode.valueOf(args[3].toUpperCase());
+                }
+                final SharedMemoryRulesServer server =
+                        new SharedMemoryRulesServer(channelFile, workDirectory, waitMode);
+                server.run();
+
+            } else if (args.length > 0) {
                 final int port = Integer.parseInt(args[0]);
 
                 RulesServer server = null;
@@ -55,7 +70,9 @@ public class Venkman {
 
             } else {
                 System.out.println("\n\nUSAGE: java -jar rules-server.jar <port> [skeleton-response-file]");
-                System.out.println("       java -jar rules-server.jar <port> -workDirectory <work directory>\n\n");
+                System.out.println("       java -jar rules-server.jar <port> -workDirectory <work directory>");
+                System.out.println("       java -jar rules-server.jar " + SHARED_MEMORY_OPTION +
+                                   " <channel file> [work directory] [spin|park]\n\n");
             }
 
         } catch (Exception e) {
@@ -64,4 +81,6 @@ public class Venkman {
         }
     }
 
+    private static final String SHARED_MEMORY_OPTION = "-sharedMemory";
+
 }
@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2014 Howard Hughes Medical Institute.
+ * All rights reserved.
+ * Use is subject to Janelia Farm Research Campus Software Copyright 1.1
+ * license terms (http://license.janelia.org/license/jfrc_copyright_1_1.html).
+ */
+
+package org.janelia.it.venkman.config;
+
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlType;
+import java.io.File;
+
+/**
+ * Summary information for a persisted parameter collection that is
+ * maintained by the {@link ConfigurationCatalog} so that collections
+ * can be listed and checked for references without loading them.
+ *
+ * @author Eric Trautman
+ */
+@XmlType(propOrder={"category", "groupName", "name", "lastModified", "length",
+                    "rulesCode", "rulesClassName",
+                    "behaviorParametersId", "stimulusParametersId"})
+public class CatalogEntry {
+
+    private ParameterCollectionCategory category;
+    private String groupName;
+    private String name;
+    private long lastModified;
+    private long length;
+    private String rulesCode;
+    private String rulesClassName;
+    private ParameterCollectionId behaviorParametersId;
+    private ParameterCollectionId stimulusParametersId;
+
+    @SuppressWarnings({"UnusedDeclaration"})
+    private CatalogEntry() {
+    }
+
+    public CatalogEntry(ParameterCollectionCategory category,
+                        String groupName,
+                        String name,
+                        long lastModified,
+                        long length) {
+        this.category = category;
+        this.groupName = groupName;
+        this.name = name;
+        this.lastModified = lastModified;
+        this.length = length;
+    }
+
+    @XmlElement
+    public ParameterCollectionCategory getCategory() {
+        return category;
+    }
+
+    @SuppressWarnings({"UnusedDeclaration"})
+    public void setCategory(ParameterCollectionCategory category) {
+        this.category = category;
+    }
+
+    @XmlElement
+    public String getGroupName() {
+        return groupName;
+    }
+
+    @SuppressWarnings({"UnusedDeclaration"})
+    public void setGroupName(String groupName) {
+        this.groupName = groupName;
+    }
+
+    @XmlElement
+    public String getName() {
+        return name;
+    }
+
+    @SuppressWarnings({"UnusedDeclaration"})
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    /**
+     * @return a full name composed from the group and standard names.
+     */
+    public String getFullName() {
+        return ParameterCollectionId.getFullCollectionName(groupName, name);
+    }
+
+    /**
+     * @return the modification time of the collection file when it was indexed.
+     */
+    @XmlElement
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    @SuppressWarnings({"UnusedDeclaration"})
+    public void setLastModified(long lastModified) {
+        this.lastModified = lastModified;
+    }
+
+    /**
+     * @return the length of the collection file when it was indexed.
+     */
+    @XmlElement
+    public long getLength() {
+        return length;
+    }
+
+    @SuppressWarnings({"UnusedDeclaration"})
+    public void setLength(long length) {
+        this.length = length;
+    }
+
+    /**
+     * @return the rules code for stimulus collections; otherwise null.
+     */
+    @XmlElement
+    public String getRulesCode() {
+        return rulesCode;
+    }
+
+    public void setRulesCode(String rulesCode) {
+        this.rulesCode = rulesCode;
+    }
+
+    /**
+     * @return the rules implementation class name for stimulus collections;
+     *         otherwise null.
+     */
+    @XmlElement
+    public String getRulesClassName() {
+        return rulesClassName;
+    }
+
+    public void setRulesClassName(String rulesClassName) {
+        this.rulesClassName = rulesClassName;
+    }
+
+    /**
+     * @return the referenced behavior parameters id for configurations;
+     *         otherwise null.
+     */
+    @XmlElement
+    public ParameterCollectionId getBehaviorParametersId() {
+        return behaviorParametersId;
+    }
+
+    public void setBehaviorParametersId(ParameterCollectionId behaviorParametersId) {
+        this.behaviorParametersId = behaviorParametersId;
+    }
+
+    /**
+     * @return the referenced stimulus parameters id for configurations;
+     *         otherwise null.
+     */
+    @XmlElement
+    public ParameterCollectionId getStimulusParametersId() {
+        return stimulusParametersId;
+    }
+
+    public void setStimulusParametersId(ParameterCollectionId stimulusParametersId) {
+        this.stimulusParametersId = stimulusParametersId;
+    }
+
+    /**
+     * @param  file  collection file.
+     *
+     * @return true if the specified file differs from the file
+     *         that was indexed; otherwise false.
+     */
+    public boolean isStale(File file) {
+        return (lastModified != file.lastModified()) ||
+               (length != file.length());
+    }
+
+    @Override
+    public String toString() {
+        return category + "__" + groupName + "__" + name;
+    }
+}
@@ -0,0 +1,735 @@
+/*
+ * Copyright (c) 2014 Howard Hughes Medical Institute.
+ * All rights reserved.
+ * Use is subject to Janelia Farm Research Campus Software Copyright 1.1
+ * license terms (http://license.janelia.org/license/jfrc_copyright_1_1.html).
+ */
+
+package org.janelia.it.venkman.config;
+
+import org.apache.log4j.Logger;
+import org.janelia.it.venkman.rules.LarvaStimulusRules;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.bind.ValidationEventHandler;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * In-memory index of all persisted parameter collections that allows
+ * collections to be listed and checked for references without scanning
+ * and loading collection files.
+ *
+ * The index is persisted in the work directory so that only collection
+ * files that have changed since the last run need to be loaded at startup.
+ * Changes made through the {@link ConfigurationManager} are applied to the
+ * index immediately while changes made by other processes are picked up
+ * incrementally by a {@link WatchService} thread.
+ *
+ * @author Eric Trautman
+ */
+public class ConfigurationCatalog {
+
+    /** Name of the persisted index file within the work directory. */
+    public static final String INDEX_FILE_NAME = "configuration-catalog.xml";
+
+    private File workDirectory;
+    private File indexFile;
+    private JAXBContext collectionContext;
+    private ValidationEventHandler validationEventHandler;
+
+    /** category -> group name -> collection name -> entry */
+    private Map<ParameterCollectionCategory, Map<String, Map<String, CatalogEntry>>> index;
+
+    /**
+     * Serializes index updates (which load files outside of the
+     * read lock) so that concurrent updates from the manager and
+     * watch threads cannot overwrite each other.
+     */
+    private final Object updateLock;
+
+    private WatchService watchService;
+    private Map<WatchKey, Path> watchKeyToDirectoryMap;
+    private Thread watchThread;
+
+    /**
+     * Constructs a catalog by loading the persisted index (if it exists)
+     * and then reconciling it with the current contents of the
+     * work directory.
+     *
+     * @param  workDirectory           parent directory for all collections.
+     * @param  collectionContext       context for loading collection files.
+     * @param  validationEventHandler  handler for collection load errors.
+     */
+    public ConfigurationCatalog(File workDirectory,
+                                JAXBContext collectionContext,
+                                ValidationEventHandler validationEventHandler) {
+
+        this.workDirectory = workDirectory;
+        this.indexFile = new File(workDirectory, INDEX_FILE_NAME);
+        this.collectionContext = collectionContext;
+        this.validationEventHandler = validationEventHandler;
+        this.index = new HashMap<ParameterCollectionCategory, Map<String, Map<String, CatalogEntry>>>();
+        for (ParameterCollectionCategory category :
+                ParameterCollectionCategory.values()) {
+            this.index.put(category, new TreeMap<String, Map<String, CatalogEntry>>());
+        }
+        this.updateLock = new Object();
+        this.watchKeyToDirectoryMap = new HashMap<WatchKey, Path>();
+
+        loadIndex();
+        refresh();
+    }
+
+    /**
+     * @param  category  the group category.
+     *
+     * @return sorted list of group names for the specified category.
+     */
+    public synchronized List<String> getGroupNames(ParameterCollectionCategory category) {
+        return new ArrayList<String>(index.get(category).keySet());
+    }
+
+    /**
+     * @param  category  the collection category.
+     *
+     * @return sorted list of full names for the specified category.
+     */
+    public synchronized List<String> getCollectionNames(ParameterCollectionCategory category) {
+        List<String> list = new ArrayList<String>();
+        for (Map<String, CatalogEntry> group : index.get(category).values()) {
+            for (CatalogEntry entry : group.values()) {
+                list.add(entry.getFullName());
+            }
+        }
+        Collections.sort(list);
+        return list;
+    }
+
+    /**
+     * @param  category   category for the group.
+     * @param  groupName  name of the group.
+     *
+     * @return sorted list of full names for the specified group.
+     */
+    public synchronized List<String> getCollectionNamesInGroup(ParameterCollectionCategory category,
+                                                               String groupName) {
+        List<String> list = new ArrayList<String>();
+        final Map<String, CatalogEntry> group = index.get(category).get(groupName);
+        if (group != null) {
+            for (CatalogEntry entry : group.values()) {
+                list.add(entry.getFullName());
+            }
+            Collections.sort(list);
+        }
+        return list;
+    }
+
+    /**
+     * @param  id  collection identifier.
+     *
+     * @return the entry for the specified collection or null if none exists.
+     */
+    public synchronized CatalogEntry getEntry(ParameterCollectionId id) {
+        CatalogEntry entry = null;
+        if ((id != null) && id.isDefined()) {
+            final Map<String, CatalogEntry> group =
+                    index.get(id.getCategory()).get(id.getGroupName());
+            if (group != null) {
+                entry = group.get(id.getName());
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * @return sorted list of all configuration entries.
+     */
+    public synchronized List<CatalogEntry> getConfigurationEntries() {
+        final List<CatalogEntry> list = new ArrayList<CatalogEntry>();
+        for (Map<String, CatalogEntry> group :
+                index.get(ParameterCollectionCategory.CONFIGURATION).values()) {
+            list.addAll(group.values());
+        }
+        Collections.sort(list, new Comparator<CatalogEntry>() {
+            @Override
+            public int compare(CatalogEntry o1,
+                               CatalogEntry o2) {
+                return o1.getFullName().compareTo(o2.getFullName());
+            }
+        });
+        return list;
+    }
+
+    /**
+     * @param  category      category for the group or collection.
+     * @param  groupName     name of the group or null if checking collections.
+     * @param  collectionId  id of the collection or null if checking groups.
+     *
+     * @return sorted list of configurations that reference the specified
+     *         group or collection; if the specified category is CONFIGURATION
+     *         an empty list is always returned.
+     */
+    public synchronized List<String> getConfigurationReferences(ParameterCollectionCategory category,
+                                                                String groupName,
+                                                                ParameterCollectionId collectionId) {
+
+        List<String> references = new ArrayList<String>();
+
+        final boolean checkGroup = (collectionId == null);
+
+        if (! ParameterCollectionCategory.CONFIGURATION.equals(category)) {
+            ParameterCollectionId referencedId;
+            for (CatalogEntry entry : getConfigurationEntries()) {
+                if (ParameterCollectionCategory.BEHAVIOR.equals(category)) {
+                    referencedId = entry.getBehaviorParametersId();
+                } else {
+                    referencedId = entry.getStimulusParametersId();
+                }
+                if (checkGroup) {
+                    if ((referencedId != null) &&
+                        (groupName.equals(referencedId.getGroupName()))) {
+                        references.add(entry.getFullName());
+                    }
+                } else if (collectionId.equals(referencedId)) {
+                    references.add(entry.getFullName());
+                }
+            }
+        }
+
+        return references;
+    }
+
+    /**
+     * Re-indexes the specified collection (regardless of whether its
+     * file appears to have changed) or removes it from the index
+     * if its file no longer exists.
+     *
+     * @param  id  identifier of the changed collection.
+     */
+    public void updateCollection(ParameterCollectionId id) {
+        final File groupDirectory = getGroupDirectory(id.getCategory(), id.getGroupName());
+        final boolean isChanged =
+                updateFile(id.getCategory(),
+                           new File(groupDirectory, id.getName() + ".xml"),
+                           true);
+        if (isChanged) {
+            saveIndex();
+        }
+    }
+
+    /**
+     * Re-indexes the specified group or removes it from the index
+     * if its directory no longer exists.
+     *
+     * @param  category   category for the group.
+     * @param  groupName  name of the group.
+     */
+    public void updateGroup(ParameterCollectionCategory category,
+                            String groupName) {
+        final File groupDirectory = getGroupDirectory(category, groupName);
+        if (updateGroupDirectory(category, groupDirectory)) {
+            saveIndex();
+        }
+        if (groupDirectory.isDirectory()) {
+            watch(groupDirectory);
+        }
+    }
+
+    /**
+     * Reconciles the index with the current contents of the work directory,
+     * loading only those collection files that have changed.
+     */
+    public void refresh() {
+
+        final long startTime = System.currentTimeMillis();
+
+        boolean isChanged = false;
+        File categoryDirectory;
+        File[] groupDirectories;
+        for (ParameterCollectionCategory category :
+                ParameterCollectionCategory.values()) {
+
+            categoryDirectory = new File(workDirectory, category.getName());
+            groupDirectories = categoryDirectory.listFiles();
+
+            final List<String> obsoleteGroupNames;
+            synchronized (this) {
+                obsoleteGroupNames = new ArrayList<String>(index.get(category).keySet());
+            }
+
+            if (groupDirectories != null) {
+                for (File groupDirectory : groupDirectories) {
+                    if (groupDirectory.isDirectory()) {
+                        obsoleteGroupNames.remove(groupDirectory.getName());
+                        isChanged = updateGroupDirectory(category, groupDirectory) || isChanged;
+                    }
+                }
+            }
+
+            synchronized (this) {
+                for (String groupName : obsoleteGroupNames) {
+                    index.get(category).remove(groupName);
+                    isChanged = true;
+                }
+            }
+        }
+
+        if (isChanged || (! indexFile.exists())) {
+            saveIndex();
+        }
+
+        LOG.info("refresh: indexed " + workDirectory.getAbsolutePath() + " in " +
+                 (System.currentTimeMillis() - startTime) + " ms");
+    }
+
+    /**
+     * Starts a daemon thread that watches the work directory for
+     * collection changes made by other processes.
+     */
+    public synchronized void startWatching() {
+        if (watchThread == null) {
+            try {
+                watchService = FileSystems.getDefault().newWatchService();
+            } catch (IOException e) {
+                LOG.warn("startWatching: file system does not support watch service, " +
+                         "external changes will not be indexed", e);
+                return;
+            }
+
+            File categoryDirectory;
+            File[] groupDirectories;
+            for (ParameterCollectionCategory category :
+                    ParameterCollectionCategory.values()) {
+                categoryDirectory = new File(workDirectory, category.getName());
+                watch(categoryDirectory);
+                groupDirectories = categoryDirectory.listFiles();
+                if (groupDirectories != null) {
+                    for (File groupDirectory : groupDirectories) {
+                        if (groupDirectory.isDirectory()) {
+                            watch(groupDirectory);
+                        }
+                    }
+                }
+            }
+
+            watchThread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    processWatchEvents();
+                }
+            }, "configuration-catalog-watcher");
+            watchThread.setDaemon(true);
+            watchThread.start();
+        }
+    }
+
+    /**
+     * Stops watching the work directory for changes and waits for
+     * any in-progress event processing to complete.
+     */
+    public void stopWatching() {
+        final Thread thread;
+        synchronized (this) {
+            thread = watchThread;
+            if (watchService != null) {
+                try {
+                    watchService.close();
+                } catch (IOException e) {
+                    LOG.warn("stopWatching: failed to close watch service", e);
+                }
+                watchService = null;
+                watchThread = null;
+                watchKeyToDirectoryMap.clear();
+            }
+        }
+        if ((thread != null) && (thread != Thread.currentThread())) {
+            try {
+                thread.join(WATCH_THREAD_STOP_TIMEOUT);
+            } catch (InterruptedException e) {
+                LOG.warn("stopWatching: interrupted while waiting for watch thread");
+            }
+        }
+    }
+
+    private synchronized void watch(File directory) {
+        if (watchService != null) {
+            try {
+                final Path path = directory.toPath();
+                final WatchKey key = path.register(watchService,
+                                                   StandardWatchEventKinds.ENTRY_CREATE,
+                                                   StandardWatchEventKinds.ENTRY_DELETE,
+                                                   StandardWatchEventKinds.ENTRY_MODIFY);
+                watchKeyToDirectoryMap.put(key, path);
+            } catch (IOException e) {
+                LOG.warn("watch: failed to register " + directory.getAbsolutePath(), e);
+            }
+        }
+    }
+
+    private void processWatchEvents() {
+
+        final WatchService service;
+        synchronized (this) {
+            service = watchService;
+        }
+
+        WatchKey key;
+        Path directory;
+        File changedFile;
+        boolean isChanged;
+        while (service != null) {
+
+            try {
+                key = service.take();
+            } catch (InterruptedException e) {
+                LOG.warn("processWatchEvents: interrupted, stopping watch");
+                break;
+            } catch (ClosedWatchServiceException e) {
+                break;
+            }
+
+            synchronized (this) {
+                if (watchService != service) {
+                    break; // watching has been stopped
+                }
+                directory = watchKeyToDirectoryMap.get(key);
+            }
+
+            isChanged = false;
+
+            if (directory != null) {
+
+                final File changedDirectory = directory.toFile();
+                final File parentDirectory = changedDirectory.getParentFile();
+                final ParameterCollectionCategory category;
+                final boolean isCategoryDirectory;
+                if (workDirectory.getAbsoluteFile().equals(parentDirectory.getAbsoluteFile())) {
+                    category = getCategory(changedDirectory.getName());
+                    isCategoryDirectory = true;
+                } else {
+                    category = getCategory(parentDirectory.getName());
+                    isCategoryDirectory = false;
+                }
+
+                for (WatchEvent<?> event : key.pollEvents()) {
+
+                    if (category == null) {
+                        continue;
+                    }
+
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        refresh();
+                        continue;
+                    }
+
+                    changedFile = directory.resolve((Path) event.context()).toFile();
+                    if (isCategoryDirectory) {
+                        isChanged = updateGroupDirectory(category, changedFile) || isChanged;
+                        if (changedFile.isDirectory()) {
+                            watch(changedFile);
+                        }
+                    } else {
+                        isChanged = updateFile(category, changedFile, false) || isChanged;
+                    }
+                }
+            }
+
+            if (! key.reset()) {
+                synchronized (this) {
+                    watchKeyToDirectoryMap.remove(key);
+                }
+            }
+
+            if (isChanged) {
+                saveIndex();
+            }
+        }
+    }
+
+    /**
+     * @return true if the index was changed; otherwise false.
+     */
+    private boolean updateGroupDirectory(ParameterCollectionCategory category,
+                                         File groupDirectory) {
+        synchronized (updateLock) {
+            return updateGroupDirectoryWhileLocked(category, groupDirectory);
+        }
+    }
+
+    private boolean updateGroupDirectoryWhileLocked(ParameterCollectionCategory category,
+                                                    File groupDirectory) {
+
+        final String groupName = groupDirectory.getName();
+        boolean isChanged = false;
+
+        final List<String> obsoleteNames;
+        synchronized (this) {
+            final Map<String, Map<String, CatalogEntry>> groups = index.get(category);
+            Map<String, CatalogEntry> group = groups.get(groupName);
+            if (! groupDirectory.isDirectory()) {
+                return (groups.remove(groupName) != null);
+            } else if (group == null) {
+                group = new TreeMap<String, CatalogEntry>();
+                groups.put(groupName, group);
+                isChanged = true;
+            }
+            obsoleteNames = new ArrayList<String>(group.keySet());
+        }
+
+        final File[] files = groupDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (isCollectionFile(file)) {
+                    obsoleteNames.remove(getCollectionName(file));
+                    isChanged = updateFile(category, file, false) || isChanged;
+                }
+            }
+        }
+
+        synchronized (this) {
+            final Map<String, CatalogEntry> group = index.get(category).get(groupName);
+            if (group != null) {
+                for (String name : obsoleteNames) {
+                    group.remove(name);
+                    isChanged = true;
+                }
+            }
+        }
+
+        return isChanged;
+    }
+
+    /**
+     * @param  category  category for the collection.
+     * @param  file      collection file.
+     * @param  force     if true, re-index the file even if it appears unchanged.
+     *
+     * @return true if the index was changed; otherwise false.
+     */
+    private boolean updateFile(ParameterCollectionCategory category,
+                               File file,
+                               boolean force) {
+        synchronized (updateLock) {
+            return updateFileWhileLocked(category, file, force);
+        }
+    }
+
+    private boolean updateFileWhileLocked(ParameterCollectionCategory category,
+                                          File file,
+                                          boolean force) {
+
+        if (! file.getName().endsWith(".xml")) {
+            return false;
+        }
+
+        final String groupName = file.getParentFile().getName();
+        final String name = getCollectionName(file);
+
+        if (! file.isFile()) {
+            synchronized (this) {
+                final Map<String, CatalogEntry> group = index.get(category).get(groupName);
+                return (group != null) && (group.remove(name) != null);
+            }
+        }
+
+        if (! force) {
+            synchronized (this) {
+                final Map<String, CatalogEntry> group = index.get(category).get(groupName);
+                if (group != null) {
+                    final CatalogEntry existingEntry = group.get(name);
+                    if ((existingEntry != null) && (! existingEntry.isStale(file))) {
+                        return false;
+                    }
+                }
+            }
+        }
+
+        // load the collection outside of the lock
+        final CatalogEntry entry = new CatalogEntry(category,
+                                                    groupName,
+                                                    name,
+                                                    file.lastModified(),
+                                                    file.length());
+        try {
+            final Unmarshaller unmarshaller = collectionContext.createUnmarshaller();
+            unmarshaller.setEventHandler(validationEventHandler);
+            final Object collection = unmarshaller.unmarshal(file);
+            if (collection instanceof Configuration) {
+                final Configuration configuration = (Configuration) collection;
+                entry.setBehaviorParametersId(configuration.getBehaviorParametersId());
+                entry.setStimulusParametersId(configuration.getStimulusParametersId());
+            } else if (collection instanceof LarvaStimulusRules) {
+                entry.setRulesCode(((LarvaStimulusRules) collection).getCode());
+                entry.setRulesClassName(collection.getClass().getName());
+            }
+        } catch (Exception e) {
+            // keep the entry so that the collection is still listed,
+            // but flag it as stale so that it gets reloaded next time
+            // (file may have been read while it was being written)
+            entry.setLastModified(-1);
+            LOG.warn("updateFile: failed to load " + file.getAbsolutePath() +
+                     ", will retry when it changes (" + getRootCause(e) + ")");
+            LOG.debug("updateFile: load failure details", e);
+        }
+
+        synchronized (this) {
+            final Map<String, Map<String, CatalogEntry>> groups = index.get(category);
+            Map<String, CatalogEntry> group = groups.get(groupName);
+            if (group == null) {
+                group = new TreeMap<String, CatalogEntry>();
+                groups.put(groupName, group);
+            }
+            group.put(name, entry);
+        }
+
+        return true;
+    }
+
+    private void loadIndex() {
+        if (indexFile.exists()) {
+            try {
+                final JAXBContext ctx = JAXBContext.newInstance(IndexData.class);
+                final Unmarshaller unmarshaller = ctx.createUnmarshaller();
+                final IndexData data = (IndexData) unmarshaller.unmarshal(indexFile);
+                synchronized (this) {
+                    int separatorIndex;
+                    ParameterCollectionCategory category;
+                    for (String groupPath : data.groups) {
+                        separatorIndex = groupPath.indexOf('/');
+                        if (separatorIndex > 0) {
+                            category = getCategory(groupPath.substring(0, separatorIndex));
+                            if (category != null) {
+                                getGroup(category, groupPath.substring(separatorIndex + 1));
+                            }
+                        }
+                    }
+                    for (CatalogEntry entry : data.entries) {
+                        if (entry.getCategory() != null) {
+                            getGroup(entry.getCategory(), entry.getGroupName()).put(entry.getName(),
+                                                                                    entry);
+                        }
+                    }
+                }
+                LOG.info("loadIndex: loaded " + data.entries.size() + " entries from " +
+                         indexFile.getAbsolutePath());
+            } catch (Exception e) {
+                LOG.warn("loadIndex: ignoring invalid index " + indexFile.getAbsolutePath() +
+                         ", index will be rebuilt", e);
+            }
+        }
+    }
+
+    private void saveIndex() {
+
+        final IndexData data = new IndexData();
+        synchronized (this) {
+            for (ParameterCollectionCategory category :
+                    ParameterCollectionCategory.values()) {
+                for (String groupName : index.get(category).keySet()) {
+                    data.groups.add(category.getName() + "/" + groupName);
+                    data.entries.addAll(index.get(category).get(groupName).values());
+                }
+            }
+        }
+
+        // write to a temporary file first so that a partial index is never read
+        final File tempFile = new File(workDirectory, INDEX_FILE_NAME + ".tmp");
+        synchronized (indexFile) {
+            try {
+                final JAXBContext ctx = JAXBContext.newInstance(IndexData.class);
+                final Marshaller m = ctx.createMarshaller();
+                m.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, true);
+                m.marshal(data, tempFile);
+                if (indexFile.exists() && (! indexFile.delete())) {
+                    LOG.warn("saveIndex: failed to remove " + indexFile.getAbsolutePath());
+                }
+                if (! tempFile.renameTo(indexFile)) {
+                    LOG.warn("saveIndex: failed to rename " + tempFile.getAbsolutePath());
+                }
+            } catch (JAXBException e) {
+                LOG.warn("saveIndex: failed to save " + indexFile.getAbsolutePath(), e);
+            }
+        }
+    }
+
+    private Map<String, CatalogEntry> getGroup(ParameterCollectionCategory category,
+                                               String groupName) {
+        final Map<String, Map<String, CatalogEntry>> groups = index.get(category);
+        Map<String, CatalogEntry> group = groups.get(groupName);
+        if (group == null) {
+            group = new TreeMap<String, CatalogEntry>();
+            groups.put(groupName, group);
+        }
+        return group;
+    }
+
+    private File getGroupDirectory(ParameterCollectionCategory category,
+                                   String groupName) {
+        return new File(new File(workDirectory, category.getName()), groupName);
+    }
+
+    private static boolean isCollectionFile(File file) {
+        return file.getName().endsWith(".xml") && file.isFile();
+    }
+
+    private static String getCollectionName(File file) {
+        final String name = file.getName();
+        return name.substring(0, name.length() - 4);
+    }
+
+    private static Throwable getRootCause(Throwable t) {
+        Throwable cause = t;
+        while (cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause;
+    }
+
+    private static ParameterCollectionCategory getCategory(String name) {
+        ParameterCollectionCategory category = null;
+        for (ParameterCollectionCategory c : ParameterCollectionCategory.values()) {
+            if (c.getName().equals(name)) {
+                category = c;
+                break;
+            }
+        }
+        return category;
+    }
+
+    /**
+     * Persisted form of the index.
+     */
+    @XmlRootElement(name = "configurationCatalog")
+    private static class IndexData {
+
+        @XmlElement(name = "group")
+        private List<String> groups = new ArrayList<String>();
+
+        @XmlElement(name = "entry")
+        private List<CatalogEntry> entries = new ArrayList<CatalogEntry>();
+    }
+
+    private static final long WATCH_THREAD_STOP_TIMEOUT = 5000;
+
+    private static final Logger LOG = Logger.getLogger(ConfigurationCatalog.class);
+}
@@ -8,6 +8,7 @@
 package org.janelia.it.venkman.config;
 
 import org.apache.log4j.Logger;
+import org.janelia.it.venkman.jaxb.FunctionTableStore;
 import org.janelia.it.venkman.rules.LarvaStimulusRules;
 import org.janelia.it.venkman.rules.StimulusRuleImplementations;
 
@@ -24,11 +25,15 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Manages repository of configuration information for the rules server.
@@ -37,10 +42,16 @@ import java.util.Map;
  */
 public class ConfigurationManager {
 
+    /** Name of the work directory subdirectory for function table files. */
+    public static final String FUNCTION_TABLE_DIRECTORY_NAME = "function-tables";
+
     private File workDirectory;
     private File logDirectory;
     private Map<ParameterCollectionCategory, File> categoryToBaseDirectoryMap;
     private JAXBContext jaxbContext;
+    private ConfigurationCatalog catalog;
+    private FunctionTableStore functionTableStore;
+    private Map<String, LarvaStimulusRules> rulesClassNameToPrototypeMap;
 
     private PropertyChangeSupport propertyChangeSupport;
 
@@ -105,9 +116,37 @@ public class ConfigurationManager {
 
         this.propertyChangeSupport = new PropertyChangeSupport(this);
 
+        // function tables with at least this many cells are saved in
+        // shared binary sidecar files (disabled by default)
+        final int minimumSidecarCellCount =
+                Integer.getInteger("venkman-function-table-cells", 0);
+        this.functionTableStore =
+                new FunctionTableStore(new File(workDirectory, FUNCTION_TABLE_DIRECTORY_NAME),
+                                       minimumSidecarCellCount);
+        FunctionTableStore.setDefaultStore(this.functionTableStore);
+        LOG.info("init: function table store is " + functionTableStore);
+
+        this.rulesClassNameToPrototypeMap =
+                new ConcurrentHashMap<String, LarvaStimulusRules>();
+        this.catalog = new ConfigurationCatalog(workDirectory,
+                                                jaxbContext,
+                                                INDEX_HANDLER);
+        this.catalog.startWatching();
+
         LOG.info("init: work directory is " + workDirectory.getAbsolutePath());
     }
 
+    /**
+     * Stops watching the work directory for changes made by other processes
+     * and unregisters this manager's function table store.
+     */
+    public void close() {
+        catalog.stopWatching();
+        if (FunctionTableStore.getDefaultStore() == functionTableStore) {
+            FunctionTableStore.setDefaultStore(null);
+        }
+    }
+
     /**
      * @return the rules server log directory.
      */
@@ -130,19 +169,17 @@ public class ConfigurationManager {
      */
     public List<String> getConfigurationNames(String version) {
 
-        List<String> allNames = getConfigurationNames();
-        List<String> supportsVersionNames = new ArrayList<String>(allNames.size());
+        final List<CatalogEntry> entries = catalog.getConfigurationEntries();
+        List<String> supportsVersionNames = new ArrayList<String>(entries.size());
 
-        Configuration configuration;
         ParameterCollectionId stimulusId;
         LarvaStimulusRules rules;
-        for (String name : allNames) {
-            configuration = getConfiguration(name);
-            stimulusId = configuration.getStimulusParametersId();
+        for (CatalogEntry entry : entries) {
+            stimulusId = entry.getStimulusParametersId();
             if (stimulusId != null) {
-                rules = getStimulusRules(stimulusId);
-                if (rules.supportsVersion(version)) {
-                    supportsVersionNames.add(name);
+                rules = getStimulusRulesPrototype(stimulusId);
+                if ((rules != null) && rules.supportsVersion(version)) {
+                    supportsVersionNames.add(entry.getFullName());
                 }
             }
         }
@@ -150,6 +187,23 @@ public class ConfigurationManager {
         return supportsVersionNames;
     }
 
+    /**
+     * @return list of all persisted configurations (ordered by full name).
+     */
+    public List<Configuration> getConfigurations() {
+        final List<CatalogEntry> entries = catalog.getConfigurationEntries();
+        final List<Configuration> list = new ArrayList<Configuration>(entries.size());
+        for (CatalogEntry entry : entries) {
+            list.add(new Configuration(
+                    new ParameterCollectionId(ParameterCollectionCategory.CONFIGURATION,
+                                              entry.getGroupName(),
+                                              entry.getName()),
+                    copyId(entry.getBehaviorParametersId()),
+                    copyId(entry.getStimulusParametersId())));
+        }
+        return list;
+    }
+
     /**
      * @return the list of full names for each persisted
      *         behavior configuration.
@@ -172,8 +226,7 @@ public class ConfigurationManager {
      * @return the list of full names for the specified category.
      */
     public List<String> getCollectionNames(ParameterCollectionCategory category) {
-        File baseDirectory = categoryToBaseDirectoryMap.get(category);
-        return getParameterCollectionNames(baseDirectory);
+        return catalog.getCollectionNames(category);
     }
 
     /**
@@ -182,19 +235,7 @@ public class ConfigurationManager {
      * @return the list of group names for the specified category.
      */
     public List<String> getGroupNamesInCategory(ParameterCollectionCategory category) {
-        final File categoryDirectory = new File(workDirectory,
-                                                category.getName());
-        List<String> list = new ArrayList<String>();
-        final File[] categoryFiles = categoryDirectory.listFiles();
-        if (categoryFiles != null) {
-            for (File group : categoryFiles) {
-                if (group.isDirectory()) {
-                    list.add(group.getName());
-                }
-            }
-            Collections.sort(list);
-        }
-        return list;
+        return catalog.getGroupNames(category);
     }
 
     /**
@@ -205,13 +246,7 @@ public class ConfigurationManager {
      */
     public List<String> getCollectionNamesInGroup(ParameterCollectionCategory category,
                                                   String groupName) {
-        List<String> list = new ArrayList<String>();
-        final File categoryDirectory = new File(workDirectory,
-                                                category.getName());
-        final File groupDirectory = new File(categoryDirectory, groupName);
-        list = addGroupCollectionNamesToList(groupDirectory, list);
-        Collections.sort(list);
-        return list;
+        return catalog.getCollectionNamesInGroup(category, groupName);
     }
 
     /**
@@ -281,12 +316,17 @@ public class ConfigurationManager {
      * @return the rules code for the specified id or null if none exists.
      */
     public String getStimulusRulesCode(ParameterCollectionId id) {
-        // TODO: optimize code loading for dashboard
         String code = null;
         if (id != null) {
-            LarvaStimulusRules rules = getStimulusRules(id);
-            if (rules != null) {
-                code = rules.getCode();
+            final CatalogEntry entry = catalog.getEntry(id);
+            if (entry != null) {
+                code = entry.getRulesCode();
+            }
+            if (code == null) {
+                LarvaStimulusRules rules = getStimulusRules(id);
+                if (rules != null) {
+                    code = rules.getCode();
+                }
             }
         }
         return code;
@@ -394,6 +434,8 @@ public class ConfigurationManager {
         } else {
             //noinspection ResultOfMethodCallIgnored
             fromFile.renameTo(toFile);
+            catalog.updateCollection(fromId);
+            catalog.updateCollection(toId);
         }
 
         if (ParameterCollectionCategory.CONFIGURATION.equals(fromCategory)) {
@@ -448,6 +490,7 @@ public class ConfigurationManager {
         final File file = getParametersFile(collectionId);
         //noinspection ResultOfMethodCallIgnored
         file.delete();
+        catalog.updateCollection(collectionId);
 
         notifyChangeListeners();
     }
@@ -500,6 +543,9 @@ public class ConfigurationManager {
             fromGroupDirectory.delete();
         }
 
+        catalog.updateGroup(category, fromGroupName);
+        catalog.updateGroup(category, toGroupName);
+
         Configuration config;
         ParameterCollectionId obsoleteId;
         if (ParameterCollectionCategory.CONFIGURATION.equals(category)) {
@@ -562,6 +608,7 @@ public class ConfigurationManager {
 
         final File directory = findOrCreateGroupDirectory(category, groupName);
         recursiveDelete(directory);
+        catalog.updateGroup(category, groupName);
         notifyChangeListeners();
     }
 
@@ -659,10 +706,25 @@ public class ConfigurationManager {
             throws IllegalArgumentException {
         try {
             final File file = getParametersFile(id);
-            Marshaller m = jaxbContext.createMarshaller();
-            m.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, true);
-            m.setEventHandler(JAXB_HANDLER);
-            m.marshal(collection, file);
+
+            // write to a temporary (non .xml) file and then rename it
+            // so that the catalog watch thread never reads a partial file
+            final File tempFile = new File(file.getParentFile(),
+                                           "." + file.getName() + ".tmp");
+            try {
+                Marshaller m = jaxbContext.createMarshaller();
+                m.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, true);
+                m.setEventHandler(JAXB_HANDLER);
+                m.marshal(collection, tempFile);
+                moveFile(tempFile, file);
+            } finally {
+                if (tempFile.exists() && (! tempFile.delete())) {
+                    LOG.warn("saveCollection: failed to remove " +
+                             tempFile.getAbsolutePath());
+                }
+            }
+
+            catalog.updateCollection(id);
         } catch (Exception e) {
             String message = "failed to save collection " + id;
             LOG.error(message, e);
@@ -670,36 +732,23 @@ public class ConfigurationManager {
         }
     }
 
-    private List<String> getParameterCollectionNames(File collectionDirectory) {
-        List<String> list = new ArrayList<String>();
-        final File[] directoryFiles = collectionDirectory.listFiles();
-        if (directoryFiles != null) {
-            for (File group : directoryFiles) {
-                list = addGroupCollectionNamesToList(group, list);
-            }
-            Collections.sort(list);
-        }
-        return list;
-    }
-
-    private List<String> addGroupCollectionNamesToList(File groupDirectory,
-                                                       List<String> list) {
-        if (groupDirectory.exists() && groupDirectory.isDirectory()) {
-            final String groupName = groupDirectory.getName();
-            final File[] directoryFiles = groupDirectory.listFiles();
-            if (directoryFiles != null) {
-                String name;
-                for (File config : directoryFiles) {
-                    name = config.getName();
-                    if (name.endsWith(".xml")) {
-                        name = name.substring(0, name.length() - 4);
-                        list.add(ParameterCollectionId.getFullCollectionName(
-                                groupName, name));
-                    }
-                }
-            }
+    /**
+     * Replaces the target file with the source file, atomically
+     * when the file system supports it.
+     */
+    private static void moveFile(File source,
+                                 File target)
+            throws IOException {
+        try {
+            Files.move(source.toPath(),
+                       target.toPath(),
+                       StandardCopyOption.ATOMIC_MOVE,
+                       StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source.toPath(),
+                       target.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING);
         }
-        return list;
     }
 
     /**
@@ -714,38 +763,48 @@ public class ConfigurationManager {
     private List<String> getConfigurationReferences(ParameterCollectionCategory category,
                                                     String groupName,
                                                     ParameterCollectionId collectionId) {
+        return catalog.getConfigurationReferences(category, groupName, collectionId);
+    }
 
-        List<String> groupReferences = new ArrayList<String>();
-
-        final boolean checkGroup = (collectionId == null);
-
-        if (! ParameterCollectionCategory.CONFIGURATION.equals(category)) {
-            Configuration config;
-            ParameterCollectionId configurationId;
-            ParameterCollectionId nonConfigurationId;
-            for (String name : getConfigurationNames()) {
-                config = getConfiguration(name);
-                if (ParameterCollectionCategory.BEHAVIOR.equals(category)) {
-                    nonConfigurationId = config.getBehaviorParametersId();
-                } else {
-                    nonConfigurationId = config.getStimulusParametersId();
-                }
-                if (checkGroup) {
-                    if ((nonConfigurationId != null) &&
-                        (groupName.equals(nonConfigurationId.getGroupName()))) {
-                        configurationId = config.getId();
-                        groupReferences.add(configurationId.getFullName());
-                    }
-                } else {
-                    if (collectionId.equals(nonConfigurationId)) {
-                        configurationId = config.getId();
-                        groupReferences.add(configurationId.getFullName());
-                    }
+    /**
+     * @param  stimulusId  stimulus rules identifier.
+     *
+     * @return a shared instance of the rules class for the specified id
+     *         (for checking class level attributes like version support)
+     *         or null if the rules cannot be found.
+     */
+    private LarvaStimulusRules getStimulusRulesPrototype(ParameterCollectionId stimulusId) {
+        LarvaStimulusRules rules = null;
+        final CatalogEntry entry = catalog.getEntry(stimulusId);
+        if ((entry != null) && (entry.getRulesClassName() != null)) {
+            final String className = entry.getRulesClassName();
+            rules = rulesClassNameToPrototypeMap.get(className);
+            if (rules == null) {
+                try {
+                    final Constructor<?> constructor =
+                            Class.forName(className).getDeclaredConstructor();
+                    constructor.setAccessible(true);
+                    rules = (LarvaStimulusRules) constructor.newInstance();
+                    rulesClassNameToPrototypeMap.put(className, rules);
+                } catch (Exception e) {
+                    LOG.warn("getStimulusRulesPrototype: failed to create " + className, e);
                 }
             }
         }
+        if (rules == null) {
+            rules = getStimulusRules(stimulusId);
+        }
+        return rules;
+    }
 
-        return groupReferences;
+    private static ParameterCollectionId copyId(ParameterCollectionId id) {
+        ParameterCollectionId copy = null;
+        if (id != null) {
+            copy = new ParameterCollectionId(id.getCategory(),
+                                             id.getGroupName(),
+                                             id.getName());
+        }
+        return copy;
     }
 
     private Object loadFile(ParameterCollectionId id)
@@ -790,6 +849,9 @@ public class ConfigurationManager {
         if (! groupDirectory.exists()) {
             //noinspection ResultOfMethodCallIgnored
             groupDirectory.mkdirs();
+            if (catalog != null) {
+                catalog.updateGroup(category, groupName);
+            }
         }
         return groupDirectory;
     }
@@ -834,4 +896,19 @@ public class ConfigurationManager {
                     return shouldProcessingContinue;
                 }
             };
+
+    /**
+     * Handler for catalog indexing, which may read files that are still
+     * being written by another process.  Failures are reported
+     * by the catalog and the file is re-indexed later, so validation
+     * events are not logged here.
+     */
+    private static final ValidationEventHandler INDEX_HANDLER =
+            new ValidationEventHandler() {
+                public boolean handleEvent(ValidationEvent event ) {
+                    final String message = event.getMessage();
+                    return (message != null) &&
+                           message.contains("unexpected element");
+                }
+            };
 }
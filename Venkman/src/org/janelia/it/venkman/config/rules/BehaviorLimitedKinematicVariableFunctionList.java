@@ -13,6 +13,7 @@ import javax.xml.bind.annotation.XmlElementRef;
 import javax.xml.bind.annotation.XmlRootElement;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 
 /**
  * Container for ordered list of functions with convenience methods for applying
@@ -70,6 +71,18 @@ public class BehaviorLimitedKinematicVariableFunctionList {
         functionList.add(function);
     }
 
+    /**
+     * Adds the kinematic variable for each function in this list
+     * to the specified set.
+     *
+     * @param  variables  set to update.
+     */
+    public void addVariables(Set<KinematicVariable> variables) {
+        for (BehaviorLimitedKinematicVariableFunction function : functionList) {
+            variables.add(function.getVariable());
+        }
+    }
+
     /**
      * Loops through this ordered list of functions, and applies each function result value to
      * the intensities in the specified stimulusList.
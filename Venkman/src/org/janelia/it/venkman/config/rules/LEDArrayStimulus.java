@@ -91,6 +91,26 @@ public class LEDArrayStimulus implements Stimulus {
         return list;
     }
 
+    public double getX() {
+        return x;
+    }
+
+    public double getY() {
+        return y;
+    }
+
+    public double getWidth() {
+        return width;
+    }
+
+    public double getHeight() {
+        return height;
+    }
+
+    public List<LEDStimulus> getStimulusList() {
+        return stimulusList;
+    }
+
     public LEDStimulus getLedStimulus(int index) {
         LEDStimulus ledStimulus = null;
         if (stimulusList.size() > index) {
@@ -0,0 +1,536 @@
+/*
+ * Copyright (c) 2014 Howard Hughes Medical Institute.
+ * All rights reserved.
+ * Use is subject to Janelia Farm Research Campus Software Copyright 1.1
+ * license terms (http://license.janelia.org/license/jfrc_copyright_1_1.html).
+ */
+
+package org.janelia.it.venkman.config.rules;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Parses ASCII matrix files with values delimited by white space and/or
+ * commas (the {@link MatrixFile#DEFAULT_DELIMITER} format).
+ *
+ * The file is memory mapped and scanned once to locate row boundaries.
+ * Blocks of rows are then parsed in parallel directly into a preallocated
+ * value array using a hand-rolled delimiter scanner and number parser.
+ * Rows are split and validated exactly like the line by line parser in
+ * {@link MatrixFile} (which trims each line and splits it with
+ * {@link java.util.regex.Pattern#split}), so both parsers accept the same
+ * files and report the same errors.
+ * Tokens that cannot be exactly converted by the fast number parser
+ * (for example, values with more than 18 significant digits) are
+ * converted with {@link Double#parseDouble} so results always match
+ * the standard parser.
+ *
+ * @author Eric Trautman
+ */
+class MappedMatrixParser {
+
+    /** Minimum number of rows parsed by each worker. */
+    private static final int MIN_ROWS_PER_BLOCK = 64;
+
+    private File file;
+    private MappedByteBuffer buffer;
+    private int[] rowStarts;
+    private int[] rowStops;
+    private int rowCount;
+    private int columnCount;
+    private double[][] values;
+    private double minimumValue;
+    private double maximumValue;
+
+    /**
+     * Parses the specified file.
+     *
+     * @param  file  file to parse.
+     *
+     * @throws IllegalArgumentException
+     *   if the file is not a valid matrix file.
+     *
+     * @throws IOException
+     *   if the file cannot be read.
+     */
+    MappedMatrixParser(File file)
+            throws IllegalArgumentException, IOException {
+
+        this.file = file;
+        this.minimumValue = Double.MAX_VALUE;
+        this.maximumValue = -Double.MAX_VALUE;
+
+        final long length = file.length();
+        if (length > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(
+                    "The matrix file " + file.getAbsolutePath() +
+                    " is too large (" + length + " bytes) to be loaded.");
+        }
+
+        final FileInputStream in = new FileInputStream(file);
+        try {
+            final FileChannel channel = in.getChannel();
+            this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+        } finally {
+            in.close();
+        }
+
+        findRows((int) length);
+
+        if (rowCount == 0) {
+            throw new IllegalArgumentException(
+                    "The matrix file " + file.getAbsolutePath() +
+                    " does not contain any values.");
+        }
+
+        this.columnCount = countTokens(rowStarts[0], rowStops[0]);
+        this.values = new double[rowCount][columnCount];
+
+        parseRows();
+    }
+
+    public double[][] getValues() {
+        return values;
+    }
+
+    public int getColumnCount() {
+        return columnCount;
+    }
+
+    public double getMinimumValue() {
+        return minimumValue;
+    }
+
+    public double getMaximumValue() {
+        return maximumValue;
+    }
+
+    /**
+     * Records the trimmed start and stop offsets of every line
+     * (terminated by '\n', '\r', or "\r\n") that is not skipped by
+     * the line by line parser.  Only lines that contain nothing but
+     * delimiters (and are not empty once trimmed) are skipped.
+     */
+    private void findRows(int length) {
+
+        int capacity = 1024;
+        rowStarts = new int[capacity];
+        rowStops = new int[capacity];
+        rowCount = 0;
+
+        int lineStart = 0;
+        int lineStop;
+        int start;
+        int stop;
+        byte b;
+        while (lineStart < length) {
+
+            lineStop = lineStart;
+            b = 0;
+            while (lineStop < length) {
+                b = buffer.get(lineStop);
+                if ((b == '\n') || (b == '\r')) {
+                    break;
+                }
+                lineStop++;
+            }
+
+            start = lineStart;
+            stop = lineStop;
+            while ((start < stop) && isTrimmed(buffer.get(start))) {
+                start++;
+            }
+            while ((stop > start) && isTrimmed(buffer.get(stop - 1))) {
+                stop--;
+            }
+
+            if ((start == stop) || hasValue(start, stop)) {
+                if (rowCount == capacity) {
+                    capacity = capacity * 2;
+                    rowStarts = copyOf(rowStarts, capacity);
+                    rowStops = copyOf(rowStops, capacity);
+                }
+                rowStarts[rowCount] = start;
+                rowStops[rowCount] = stop;
+                rowCount++;
+            }
+
+            lineStart = lineStop + 1;
+            if ((b == '\r') && (lineStart < length) && (buffer.get(lineStart) == '\n')) {
+                lineStart++;
+            }
+        }
+    }
+
+    /**
+     * @return true if the specified range contains a non-delimiter character.
+     */
+    private boolean hasValue(int start,
+                             int stop) {
+        for (int i = start; i < stop; i++) {
+            if (! isDelimiter(buffer.get(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void parseRows() throws IllegalArgumentException, IOException {
+
+        final int processorCount = Runtime.getRuntime().availableProcessors();
+        final int blockCount =
+                Math.max(1, Math.min(processorCount, rowCount / MIN_ROWS_PER_BLOCK));
+        final int rowsPerBlock = (rowCount + blockCount - 1) / blockCount;
+
+        final List<RowBlock> blocks = new ArrayList<RowBlock>(blockCount);
+        for (int start = 0; start < rowCount; start += rowsPerBlock) {
+            blocks.add(new RowBlock(start, Math.min(rowCount, start + rowsPerBlock)));
+        }
+
+        if (blocks.size() == 1) {
+            blocks.get(0).call();
+        } else {
+            final ExecutorService executorService =
+                    Executors.newFixedThreadPool(blocks.size());
+            try {
+                final List<Future<RowBlock>> futures =
+                        new ArrayList<Future<RowBlock>>(blocks.size());
+                for (RowBlock block : blocks) {
+                    futures.add(executorService.submit(block));
+                }
+                for (Future<RowBlock> future : futures) {
+                    future.get();
+                }
+            } catch (InterruptedException e) {
+                throw new IOException("interrupted while parsing " +
+                                      file.getAbsolutePath(), e);
+            } catch (ExecutionException e) {
+                throw new IOException("failed to parse " +
+                                      file.getAbsolutePath(), e.getCause());
+            } finally {
+                executorService.shutdownNow();
+            }
+        }
+
+        // report the error for the earliest row (like a sequential parse would)
+        for (RowBlock block : blocks) {
+            if (block.error != null) {
+                throw block.error;
+            }
+        }
+
+        for (RowBlock block : blocks) {
+            if (block.minimumValue < minimumValue) {
+                minimumValue = block.minimumValue;
+            }
+            if (block.maximumValue > maximumValue) {
+                maximumValue = block.maximumValue;
+            }
+        }
+    }
+
+    /**
+     * @return the number of values in the specified (trimmed) row.
+     *         Like {@link java.util.regex.Pattern#split}, an empty row or
+     *         a leading delimiter yields an empty first value and
+     *         trailing delimiters are ignored.
+     */
+    private int countTokens(int start,
+                            int stop) {
+        int count = 1;
+        int i = start;
+        while ((i < stop) && (! isDelimiter(buffer.get(i)))) {
+            i++;
+        }
+        boolean inToken = false;
+        for (; i < stop; i++) {
+            if (isDelimiter(buffer.get(i))) {
+                inToken = false;
+            } else if (! inToken) {
+                inToken = true;
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return the value for the specified token (parsed without
+     *         allocating a string when possible).
+     *
+     * @throws NumberFormatException
+     *   if the token is not a valid number.
+     */
+    private double parseToken(int start,
+                              int stop)
+            throws NumberFormatException {
+
+        if (start == stop) {
+            return Double.parseDouble(getToken(start, stop));
+        }
+
+        int i = start;
+        byte b = buffer.get(i);
+        boolean isNegative = false;
+        if (b == '-') {
+            isNegative = true;
+            i++;
+        } else if (b == '+') {
+            i++;
+        }
+
+        long mantissa = 0;
+        int significantDigits = 0;
+        int exponent = 0;
+        boolean hasDigits = false;
+        boolean isTruncated = false;
+
+        for (; i < stop; i++) {
+            b = buffer.get(i);
+            if ((b >= '0') && (b <= '9')) {
+                hasDigits = true;
+                if (significantDigits < MAX_SIGNIFICANT_DIGITS) {
+                    mantissa = (mantissa * 10) + (b - '0');
+                    if (mantissa > 0) {
+                        significantDigits++;
+                    }
+                } else {
+                    isTruncated = true;
+                }
+            } else {
+                break;
+            }
+        }
+
+        if ((i < stop) && (buffer.get(i) == '.')) {
+            for (i++; i < stop; i++) {
+                b = buffer.get(i);
+                if ((b >= '0') && (b <= '9')) {
+                    hasDigits = true;
+                    if (significantDigits < MAX_SIGNIFICANT_DIGITS) {
+                        mantissa = (mantissa * 10) + (b - '0');
+                        if (mantissa > 0) {
+                            significantDigits++;
+                        }
+                        exponent--;
+                    } else {
+                        isTruncated = true;
+                    }
+                } else {
+                    break;
+                }
+            }
+        }
+
+        boolean isValid = hasDigits;
+        if (isValid && (i < stop)) {
+            b = buffer.get(i);
+            if ((b == 'e') || (b == 'E')) {
+                i++;
+                boolean isNegativeExponent = false;
+                if (i < stop) {
+                    b = buffer.get(i);
+                    if (b == '-') {
+                        isNegativeExponent = true;
+                        i++;
+                    } else if (b == '+') {
+                        i++;
+                    }
+                }
+                int explicitExponent = 0;
+                boolean hasExponentDigits = false;
+                for (; i < stop; i++) {
+                    b = buffer.get(i);
+                    if ((b >= '0') && (b <= '9')) {
+                        hasExponentDigits = true;
+                        if (explicitExponent < 10000) {
+                            explicitExponent = (explicitExponent * 10) + (b - '0');
+                        }
+                    } else {
+                        break;
+                    }
+                }
+                isValid = hasExponentDigits;
+                if (isNegativeExponent) {
+                    exponent -= explicitExponent;
+                } else {
+                    exponent += explicitExponent;
+                }
+            }
+        }
+
+        double value;
+        if (isValid && (i == stop) && (! isTruncated) &&
+            (mantissa < MAX_EXACT_MANTISSA) &&
+            (exponent >= -MAX_EXACT_EXPONENT) && (exponent <= MAX_EXACT_EXPONENT)) {
+            // both the mantissa and the power of ten are exactly representable,
+            // so a single multiply or divide is correctly rounded
+            if (exponent >= 0) {
+                value = mantissa * POWERS_OF_TEN[exponent];
+            } else {
+                value = mantissa / POWERS_OF_TEN[-exponent];
+            }
+            if (isNegative) {
+                value = -value;
+            }
+        } else {
+            value = Double.parseDouble(getToken(start, stop));
+        }
+
+        return value;
+    }
+
+    private String getToken(int start,
+                            int stop) {
+        final byte[] bytes = new byte[stop - start];
+        for (int i = start; i < stop; i++) {
+            bytes[i - start] = buffer.get(i);
+        }
+        try {
+            return new String(bytes, "ISO-8859-1");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Parses a contiguous block of rows.
+     */
+    private class RowBlock implements Callable<RowBlock> {
+
+        private int startRow;
+        private int stopRow;
+        private double minimumValue;
+        private double maximumValue;
+        private IllegalArgumentException error;
+
+        private RowBlock(int startRow,
+                         int stopRow) {
+            this.startRow = startRow;
+            this.stopRow = stopRow;
+            this.minimumValue = Double.MAX_VALUE;
+            this.maximumValue = -Double.MAX_VALUE;
+        }
+
+        @Override
+        public RowBlock call() {
+            try {
+                for (int row = startRow; row < stopRow; row++) {
+                    parseRow(row);
+                }
+            } catch (IllegalArgumentException e) {
+                error = e;
+            }
+            return this;
+        }
+
+        private void parseRow(int row)
+                throws IllegalArgumentException {
+
+            final double[] rowValues = values[row];
+            final int stop = rowStops[row];
+            int i = rowStarts[row];
+            int column = 0;
+            int tokenStart;
+            double value;
+            IllegalArgumentException valueError = null;
+            while (true) {
+
+                // an empty row or a leading delimiter yields an empty first value
+                if (column > 0) {
+                    while ((i < stop) && isDelimiter(buffer.get(i))) {
+                        i++;
+                    }
+                    if (i == stop) {
+                        break;
+                    }
+                }
+
+                tokenStart = i;
+                while ((i < stop) && (! isDelimiter(buffer.get(i)))) {
+                    i++;
+                }
+
+                if ((column < columnCount) && (valueError == null)) {
+                    try {
+                        value = parseToken(tokenStart, i);
+                        rowValues[column] = value;
+                        if (value < minimumValue) {
+                            minimumValue = value;
+                        }
+                        if (value > maximumValue) {
+                            maximumValue = value;
+                        }
+                    } catch (NumberFormatException e) {
+                        // defer so that column count errors are reported first
+                        valueError = new IllegalArgumentException(
+                                "Row " + (row + 1) + " column " + (column + 1) +
+                                " contains invalid value '" +
+                                getToken(tokenStart, i) +
+                                "' in the matrix file " +
+                                file.getAbsolutePath() + ".", e);
+                    }
+                }
+                column++;
+
+                if (i == stop) {
+                    break;
+                }
+            }
+
+            if (column != columnCount) {
+                throw new IllegalArgumentException(
+                        "Row " + (row + 1) +  " contains " + column +
+                        " elements while all previous rows contain " +
+                        columnCount + " elements for the matrix file " +
+                        file.getAbsolutePath() + ".");
+            }
+
+            if (valueError != null) {
+                throw valueError;
+            }
+        }
+    }
+
+    private static boolean isDelimiter(byte b) {
+        return (b == ' ') || (b == ',') || (b == '\t') || (b == '\r') ||
+               (b == '\n') || (b == '\f') || (b == 0x0B);
+    }
+
+    /**
+     * @return true if {@link String#trim} removes the specified character.
+     */
+    private static boolean isTrimmed(byte b) {
+        return (b & 0xff) <= ' ';
+    }
+
+    private static int[] copyOf(int[] array,
+                                int length) {
+        final int[] copy = new int[length];
+        System.arraycopy(array, 0, copy, 0, Math.min(array.length, length));
+        return copy;
+    }
+
+    private static final int MAX_SIGNIFICANT_DIGITS = 18;
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+    private static final int MAX_EXACT_EXPONENT = 22;
+    private static final double[] POWERS_OF_TEN = new double[MAX_EXACT_EXPONENT + 1];
+    static {
+        POWERS_OF_TEN[0] = 1.0;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+}
@@ -24,6 +24,9 @@ import java.util.regex.Pattern;
  */
 public class MatrixFile {
 
+    /** Default value delimiter expression (white space and/or commas). */
+    public static final String DEFAULT_DELIMITER = "[\\s,]+";
+
     private File file;
 
     private String delimiter;
@@ -47,11 +50,14 @@ public class MatrixFile {
      */
     public MatrixFile(File file)
             throws IllegalArgumentException {
-        this(file, "[\\s,]+");
+        this(file, DEFAULT_DELIMITER);
     }
 
     /**
      * Parses the specified file using the specified value delimiter expression.
+     * Files that use the {@link #DEFAULT_DELIMITER} are memory mapped and
+     * parsed in parallel.  Other delimiter expressions are applied
+     * line by line.
      *
      * @param  file       file to parse.
      * @param  delimiter  the regular expression pattern {@link Pattern}
@@ -81,6 +87,33 @@ public class MatrixFile {
                     file.getAbsolutePath() + ".");
         }
 
+        if (DEFAULT_DELIMITER.equals(delimiter)) {
+            parseMappedFile();
+        } else {
+            parseDelimitedLines();
+        }
+    }
+
+    private void parseMappedFile()
+            throws IllegalArgumentException {
+        try {
+            final MappedMatrixParser parser = new MappedMatrixParser(file);
+            this.values = parser.getValues();
+            this.numberOfColumns = parser.getColumnCount();
+            this.minimumValue = parser.getMinimumValue();
+            this.maximumValue = parser.getMaximumValue();
+        } catch (IllegalArgumentException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalArgumentException(
+                    "Failed to parse the matrix file " +
+                    file.getAbsolutePath() + ".", e);
+        }
+    }
+
+    private void parseDelimitedLines()
+            throws IllegalArgumentException {
+
         BufferedReader in = null;
         try {
 
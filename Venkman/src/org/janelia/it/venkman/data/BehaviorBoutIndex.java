@@ -0,0 +1,316 @@
+/*
+ * Copyright (c) 2014 Howard Hughes Medical Institute.
+ * All rights reserved.
+ * Use is subject to Janelia Farm Research Campus Software Copyright 1.1
+ * license terms (http://license.janelia.org/license/jfrc_copyright_1_1.html).
+ */
+
+package org.janelia.it.venkman.data;
+
+import java.util.List;
+
+/**
+ * Run length index of the behavior mode bouts (consecutive frames
+ * with the same mode) for a sequence of frames.
+ *
+ * The index is built once and stored as parallel (start, stop, mode)
+ * arrays so that the bout containing any frame can be found with a
+ * binary search.  Modes are encoded with {@link BehaviorModeComparison#encode}
+ * so frames without a mode are treated as {@link LarvaBehaviorMode#IGNORE}.
+ *
+ * @author Eric Trautman
+ */
+public class BehaviorBoutIndex {
+
+    private int frameCount;
+    private int boutCount;
+    private int[] starts;
+    private int[] stops;
+    private byte[] modes;
+    private long[] startTimes;
+    private long endTime;
+
+    /**
+     * Builds an index for the specified frames.
+     *
+     * @param  frameDataList  list of frames.
+     */
+    public BehaviorBoutIndex(List<LarvaFrameData> frameDataList) {
+        this(BehaviorModeComparison.getTimes(frameDataList),
+             BehaviorModeComparison.encodeModes(frameDataList));
+    }
+
+    /**
+     * Builds an index for the specified (encoded) mode sequence.
+     *
+     * @param  times  capture times for each frame (in ascending order).
+     * @param  modes  encoded modes for each frame.
+     *
+     * @throws IllegalArgumentException
+     *   if the time and mode arrays differ in length.
+     */
+    public BehaviorBoutIndex(long[] times,
+                             byte[] modes)
+            throws IllegalArgumentException {
+
+        if (times.length != modes.length) {
+            throw new IllegalArgumentException(
+                    "time and mode arrays must have the same length");
+        }
+
+        this.frameCount = modes.length;
+
+        int count = 0;
+        for (int i = 0; i < frameCount; i++) {
+            if ((i == 0) || (modes[i] != modes[i - 1])) {
+                count++;
+            }
+        }
+
+        this.boutCount = count;
+        this.starts = new int[count];
+        this.stops = new int[count];
+        this.modes = new byte[count];
+        this.startTimes = new long[count];
+
+        int bout = -1;
+        for (int i = 0; i < frameCount; i++) {
+            if ((i == 0) || (modes[i] != modes[i - 1])) {
+                bout++;
+                this.starts[bout] = i;
+                this.modes[bout] = modes[i];
+                this.startTimes[bout] = times[i];
+            }
+            this.stops[bout] = i;
+        }
+
+        if (frameCount > 0) {
+            this.endTime = times[frameCount - 1];
+        }
+    }
+
+    /**
+     * @return number of indexed frames.
+     */
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * @return number of bouts.
+     */
+    public int getBoutCount() {
+        return boutCount;
+    }
+
+    /**
+     * @param  frameIndex  index of a frame.
+     *
+     * @return index of the bout that contains the specified frame or
+     *         -1 if the frame is out of range.
+     */
+    public int getBoutIndex(int frameIndex) {
+        int boutIndex = -1;
+        if ((frameIndex >= 0) && (frameIndex < frameCount)) {
+            int low = 0;
+            int high = boutCount - 1;
+            int middle;
+            while (low < high) {
+                // bias upward so that the last bout starting at or before the frame is found
+                middle = (low + high + 1) >>> 1;
+                if (starts[middle] <= frameIndex) {
+                    low = middle;
+                } else {
+                    high = middle - 1;
+                }
+            }
+            boutIndex = low;
+        }
+        return boutIndex;
+    }
+
+    /**
+     * @param  boutIndex  index of a bout.
+     *
+     * @return index of the first frame in the specified bout.
+     */
+    public int getStart(int boutIndex) {
+        return starts[boutIndex];
+    }
+
+    /**
+     * @param  boutIndex  index of a bout.
+     *
+     * @return index of the last frame in the specified bout.
+     */
+    public int getStop(int boutIndex) {
+        return stops[boutIndex];
+    }
+
+    /**
+     * @param  boutIndex  index of a bout.
+     *
+     * @return mode for the specified bout.
+     */
+    public LarvaBehaviorMode getMode(int boutIndex) {
+        return BehaviorModeComparison.decode(modes[boutIndex]);
+    }
+
+    /**
+     * @param  boutIndex  index of a bout.
+     *
+     * @return number of frames in the specified bout.
+     */
+    public int getFrameCount(int boutIndex) {
+        return stops[boutIndex] - starts[boutIndex] + 1;
+    }
+
+    /**
+     * @param  boutIndex  index of a bout.
+     *
+     * @return duration (in milliseconds) of the specified bout,
+     *         measured from its first frame to the first frame of the
+     *         following bout (or the last frame for the final bout).
+     */
+    public long getDuration(int boutIndex) {
+        final long boutEndTime;
+        if (boutIndex + 1 < boutCount) {
+            boutEndTime = startTimes[boutIndex + 1];
+        } else {
+            boutEndTime = endTime;
+        }
+        return boutEndTime - startTimes[boutIndex];
+    }
+
+    /**
+     * @param  mode  mode of interest.
+     *
+     * @return aggregate statistics for all bouts with the specified mode.
+     */
+    public BoutStatistics getBoutStatistics(LarvaBehaviorMode mode) {
+        final byte code = BehaviorModeComparison.encode(mode);
+        final BoutStatistics statistics = new BoutStatistics(mode);
+        for (int i = 0; i < boutCount; i++) {
+            if (modes[i] == code) {
+                statistics.add(getFrameCount(i), getDuration(i));
+            }
+        }
+        return statistics;
+    }
+
+    /**
+     * @return a formatted table of bout statistics for each mode that
+     *         has at least one bout, suitable for console or log output.
+     */
+    public String getBoutStatisticsReport() {
+        final StringBuilder sb = new StringBuilder(1024);
+        sb.append(String.format("%-12s%8s%10s%12s%12s%12s%12s\n",
+                                "mode", "bouts", "frames",
+                                "total ms", "mean ms", "min ms", "max ms"));
+        BoutStatistics statistics;
+        for (LarvaBehaviorMode mode : LarvaBehaviorMode.values()) {
+            statistics = getBoutStatistics(mode);
+            if (statistics.getBoutCount() > 0) {
+                sb.append(String.format("%-12s%8d%10d%12d%12.1f%12d%12d\n",
+                                        mode.getName(),
+                                        statistics.getBoutCount(),
+                                        statistics.getFrameCount(),
+                                        statistics.getTotalDuration(),
+                                        statistics.getMeanDuration(),
+                                        statistics.getMinimumDuration(),
+                                        statistics.getMaximumDuration()));
+            }
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        return "BehaviorBoutIndex{" +
+               "frameCount=" + frameCount +
+               ", boutCount=" + boutCount +
+               '}';
+    }
+
+    /**
+     * Aggregate bout statistics for a single mode.
+     */
+    public static class BoutStatistics {
+
+        private LarvaBehaviorMode mode;
+        private int boutCount;
+        private int frameCount;
+        private long totalDuration;
+        private long minimumDuration;
+        private long maximumDuration;
+
+        public BoutStatistics(LarvaBehaviorMode mode) {
+            this.mode = mode;
+            this.boutCount = 0;
+            this.frameCount = 0;
+            this.totalDuration = 0;
+            this.minimumDuration = 0;
+            this.maximumDuration = 0;
+        }
+
+        public LarvaBehaviorMode getMode() {
+            return mode;
+        }
+
+        public int getBoutCount() {
+            return boutCount;
+        }
+
+        public int getFrameCount() {
+            return frameCount;
+        }
+
+        public long getTotalDuration() {
+            return totalDuration;
+        }
+
+        /**
+         * @return mean bout duration (or 0 if there are no bouts).
+         */
+        public double getMeanDuration() {
+            double mean = 0;
+            if (boutCount > 0) {
+                mean = (double) totalDuration / boutCount;
+            }
+            return mean;
+        }
+
+        public long getMinimumDuration() {
+            return minimumDuration;
+        }
+
+        public long getMaximumDuration() {
+            return maximumDuration;
+        }
+
+        @Override
+        public String toString() {
+            return "BoutStatistics{" +
+                   "mode=" + mode +
+                   ", boutCount=" + boutCount +
+                   ", frameCount=" + frameCount +
+                   ", totalDuration=" + totalDuration +
+                   ", minimumDuration=" + minimumDuration +
+                   ", maximumDuration=" + maximumDuration +
+                   '}';
+        }
+
+        private void add(int boutFrameCount,
+                         long duration) {
+            if ((boutCount == 0) || (duration < minimumDuration)) {
+                minimumDuration = duration;
+            }
+            if ((boutCount == 0) || (duration > maximumDuration)) {
+                maximumDuration = duration;
+            }
+            boutCount++;
+            frameCount += boutFrameCount;
+            totalDuration += duration;
+        }
+    }
+}
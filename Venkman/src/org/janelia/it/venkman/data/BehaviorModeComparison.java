@@ -0,0 +1,538 @@
+/*
+ * Copyright (c) 2014 Howard Hughes Medical Institute.
+ * All rights reserved.
+ * Use is subject to Janelia Farm Research Campus Software Copyright 1.1
+ * license terms (http://license.janelia.org/license/jfrc_copyright_1_1.html).
+ */
+
+package org.janelia.it.venkman.data;
+
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Compares the behavior modes derived for two sets of frames
+ * (typically an actual/experimental run and an expected/annotated run).
+ *
+ * Frames are aligned by capture time (rather than by list index) so that
+ * runs captured at different frame rates can be compared.  Modes are
+ * encoded as byte arrays (one slot per actual frame) and all per-frame
+ * results are kept in bit sets so that difference navigation reduces to
+ * {@link BitSet#nextSetBit} and {@link BitSet#previousSetBit} calls.
+ *
+ * @author Eric Trautman
+ */
+public class BehaviorModeComparison {
+
+    /** Encoded mode value for actual frames without an aligned expected frame. */
+    public static final byte UNALIGNED = -1;
+
+    /**
+     * Default maximum difference (in milliseconds) between the capture times
+     * of an actual frame and its aligned expected frame.
+     */
+    public static final long DEFAULT_MAX_ALIGNMENT_MILLISECONDS = 50;
+
+    private static final LarvaBehaviorMode[] MODES = LarvaBehaviorMode.values();
+    private static final byte IGNORE_CODE = encode(LarvaBehaviorMode.IGNORE);
+
+    /** Lookup table of equivalent modes (indexed by encoded values). */
+    private static final boolean[][] IS_EQUIVALENT;
+    static {
+        IS_EQUIVALENT = new boolean[MODES.length][MODES.length];
+        for (int i = 0; i < MODES.length; i++) {
+            for (int j = 0; j < MODES.length; j++) {
+                IS_EQUIVALENT[i][j] = MODES[i].isEquivalent(MODES[j]);
+            }
+        }
+    }
+
+    private byte[] actualModes;
+    private byte[] expectedModes;
+    private int[] alignedExpectedIndexes;
+    private BitSet differences;
+    private BitSet differenceStarts;
+    private int alignedFrameCount;
+    private int[][] confusionMatrix;
+
+    /**
+     * Compares the specified frame lists using the default alignment
+     * tolerance.
+     *
+     * @param  actualList    actual (experimental) frames.
+     * @param  expectedList  expected (annotated) frames.
+     */
+    public BehaviorModeComparison(List<LarvaFrameData> actualList,
+                                  List<LarvaFrameData> expectedList) {
+        this(getTimes(actualList), encodeModes(actualList),
+             getTimes(expectedList), encodeModes(expectedList),
+             DEFAULT_MAX_ALIGNMENT_MILLISECONDS);
+    }
+
+    /**
+     * Compares the specified (encoded) mode sequences.
+     *
+     * @param  actualTimes              capture times for the actual frames
+     *                                  (in ascending order).
+     * @param  actualModes              encoded modes for the actual frames.
+     * @param  expectedTimes            capture times for the expected frames
+     *                                  (in ascending order).
+     * @param  expectedModes            encoded modes for the expected frames.
+     * @param  maxAlignmentMilliseconds maximum capture time difference
+     *                                  between aligned frames.
+     *
+     * @throws IllegalArgumentException
+     *   if the time and mode arrays for either run differ in length.
+     */
+    public BehaviorModeComparison(long[] actualTimes,
+                                  byte[] actualModes,
+                                  long[] expectedTimes,
+                                  byte[] expectedModes,
+                                  long maxAlignmentMilliseconds)
+            throws IllegalArgumentException {
+
+        if ((actualTimes.length != actualModes.length) ||
+            (expectedTimes.length != expectedModes.length)) {
+            throw new IllegalArgumentException(
+                    "time and mode arrays must have the same length");
+        }
+
+        this.actualModes = actualModes;
+        this.alignedExpectedIndexes = align(actualTimes,
+                                            expectedTimes,
+                                            maxAlignmentMilliseconds);
+
+        final int size = actualModes.length;
+        this.expectedModes = new byte[size];
+        this.alignedFrameCount = 0;
+        int expectedIndex;
+        for (int i = 0; i < size; i++) {
+            expectedIndex = alignedExpectedIndexes[i];
+            if (expectedIndex < 0) {
+                this.expectedModes[i] = UNALIGNED;
+            } else {
+                this.expectedModes[i] = expectedModes[expectedIndex];
+                this.alignedFrameCount++;
+            }
+        }
+
+        compare();
+    }
+
+    /**
+     * @return number of actual frames.
+     */
+    public int getFrameCount() {
+        return actualModes.length;
+    }
+
+    /**
+     * @return number of actual frames that could be aligned with
+     *         an expected frame.
+     */
+    public int getAlignedFrameCount() {
+        return alignedFrameCount;
+    }
+
+    /**
+     * @return number of actual frames that could not be aligned with
+     *         an expected frame (and so are excluded from the comparison).
+     */
+    public int getUnalignedFrameCount() {
+        return actualModes.length - alignedFrameCount;
+    }
+
+    /**
+     * @param  actualIndex  index of an actual frame.
+     *
+     * @return index of the expected frame aligned with the specified
+     *         actual frame or -1 if no expected frame was aligned.
+     */
+    public int getAlignedExpectedIndex(int actualIndex) {
+        int expectedIndex = -1;
+        if ((actualIndex >= 0) && (actualIndex < alignedExpectedIndexes.length)) {
+            expectedIndex = alignedExpectedIndexes[actualIndex];
+        }
+        return expectedIndex;
+    }
+
+    /**
+     * @return number of actual frames whose mode differs from
+     *         the aligned expected mode.
+     */
+    public int getDifferenceCount() {
+        return differences.cardinality();
+    }
+
+    /**
+     * @return percentage (0 to 100) of aligned actual frames that do not
+     *         differ from their expected frames or -1 if no frames could
+     *         be aligned.  Unaligned frames are excluded
+     *         (see {@link #getUnalignedFrameCount}).
+     */
+    public double getSimilarityPercentage() {
+        double similarityPercentage = -1;
+        if (alignedFrameCount > 0) {
+            final double difference =
+                    (double) differences.cardinality() / alignedFrameCount;
+            similarityPercentage = 100.0 - (difference * 100.0);
+        }
+        return similarityPercentage;
+    }
+
+    /**
+     * @param  actualIndex  index of an actual frame.
+     *
+     * @return true if the actual frame's mode differs from its
+     *         aligned expected mode.
+     */
+    public boolean hasDifference(int actualIndex) {
+        return (actualIndex >= 0) && differences.get(actualIndex);
+    }
+
+    /**
+     * @param  actualIndex  index of the current actual frame.
+     *
+     * @return index of the first frame of the next difference
+     *         (skipping the remainder of any difference that includes
+     *         the current frame) or -1 if there are no more differences.
+     */
+    public int getNextDifference(int actualIndex) {
+        return differenceStarts.nextSetBit(Math.max(actualIndex + 1, 0));
+    }
+
+    /**
+     * @param  actualIndex  index of the current actual frame.
+     *
+     * @return index of the first frame of the previous difference
+     *         (skipping the beginning of any difference that includes
+     *         the current frame) or -1 if there are no prior differences.
+     */
+    public int getPreviousDifference(int actualIndex) {
+        int fromIndex = actualIndex - 1;
+        if (hasDifference(actualIndex)) {
+            fromIndex = differenceStarts.previousSetBit(actualIndex) - 1;
+        }
+        int previousIndex = -1;
+        if (fromIndex >= 0) {
+            previousIndex = differenceStarts.previousSetBit(fromIndex);
+        }
+        return previousIndex;
+    }
+
+    /**
+     * @param  actualIndex  index of an actual frame.
+     *
+     * @return index of the first frame in the difference that includes
+     *         the specified frame or -1 if the frame is not different.
+     */
+    public int getDifferenceStart(int actualIndex) {
+        int start = -1;
+        if (hasDifference(actualIndex)) {
+            start = differenceStarts.previousSetBit(actualIndex);
+        }
+        return start;
+    }
+
+    /**
+     * @return matrix of aligned frame counts where the first index is
+     *         the (ordinal of the) expected mode and the second index is
+     *         the (ordinal of the) actual mode.
+     */
+    public int[][] getConfusionMatrix() {
+        final int[][] copy = new int[confusionMatrix.length][];
+        for (int i = 0; i < confusionMatrix.length; i++) {
+            copy[i] = confusionMatrix[i].clone();
+        }
+        return copy;
+    }
+
+    /**
+     * @param  mode  mode of interest.
+     *
+     * @return agreement statistics for the specified mode
+     *         (treating sampling as a synonym for casting).
+     */
+    public ModeStatistics getModeStatistics(LarvaBehaviorMode mode) {
+        final int m = encode(mode);
+        int truePositives = 0;
+        int falsePositives = 0;
+        int falseNegatives = 0;
+        int count;
+        for (int e = 0; e < MODES.length; e++) {
+            for (int a = 0; a < MODES.length; a++) {
+                count = confusionMatrix[e][a];
+                if ((count == 0) || (a == IGNORE_CODE)) {
+                    continue;
+                }
+                if (a == m) {
+                    if (IS_EQUIVALENT[e][m]) {
+                        truePositives += count;
+                    } else {
+                        falsePositives += count;
+                    }
+                } else if ((e == m) && (! IS_EQUIVALENT[a][m])) {
+                    falseNegatives += count;
+                }
+            }
+        }
+        return new ModeStatistics(mode,
+                                  truePositives,
+                                  falsePositives,
+                                  falseNegatives);
+    }
+
+    /**
+     * @return a formatted table of the confusion matrix counts
+     *         suitable for console or log output.
+     */
+    public String getConfusionMatrixReport() {
+        final StringBuilder sb = new StringBuilder(1024);
+        sb.append(String.format("%-12s", "exp \\ act"));
+        for (LarvaBehaviorMode actual : MODES) {
+            sb.append(String.format("%12s", actual.getName()));
+        }
+        sb.append('\n');
+        for (LarvaBehaviorMode expected : MODES) {
+            sb.append(String.format("%-12s", expected.getName()));
+            for (LarvaBehaviorMode actual : MODES) {
+                sb.append(String.format(
+                        "%12d",
+                        confusionMatrix[expected.ordinal()][actual.ordinal()]));
+            }
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        return "BehaviorModeComparison{" +
+               "frameCount=" + actualModes.length +
+               ", alignedFrameCount=" + alignedFrameCount +
+               ", differenceCount=" + differences.cardinality() +
+               '}';
+    }
+
+    /**
+     * @param  mode  mode to encode (null is treated as ignore).
+     *
+     * @return byte encoding for the specified mode.
+     */
+    public static byte encode(LarvaBehaviorMode mode) {
+        if (mode == null) {
+            mode = LarvaBehaviorMode.IGNORE;
+        }
+        return (byte) mode.ordinal();
+    }
+
+    /**
+     * @param  code  encoded mode.
+     *
+     * @return the mode for the specified encoding or null if the
+     *         code is {@link #UNALIGNED}.
+     */
+    public static LarvaBehaviorMode decode(byte code) {
+        LarvaBehaviorMode mode = null;
+        if (code != UNALIGNED) {
+            mode = MODES[code];
+        }
+        return mode;
+    }
+
+    /**
+     * @param  frameDataList  list of frames.
+     *
+     * @return array of encoded modes for the specified frames.
+     */
+    public static byte[] encodeModes(List<LarvaFrameData> frameDataList) {
+        final byte[] modes = new byte[frameDataList.size()];
+        int i = 0;
+        for (LarvaFrameData frameData : frameDataList) {
+            modes[i] = encode(frameData.getBehaviorMode());
+            i++;
+        }
+        return modes;
+    }
+
+    /**
+     * @param  frameDataList  list of frames.
+     *
+     * @return array of capture times for the specified frames.
+     */
+    public static long[] getTimes(List<LarvaFrameData> frameDataList) {
+        final long[] times = new long[frameDataList.size()];
+        int i = 0;
+        for (LarvaFrameData frameData : frameDataList) {
+            times[i] = frameData.getTime();
+            i++;
+        }
+        return times;
+    }
+
+    /**
+     * Aligns each actual frame with the expected frame that has the
+     * closest capture time.  Both time arrays must be sorted.
+     *
+     * @return array of aligned expected frame indexes
+     *         (or -1 for unaligned frames) for each actual frame.
+     */
+    private static int[] align(long[] actualTimes,
+                               long[] expectedTimes,
+                               long maxAlignmentMilliseconds) {
+
+        final int[] aligned = new int[actualTimes.length];
+        final int lastExpected = expectedTimes.length - 1;
+
+        int j = 0;
+        long t;
+        for (int i = 0; i < actualTimes.length; i++) {
+            t = actualTimes[i];
+            if (lastExpected < 0) {
+                aligned[i] = -1;
+            } else {
+                // prefer the earlier frame when two frames are equally close
+                while ((j < lastExpected) &&
+                       ((expectedTimes[j + 1] <= t) ||
+                        (Math.abs(expectedTimes[j + 1] - t) <
+                         Math.abs(expectedTimes[j] - t)))) {
+                    j++;
+                }
+                if (Math.abs(expectedTimes[j] - t) <= maxAlignmentMilliseconds) {
+                    aligned[i] = j;
+                } else {
+                    aligned[i] = -1;
+                }
+            }
+        }
+
+        return aligned;
+    }
+
+    private void compare() {
+
+        final int size = actualModes.length;
+
+        differences = new BitSet(size);
+        differenceStarts = new BitSet(size);
+        confusionMatrix = new int[MODES.length][MODES.length];
+
+        byte actual;
+        byte expected;
+        boolean isPreviousDifferent = false;
+        byte previousActual = UNALIGNED;
+        byte previousExpected = UNALIGNED;
+        for (int i = 0; i < size; i++) {
+
+            actual = actualModes[i];
+            expected = expectedModes[i];
+
+            if (expected == UNALIGNED) {
+                isPreviousDifferent = false;
+                continue;
+            }
+
+            confusionMatrix[expected][actual]++;
+
+            if ((! IS_EQUIVALENT[expected][actual]) && (actual != IGNORE_CODE)) {
+
+                differences.set(i);
+
+                // a new difference starts whenever either mode changes
+                if ((! isPreviousDifferent) ||
+                    (! IS_EQUIVALENT[previousExpected][expected]) ||
+                    (! IS_EQUIVALENT[previousActual][actual])) {
+                    differenceStarts.set(i);
+                }
+
+                isPreviousDifferent = true;
+
+            } else {
+                isPreviousDifferent = false;
+            }
+
+            previousActual = actual;
+            previousExpected = expected;
+        }
+    }
+
+    /**
+     * Agreement statistics for a single mode.
+     */
+    public static class ModeStatistics {
+
+        private LarvaBehaviorMode mode;
+        private int truePositives;
+        private int falsePositives;
+        private int falseNegatives;
+
+        public ModeStatistics(LarvaBehaviorMode mode,
+                              int truePositives,
+                              int falsePositives,
+                              int falseNegatives) {
+            this.mode = mode;
+            this.truePositives = truePositives;
+            this.falsePositives = falsePositives;
+            this.falseNegatives = falseNegatives;
+        }
+
+        public LarvaBehaviorMode getMode() {
+            return mode;
+        }
+
+        public int getTruePositives() {
+            return truePositives;
+        }
+
+        public int getFalsePositives() {
+            return falsePositives;
+        }
+
+        public int getFalseNegatives() {
+            return falseNegatives;
+        }
+
+        /**
+         * @return fraction of frames classified with this mode that were
+         *         expected to have this mode (or 0 if none were classified).
+         */
+        public double getPrecision() {
+            return ratio(truePositives, truePositives + falsePositives);
+        }
+
+        /**
+         * @return fraction of frames expected to have this mode that were
+         *         classified with this mode (or 0 if none were expected).
+         */
+        public double getRecall() {
+            return ratio(truePositives, truePositives + falseNegatives);
+        }
+
+        /**
+         * @return harmonic mean of precision and recall.
+         */
+        public double getF1Score() {
+            return ratio(2 * truePositives,
+                         (2 * truePositives) + falsePositives + falseNegatives);
+        }
+
+        @Override
+        public String toString() {
+            return "ModeStatistics{" +
+                   "mode=" + mode +
+                   ", truePositives=" + truePositives +
+                   ", falsePositives=" + falsePositives +
+                   ", falseNegatives=" + falseNegatives +
+                   '}';
+        }
+
+        private static double ratio(int numerator,
+                                    int denominator) {
+            double value = 0;
+            if (denominator > 0) {
+                value = (double) numerator / denominator;
+            }
+            return value;
+        }
+    }
+}
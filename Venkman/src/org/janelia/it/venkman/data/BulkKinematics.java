@@ -0,0 +1,556 @@
+/*
+ * Copyright (c) 2014 Howard Hughes Medical Institute.
+ * All rights reserved.
+ * Use is subject to Janelia Farm Research Campus Software Copyright 1.1
+ * license terms (http://license.janelia.org/license/jfrc_copyright_1_1.html).
+ */
+
+package org.janelia.it.venkman.data;
+
+import org.janelia.it.venkman.config.LarvaBehaviorParameters;
+
+/**
+ * Derives the kinematic data for all frames of an archived run at once.
+ *
+ * The skeleton coordinates and angles are copied into columnar arrays when
+ * the kernel is constructed.  Everything except jump handling, smoothing,
+ * and the behavior mode state machine is a pure function of adjacent
+ * skeletons, so the frame to frame speeds, angle speeds, and dot products
+ * are also derived once at construction (with simple loops over primitive
+ * arrays that the JIT can unroll and vectorize) assuming no frames are
+ * skipped.  Each parameter specific derivation then:
+ * <ol>
+ *   <li>identifies skipped (jump) frames with a sequential pass and
+ *       re-derives the values for the few frames adjacent to them,</li>
+ *   <li>smooths the angle speeds and dot products, and</li>
+ *   <li>runs the behavior mode state machine as a final sequential pass.</li>
+ * </ol>
+ * This allows parameter sweeps to share one kernel per run.
+ *
+ * Every value is calculated with the same operations in the same order
+ * used by {@link LarvaFrameData#calculateDerivedData}, so the results are
+ * identical to those derived one frame at a time.
+ *
+ * Kernels are not modified after construction and may be shared by
+ * multiple threads.
+ *
+ * @author Eric Trautman
+ */
+public class BulkKinematics {
+
+    private LarvaSkeleton[] skeletons;
+    private int size;
+
+    private long[] time;
+    private double[] headX;
+    private double[] headY;
+    private double[] midpointX;
+    private double[] midpointY;
+    private double[] tailX;
+    private double[] tailY;
+    private double[] centroidX;
+    private double[] centroidY;
+    private double[] length;
+    private double[] headToBodyAngle;
+    private double[] tailBearing;
+    private double[] bodyAngleUnitX;
+    private double[] bodyAngleUnitY;
+    private boolean[] isHeadLeftOfBody;
+
+    // frame to frame values derived assuming no frames are skipped
+    private double[] elapsedSeconds;
+    private double[] centroidSpeed;
+    private double[] headSpeed;
+    private double[] midpointSpeed;
+    private double[] tailSpeed;
+    private double[] headAngleSpeed;
+    private double[] bodyAngleSpeed;
+    private double[] tailSpeedDotBodyAngle;
+
+    /**
+     * Constructs a kernel for the specified run.
+     *
+     * @param  skeletons  original tracker skeletons for the run
+     *                    (in capture order).  The skeletons are not modified.
+     */
+    public BulkKinematics(LarvaSkeleton[] skeletons) {
+        this.skeletons = skeletons;
+        this.size = skeletons.length;
+
+        this.time = new long[size];
+        this.headX = new double[size];
+        this.headY = new double[size];
+        this.midpointX = new double[size];
+        this.midpointY = new double[size];
+        this.tailX = new double[size];
+        this.tailY = new double[size];
+        this.centroidX = new double[size];
+        this.centroidY = new double[size];
+        this.length = new double[size];
+        this.headToBodyAngle = new double[size];
+        this.tailBearing = new double[size];
+
+        LarvaSkeleton skeleton;
+        for (int i = 0; i < size; i++) {
+            skeleton = skeletons[i];
+            time[i] = skeleton.getCaptureTime();
+            headX[i] = skeleton.getHead().getX();
+            headY[i] = skeleton.getHead().getY();
+            midpointX[i] = skeleton.getMidpoint().getX();
+            midpointY[i] = skeleton.getMidpoint().getY();
+            tailX[i] = skeleton.getTail().getX();
+            tailY[i] = skeleton.getTail().getY();
+            centroidX[i] = skeleton.getCentroid().getX();
+            centroidY[i] = skeleton.getCentroid().getY();
+            length[i] = skeleton.getLength();
+            headToBodyAngle[i] = skeleton.getHeadToBodyAngle();
+            tailBearing[i] = skeleton.getTailBearing();
+        }
+
+        this.bodyAngleUnitX = new double[size];
+        this.bodyAngleUnitY = new double[size];
+        this.isHeadLeftOfBody = new boolean[size];
+
+        double bodyAngleInRadians;
+        for (int i = 0; i < size; i++) {
+            bodyAngleInRadians = Calculator.getJavaAngleForTrackerAngle(tailBearing[i]);
+            bodyAngleUnitX[i] = Math.cos(bodyAngleInRadians);
+            bodyAngleUnitY[i] = Math.sin(bodyAngleInRadians);
+        }
+
+        for (int i = 0; i < size; i++) {
+            isHeadLeftOfBody[i] =
+                    Calculator.isCoordinateLeftOfVector(headX[i], headY[i],
+                                                        tailX[i], tailY[i],
+                                                        midpointX[i], midpointY[i]);
+        }
+
+        this.elapsedSeconds = new double[size];
+        this.centroidSpeed = new double[size];
+        this.headSpeed = new double[size];
+        this.midpointSpeed = new double[size];
+        this.tailSpeed = new double[size];
+        this.headAngleSpeed = new double[size];
+        this.bodyAngleSpeed = new double[size];
+        this.tailSpeedDotBodyAngle = new double[size];
+
+        for (int i = 1; i < size; i++) {
+            elapsedSeconds[i] = (double) (time[i] - time[i - 1]) / 1000.0;
+        }
+
+        for (int i = 1; i < size; i++) {
+            centroidSpeed[i] = getSpeed(centroidX, centroidY, i, i - 1, elapsedSeconds[i]);
+        }
+        for (int i = 1; i < size; i++) {
+            headSpeed[i] = getSpeed(headX, headY, i, i - 1, elapsedSeconds[i]);
+        }
+        for (int i = 1; i < size; i++) {
+            midpointSpeed[i] = getSpeed(midpointX, midpointY, i, i - 1, elapsedSeconds[i]);
+        }
+        for (int i = 1; i < size; i++) {
+            tailSpeed[i] = getSpeed(tailX, tailY, i, i - 1, elapsedSeconds[i]);
+        }
+        for (int i = 1; i < size; i++) {
+            headAngleSpeed[i] = getHeadAngleSpeed(i, i - 1, elapsedSeconds[i]);
+        }
+        for (int i = 1; i < size; i++) {
+            bodyAngleSpeed[i] = getBodyAngleSpeed(i, i - 1, elapsedSeconds[i]);
+        }
+        for (int i = 1; i < size; i++) {
+            tailSpeedDotBodyAngle[i] = getTailSpeedDotBodyAngle(i, i - 1);
+        }
+    }
+
+    /**
+     * @return number of frames in the run.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Derives the data for every frame in the run.
+     *
+     * @param  parameters  behavior parameters for derivation.
+     *
+     * @return the derived data.
+     */
+    public Result derive(LarvaBehaviorParameters parameters) {
+
+        final Result result = new Result(this);
+
+        if (size > 0) {
+            final int[] effectiveIndex = deriveJumps(parameters, result);
+            deriveMaxLength(parameters, effectiveIndex, result);
+            final boolean[] isSmoothed =
+                    smooth(parameters.getMinBodyAngleSpeedDuration(), result);
+            deriveBehaviorModes(parameters, effectiveIndex, isSmoothed, result);
+        }
+
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "BulkKinematics{" +
+               "size=" + size +
+               '}';
+    }
+
+    private static double getSpeed(double[] x,
+                                   double[] y,
+                                   int current,
+                                   int previous,
+                                   double elapsedSeconds) {
+        final double deltaX = x[current] - x[previous];
+        final double deltaY = y[current] - y[previous];
+        return Math.sqrt((deltaX * deltaX) + (deltaY * deltaY)) / elapsedSeconds;
+    }
+
+    private double getHeadAngleSpeed(int current,
+                                     int previous,
+                                     double elapsedSeconds) {
+        return (headToBodyAngle[current] - headToBodyAngle[previous]) / elapsedSeconds;
+    }
+
+    private double getBodyAngleSpeed(int current,
+                                     int previous,
+                                     double elapsedSeconds) {
+        final double bodyAngle = tailBearing[current];
+        final double previousBodyAngle = tailBearing[previous];
+        double bodyAngleDelta = bodyAngle - previousBodyAngle;
+        // see LarvaFrameData#calculateDerivedData for branch point handling
+        if ((bodyAngleDelta > 179.999999) || (bodyAngleDelta < -179.999999)) {
+            final double oppositeDirectionBodyAngle;
+            if (bodyAngle > -0.0) {
+                oppositeDirectionBodyAngle = bodyAngle - 360;
+            } else {
+                oppositeDirectionBodyAngle = 360 + bodyAngle;
+            }
+            bodyAngleDelta = oppositeDirectionBodyAngle - previousBodyAngle;
+        }
+        return bodyAngleDelta / elapsedSeconds;
+    }
+
+    private double getTailSpeedDotBodyAngle(int current,
+                                            int previous) {
+        return Calculator.getDotProduct(tailX[previous],
+                                        tailY[previous],
+                                        tailX[current],
+                                        tailY[current],
+                                        Calculator.ORIGIN.getX(),
+                                        Calculator.ORIGIN.getY(),
+                                        bodyAngleUnitX[current],
+                                        bodyAngleUnitY[current]);
+    }
+
+    /**
+     * Identifies frames that should be skipped because the tracker
+     * coordinates have jumped unreasonably and re-derives the frame
+     * to frame values for frames that are adjacent to skipped frames.
+     *
+     * @return array mapping each frame to the index of the frame whose
+     *         measurements should be used for it.
+     */
+    private int[] deriveJumps(LarvaBehaviorParameters parameters,
+                              Result result) {
+
+        final double minCentroidSpeedToFlagJump = parameters.getMinCentroidSpeedToFlagJump();
+        final int maxJumpFramesToSkip = parameters.getMaxJumpFramesToSkip();
+        final int[] jumpFramesSkipped = result.jumpFramesSkipped;
+
+        final int[] effectiveIndex = new int[size];
+        int current;
+        int previous;
+        for (int i = 1; i < size; i++) {
+
+            previous = effectiveIndex[i - 1];
+            if (previous != (i - 1)) {
+                // centroid speed uses the original (not overridden) current centroid
+                result.centroidSpeed[i] = getSpeed(centroidX, centroidY, i, previous,
+                                                   elapsedSeconds[i]);
+            }
+
+            current = i;
+            if ((Math.abs(result.centroidSpeed[i]) > minCentroidSpeedToFlagJump) &&
+                (jumpFramesSkipped[i - 1] < maxJumpFramesToSkip)) {
+                current = previous;
+                jumpFramesSkipped[i] = jumpFramesSkipped[i - 1] + 1;
+                result.centroidSpeed[i] = 0;
+            }
+            effectiveIndex[i] = current;
+
+            if ((current != i) || (previous != (i - 1))) {
+                result.headSpeed[i] =
+                        getSpeed(headX, headY, current, previous, elapsedSeconds[i]);
+                result.midpointSpeed[i] =
+                        getSpeed(midpointX, midpointY, current, previous, elapsedSeconds[i]);
+                result.tailSpeed[i] =
+                        getSpeed(tailX, tailY, current, previous, elapsedSeconds[i]);
+                result.headAngleSpeed[i] =
+                        getHeadAngleSpeed(current, previous, elapsedSeconds[i]);
+                result.bodyAngleSpeed[i] =
+                        getBodyAngleSpeed(current, previous, elapsedSeconds[i]);
+                result.tailSpeedDotBodyAngle[i] =
+                        getTailSpeedDotBodyAngle(current, previous);
+            }
+        }
+
+        return effectiveIndex;
+    }
+
+    private void deriveMaxLength(LarvaBehaviorParameters parameters,
+                                 int[] effectiveIndex,
+                                 Result result) {
+
+        final long maxLengthDerivationDuration = parameters.getMaxLengthDerivationDuration();
+        final double[] derivedMaxLength = result.derivedMaxLength;
+        final double[] percentageOfMaxLength = result.percentageOfMaxLength;
+
+        derivedMaxLength[0] = length[0];
+        percentageOfMaxLength[0] = Double.NaN;
+        double currentLength;
+        for (int i = 1; i < size; i++) {
+            currentLength = length[effectiveIndex[i]];
+            if (time[i] < maxLengthDerivationDuration) {
+                if (currentLength > derivedMaxLength[i - 1]) {
+                    derivedMaxLength[i] = currentLength;
+                } else {
+                    derivedMaxLength[i] = derivedMaxLength[i - 1];
+                }
+                percentageOfMaxLength[i] = Double.NaN;
+            } else {
+                derivedMaxLength[i] = derivedMaxLength[i - 1];
+                percentageOfMaxLength[i] = (currentLength * 100.0) / derivedMaxLength[i];
+            }
+        }
+    }
+
+    /**
+     * Smooths the body angle speed, head angle speed, and tail speed
+     * body angle dot product values using the same weighted average
+     * as {@link LarvaFrameData#smoothData}.
+     *
+     * @return array identifying the frames that have enough history
+     *         for smoothing.
+     */
+    private boolean[] smooth(long smoothingDuration,
+                             Result result) {
+
+        final double[] bodyAngleSpeed = result.bodyAngleSpeed;
+        final double[] headAngleSpeed = result.headAngleSpeed;
+        final double[] tailSpeedDotBodyAngle = result.tailSpeedDotBodyAngle;
+        final double[] smoothedBodyAngleSpeed = result.smoothedBodyAngleSpeed;
+        final double[] smoothedHeadAngleSpeed = result.smoothedHeadAngleSpeed;
+        final double[] smoothedTailSpeedDotBodyAngle = result.smoothedTailSpeedDotBodyAngle;
+
+        final boolean[] isSmoothed = new boolean[size];
+
+        long currentMilliseconds;
+        long totalElapsedMilliseconds;
+        int durationFrameCount;
+        int frameCountSeries;
+        int frameCount;
+        double weight;
+        double bodyAngleSum;
+        double headAngleSum;
+        double dotProductSum;
+        for (int i = 1; i < size; i++) {
+
+            currentMilliseconds = time[i];
+            totalElapsedMilliseconds = 0;
+            durationFrameCount = 1; // current frame
+            for (int j = i - 1; j >= 0; j--) {
+                totalElapsedMilliseconds += currentMilliseconds - time[j];
+                currentMilliseconds = time[j];
+                if (totalElapsedMilliseconds > smoothingDuration) {
+                    isSmoothed[i] = true;
+                    break;
+                }
+                durationFrameCount++;
+            }
+
+            if (isSmoothed[i]) {
+
+                frameCountSeries = 0;
+                for (int k = 1; k <= durationFrameCount; k++) {
+                    frameCountSeries += k;
+                }
+
+                frameCount = durationFrameCount;
+                weight = (double) durationFrameCount / (double) frameCountSeries;
+                bodyAngleSum = bodyAngleSpeed[i] * weight;
+                headAngleSum = headAngleSpeed[i] * weight;
+                dotProductSum = tailSpeedDotBodyAngle[i] * weight;
+
+                for (int j = i - 1; frameCount > 1; j--) {
+                    frameCount--;
+                    weight = (double) frameCount / (double) frameCountSeries;
+                    bodyAngleSum += bodyAngleSpeed[j] * weight;
+                    headAngleSum += headAngleSpeed[j] * weight;
+                    dotProductSum += tailSpeedDotBodyAngle[j] * weight;
+                }
+
+                smoothedBodyAngleSpeed[i] = bodyAngleSum;
+                smoothedHeadAngleSpeed[i] = headAngleSum;
+                smoothedTailSpeedDotBodyAngle[i] = dotProductSum;
+            }
+        }
+
+        return isSmoothed;
+    }
+
+    /**
+     * Runs the (inherently sequential) behavior mode state machine
+     * using the data derived by the earlier passes.  Only two frame
+     * data instances are needed since the state machine only looks
+     * back one frame.
+     */
+    private void deriveBehaviorModes(LarvaBehaviorParameters parameters,
+                                     int[] effectiveIndex,
+                                     boolean[] isSmoothed,
+                                     Result result) {
+
+        final LarvaBehaviorMode[] behaviorModes = result.behaviorModes;
+
+        LarvaFrameData previousFrame = new LarvaFrameData(skeletons[0]);
+        LarvaFrameData frameData = new LarvaFrameData(skeletons[0]);
+        LarvaFrameData swap;
+        behaviorModes[0] = previousFrame.getBehaviorMode();
+
+        LarvaSkeleton skeleton;
+        int current;
+        for (int i = 1; i < size; i++) {
+
+            current = effectiveIndex[i];
+            skeleton = skeletons[i];
+            if (current != i) {
+                skeleton = skeleton.getClone();
+                skeleton.overrideMeasurements(skeletons[current]);
+            }
+            frameData.resetBehaviorMode(skeleton);
+
+            if (isSmoothed[i]) {
+                frameData.setBehaviorMode(parameters,
+                                          previousFrame,
+                                          result.smoothedBodyAngleSpeed[i],
+                                          headToBodyAngle[current],
+                                          isHeadLeftOfBody[current],
+                                          result.smoothedHeadAngleSpeed[i],
+                                          result.smoothedTailSpeedDotBodyAngle[i],
+                                          time[i] - time[i - 1]);
+            }
+
+            behaviorModes[i] = frameData.getBehaviorMode();
+
+            swap = previousFrame;
+            previousFrame = frameData;
+            frameData = swap;
+        }
+    }
+
+    /**
+     * Data derived for every frame in a run.  Each array is indexed
+     * by frame and is returned without being copied.
+     * Values that are not derived for the first frame are zero.
+     */
+    public static class Result {
+
+        private LarvaBehaviorMode[] behaviorModes;
+        private double[] bodyAngleSpeed;
+        private double[] smoothedBodyAngleSpeed;
+        private double[] headAngleSpeed;
+        private double[] smoothedHeadAngleSpeed;
+        private double[] tailSpeed;
+        private double[] midpointSpeed;
+        private double[] headSpeed;
+        private double[] centroidSpeed;
+        private double[] tailSpeedDotBodyAngle;
+        private double[] smoothedTailSpeedDotBodyAngle;
+        private int[] jumpFramesSkipped;
+        private double[] derivedMaxLength;
+        private double[] percentageOfMaxLength;
+
+        private Result(BulkKinematics kinematics) {
+            final int size = kinematics.size;
+            this.behaviorModes = new LarvaBehaviorMode[size];
+            this.bodyAngleSpeed = kinematics.bodyAngleSpeed.clone();
+            this.smoothedBodyAngleSpeed = new double[size];
+            this.headAngleSpeed = kinematics.headAngleSpeed.clone();
+            this.smoothedHeadAngleSpeed = new double[size];
+            this.tailSpeed = kinematics.tailSpeed.clone();
+            this.midpointSpeed = kinematics.midpointSpeed.clone();
+            this.headSpeed = kinematics.headSpeed.clone();
+            this.centroidSpeed = kinematics.centroidSpeed.clone();
+            this.tailSpeedDotBodyAngle = kinematics.tailSpeedDotBodyAngle.clone();
+            this.smoothedTailSpeedDotBodyAngle = new double[size];
+            this.jumpFramesSkipped = new int[size];
+            this.derivedMaxLength = new double[size];
+            this.percentageOfMaxLength = new double[size];
+        }
+
+        public LarvaBehaviorMode[] getBehaviorModes() {
+            return behaviorModes;
+        }
+
+        public double[] getBodyAngleSpeed() {
+            return bodyAngleSpeed;
+        }
+
+        public double[] getSmoothedBodyAngleSpeed() {
+            return smoothedBodyAngleSpeed;
+        }
+
+        public double[] getHeadAngleSpeed() {
+            return headAngleSpeed;
+        }
+
+        public double[] getSmoothedHeadAngleSpeed() {
+            return smoothedHeadAngleSpeed;
+        }
+
+        public double[] getTailSpeed() {
+            return tailSpeed;
+        }
+
+        public double[] getMidpointSpeed() {
+            return midpointSpeed;
+        }
+
+        public double[] getHeadSpeed() {
+            return headSpeed;
+        }
+
+        public double[] getCentroidSpeed() {
+            return centroidSpeed;
+        }
+
+        public double[] getTailSpeedDotBodyAngle() {
+            return tailSpeedDotBodyAngle;
+        }
+
+        public double[] getSmoothedTailSpeedDotBodyAngle() {
+            return smoothedTailSpeedDotBodyAngle;
+        }
+
+        /**
+         * @return number of consecutive skipped frames (including each frame)
+         *         or zero for frames that were not skipped.
+         */
+        public int[] getJumpFramesSkipped() {
+            return jumpFramesSkipped;
+        }
+
+        public double[] getDerivedMaxLength() {
+            return derivedMaxLength;
+        }
+
+        /**
+         * @return percentage of derived maximum length for each frame
+         *         (NaN for frames before max length derivation is complete).
+         */
+        public double[] getPercentageOfMaxLength() {
+            return percentageOfMaxLength;
+        }
+    }
+}
@@ -12,12 +12,55 @@ import java.util.List;
 /**
  * Utility calculation methods.
  *
+ * Methods used for every frame have primitive coordinate variants (and
+ * variants that write derived points into a {@link MutablePoint}) so that
+ * frame processing does not need to allocate intermediate points.  The
+ * {@link TrackerPoint} variants delegate to the primitive variants,
+ * so both produce identical results.
+ *
  * @author Eric Trautman
  */
 public class Calculator {
 
     public static final TrackerPoint ORIGIN = new TrackerPoint(0.0, 0.0);
 
+    /**
+     * Reusable (mutable) coordinate pair for holding intermediate results.
+     * Instances are not thread safe and should be owned by the object
+     * performing the calculations.
+     */
+    public static class MutablePoint {
+
+        private double x;
+        private double y;
+
+        public double getX() {
+            return x;
+        }
+
+        public double getY() {
+            return y;
+        }
+
+        public void set(double x,
+                        double y) {
+            this.x = x;
+            this.y = y;
+        }
+
+        /**
+         * @return an immutable copy of this point.
+         */
+        public TrackerPoint toTrackerPoint() {
+            return new TrackerPoint(x, y);
+        }
+
+        @Override
+        public String toString() {
+            return "[" + x + "," + y + "]";
+        }
+    }
+
     /**
      * @param  angleInDegrees  the vector angle in radians.
      *
@@ -43,15 +86,39 @@ public class Calculator {
         //
         //                 (0,1) 90 deg
 
+        final double angleInRadians = getJavaAngleForTrackerAngle(angleInDegrees);
+        return new TrackerPoint(Math.cos(angleInRadians),
+                                Math.sin(angleInRadians));
+    }
+
+    /**
+     * @param  angleInDegrees  the vector angle in degrees.
+     * @param  terminal        point to populate with the terminal point of
+     *                         the unit vector with the specified direction.
+     *
+     * @see #getUnitVectorPointForTrackerAngle(double)
+     */
+    public static void setUnitVectorPointForTrackerAngle(double angleInDegrees,
+                                                         MutablePoint terminal) {
+        final double angleInRadians = getJavaAngleForTrackerAngle(angleInDegrees);
+        terminal.set(Math.cos(angleInRadians),
+                     Math.sin(angleInRadians));
+    }
+
+    /**
+     * @param  angleInDegrees  tracker angle in degrees.
+     *
+     * @return the equivalent Java angle in radians
+     *         (see {@link #getUnitVectorPointForTrackerAngle}).
+     */
+    public static double getJavaAngleForTrackerAngle(double angleInDegrees) {
         final double translatedAngleInDegrees;
         if (angleInDegrees < 0.0) {
             translatedAngleInDegrees = 180.0 + angleInDegrees;
         } else {
             translatedAngleInDegrees = angleInDegrees - 180.0;
         }
-        final double angleInRadians = Math.toRadians(translatedAngleInDegrees);
-        return new TrackerPoint(Math.cos(angleInRadians),
-                                Math.sin(angleInRadians));
+        return Math.toRadians(translatedAngleInDegrees);
     }
 
     /**
@@ -66,12 +133,31 @@ public class Calculator {
                                        TrackerPoint vectorAStop,
                                        TrackerPoint vectorBStart,
                                        TrackerPoint vectorBStop) {
+        return getDotProduct(vectorAStart.getX(), vectorAStart.getY(),
+                             vectorAStop.getX(), vectorAStop.getY(),
+                             vectorBStart.getX(), vectorBStart.getY(),
+                             vectorBStop.getX(), vectorBStop.getY());
+    }
 
-        final double vectorADeltaX = vectorAStop.getX() - vectorAStart.getX();
-        final double vectorADeltaY = vectorAStop.getY() - vectorAStart.getY();
+    /**
+     * @return the dot product of the two specified vectors.
+     *
+     * @see #getDotProduct(TrackerPoint, TrackerPoint, TrackerPoint, TrackerPoint)
+     */
+    public static double getDotProduct(double vectorAStartX,
+                                       double vectorAStartY,
+                                       double vectorAStopX,
+                                       double vectorAStopY,
+                                       double vectorBStartX,
+                                       double vectorBStartY,
+                                       double vectorBStopX,
+                                       double vectorBStopY) {
 
-        final double vectorBDeltaX = vectorBStop.getX() - vectorBStart.getX();
-        final double vectorBDeltaY = vectorBStop.getY() - vectorBStart.getY();
+        final double vectorADeltaX = vectorAStopX - vectorAStartX;
+        final double vectorADeltaY = vectorAStopY - vectorAStartY;
+
+        final double vectorBDeltaX = vectorBStopX - vectorBStartX;
+        final double vectorBDeltaY = vectorBStopY - vectorBStartY;
 
         return (vectorADeltaX * vectorBDeltaX) +
                (vectorADeltaY * vectorBDeltaY);
@@ -156,16 +242,33 @@ public class Calculator {
     public static boolean isCoordinateLeftOfVector(TrackerPoint coordinate,
                                                    TrackerPoint vectorStart,
                                                    TrackerPoint vectorStop) {
+        return isCoordinateLeftOfVector(coordinate.getX(), coordinate.getY(),
+                                        vectorStart.getX(), vectorStart.getY(),
+                                        vectorStop.getX(), vectorStop.getY());
+    }
+
+    /**
+     * @return true if the specified coordinate is to the left of
+     *         the specified vector.
+     *
+     * @see #isCoordinateLeftOfVector(TrackerPoint, TrackerPoint, TrackerPoint)
+     */
+    public static boolean isCoordinateLeftOfVector(double coordinateX,
+                                                   double coordinateY,
+                                                   double vectorStartX,
+                                                   double vectorStartY,
+                                                   double vectorStopX,
+                                                   double vectorStopY) {
 
         // from http://www.gamedev.net/community/forums/topic.asp?topic_id=542870&whichpage=1&#3500873
 
-        final double Ax = vectorStart.getX();
-        final double Ay = vectorStart.getY();
-        final double Bx = vectorStop.getX();
-        final double By = vectorStop.getY();
+        final double Ax = vectorStartX;
+        final double Ay = vectorStartY;
+        final double Bx = vectorStopX;
+        final double By = vectorStopY;
         final double product =
-                ((Bx - Ax) * (coordinate.getY() - Ay)) -
-                ((By - Ay) * (coordinate.getX() - Ax));
+                ((Bx - Ax) * (coordinateY - Ay)) -
+                ((By - Ay) * (coordinateX - Ax));
 
         return (product < 0.0);
     }
@@ -373,16 +476,42 @@ public class Calculator {
     public static TrackerPoint getRotatedPoint(TrackerPoint originalPoint,
                                                double angleInRadians,
                                                TrackerPoint rotationCenter) {
+        final MutablePoint rotatedPoint = new MutablePoint();
+        setRotatedPoint(originalPoint.getX(),
+                        originalPoint.getY(),
+                        angleInRadians,
+                        rotationCenter.getX(),
+                        rotationCenter.getY(),
+                        rotatedPoint);
+        return rotatedPoint.toTrackerPoint();
+    }
 
-        final double deltaX = originalPoint.getX() - rotationCenter.getX();
-        final double deltaY = originalPoint.getY() - rotationCenter.getY();
-        final double rotatedX = rotationCenter.getX() +
+    /**
+     * @param  originalX        x coordinate of point to rotate.
+     * @param  originalY        y coordinate of point to rotate.
+     * @param  angleInRadians   angle of rotation in radians.
+     * @param  rotationCenterX  x coordinate of rotation center.
+     * @param  rotationCenterY  y coordinate of rotation center.
+     * @param  rotatedPoint     point to populate with the rotated coordinates.
+     *
+     * @see #getRotatedPoint(TrackerPoint, double, TrackerPoint)
+     */
+    public static void setRotatedPoint(double originalX,
+                                       double originalY,
+                                       double angleInRadians,
+                                       double rotationCenterX,
+                                       double rotationCenterY,
+                                       MutablePoint rotatedPoint) {
+
+        final double deltaX = originalX - rotationCenterX;
+        final double deltaY = originalY - rotationCenterY;
+        final double rotatedX = rotationCenterX +
                                 (Math.cos(angleInRadians) * deltaX) -
                                 (Math.sin(angleInRadians) * deltaY);
-        final double rotatedY = rotationCenter.getY() +
+        final double rotatedY = rotationCenterY +
                                 (Math.sin(angleInRadians) * deltaX) +
                                 (Math.cos(angleInRadians) * deltaY);
-        return new TrackerPoint(rotatedX, rotatedY);
+        rotatedPoint.set(rotatedX, rotatedY);
     }
 
     /**
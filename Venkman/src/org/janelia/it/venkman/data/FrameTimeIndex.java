@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) 2014 Howard Hughes Medical Institute.
+ * All rights reserved.
+ * Use is subject to Janelia Farm Research Campus Software Copyright 1.1
+ * license terms (http://license.janelia.org/license/jfrc_copyright_1_1.html).
+ */
+
+package org.janelia.it.venkman.data;
+
+import java.util.List;
+
+/**
+ * Index of frame capture times that supports binary search seeks
+ * and time range queries.
+ *
+ * Capture times are copied into a primitive array when the index is
+ * built so that lookups do not need to touch the frame data objects.
+ *
+ * @author Eric Trautman
+ */
+public class FrameTimeIndex {
+
+    private long[] times;
+
+    /**
+     * Builds an index for the specified frames.
+     *
+     * @param  frameDataList  list of frames (in capture order).
+     */
+    public FrameTimeIndex(List<LarvaFrameData> frameDataList) {
+        this(BehaviorModeComparison.getTimes(frameDataList));
+    }
+
+    /**
+     * Builds an index for the specified capture times.
+     *
+     * @param  times  capture times (in ascending order).
+     *
+     * @throws IllegalArgumentException
+     *   if the times are not in ascending order.
+     */
+    public FrameTimeIndex(long[] times)
+            throws IllegalArgumentException {
+        for (int i = 1; i < times.length; i++) {
+            if (times[i] < times[i - 1]) {
+                throw new IllegalArgumentException(
+                        "capture time " + times[i] + " for frame " + i +
+                        " is before capture time " + times[i - 1] +
+                        " for previous frame");
+            }
+        }
+        this.times = times;
+    }
+
+    /**
+     * @return number of indexed frames.
+     */
+    public int getFrameCount() {
+        return times.length;
+    }
+
+    /**
+     * @param  frameIndex  index of a frame.
+     *
+     * @return capture time for the specified frame.
+     */
+    public long getTime(int frameIndex) {
+        return times[frameIndex];
+    }
+
+    /**
+     * @return capture time of the last frame (or 0 if there are no frames).
+     */
+    public long getLastTime() {
+        long lastTime = 0;
+        if (times.length > 0) {
+            lastTime = times[times.length - 1];
+        }
+        return lastTime;
+    }
+
+    /**
+     * @return the indexed capture times (callers should not modify the array).
+     */
+    public long[] getTimes() {
+        return times;
+    }
+
+    /**
+     * @param  time  capture time.
+     *
+     * @return index of the last frame captured at or before the specified
+     *         time or -1 if all frames were captured after the time.
+     */
+    public int getLastFrameAtOrBefore(long time) {
+        return getFirstFrameAfter(time) - 1;
+    }
+
+    /**
+     * @param  time  capture time.
+     *
+     * @return index of the first frame captured at or after the specified
+     *         time (or the frame count if all frames were captured
+     *         before the time).
+     */
+    public int getFirstFrameAtOrAfter(long time) {
+        int low = 0;
+        int high = times.length;
+        int middle;
+        while (low < high) {
+            middle = (low + high) >>> 1;
+            if (times[middle] < time) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @param  time  capture time.
+     *
+     * @return index of the first frame captured after the specified
+     *         time (or the frame count if no frames were captured
+     *         after the time).
+     */
+    public int getFirstFrameAfter(long time) {
+        int low = 0;
+        int high = times.length;
+        int middle;
+        while (low < high) {
+            middle = (low + high) >>> 1;
+            if (times[middle] <= time) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @param  time  capture time.
+     *
+     * @return index of the frame captured closest to the specified time
+     *         (preferring the earlier frame when two frames are equally
+     *         close) or -1 if there are no frames.
+     */
+    public int getNearestFrame(long time) {
+        int nearest = -1;
+        if (times.length > 0) {
+            final int after = getFirstFrameAtOrAfter(time);
+            if (after == times.length) {
+                nearest = after - 1;
+            } else if (after == 0) {
+                nearest = 0;
+            } else if ((times[after] - time) < (time - times[after - 1])) {
+                nearest = after;
+            } else {
+                nearest = after - 1;
+            }
+        }
+        return nearest;
+    }
+
+    /**
+     * @param  startTime  start of the time range (inclusive).
+     * @param  stopTime   end of the time range (inclusive).
+     *
+     * @return two element array containing the indexes of the first and
+     *         last frames captured within the specified time range
+     *         or null if no frames were captured within the range.
+     */
+    public int[] getFrameRange(long startTime,
+                               long stopTime) {
+        int[] range = null;
+        if (startTime <= stopTime) {
+            final int first = getFirstFrameAtOrAfter(startTime);
+            final int last = getLastFrameAtOrBefore(stopTime);
+            if (first <= last) {
+                range = new int[] { first, last };
+            }
+        }
+        return range;
+    }
+
+    @Override
+    public String toString() {
+        return "FrameTimeIndex{" +
+               "frameCount=" + times.length +
+               ", lastTime=" + getLastTime() +
+               '}';
+    }
+}
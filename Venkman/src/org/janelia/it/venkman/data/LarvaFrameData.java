@@ -8,6 +8,7 @@
 package org.janelia.it.venkman.data;
 
 import org.janelia.it.venkman.config.LarvaBehaviorParameters;
+import org.janelia.it.venkman.config.rules.KinematicVariable;
 import org.janelia.it.venkman.config.rules.LEDArrayStimulus;
 import org.janelia.it.venkman.config.rules.LEDStimulus;
 import org.janelia.it.venkman.config.rules.Stimulus;
@@ -19,7 +20,11 @@ import javax.xml.bind.annotation.XmlElement;
 import javax.xml.bind.annotation.XmlElementRef;
 import javax.xml.bind.annotation.XmlElementRefs;
 import javax.xml.bind.annotation.XmlRootElement;
+import javax.xml.bind.annotation.XmlTransient;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * This class encapsulates the calculated behavioral data elements and state
@@ -41,6 +46,27 @@ public class LarvaFrameData {
         public double getValue(LarvaFrameData frameData);
     }
 
+    /**
+     * Kinematic variables that are not needed to derive the behavior mode
+     * and can therefore be calculated only when they are needed.
+     */
+    public static final Set<KinematicVariable> DEFERRABLE_VARIABLES =
+            Collections.unmodifiableSet(EnumSet.of(KinematicVariable.HEAD_SPEED,
+                                                   KinematicVariable.MIDPOINT_SPEED,
+                                                   KinematicVariable.TAIL_SPEED));
+
+    /**
+     * Reusable body angle unit vector terminal point for each frame
+     * processing thread (frame data instances are too short lived to own one).
+     */
+    private static final ThreadLocal<Calculator.MutablePoint> UNIT_VECTOR_POINT =
+            new ThreadLocal<Calculator.MutablePoint>() {
+                @Override
+                protected Calculator.MutablePoint initialValue() {
+                    return new Calculator.MutablePoint();
+                }
+            };
+
     /** The skeleton for this frame. */
     @XmlElement
     private LarvaSkeleton skeleton;
@@ -166,6 +192,13 @@ public class LarvaFrameData {
     @XmlAttribute
     private Double percentageOfMaxLength;
 
+    /**
+     * Identifies the larva for frames processed in multi-larva sessions
+     * (null for single larva sessions).
+     */
+    @XmlAttribute
+    private String trackId;
+
     /** The list of stimulus flashes issued for this frame. */
     @XmlElementRefs({
             @XmlElementRef(type = LEDStimulus.class),
@@ -173,6 +206,17 @@ public class LarvaFrameData {
     })
     private List<? extends Stimulus> stimulusList;
 
+    /**
+     * Previous frame skeleton for frames whose deferrable kinematic
+     * variables have not yet been calculated (null once calculated).
+     */
+    @XmlTransient
+    private LarvaSkeleton deferredPreviousSkeleton;
+
+    /** Elapsed time since the previous frame (for deferred calculations). */
+    @XmlTransient
+    private double deferredElapsedSeconds;
+
     /**
      * No-arg constructor needed for JAXB.
      */
@@ -206,6 +250,37 @@ public class LarvaFrameData {
         this.behaviorMode = behaviorMode;
     }
 
+    /**
+     * @return a copy of this frame's data (sharing its skeletons) without
+     *         any stimulus list.  Snapshots can be handed off to other
+     *         threads since subsequent changes to this frame (including
+     *         deferred calculations) do not affect them.
+     */
+    public LarvaFrameData getSnapshot() {
+        final LarvaFrameData snapshot = new LarvaFrameData(skeleton, behaviorMode);
+        snapshot.bodyAngleSpeed = bodyAngleSpeed;
+        snapshot.smoothedBodyAngleSpeed = smoothedBodyAngleSpeed;
+        snapshot.headAngleSpeed = headAngleSpeed;
+        snapshot.smoothedHeadAngleSpeed = smoothedHeadAngleSpeed;
+        snapshot.tailSpeed = tailSpeed;
+        snapshot.midpointSpeed = midpointSpeed;
+        snapshot.headSpeed = headSpeed;
+        snapshot.centroidSpeed = centroidSpeed;
+        snapshot.tailSpeedDotBodyAngle = tailSpeedDotBodyAngle;
+        snapshot.smoothedTailSpeedDotBodyAngle = smoothedTailSpeedDotBodyAngle;
+        snapshot.timeSinceLastBehaviorModeChange = timeSinceLastBehaviorModeChange;
+        snapshot.timeStopped = timeStopped;
+        snapshot.timeBackingUp = timeBackingUp;
+        snapshot.skippedSkeleton = skippedSkeleton;
+        snapshot.jumpFramesSkipped = jumpFramesSkipped;
+        snapshot.derivedMaxLength = derivedMaxLength;
+        snapshot.percentageOfMaxLength = percentageOfMaxLength;
+        snapshot.trackId = trackId;
+        snapshot.deferredPreviousSkeleton = deferredPreviousSkeleton;
+        snapshot.deferredElapsedSeconds = deferredElapsedSeconds;
+        return snapshot;
+    }
+
     /**
      * Calculates the smoothed data for this frame's skeleton.
      *
@@ -219,6 +294,28 @@ public class LarvaFrameData {
      */
     public void calculateDerivedData(List<LarvaFrameData> frameHistory,
                                      LarvaBehaviorParameters parameters) {
+        calculateDerivedData(frameHistory, parameters, null);
+    }
+
+    /**
+     * Calculates the smoothed data for this frame's skeleton, but only
+     * calculates the {@link #DEFERRABLE_VARIABLES} if they are required.
+     * Data needed to derive the behavior mode is always calculated.
+     * Any deferred variables can be calculated later by calling
+     * {@link #calculateDeferredData} (e.g. before the frame is logged).
+     *
+     * @param  frameHistory       history of data derived for frames
+     *                            received <u>PRIOR</u> to the current frame.
+     *
+     * @param  parameters         the configurable parameters for frame data
+     *                            calculations.
+     *
+     * @param  requiredVariables  kinematic variables that must be calculated
+     *                            now (or null if all variables are required).
+     */
+    public void calculateDerivedData(List<LarvaFrameData> frameHistory,
+                                     LarvaBehaviorParameters parameters,
+                                     Set<KinematicVariable> requiredVariables) {
 
         if (frameHistory.size() > 0) {
 
@@ -271,11 +368,12 @@ public class LarvaFrameData {
             final TrackerPoint tail = skeleton.getTail();
             final TrackerPoint previousTail = previousSkeleton.getTail();
 
-            headSpeed = head.distance(previousSkeleton.getHead()) /
-                        elapsedSeconds;
-            midpointSpeed = midpoint.distance(previousSkeleton.getMidpoint()) /
-                            elapsedSeconds;
-            tailSpeed = tail.distance(previousTail) / elapsedSeconds;
+            deferredPreviousSkeleton = previousSkeleton;
+            deferredElapsedSeconds = elapsedSeconds;
+            if ((requiredVariables == null) ||
+                (! Collections.disjoint(requiredVariables, DEFERRABLE_VARIABLES))) {
+                calculateDeferredData();
+            }
 
             // -180 <= headAngle <= 180
             // assume headAngle won't cross branch point
@@ -305,14 +403,20 @@ public class LarvaFrameData {
             }
             bodyAngleSpeed = bodyAngleDelta / elapsedSeconds;
 
-            final TrackerPoint bodyAngleUnitVectorTerminal =
-                    Calculator.getUnitVectorPointForTrackerAngle(bodyAngle);
+            final Calculator.MutablePoint bodyAngleUnitVectorPoint =
+                    UNIT_VECTOR_POINT.get();
+            Calculator.setUnitVectorPointForTrackerAngle(bodyAngle,
+                                                         bodyAngleUnitVectorPoint);
 
             tailSpeedDotBodyAngle =
-                    Calculator.getDotProduct(previousTail,
-                                             tail,
-                                             Calculator.ORIGIN,
-                                             bodyAngleUnitVectorTerminal);
+                    Calculator.getDotProduct(previousTail.getX(),
+                                             previousTail.getY(),
+                                             tail.getX(),
+                                             tail.getY(),
+                                             Calculator.ORIGIN.getX(),
+                                             Calculator.ORIGIN.getY(),
+                                             bodyAngleUnitVectorPoint.getX(),
+                                             bodyAngleUnitVectorPoint.getY());
 
             final boolean isAllSmoothedDataAvailable =
                     smoothData(frameHistory,
@@ -321,9 +425,12 @@ public class LarvaFrameData {
             if (isAllSmoothedDataAvailable) {
 
                 final boolean isHeadLeftOfBody =
-                        Calculator.isCoordinateLeftOfVector(head,
-                                                            tail,
-                                                            midpoint);
+                        Calculator.isCoordinateLeftOfVector(head.getX(),
+                                                            head.getY(),
+                                                            tail.getX(),
+                                                            tail.getY(),
+                                                            midpoint.getX(),
+                                                            midpoint.getY());
                 setBehaviorMode(parameters,
                                 previousFrame,
                                 smoothedBodyAngleSpeed,
@@ -339,6 +446,23 @@ public class LarvaFrameData {
 
     }
 
+    /**
+     * Calculates any deferrable kinematic variables that were not
+     * calculated when the frame's derived data was calculated.
+     * This must be called before the frame is logged in full.
+     */
+    public void calculateDeferredData() {
+        if (deferredPreviousSkeleton != null) {
+            headSpeed = skeleton.getHead().distance(deferredPreviousSkeleton.getHead()) /
+                        deferredElapsedSeconds;
+            midpointSpeed = skeleton.getMidpoint().distance(deferredPreviousSkeleton.getMidpoint()) /
+                            deferredElapsedSeconds;
+            tailSpeed = skeleton.getTail().distance(deferredPreviousSkeleton.getTail()) /
+                        deferredElapsedSeconds;
+            deferredPreviousSkeleton = null;
+        }
+    }
+
     /**
      * @return skeleton for this frame.
      */
@@ -464,6 +588,14 @@ public class LarvaFrameData {
         return percentageOfMaxLength;
     }
 
+    public String getTrackId() {
+        return trackId;
+    }
+
+    public void setTrackId(String trackId) {
+        this.trackId = trackId;
+    }
+
     public boolean isMaxLengthDerivationComplete() {
         return percentageOfMaxLength != null;
     }
@@ -610,6 +742,21 @@ public class LarvaFrameData {
         return isEnoughHistoryAvailable;
     }
 
+    /**
+     * Replaces this frame's skeleton and restores the initial behavior mode
+     * state so that the instance can be reused by {@link BulkKinematics}
+     * to run the behavior mode state machine.
+     *
+     * @param  skeleton  skeleton for the next frame.
+     */
+    void resetBehaviorMode(LarvaSkeleton skeleton) {
+        this.skeleton = skeleton;
+        this.behaviorMode = LarvaBehaviorMode.STOP;
+        this.timeSinceLastBehaviorModeChange = 0;
+        this.timeStopped = null;
+        this.timeBackingUp = null;
+    }
+
     public void setValuesForTesting(LarvaBehaviorMode behaviorMode,
                                        double bodyAngleSpeed) {
         this.behaviorMode = behaviorMode;
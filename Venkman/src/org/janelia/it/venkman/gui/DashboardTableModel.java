@@ -12,7 +12,6 @@ import org.janelia.it.venkman.config.ConfigurationManager;
 import org.janelia.it.venkman.config.ParameterCollectionId;
 
 import javax.swing.table.AbstractTableModel;
-import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -98,15 +97,7 @@ public class DashboardTableModel extends AbstractTableModel {
     }
 
     public void refreshConfigurations() {
-        // TODO: move off of event dispatch thread
-        List<String> fullNames = configurationManager.getConfigurationNames();
-        List<Configuration> updatedConfigurations =
-                new ArrayList<Configuration>(fullNames.size());
-        for (String fullName : fullNames) {
-            updatedConfigurations.add(
-                    configurationManager.getConfiguration(fullName));
-        }
-        configurations = updatedConfigurations;
+        configurations = configurationManager.getConfigurations();
     }
 
     public ParameterCollectionId getIdAt(int rowIndex,
@@ -8,6 +8,7 @@
 package org.janelia.it.venkman.gui.log;
 
 import org.janelia.it.venkman.config.rules.PositionalVariableFunction;
+import org.janelia.it.venkman.data.FrameTimeIndex;
 import org.janelia.it.venkman.data.LarvaFrameData;
 import org.janelia.it.venkman.data.LarvaSkeleton;
 import org.janelia.it.venkman.data.TrackerPoint;
@@ -554,7 +555,13 @@ public class ArenaPanel {
             final int currentFrameIndex = logModel.getCurrentFrame();
             final java.util.List<LarvaFrameData> list =
                     logModel.getFrameDataList();
-            final int initialCapacity = (currentFrameIndex / 9) + 1;
+
+            // only frames captured within the history window are traced
+            final FrameTimeIndex timeIndex = logModel.getTimeIndex();
+            final long stopTime = timeIndex.getTime(currentFrameIndex) - traceHistoryTime;
+            final int firstFrameIndex = Math.max(1, timeIndex.getFirstFrameAfter(stopTime));
+            final int initialCapacity =
+                    (Math.max(0, currentFrameIndex - firstFrameIndex) / 15) + 2;
 
             final TrackerPoint centroid = currentSkeleton.getCentroid();
 
@@ -566,26 +573,18 @@ public class ArenaPanel {
                             scaleY(centroid.getY()));
 
             final boolean transformCentroid = (definedEnvironmentRule != null) && rotateSkeleton;
-            final LarvaFrameData currentFrameData = list.get(currentFrameIndex);
-            long stopTime = currentFrameData.getTime() - traceHistoryTime;
-            LarvaFrameData frameData;
             TrackerPoint point = null;
-            for (int i = currentFrameIndex - 15; i > 0; i = i - 15) {
-                frameData = list.get(i);
-                if (frameData.getTime() > stopTime) {
-
-                    point = frameData.getSkeleton().getCentroid();
+            for (int i = currentFrameIndex - 15; i >= firstFrameIndex; i = i - 15) {
 
-                    if (transformCentroid) {
-                        point = definedEnvironmentRule.getRotatedPoint(point);
-                        point = definedEnvironmentRule.getTransformedPoint(point);
-                    }
+                point = list.get(i).getSkeleton().getCentroid();
 
-                    polyline.lineTo(scaleX(point.getX()),
-                                    scaleY(point.getY()));
-                } else {
-                    break;
+                if (transformCentroid) {
+                    point = definedEnvironmentRule.getRotatedPoint(point);
+                    point = definedEnvironmentRule.getTransformedPoint(point);
                 }
+
+                polyline.lineTo(scaleX(point.getX()),
+                                scaleY(point.getY()));
             }
 
             if (point != null) {
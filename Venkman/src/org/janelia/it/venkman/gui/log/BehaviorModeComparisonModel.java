@@ -7,15 +7,14 @@
 
 package org.janelia.it.venkman.gui.log;
 
-import org.janelia.it.venkman.data.LarvaBehaviorMode;
+import org.apache.log4j.Logger;
+import org.janelia.it.venkman.data.BehaviorModeComparison;
 import org.janelia.it.venkman.data.LarvaFrameData;
 
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.io.File;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
 
 /**
  * The data model for comparing the behavior modes between two imported logs.
@@ -30,7 +29,7 @@ public class BehaviorModeComparisonModel
 
     private LogModel actualModel;
     private LogModel expectedModel;
-    private Set<Integer> differentFrameIndexes;
+    private BehaviorModeComparison comparison;
     private double similarityPercentage;
     private boolean filterEnabled;
 
@@ -67,7 +66,7 @@ public class BehaviorModeComparisonModel
                     }
                 });
 
-        this.differentFrameIndexes = new HashSet<Integer>();
+        this.comparison = null;
         this.similarityPercentage = -1;
         this.filterEnabled = false;
     }
@@ -131,29 +130,26 @@ public class BehaviorModeComparisonModel
     }
 
     public boolean hasDifference(int frameIndex) {
-        return differentFrameIndexes.contains(frameIndex);
+        return (comparison != null) && comparison.hasDifference(frameIndex);
     }
 
-    public boolean moveToNextDifference() {
-
-        Integer nextFrame = null;
+    /**
+     * @return the current comparison results or null if both actual and
+     *         expected logs have not been loaded.
+     */
+    public BehaviorModeComparison getComparison() {
+        return comparison;
+    }
 
-        int frame = actualModel.getCurrentFrame();
+    public boolean moveToNextDifference() {
 
-        if (differentFrameIndexes.contains(frame)) {
-            frame = getEndOfCurrentDifference(frame);
+        int nextFrame = -1;
+        if (comparison != null) {
+            nextFrame =
+                    comparison.getNextDifference(actualModel.getCurrentFrame());
         }
 
-        // move to next difference
-        final int expectedFrameCount = expectedModel.getFrameCount();
-        for (int i = frame + 1; i < expectedFrameCount; i++) {
-            if (differentFrameIndexes.contains(i)) {
-                nextFrame = i;
-                break;
-            }
-        }
-
-        boolean nextDifferenceFound = (nextFrame != null);
+        final boolean nextDifferenceFound = (nextFrame > -1);
 
         if (nextDifferenceFound) {
             actualModel.moveToFrame(nextFrame);
@@ -164,40 +160,21 @@ public class BehaviorModeComparisonModel
 
     public boolean moveToPreviousDifference() {
 
-        Integer previousFrame = null;
-
-        int frame = actualModel.getCurrentFrame();
-
-        if (differentFrameIndexes.contains(frame)) {
-            frame = getBeginningOfCurrentDifference(frame);
-        }
-
-        // move to previous difference
-        for (int i = frame - 1; i > -1; i--) {
-            if (differentFrameIndexes.contains(i)) {
-                previousFrame = i;
-                break;
-            }
+        int previousFrame = -1;
+        if (comparison != null) {
+            previousFrame =
+                    comparison.getPreviousDifference(actualModel.getCurrentFrame());
         }
 
-        boolean previousDifferenceFound = (previousFrame != null);
+        final boolean previousDifferenceFound = (previousFrame > -1);
 
         if (previousDifferenceFound) {
-            previousFrame = getBeginningOfCurrentDifference(previousFrame);
             actualModel.moveToFrame(previousFrame);
         }
 
         return previousDifferenceFound;
     }
 
-    private LarvaBehaviorMode getDefinedMode(LarvaFrameData frameData) {
-        LarvaBehaviorMode mode = frameData.getBehaviorMode();
-        if (mode == null) {
-            mode = LarvaBehaviorMode.IGNORE;
-        }
-        return mode;
-    }
-
     private void initExpectedLogFileDirectory() {
         // if an expected model has not already been loaded,
         // init the log directory to the actual model's log directory
@@ -217,101 +194,35 @@ public class BehaviorModeComparisonModel
                 actualModel.getFrameDataList();
 
         if ((expectedList != null) && (actualList != null)) {
-
-            final int expectedSize = expectedList.size();
-            final int actualSize = actualList.size();
-
-            differentFrameIndexes = new HashSet<Integer>(expectedSize);
-
-            if ((expectedSize > 0) && (actualSize > 0)) {
-                LarvaBehaviorMode expectedMode;
-                LarvaBehaviorMode actualMode;
-                for (int i = 0; i < expectedSize; i++) {
-                    if (i < actualSize) {
-                        expectedMode = getDefinedMode(expectedList.get(i));
-                        actualMode = getDefinedMode(actualList.get(i));
-                        if ((! expectedMode.isEquivalent(actualMode) &&
-                             (! LarvaBehaviorMode.IGNORE.equals(actualMode)))) {
-                            differentFrameIndexes.add(i);
-                        }
-                    }
-                }
-            }
-
-            if (actualSize > 0) {
-                final double difference =
-                        (double) differentFrameIndexes.size() / actualSize;
-                similarityPercentage = 100.0 - (difference * 100.0);
-            }
-
+            comparison = new BehaviorModeComparison(
+                    actualModel.getTimeIndex().getTimes(),
+                    BehaviorModeComparison.encodeModes(actualList),
+                    expectedModel.getTimeIndex().getTimes(),
+                    BehaviorModeComparison.encodeModes(expectedList),
+                    BehaviorModeComparison.DEFAULT_MAX_ALIGNMENT_MILLISECONDS);
+            similarityPercentage = comparison.getSimilarityPercentage();
+            LOG.info("calculateDifferences: " + comparison + "\n" +
+                     comparison.getConfusionMatrixReport());
         } else {
-            differentFrameIndexes = new HashSet<Integer>();
+            comparison = null;
         }
 
         firePropertyChange(LOG_MODELS_PROPERTY, null, this);
     }
 
-    private LarvaFrameData getData(LogModel model,
-                                   int index) {
-        return model.getFrameData(index);
-    }
-
-    private LarvaFrameData getActualData(int index) {
-        return getData(actualModel, index);
-    }
-
-    private LarvaFrameData getExpectedData(int index) {
-        return getData(expectedModel, index);
-    }
-
-    private boolean modesDiffer(int frameIndex,
-                                LarvaBehaviorMode currentExpectedMode,
-                                LarvaBehaviorMode currentActualMode) {
-        final LarvaBehaviorMode expectedMode =
-                getDefinedMode(getExpectedData(frameIndex));
-        final LarvaBehaviorMode actualMode =
-                getDefinedMode(getActualData(frameIndex));
-        return (! expectedMode.isEquivalent(currentExpectedMode)) ||
-               (! actualMode.isEquivalent(currentActualMode));
-    }
-
-    private int getBeginningOfCurrentDifference(int differenceFrame) {
-
-        final LarvaBehaviorMode expectedMode =
-                getDefinedMode(getExpectedData(differenceFrame));
-        final LarvaBehaviorMode actualMode =
-                getDefinedMode(getActualData(differenceFrame));
-
-        for (int i = differenceFrame - 1; i > -1; i--) {
-            if (modesDiffer(i, expectedMode, actualMode)) {
-                differenceFrame = i + 1;
-                break;
-            }
-        }
-
-        return differenceFrame;
-    }
-
-    private int getEndOfCurrentDifference(int differenceFrame) {
-
-        final int expectedFrameCount = expectedModel.getFrameCount();
-
-        final LarvaBehaviorMode expectedMode =
-                getDefinedMode(getExpectedData(differenceFrame));
-        final LarvaBehaviorMode actualMode =
-                getDefinedMode(getActualData(differenceFrame));
-
-        for (int i = differenceFrame + 1; i < expectedFrameCount; i++) {
-            if (modesDiffer(i, expectedMode, actualMode)) {
-                differenceFrame = i - 1;
-                break;
+    private void synchronizeExpectedWithActual() {
+        final int actualFrame = actualModel.getCurrentFrame();
+        if (comparison == null) {
+            expectedModel.moveToFrame(actualFrame);
+        } else {
+            final int expectedFrame =
+                    comparison.getAlignedExpectedIndex(actualFrame);
+            if (expectedFrame > -1) {
+                expectedModel.moveToFrame(expectedFrame);
             }
         }
-
-        return differenceFrame;
     }
 
-    private void synchronizeExpectedWithActual() {
-        expectedModel.moveToFrame(actualModel.getCurrentFrame());
-    }
+    private static final Logger LOG =
+            Logger.getLogger(BehaviorModeComparisonModel.class);
 }
@@ -7,6 +7,7 @@
 
 package org.janelia.it.venkman.gui.log;
 
+import org.janelia.it.venkman.data.BehaviorModeComparison;
 import org.janelia.it.venkman.data.LarvaBehaviorMode;
 
 import javax.swing.*;
@@ -159,9 +160,49 @@ public class BehaviorModeControlPanel {
             BigDecimal value = new BigDecimal(similarityPercentage);
             value = value.setScale(2, BigDecimal.ROUND_HALF_UP);
             score = value + "%";
+            final BehaviorModeComparison comparison = model.getComparison();
+            if ((comparison != null) && (comparison.getUnalignedFrameCount() > 0)) {
+                score = score + " (" + comparison.getUnalignedFrameCount() + " unaligned)";
+            }
         }
 
         similarityLabel.setText(score);
+        similarityLabel.setToolTipText(
+                getModeStatisticsToolTip(model.getComparison()));
+    }
+
+    /**
+     * @param  comparison  current comparison (or null).
+     *
+     * @return HTML table of per-mode agreement statistics for the
+     *         specified comparison (or null if there is no comparison).
+     */
+    private String getModeStatisticsToolTip(BehaviorModeComparison comparison) {
+        String toolTip = null;
+        if ((comparison != null) && (comparison.getAlignedFrameCount() > 0)) {
+            StringBuilder sb = new StringBuilder(1024);
+            sb.append("<html><table>");
+            sb.append("<tr><th>mode</th><th>precision</th>");
+            sb.append("<th>recall</th><th>F1</th></tr>");
+            BehaviorModeComparison.ModeStatistics stats;
+            for (LarvaBehaviorMode mode : LarvaBehaviorMode.getDiscreteModes()) {
+                stats = comparison.getModeStatistics(mode);
+                sb.append("<tr><td>").append(mode.getName()).append("</td>");
+                sb.append(getPercentageCell(stats.getPrecision()));
+                sb.append(getPercentageCell(stats.getRecall()));
+                sb.append(getPercentageCell(stats.getF1Score()));
+                sb.append("</tr>");
+            }
+            sb.append("</table></html>");
+            toolTip = sb.toString();
+        }
+        return toolTip;
+    }
+
+    private String getPercentageCell(double fraction) {
+        BigDecimal value = new BigDecimal(fraction * 100.0);
+        value = value.setScale(1, BigDecimal.ROUND_HALF_UP);
+        return "<td align='right'>" + value + "%</td>";
     }
 
     private JLabel getModeLegendLabel(LarvaBehaviorMode mode) {
@@ -7,6 +7,7 @@
 
 package org.janelia.it.venkman.gui.log;
 
+import org.janelia.it.venkman.data.BehaviorBoutIndex;
 import org.janelia.it.venkman.data.LarvaBehaviorMode;
 import org.janelia.it.venkman.data.LarvaFrameData;
 
@@ -196,8 +197,7 @@ public class BehaviorModePanel
         repaint();
     }
 
-    private LarvaBehaviorMode getDefinedMode(LarvaFrameData frameData) {
-        LarvaBehaviorMode mode = frameData.getBehaviorMode();
+    private LarvaBehaviorMode getDefinedMode(LarvaBehaviorMode mode) {
         if (mode == null) {
             mode = LarvaBehaviorMode.IGNORE;
         }
@@ -214,64 +214,48 @@ public class BehaviorModePanel
                               int barHeight,
                               String barLabelText,
                               boolean filterSimilarFrames) {
-        
-        LarvaBehaviorMode mode;
-        int barWidth;
-        int directionLineY;
-
-        if (filterSimilarFrames) {
-            while ((startIndex < stopIndex) &&
-                   (! model.hasDifference(startIndex))) {
-                startIndex = startIndex + timeIndex;
-                barX++;
-            }
-        }
 
-        final List<LarvaFrameData> dataList = logModel.getFrameDataList();
-        LarvaFrameData frameData;
-        for (int i = startIndex; i < stopIndex; i = i + timeIndex) {
-            
-            mode = getDefinedMode(dataList.get(i));
-            barWidth = 1;
-
-            for (int j = i + timeIndex; j < stopIndex; j = j + timeIndex) {
-                frameData = dataList.get(j);
-                if (((! filterSimilarFrames) ||
-                     model.hasDifference(j)) &&
-                    mode.equals(frameData.getBehaviorMode())) {
-                    barWidth++;
-                    i = j;
-                } else {
-                    break;
-                }            
-            }
+        final BehaviorBoutIndex boutIndex = logModel.getBoutIndex();
 
-            if ((! filterSimilarFrames) || model.hasDifference(i)) {
-                g2d.setPaint(MODE_TO_COLOR_MAP.get(mode));
-                g2d.fillRect(barX, barMinY, barWidth, barHeight);
-                
-                if (LarvaBehaviorMode.CAST_LEFT.equals(mode) || 
-                    LarvaBehaviorMode.TURN_LEFT.equals(mode)) {
-                    g2d.setPaint(Color.BLACK);
-                    directionLineY = barMinY + 4;
-                    g2d.drawLine(barX, directionLineY,
-                                 barX + barWidth, directionLineY);
-                    directionLineY = directionLineY + 2;
-                    g2d.drawLine(barX, directionLineY,
-                                 barX + barWidth, directionLineY);
-                } else if (LarvaBehaviorMode.CAST_RIGHT.equals(mode) ||
-                           LarvaBehaviorMode.TURN_RIGHT.equals(mode)) {
-                    g2d.setPaint(Color.BLACK);
-                    directionLineY = barMinY + barHeight - 4;
-                    g2d.drawLine(barX, directionLineY,
-                                 barX + barWidth, directionLineY);
-                    directionLineY = directionLineY - 2;
-                    g2d.drawLine(barX, directionLineY,
-                                 barX + barWidth, directionLineY);
+        LarvaBehaviorMode mode;
+        int bout;
+        int boutStop;
+        int sampleCount;
+        int runStart;
+        int frame = startIndex;
+        while (frame < stopIndex) {
+
+            // each bar pixel represents every timeIndex-th frame,
+            // so derive the number of pixels covered by this bout
+            bout = boutIndex.getBoutIndex(frame);
+            mode = getDefinedMode(boutIndex.getMode(bout));
+            boutStop = Math.min(boutIndex.getStop(bout), stopIndex - 1);
+            sampleCount = ((boutStop - frame) / timeIndex) + 1;
+
+            if (filterSimilarFrames) {
+                // only paint the sampled frames that differ
+                runStart = -1;
+                for (int i = 0; i < sampleCount; i++) {
+                    if (model.hasDifference(frame + (i * timeIndex))) {
+                        if (runStart < 0) {
+                            runStart = i;
+                        }
+                    } else if (runStart > -1) {
+                        paintBout(g2d, mode, barX + runStart, barMinY,
+                                  i - runStart, barHeight);
+                        runStart = -1;
+                    }
                 }
+                if (runStart > -1) {
+                    paintBout(g2d, mode, barX + runStart, barMinY,
+                              sampleCount - runStart, barHeight);
+                }
+            } else {
+                paintBout(g2d, mode, barX, barMinY, sampleCount, barHeight);
             }
 
-            barX = barX + barWidth;
+            barX = barX + sampleCount;
+            frame = frame + (sampleCount * timeIndex);
         }
 
         g2d.setPaint(Color.BLACK);
@@ -282,10 +266,43 @@ public class BehaviorModePanel
 
         final int modeX = size.width + 5;
         final int modeY = barMinY + (barHeight / 2) + 5;
-        mode = getDefinedMode(dataList.get(model.getCurrentFrame()));
+        final List<LarvaFrameData> dataList = logModel.getFrameDataList();
+        mode = getDefinedMode(dataList.get(model.getCurrentFrame()).getBehaviorMode());
         g2d.drawString(mode.getName(), modeX, modeY);
     }
 
+    private void paintBout(Graphics2D g2d,
+                           LarvaBehaviorMode mode,
+                           int barX,
+                           int barMinY,
+                           int barWidth,
+                           int barHeight) {
+
+        g2d.setPaint(MODE_TO_COLOR_MAP.get(mode));
+        g2d.fillRect(barX, barMinY, barWidth, barHeight);
+
+        int directionLineY;
+        if (LarvaBehaviorMode.CAST_LEFT.equals(mode) ||
+            LarvaBehaviorMode.TURN_LEFT.equals(mode)) {
+            g2d.setPaint(Color.BLACK);
+            directionLineY = barMinY + 4;
+            g2d.drawLine(barX, directionLineY,
+                         barX + barWidth, directionLineY);
+            directionLineY = directionLineY + 2;
+            g2d.drawLine(barX, directionLineY,
+                         barX + barWidth, directionLineY);
+        } else if (LarvaBehaviorMode.CAST_RIGHT.equals(mode) ||
+                   LarvaBehaviorMode.TURN_RIGHT.equals(mode)) {
+            g2d.setPaint(Color.BLACK);
+            directionLineY = barMinY + barHeight - 4;
+            g2d.drawLine(barX, directionLineY,
+                         barX + barWidth, directionLineY);
+            directionLineY = directionLineY - 2;
+            g2d.drawLine(barX, directionLineY,
+                         barX + barWidth, directionLineY);
+        }
+    }
+
     public static Color getColor(LarvaBehaviorMode mode) {
         return MODE_TO_COLOR_MAP.get(mode);
     }
@@ -11,6 +11,7 @@ import org.janelia.it.venkman.ImportLogWorker;
 import org.janelia.it.venkman.config.ConfigurationManager;
 import org.janelia.it.venkman.config.ParameterCollectionCategory;
 import org.janelia.it.venkman.gui.NarrowOptionPane;
+import org.janelia.it.venkman.log.LogReader;
 
 import javax.swing.*;
 import java.awt.event.ActionEvent;
@@ -133,7 +134,7 @@ public class ImportLogDialog
 
         File logFile = new File(logFileTextField.getText());
 
-        if ((! logFile.canRead()) || (! logFile.getName().endsWith(".xml"))) {
+        if (! LogReader.isReadableLogFile(logFile)) {
 
             NarrowOptionPane.showMessageDialog(
                     this,
@@ -12,7 +12,9 @@ import org.janelia.it.venkman.config.LarvaBehaviorParameters;
 import org.janelia.it.venkman.config.rules.LEDArrayStimulus;
 import org.janelia.it.venkman.config.rules.LEDStimulus;
 import org.janelia.it.venkman.config.rules.Stimulus;
-import org.janelia.it.venkman.data.LarvaBehaviorMode;
+import org.janelia.it.venkman.data.BehaviorBoutIndex;
+import org.janelia.it.venkman.data.BehaviorModeComparison;
+import org.janelia.it.venkman.data.FrameTimeIndex;
 import org.janelia.it.venkman.data.LarvaFrameData;
 import org.janelia.it.venkman.data.LarvaSkeleton;
 import org.janelia.it.venkman.data.TrackerPoint;
@@ -52,6 +54,8 @@ public class LogModel
 
     private DefinedEnvironment orientedRules;
 
+    private FrameTimeIndex timeIndex;
+    private BehaviorBoutIndex boutIndex;
     private int currentModeStart;
     private int currentModeStop;
 
@@ -148,14 +152,28 @@ public class LogModel
 
     public long getLastFrameTime() {
         long lastTime = 0;
-        if ((frameDataList != null) && (frameDataList.size() > 0)) {
-            final LarvaFrameData lastFrameData =
-                    frameDataList.get(frameDataList.size() - 1);
-            lastTime = lastFrameData.getTime();
+        if (timeIndex != null) {
+            lastTime = timeIndex.getLastTime();
         }
         return lastTime;
     }
 
+    /**
+     * @return capture time index for the loaded log
+     *         (or null if no log has been loaded).
+     */
+    public FrameTimeIndex getTimeIndex() {
+        return timeIndex;
+    }
+
+    /**
+     * @return behavior mode bout index for the loaded log
+     *         (or null if no log has been loaded).
+     */
+    public BehaviorBoutIndex getBoutIndex() {
+        return boutIndex;
+    }
+
     public int getCurrentModeStart() {
         return currentModeStart;
     }
@@ -176,9 +194,9 @@ public class LogModel
 
             try {
 
-                // TODO: handle large files in some reasonable manner
+                // large logs can be limited to a frame range (see LogReader.readConfiguredRange)
 
-                reader.read();
+                reader.readConfiguredRange();
                 final LogSession logSession = reader.getSession();
                 List<LarvaFrameData> importedFrameDataList =
                         logSession.getFrameDataList();
@@ -216,6 +234,13 @@ public class LogModel
 
                     setMinAndMaxPositions();
 
+                    timeIndex = new FrameTimeIndex(frameDataList);
+                    boutIndex = new BehaviorBoutIndex(timeIndex.getTimes(),
+                                                      BehaviorModeComparison.encodeModes(frameDataList));
+                    LOG.info("loadLogFile: " + boutIndex + " for " +
+                             selectedLogFile.getAbsolutePath() + "\n" +
+                             boutIndex.getBoutStatisticsReport());
+
                     if ((minimumPosition.getX() < 0) || (minimumPosition.getY() < 0)) {
                         LOG.warn("loadLogFile: minimum (likely rotated) position for " +
                                  selectedLogFile.getAbsolutePath() +
@@ -254,57 +279,26 @@ public class LogModel
         setCurrentFrame(frameNumber);
     }
 
-//    /**
-//     * Moves the current frame as close as possible to the specified time.
-//     * If the specified time is before or after the entire run,
-//     * the current frame will be set to the beginning or end of the run
-//     * respectively.
-//     *
-//     * @param  time  the run time in milliseconds.
-//     */
-//    public void moveToTime(long time) {
-//        if (frameDataList != null) {
-//            final int size = frameDataList.size();
-//            if (size > 0) {
-//                final int lastIndex = size - 1;
-//                final LarvaFrameData lastFrame = frameDataList.get(lastIndex);
-//                int estimatedIndex = 0;
-//                if (time > 0) {
-//                    estimatedIndex = (int)
-//                            ((lastIndex * time) / lastFrame.getTime());
-//                    if (estimatedIndex > lastIndex) {
-//                        estimatedIndex = lastIndex;
-//                    }
-//                }
-//
-//                LarvaFrameData data = frameDataList.get(estimatedIndex);
-//                if (time < data.getTime()) {
-//                    for (int i = estimatedIndex; i >= 0; i--) {
-//                        data = frameDataList.get(i);
-//                        if (time >= data.getTime()) {
-//                            setCurrentFrame(i);
-//                            break;
-//                        }
-//                    }
-//                } else {
-//                    for (int i = estimatedIndex; i < size; i++) {
-//                        data = frameDataList.get(i);
-//                        if (time <= data.getTime()) {
-//                            setCurrentFrame(i);
-//                            break;
-//                        }
-//                    }
-//                }
-//            }
-//        }
-//    }
+    /**
+     * Moves the current frame to the last frame captured at or before
+     * the specified time.
+     * If the specified time is before or after the entire run,
+     * the current frame will be set to the beginning or end of the run
+     * respectively.
+     *
+     * @param  time  the run time in milliseconds.
+     */
+    public void moveToTime(long time) {
+        if (timeIndex != null) {
+            setCurrentFrame(timeIndex.getLastFrameAtOrBefore(time));
+        }
+    }
 
     public long getIntervalBetweenCurrentAndNextFrame() {
         final int nextFrame = currentFrame + 1;
         long interval = 0;
-        if ((frameDataList != null) && (nextFrame < frameDataList.size())) {
-            final LarvaFrameData next = frameDataList.get(currentFrame + 1);
-            interval = next.getTime() - currentFrameData.getTime();
+        if ((timeIndex != null) && (nextFrame < timeIndex.getFrameCount())) {
+            interval = timeIndex.getTime(nextFrame) - timeIndex.getTime(currentFrame);
         }
         return interval;
     }
@@ -340,6 +334,8 @@ public class LogModel
         orientedRules = null;
         currentFrame = -1;
         currentFrameData = null;
+        timeIndex = null;
+        boutIndex = null;
         currentModeStart = Integer.MAX_VALUE;
         currentModeStop = -1;
     }
@@ -438,30 +434,9 @@ public class LogModel
         if ((currentFrame < currentModeStart) ||
             (currentFrame > currentModeStop)) {
 
-            final LarvaBehaviorMode mode = currentFrameData.getBehaviorMode();
-            int start = currentFrame;
-            LarvaBehaviorMode listMode;
-            for (int i = (currentFrame - 1); i >= 0; i--) {
-                listMode = frameDataList.get(i).getBehaviorMode();
-                if (LarvaBehaviorMode.isSameMode(mode, listMode)) {
-                    start--;
-                } else {
-                    break;
-                }
-            }
-            currentModeStart = start;
-
-            final int size = frameDataList.size();
-            int stop = currentFrame;
-            for (int i = (currentFrame + 1); i < size; i++) {
-                listMode = frameDataList.get(i).getBehaviorMode();
-                if (LarvaBehaviorMode.isSameMode(mode, listMode)) {
-                    stop++;
-                } else {
-                    break;
-                }
-            }
-            currentModeStop = stop;
+            final int bout = boutIndex.getBoutIndex(currentFrame);
+            currentModeStart = boutIndex.getStart(bout);
+            currentModeStop = boutIndex.getStop(bout);
         }
     }
 
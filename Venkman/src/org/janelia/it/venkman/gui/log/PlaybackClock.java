@@ -0,0 +1,252 @@
+/*
+ * Copyright (c) 2014 Howard Hughes Medical Institute.
+ * All rights reserved.
+ * Use is subject to Janelia Farm Research Campus Software Copyright 1.1
+ * license terms (http://license.janelia.org/license/jfrc_copyright_1_1.html).
+ */
+
+package org.janelia.it.venkman.gui.log;
+
+import org.apache.log4j.Logger;
+import org.janelia.it.venkman.data.FrameTimeIndex;
+import org.janelia.it.venkman.data.LarvaFrameData;
+
+import javax.swing.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+
+/**
+ * Drives log playback from a single (coalescing) Swing timer.
+ *
+ * Each timer tick maps the wall-clock time elapsed since playback started
+ * (scaled by the playback speed) onto the log's capture time line and
+ * moves the log model directly to the last frame captured at or before
+ * that time.  If painting falls behind, intermediate frames are simply
+ * skipped for display purposes, but every frame index that playback
+ * passes over is still published through the {@link #PLAYED_FRAME_PROPERTY}
+ * so that non-visual consumers see a complete sequence.
+ *
+ * @author Eric Trautman
+ */
+public class PlaybackClock
+        extends PropertyChangeSupporter {
+
+    /** Fired (boolean) whenever playback starts or stops. */
+    public static final String PLAYING_PROPERTY = "playing";
+
+    /** Fired (double) whenever the playback speed changes. */
+    public static final String SPEED_PROPERTY = "speed";
+
+    /** Fired (int) once for each frame index that playback passes over. */
+    public static final String PLAYED_FRAME_PROPERTY = "played-frame";
+
+    /** Supported playback speeds (multiples of real time). */
+    public static final double[] SPEEDS = {
+            0.25, 0.5, 1.0, 2.0, 4.0, 8.0, 16.0, 32.0
+    };
+
+    public static final double MIN_SPEED = SPEEDS[0];
+    public static final double MAX_SPEED = SPEEDS[SPEEDS.length - 1];
+    public static final double DEFAULT_SPEED = 1.0;
+
+    /** Timer period (roughly 60 ticks per second). */
+    private static final int TICK_MILLISECONDS = 16;
+
+    private LogModel logModel;
+    private Timer timer;
+    private double speed;
+
+    /** Wall-clock time (in milliseconds) of the current playback anchor. */
+    private long anchorWallClockTime;
+
+    /** Log capture time (in milliseconds) of the current playback anchor. */
+    private long anchorLogTime;
+
+    /** Index of the last frame published to played frame listeners. */
+    private int lastPlayedFrame;
+
+    /** Indicates that this clock (rather than a user) is moving the model. */
+    private boolean isAdvancing;
+
+    private long droppedFrameCount;
+
+    public PlaybackClock(LogModel logModel) {
+
+        this.logModel = logModel;
+        this.speed = DEFAULT_SPEED;
+        this.lastPlayedFrame = -1;
+        this.isAdvancing = false;
+        this.droppedFrameCount = 0;
+
+        this.timer = new Timer(TICK_MILLISECONDS, new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                tick(System.currentTimeMillis());
+            }
+        });
+        // merge queued ticks so that a slow event dispatch thread
+        // never gets flooded with playback events
+        this.timer.setCoalesce(true);
+
+        this.logModel.addPropertyChangeListener(
+                LogModel.LOG_FILE_PROPERTY,
+                new PropertyChangeListener() {
+                    @Override
+                    public void propertyChange(PropertyChangeEvent evt) {
+                        stop();
+                    }
+                });
+
+        this.logModel.addPropertyChangeListener(
+                LogModel.CURRENT_FRAME_PROPERTY,
+                new PropertyChangeListener() {
+                    @Override
+                    public void propertyChange(PropertyChangeEvent evt) {
+                        if (isPlaying() && (! isAdvancing)) {
+                            // user navigated during playback, so continue
+                            // playing from the newly selected frame
+                            anchor(System.currentTimeMillis());
+                        }
+                    }
+                });
+    }
+
+    public boolean isPlaying() {
+        return timer.isRunning();
+    }
+
+    public double getSpeed() {
+        return speed;
+    }
+
+    /**
+     * Changes the playback speed.  If playback is in progress,
+     * it continues (at the new speed) from the current frame.
+     *
+     * @param  speed  multiple of real time for playback.
+     *
+     * @throws IllegalArgumentException
+     *   if the speed is outside of the supported range.
+     */
+    public void setSpeed(double speed)
+            throws IllegalArgumentException {
+
+        if ((speed < MIN_SPEED) || (speed > MAX_SPEED)) {
+            throw new IllegalArgumentException(
+                    "playback speed must be between " + MIN_SPEED +
+                    " and " + MAX_SPEED + " but was " + speed);
+        }
+
+        if (speed != this.speed) {
+            final double previousSpeed = this.speed;
+            if (isPlaying()) {
+                anchor(System.currentTimeMillis());
+            }
+            this.speed = speed;
+            firePropertyChange(SPEED_PROPERTY, previousSpeed, speed);
+        }
+    }
+
+    /**
+     * @return number of frames skipped (not displayed) since playback
+     *         was last started.
+     */
+    public long getDroppedFrameCount() {
+        return droppedFrameCount;
+    }
+
+    public void start() {
+        if ((! isPlaying()) && logModel.hasFrames()) {
+            if (logModel.isLastFrame()) {
+                logModel.moveToFirstFrame();
+            }
+            droppedFrameCount = 0;
+            anchor(System.currentTimeMillis());
+            timer.start();
+            firePropertyChange(PLAYING_PROPERTY, false, true);
+        }
+    }
+
+    public void stop() {
+        if (isPlaying()) {
+            timer.stop();
+            if (droppedFrameCount > 0) {
+                LOG.debug("stop: skipped display of " + droppedFrameCount +
+                          " frames to keep up with " + speed + "x playback");
+            }
+            firePropertyChange(PLAYING_PROPERTY, true, false);
+        }
+    }
+
+    /**
+     * Resets the mapping between wall-clock and log time so that
+     * the current frame is played at the specified wall-clock time.
+     *
+     * @param  wallClockTime  current wall-clock time.
+     */
+    private void anchor(long wallClockTime) {
+        final LarvaFrameData currentFrameData = logModel.getCurrentFrameData();
+        anchorWallClockTime = wallClockTime;
+        if (currentFrameData == null) {
+            anchorLogTime = 0;
+        } else {
+            anchorLogTime = currentFrameData.getTime();
+        }
+        lastPlayedFrame = logModel.getCurrentFrame();
+    }
+
+    /**
+     * @param  wallClockTime  current wall-clock time.
+     *
+     * @return the log capture time that should be displayed at
+     *         the specified wall-clock time.
+     */
+    private long getLogTime(long wallClockTime) {
+        final long elapsed = wallClockTime - anchorWallClockTime;
+        return anchorLogTime + (long) (elapsed * speed);
+    }
+
+    /**
+     * Advances playback to the last frame captured at or before
+     * the log time mapped from the specified wall-clock time.
+     *
+     * @param  wallClockTime  current wall-clock time.
+     */
+    private void tick(long wallClockTime) {
+
+        final int frameCount = logModel.getFrameCount();
+        final long logTime = getLogTime(wallClockTime);
+
+        int targetFrame = lastPlayedFrame;
+        final FrameTimeIndex timeIndex = logModel.getTimeIndex();
+        if (timeIndex != null) {
+            targetFrame = Math.max(lastPlayedFrame,
+                                   timeIndex.getLastFrameAtOrBefore(logTime));
+        }
+
+        if (targetFrame > lastPlayedFrame) {
+
+            for (int i = lastPlayedFrame + 1; i <= targetFrame; i++) {
+                firePropertyChange(PLAYED_FRAME_PROPERTY, i - 1, i);
+            }
+
+            droppedFrameCount += targetFrame - lastPlayedFrame - 1;
+            lastPlayedFrame = targetFrame;
+
+            isAdvancing = true;
+            try {
+                logModel.moveToFrame(targetFrame);
+            } finally {
+                isAdvancing = false;
+            }
+        }
+
+        if (lastPlayedFrame >= (frameCount - 1)) {
+            stop();
+        }
+    }
+
+    private static final Logger LOG = Logger.getLogger(PlaybackClock.class);
+}
@@ -45,21 +45,33 @@ public class PlaybackControlsPanel {
 
     private JSlider timestampSlider;
 
+    private JComboBox<PlaybackSpeed> speedComboBox;
+
     @SuppressWarnings("UnusedDeclaration")
     private JPanel textPanel;
     private JLabel frameLabel;
     private JLabel timestampLabel;
 
     private LogModel logModel;
+    private PlaybackClock playbackClock;
     private ImageIcon playIcon;
     private ImageIcon stopIcon;
 
-    private boolean isPlaying;
     private boolean handleSliderChangeEvents;
 
     public PlaybackControlsPanel(LogModel logModel) {
 
         this.logModel = logModel;
+        this.playbackClock = new PlaybackClock(logModel);
+
+        this.playbackClock.addPropertyChangeListener(
+                PlaybackClock.PLAYING_PROPERTY,
+                new PropertyChangeListener() {
+                    @Override
+                    public void propertyChange(PropertyChangeEvent evt) {
+                        updatePlayButton();
+                    }
+                });
 
         this.logModel.addPropertyChangeListener(
                 LogModel.LOG_FILE_PROPERTY,
@@ -85,7 +97,7 @@ public class PlaybackControlsPanel {
         this.playButton.addActionListener(new AbstractAction() {
             @Override
             public void actionPerformed(ActionEvent e) {
-                if (isPlaying) {
+                if (playbackClock.isPlaying()) {
                     stopPlaying();
                 } else {
                     startPlaying();
@@ -112,21 +124,20 @@ public class PlaybackControlsPanel {
         return contentPanel;
     }
 
+    /**
+     * @return the clock that drives playback for this panel
+     *         (useful for registering played frame listeners).
+     */
+    public PlaybackClock getPlaybackClock() {
+        return playbackClock;
+    }
+
     public void startPlaying() {
-        if ((! isPlaying) && (logModel.hasFrames())) {
-            isPlaying = true;
-            playButton.setIcon(stopIcon);
-            playButton.setToolTipText("Stop");
-            invokePlayNextLater(System.currentTimeMillis());
-        }
+        playbackClock.start();
     }
 
     public void stopPlaying() {
-        if ((isPlaying) && (logModel.hasFrames())) {
-            isPlaying = false;
-            playButton.setIcon(playIcon);
-            playButton.setToolTipText("Play");
-        }
+        playbackClock.stop();
     }
 
     private void createUIComponents() {
@@ -170,6 +181,24 @@ public class PlaybackControlsPanel {
                         logModel.moveToLastFrame();
                     }
                 });
+
+        speedComboBox = new JComboBox<PlaybackSpeed>();
+        for (double speed : PlaybackClock.SPEEDS) {
+            speedComboBox.addItem(new PlaybackSpeed(speed));
+        }
+        speedComboBox.setSelectedItem(
+                new PlaybackSpeed(PlaybackClock.DEFAULT_SPEED));
+        speedComboBox.setToolTipText("Playback Speed");
+        speedComboBox.addActionListener(new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                final PlaybackSpeed selectedSpeed =
+                        (PlaybackSpeed) speedComboBox.getSelectedItem();
+                if (selectedSpeed != null) {
+                    playbackClock.setSpeed(selectedSpeed.getValue());
+                }
+            }
+        });
     }
 
     private JButton createButton(Action action) {
@@ -249,34 +278,13 @@ public class PlaybackControlsPanel {
         timestampLabel.setText(time);
     }
 
-    private void invokePlayNextLater(final long requestTime) {
-        SwingUtilities.invokeLater(new Runnable() {
-            @Override
-            public void run() {
-                playNext(requestTime);
-            }
-        });
-    }
-
-    private void playNext(final long requestTime) {
-        if (isPlaying) {
-            final long frameElapsed =
-                    logModel.getIntervalBetweenCurrentAndNextFrame();
-            if (frameElapsed > 0) {
-                long actualElapsed = System.currentTimeMillis() - requestTime;
-                if (actualElapsed < frameElapsed) {
-                    invokePlayNextLater(requestTime);
-                } else {
-                    final int delta = (int) (actualElapsed / frameElapsed);
-                    if (delta > 5) {
-                        LOG.warn("playNext: large playback delta:" + delta);
-                    }
-                    logModel.moveRelativeToCurrentFrame(delta);
-                    invokePlayNextLater(System.currentTimeMillis());
-                }
-            } else {
-                stopPlaying();
-            }
+    private void updatePlayButton() {
+        if (playbackClock.isPlaying()) {
+            playButton.setIcon(stopIcon);
+            playButton.setToolTipText("Stop");
+        } else {
+            playButton.setIcon(playIcon);
+            playButton.setToolTipText("Play");
         }
     }
 
@@ -286,6 +294,45 @@ public class PlaybackControlsPanel {
         handleSliderChangeEvents = true;
     }
 
+    /**
+     * Speed combo box item.
+     */
+    private static class PlaybackSpeed {
+
+        private double value;
+
+        public PlaybackSpeed(double value) {
+            this.value = value;
+        }
+
+        public double getValue() {
+            return value;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return (o instanceof PlaybackSpeed) &&
+                   (Double.compare(((PlaybackSpeed) o).value, value) == 0);
+        }
+
+        @Override
+        public int hashCode() {
+            final long temp = Double.doubleToLongBits(value);
+            return (int) (temp ^ (temp >>> 32));
+        }
+
+        @Override
+        public String toString() {
+            final String text;
+            if (value == Math.rint(value)) {
+                text = String.valueOf((long) value);
+            } else {
+                text = String.valueOf(value);
+            }
+            return text + "x";
+        }
+    }
+
     private static final Logger LOG =
             Logger.getLogger(PlaybackControlsPanel.class);
 }
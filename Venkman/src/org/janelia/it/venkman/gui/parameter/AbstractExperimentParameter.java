@@ -7,8 +7,6 @@
 
 package org.janelia.it.venkman.gui.parameter;
 
-import java.lang.reflect.Field;
-
 /**
  * Provides common implementation for {@link ExperimentParameter} instances.
  *
@@ -19,14 +17,14 @@ public abstract class AbstractExperimentParameter
 
     private String displayName;
     private boolean isRequired;
-    private Field dataField;
+    private ParameterDescriptor descriptor;
 
     public AbstractExperimentParameter(String displayName,
                                        boolean required,
-                                       Field dataField) {
+                                       ParameterDescriptor descriptor) {
         this.displayName = displayName;
         this.isRequired = required;
-        this.dataField = dataField;
+        this.descriptor = descriptor;
     }
 
     @Override
@@ -40,7 +38,7 @@ public abstract class AbstractExperimentParameter
     }
 
     @Override
-    public Field getDataField() {
-        return dataField;
+    public ParameterDescriptor getDescriptor() {
+        return descriptor;
     }
 }
\ No newline at end of file
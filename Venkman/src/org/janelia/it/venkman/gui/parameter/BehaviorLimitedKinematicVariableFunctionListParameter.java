@@ -10,7 +10,6 @@ package org.janelia.it.venkman.gui.parameter;
 import org.janelia.it.venkman.config.rules.BehaviorLimitedKinematicVariableFunctionList;
 
 import java.awt.*;
-import java.lang.reflect.Field;
 
 /**
  * User interface for {@link BehaviorLimitedKinematicVariableFunctionList} objects.
@@ -18,8 +17,11 @@ import java.lang.reflect.Field;
  * @author Eric Trautman
  */
 public class BehaviorLimitedKinematicVariableFunctionListParameter
-        extends AbstractExperimentParameter {
+        extends AbstractExperimentParameter
+        implements LazyComponentParameter {
 
+    private String listItemBaseName;
+    private BehaviorLimitedKinematicVariableFunctionList originalList;
     private BehaviorLimitedKinematicVariableFunctionListComponent component;
 
     /**
@@ -27,50 +29,75 @@ public class BehaviorLimitedKinematicVariableFunctionListParameter
      *
      * @param  displayName         the display name for the list.
      * @param  required            indicates whether the list must have at least one element.
-     * @param  dataField           the annotated data field for the list.
+     * @param  descriptor          the annotated data field descriptor for the list.
      * @param  listItemBaseName    base name (e.g. 'Filter') for each element in the list.
      *                             Used by UI component to name elements (e.g. 'Filter 1', 'Filter 2', ...).
      * @param  originalList        the original list to display.
      */
     public BehaviorLimitedKinematicVariableFunctionListParameter(String displayName,
                                                                  boolean required,
-                                                                 Field dataField,
+                                                                 ParameterDescriptor descriptor,
                                                                  String listItemBaseName,
                                                                  BehaviorLimitedKinematicVariableFunctionList originalList) {
 
-        super(displayName, required, dataField);
+        super(displayName, required, descriptor);
 
-        this.component = new BehaviorLimitedKinematicVariableFunctionListComponent(listItemBaseName,
-                                                                                   originalList);
+        this.listItemBaseName = listItemBaseName;
+        this.originalList = originalList;
     }
 
     @Override
     public Component getReadOnlyComponent() {
-        component.setEditable(false);
+        getListComponent().setEditable(false);
         return getComponent();
     }
 
     @Override
     public Component getComponent() {
-        return component.getContentPanel();
+        return getListComponent().getContentPanel();
+    }
+
+    @Override
+    public boolean isComponentCreated() {
+        return (component != null);
     }
 
     @Override
     public void validate() throws IllegalArgumentException {
-        if (isRequired() && (! component.hasAtLeastOneConfiguredFunction())) {
-            throw new IllegalArgumentException(
-                    "The " + getDisplayName() + " parameter must contain at least one function.");
+        if (component == null) {
+            // nothing has been edited, so only check the original list
+            if (isRequired() && ((originalList == null) || (originalList.size() == 0))) {
+                throw new IllegalArgumentException(
+                        "The " + getDisplayName() + " parameter must contain at least one function.");
+            }
+        } else {
+            if (isRequired() && (! component.hasAtLeastOneConfiguredFunction())) {
+                throw new IllegalArgumentException(
+                        "The " + getDisplayName() + " parameter must contain at least one function.");
+            }
+            component.validateFunctions(getDisplayName());
         }
-        component.validateFunctions(getDisplayName());
     }
 
     @Override
     public void applyValue(Object object)
             throws IllegalArgumentException, IllegalAccessException {
         validate();
-        Field dataField = getDataField();
-        Object value = component.getModifiedList();
-        dataField.set(object, value);
+        final BehaviorLimitedKinematicVariableFunctionList value;
+        if (component == null) {
+            value = originalList;
+        } else {
+            value = component.getModifiedList();
+        }
+        getDescriptor().setValue(object, value);
+    }
+
+    private BehaviorLimitedKinematicVariableFunctionListComponent getListComponent() {
+        if (component == null) {
+            component = new BehaviorLimitedKinematicVariableFunctionListComponent(listItemBaseName,
+                                                                                  originalList);
+        }
+        return component;
     }
 
 }
\ No newline at end of file
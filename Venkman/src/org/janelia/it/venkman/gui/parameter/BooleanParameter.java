@@ -11,7 +11,6 @@ import javax.swing.*;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.KeyEvent;
-import java.lang.reflect.Field;
 
 /**
  * User interface for boolean parameters.
@@ -28,9 +27,9 @@ public class BooleanParameter extends AbstractExperimentParameter {
 
     public BooleanParameter(String displayName,
                             boolean required,
-                            Field dataField) {
+                            ParameterDescriptor descriptor) {
 
-        super(displayName, required, dataField);
+        super(displayName, required, descriptor);
 
         this.component = new JPanel(new FlowLayout(FlowLayout.LEFT));
 
@@ -85,8 +84,7 @@ public class BooleanParameter extends AbstractExperimentParameter {
     public void applyValue(Object object)
             throws IllegalArgumentException, IllegalAccessException {
         validate();
-        Field dataField = getDataField();
-        dataField.setBoolean(object, getValue());
+        getDescriptor().setValue(object, getValue());
     }
 
     public Boolean getValue() {
@@ -7,7 +7,6 @@
 
 package org.janelia.it.venkman.gui.parameter;
 
-import java.lang.reflect.Field;
 import java.math.BigDecimal;
 
 /**
@@ -20,18 +19,17 @@ public class DecimalParameter
 
     public DecimalParameter(String displayName,
                             boolean required,
-                            Field dataField,
+                            ParameterDescriptor descriptor,
                             BigDecimal minimum,
                             BigDecimal maximum) {
-        super(displayName, required, dataField, minimum, maximum);
+        super(displayName, required, descriptor, minimum, maximum);
     }
 
     @Override
     public void applyValue(Object object)
             throws IllegalArgumentException, IllegalAccessException {
         validate();
-        Field dataField = getDataField();
-        dataField.setDouble(object, getDoubleValue());
+        getDescriptor().setValue(object, getDoubleValue());
     }
 
     @Override
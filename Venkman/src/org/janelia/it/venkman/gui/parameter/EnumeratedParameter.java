@@ -9,7 +9,6 @@ package org.janelia.it.venkman.gui.parameter;
 
 import javax.swing.*;
 import java.awt.*;
-import java.lang.reflect.Field;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -26,13 +25,13 @@ public class EnumeratedParameter
 
     public EnumeratedParameter(String displayName,
                                boolean required,
-                               Field dataField) {
+                               ParameterDescriptor descriptor) {
 
-        super(displayName, required, dataField);
+        super(displayName, required, descriptor);
 
         this.valueToEnumConstantMap = new HashMap<String, Object>();
 
-        final Class type = dataField.getType();
+        final Class type = descriptor.getType();
         final Object[] constants = type.getEnumConstants();
         final int numValues = constants.length;
         String[] values = new String[numValues];
@@ -64,8 +63,7 @@ public class EnumeratedParameter
         validate();
         final String value = getValue();
         final Object enumConstant = valueToEnumConstantMap.get(value);
-        Field dataField = getDataField();
-        dataField.set(object, enumConstant);
+        getDescriptor().setValue(object, enumConstant);
     }
 
     public String getValue() {
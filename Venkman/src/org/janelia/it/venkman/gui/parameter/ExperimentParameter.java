@@ -8,7 +8,6 @@
 package org.janelia.it.venkman.gui.parameter;
 
 import java.awt.*;
-import java.lang.reflect.Field;
 
 /**
  * The common interface for managing experiment parameters
@@ -29,9 +28,9 @@ public interface ExperimentParameter {
     public boolean isRequired();
 
     /**
-     * @return the mapped data field for this parameter.
+     * @return the mapped data field descriptor for this parameter.
      */
-    public Field getDataField();
+    public ParameterDescriptor getDescriptor();
 
     /**
      * @return a read-only user interface component for this parameter.
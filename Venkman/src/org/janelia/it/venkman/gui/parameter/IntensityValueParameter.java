@@ -12,7 +12,6 @@ import org.janelia.it.venkman.config.rules.NoiseGenerator;
 
 import javax.swing.*;
 import java.awt.*;
-import java.lang.reflect.Field;
 import java.math.BigDecimal;
 
 /**
@@ -32,10 +31,10 @@ public class IntensityValueParameter
 
     public IntensityValueParameter(String displayName,
                                    boolean required,
-                                   Field dataField,
+                                   ParameterDescriptor descriptor,
                                    IntensityValue originalValue) {
 
-        super(displayName, required, dataField);
+        super(displayName, required, descriptor);
 
         this.originalValue = originalValue;
 
@@ -106,8 +105,6 @@ public class IntensityValueParameter
     public void applyValue(Object object)
             throws IllegalArgumentException, IllegalAccessException {
         validate();
-        Field dataField = getDataField();
-
         NoiseGenerator noiseGenerator = null;
         if (component.isNoiseEnabled()) {
             noiseGenerator = new NoiseGenerator(
@@ -117,7 +114,7 @@ public class IntensityValueParameter
         IntensityValue updatedValue =
                 new IntensityValue(percentage.getDoubleValue(),
                                    noiseGenerator);
-        dataField.set(object, updatedValue);
+        getDescriptor().setValue(object, updatedValue);
     }
 
     private static final BigDecimal ZERO = new BigDecimal(0.0);
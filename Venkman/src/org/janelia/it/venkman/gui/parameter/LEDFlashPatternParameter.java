@@ -9,8 +9,6 @@ package org.janelia.it.venkman.gui.parameter;
 
 import org.janelia.it.venkman.config.rules.LEDFlashPattern;
 
-import java.lang.reflect.Field;
-
 /**
  * User interface for {@link LEDFlashPattern} parameters.
  *
@@ -23,8 +21,8 @@ public class LEDFlashPatternParameter
 
     public LEDFlashPatternParameter(String displayName,
                                     boolean required,
-                                    Field dataField) {
-        super(displayName, required, dataField);
+                                    ParameterDescriptor descriptor) {
+        super(displayName, required, descriptor);
     }
 
     @Override
@@ -37,7 +35,6 @@ public class LEDFlashPatternParameter
     public void applyValue(Object object)
             throws IllegalArgumentException, IllegalAccessException {
         validate();
-        Field dataField = getDataField();
-        dataField.set(object, validatedPattern);
+        getDescriptor().setValue(object, validatedPattern);
     }
 }
\ No newline at end of file
@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2014 Howard Hughes Medical Institute.
+ * All rights reserved.
+ * Use is subject to Janelia Farm Research Campus Software Copyright 1.1
+ * license terms (http://license.janelia.org/license/jfrc_copyright_1_1.html).
+ */
+
+package org.janelia.it.venkman.gui.parameter;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.HierarchyEvent;
+import java.awt.event.HierarchyListener;
+
+/**
+ * Placeholder panel that defers creation of a parameter's
+ * user interface component until the panel is first shown.
+ *
+ * @author Eric Trautman
+ */
+public class LazyComponentPanel
+        extends JPanel {
+
+    private static final long serialVersionUID = 1L;
+
+    private ExperimentParameter parameter;
+    private boolean isEditable;
+    private HierarchyListener showingListener;
+
+    public LazyComponentPanel(ExperimentParameter parameter,
+                              boolean isEditable) {
+
+        super(new BorderLayout());
+
+        this.parameter = parameter;
+        this.isEditable = isEditable;
+
+        this.showingListener = new HierarchyListener() {
+            @Override
+            public void hierarchyChanged(HierarchyEvent e) {
+                if (((e.getChangeFlags() & HierarchyEvent.SHOWING_CHANGED) != 0) &&
+                    isShowing()) {
+                    addParameterComponent();
+                }
+            }
+        };
+        addHierarchyListener(this.showingListener);
+    }
+
+    private void addParameterComponent() {
+
+        removeHierarchyListener(showingListener);
+
+        final Component component;
+        if (isEditable) {
+            component = parameter.getComponent();
+        } else {
+            component = parameter.getReadOnlyComponent();
+        }
+        add(component, BorderLayout.CENTER);
+
+        revalidate();
+        repaint();
+    }
+}
@@ -0,0 +1,26 @@
+/*
+ * Copyright (c) 2014 Howard Hughes Medical Institute.
+ * All rights reserved.
+ * Use is subject to Janelia Farm Research Campus Software Copyright 1.1
+ * license terms (http://license.janelia.org/license/jfrc_copyright_1_1.html).
+ */
+
+package org.janelia.it.venkman.gui.parameter;
+
+/**
+ * Identifies parameters with heavyweight user interface components
+ * (e.g. function tables) that should not be created until they are
+ * first shown.  Implementations must apply their original value
+ * if their component has never been created.
+ *
+ * @author Eric Trautman
+ */
+public interface LazyComponentParameter
+        extends ExperimentParameter {
+
+    /**
+     * @return true if the user interface component for this parameter
+     *         has been created; otherwise false.
+     */
+    public boolean isComponentCreated();
+}
@@ -7,8 +7,6 @@
 
 package org.janelia.it.venkman.gui.parameter;
 
-import java.lang.reflect.Field;
-
 /**
  * User interface for numeric (long) parameters.
  *
@@ -19,24 +17,24 @@ public class NumericParameter
 
     public NumericParameter(String displayName,
                             boolean required,
-                            Field dataField,
+                            ParameterDescriptor descriptor,
                             Long minimum,
                             Long maximum) {
-        super(displayName, required, dataField, minimum, maximum);
+        super(displayName, required, descriptor, minimum, maximum);
     }
 
     @Override
     public void applyValue(Object object)
             throws IllegalArgumentException, IllegalAccessException {
         validate();
-        Field dataField = getDataField();
-        final Class type = dataField.getType();
+        final ParameterDescriptor descriptor = getDescriptor();
+        final Class type = descriptor.getType();
         final Long longValue = getLongValue();
         if ((type == long.class) || (type == Long.class)) {
-            dataField.setLong(object, longValue);
+            descriptor.setValue(object, longValue);
 
         } else if ((type == int.class) || (type == Integer.class)) {
-            dataField.setInt(object, longValue.intValue());
+            descriptor.setValue(object, longValue.intValue());
         }
     }
 
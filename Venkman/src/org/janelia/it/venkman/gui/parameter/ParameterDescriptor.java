@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) 2014 Howard Hughes Medical Institute.
+ * All rights reserved.
+ * Use is subject to Janelia Farm Research Campus Software Copyright 1.1
+ * license terms (http://license.janelia.org/license/jfrc_copyright_1_1.html).
+ */
+
+package org.janelia.it.venkman.gui.parameter;
+
+import org.janelia.it.venkman.gui.parameter.annotation.VenkmanParameter;
+import org.janelia.it.venkman.gui.parameter.annotation.VenkmanParameterFilter;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Describes a {@link VenkmanParameter} annotated field.
+ *
+ * The annotated fields for each class are only examined once and the
+ * resulting (display ordered) descriptor list is cached for reuse.
+ * Field values are read and written through method handles that are
+ * compiled when the descriptor is created.
+ *
+ * @author Eric Trautman
+ */
+public class ParameterDescriptor {
+
+    private String name;
+    private Class<?> type;
+    private VenkmanParameter annotation;
+    private MethodHandle getter;
+    private MethodHandle setter;
+
+    private ParameterDescriptor(Field field,
+                                VenkmanParameter annotation)
+            throws IllegalAccessException {
+
+        this.name = field.getName();
+        this.type = field.getType();
+        this.annotation = annotation;
+
+        field.setAccessible(true);
+        final MethodHandles.Lookup lookup = MethodHandles.lookup();
+        this.getter = lookup.unreflectGetter(field).asType(GETTER_TYPE);
+        this.setter = lookup.unreflectSetter(field).asType(SETTER_TYPE);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Class<?> getType() {
+        return type;
+    }
+
+    public VenkmanParameter getAnnotation() {
+        return annotation;
+    }
+
+    /**
+     * @param  object  container object.
+     *
+     * @return the (boxed) value of this field in the specified object.
+     *
+     * @throws IllegalArgumentException
+     *   if the value cannot be retrieved.
+     */
+    public Object getValue(Object object)
+            throws IllegalArgumentException {
+        try {
+            return (Object) getter.invokeExact(object);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalArgumentException(
+                    "failed to retrieve " + name + " value", t);
+        }
+    }
+
+    /**
+     * Sets the value of this field in the specified object.
+     *
+     * @param  object  container object.
+     * @param  value   (boxed) value to set.
+     *
+     * @throws IllegalArgumentException
+     *   if the value cannot be set.
+     */
+    public void setValue(Object object,
+                         Object value)
+            throws IllegalArgumentException {
+        try {
+            setter.invokeExact(object, value);
+        } catch (ClassCastException e) {
+            throw new IllegalArgumentException(
+                    "invalid value type for " + name, e);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalArgumentException(
+                    "failed to set " + name + " value", t);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+    /**
+     * @param  clazz  class to examine.
+     *
+     * @return display ordered list of descriptors for all visible
+     *         annotated fields in the specified class (and its super classes).
+     *
+     * @throws IllegalArgumentException
+     *   if accessors cannot be created for an annotated field.
+     */
+    public static List<ParameterDescriptor> getDescriptors(Class<?> clazz)
+            throws IllegalArgumentException {
+        List<ParameterDescriptor> descriptors = CLASS_TO_DESCRIPTORS.get(clazz);
+        if (descriptors == null) {
+            descriptors = Collections.unmodifiableList(buildDescriptors(clazz));
+            final List<ParameterDescriptor> existingDescriptors =
+                    CLASS_TO_DESCRIPTORS.putIfAbsent(clazz, descriptors);
+            if (existingDescriptors != null) {
+                descriptors = existingDescriptors;
+            }
+        }
+        return descriptors;
+    }
+
+    private static List<ParameterDescriptor> buildDescriptors(Class<?> dataClass)
+            throws IllegalArgumentException {
+
+        Set<String> hiddenParameters = new HashSet<String>();
+        VenkmanParameterFilter filter;
+        Class<?> clazz = dataClass;
+        List<Class<?>> classList = new ArrayList<Class<?>>();
+        while (clazz != null ) {
+
+            filter = clazz.getAnnotation(VenkmanParameterFilter.class);
+            if (filter != null) {
+                hiddenParameters.addAll(
+                        Arrays.asList(filter.hiddenParameters()));
+            }
+
+            classList.add(clazz);
+            clazz = clazz.getSuperclass();
+        }
+
+        List<ParameterDescriptor> descriptors = new ArrayList<ParameterDescriptor>();
+        VenkmanParameter annotation;
+        // reverse loop order so that super class parameters are added first by default
+        for (int i = classList.size(); i > 0; i--) {
+            clazz = classList.get(i-1);
+            for (Field f : clazz.getDeclaredFields()) {
+                annotation = f.getAnnotation(VenkmanParameter.class);
+                if ((annotation != null) && (! hiddenParameters.contains(f.getName()))) {
+                    try {
+                        descriptors.add(new ParameterDescriptor(f, annotation));
+                    } catch (IllegalAccessException e) {
+                        throw new IllegalArgumentException(
+                                "Failed to create accessors for field " + f.getName() +
+                                " in class " + clazz.getName(),
+                                e);
+                    }
+                }
+            }
+        }
+
+        // sort list by annotated display order (to override default class order as needed)
+        Collections.sort(descriptors, DISPLAY_ORDER_COMPARATOR);
+
+        return descriptors;
+    }
+
+    private static final MethodType GETTER_TYPE =
+            MethodType.methodType(Object.class, Object.class);
+    private static final MethodType SETTER_TYPE =
+            MethodType.methodType(void.class, Object.class, Object.class);
+
+    private static final Comparator<ParameterDescriptor> DISPLAY_ORDER_COMPARATOR =
+            new Comparator<ParameterDescriptor>() {
+                @Override
+                public int compare(ParameterDescriptor o1,
+                                   ParameterDescriptor o2) {
+                    return o1.annotation.displayOrder() - o2.annotation.displayOrder();
+                }
+            };
+
+    private static final ConcurrentMap<Class<?>, List<ParameterDescriptor>> CLASS_TO_DESCRIPTORS =
+            new ConcurrentHashMap<Class<?>, List<ParameterDescriptor>>();
+}
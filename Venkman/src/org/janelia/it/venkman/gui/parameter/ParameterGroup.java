@@ -19,17 +19,11 @@ import org.janelia.it.venkman.config.rules.PositionalVariableFunction;
 import org.janelia.it.venkman.config.rules.SingleVariableFunction;
 import org.janelia.it.venkman.gui.NarrowOptionPane;
 import org.janelia.it.venkman.gui.parameter.annotation.VenkmanParameter;
-import org.janelia.it.venkman.gui.parameter.annotation.VenkmanParameterFilter;
 
 import javax.swing.*;
-import java.lang.reflect.Field;
 import java.math.BigDecimal;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collections;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
 
 /**
  * Group of user interface parameters for a behavior or stimulus configuration.
@@ -50,47 +44,15 @@ public class ParameterGroup<T> {
         this.parameterList = new ArrayList<ExperimentParameter>();
         this.data = data;
 
-        Set<String> hiddenParameters = new HashSet<String>();
-        VenkmanParameterFilter filter;
-        Class<?> clazz = data.getClass();
-        List<Class<?>> classList = new ArrayList<Class<?>>();
-        while (clazz != null ) {
-
-            filter = clazz.getAnnotation(VenkmanParameterFilter.class);
-            if (filter != null) {
-                hiddenParameters.addAll(
-                        Arrays.asList(filter.hiddenParameters()));
-            }
-
-            classList.add(clazz);
-            clazz = clazz.getSuperclass();
-        }
-
-        List<SortableAnnotationField> annotationFieldList = new ArrayList<SortableAnnotationField>();
-        VenkmanParameter annotation;
-        // reverse loop order so that super class parameters are added first by default
-        for (int i = classList.size(); i > 0; i--) {
-            clazz = classList.get(i-1);
-            for (Field f : clazz.getDeclaredFields()) {
-                annotation = f.getAnnotation(VenkmanParameter.class);
-                if ((annotation != null) && (! hiddenParameters.contains(f.getName()))) {
-                    annotationFieldList.add(new SortableAnnotationField(annotation, f));
-                }
-            }
-        }
-
-        // sort list by annotated display order (to override default class order as needed)
-        Collections.sort(annotationFieldList);
-
         // add each field (in the desired order) to the user interface
-        for (SortableAnnotationField annotationField : annotationFieldList) {
+        for (ParameterDescriptor descriptor :
+                ParameterDescriptor.getDescriptors(data.getClass())) {
             try {
-                addParameter(annotationField.field, annotationField.annotation);
+                addParameter(descriptor);
             } catch (Exception e) {
-                final String fieldName = annotationField.field.getName();
-                final String className = annotationField.field.getClass().getName();
                 throw new IllegalArgumentException(
-                        "Failed to add parameter for field " +fieldName + " in class " + className,
+                        "Failed to add parameter for field " + descriptor.getName() +
+                        " in class " + data.getClass().getName(),
                         e);
             }
          }
@@ -117,7 +79,12 @@ public class ParameterGroup<T> {
             if (parameterList.size() > 0) {
 
                 for (ExperimentParameter parameter : parameterList) {
-                    if (isEditable) {
+                    if (parameter instanceof LazyComponentParameter) {
+                        // defer creation of heavyweight components until shown
+                        builder.append(parameter.getDisplayName() + ":",
+                                       new LazyComponentPanel(parameter,
+                                                              isEditable));
+                    } else if (isEditable) {
                         builder.append(parameter.getDisplayName() + ":",
                                        parameter.getComponent());
                     } else {
@@ -174,24 +141,23 @@ public class ParameterGroup<T> {
         return parameterList;
     }
 
-    private void addParameter(Field field,
-                              VenkmanParameter annotation)
-            throws IllegalAccessException, NumberFormatException {
+    private void addParameter(ParameterDescriptor descriptor)
+            throws IllegalArgumentException {
 
-        field.setAccessible(true);
+        final VenkmanParameter annotation = descriptor.getAnnotation();
 
         ExperimentParameter parameter = null;
 
-        final Class type = field.getType();
+        final Class type = descriptor.getType();
         if ((type == double.class) || (type == Double.class)) {
 
             DecimalParameter p = new DecimalParameter(
                     annotation.displayName(),
                     annotation.required(),
-                    field,
+                    descriptor,
                     getBigDecimalValue(annotation.minimum()),
                     getBigDecimalValue(annotation.maximum()));
-            double v = field.getDouble(data);
+            double v = (Double) descriptor.getValue(data);
             p.setDoubleValue(v);
             parameter = p;
 
@@ -201,10 +167,10 @@ public class ParameterGroup<T> {
             NumericParameter p = new NumericParameter(
                     annotation.displayName(),
                     annotation.required(),
-                    field,
+                    descriptor,
                     getLongValue(annotation.minimum()),
                     getLongValue(annotation.maximum()));
-            long v = field.getLong(data);
+            long v = ((Number) descriptor.getValue(data)).longValue();
             p.setValue(String.valueOf(v));
             parameter = p;
 
@@ -213,8 +179,8 @@ public class ParameterGroup<T> {
             BooleanParameter p = new BooleanParameter(
                     annotation.displayName(),
                     annotation.required(),
-                    field);
-            boolean v = field.getBoolean(data);
+                    descriptor);
+            boolean v = (Boolean) descriptor.getValue(data);
             p.setValue(v);
             parameter = p;
 
@@ -223,8 +189,8 @@ public class ParameterGroup<T> {
             EnumeratedParameter p = new EnumeratedParameter(
                     annotation.displayName(),
                     annotation.required(),
-                    field);
-            String v = String.valueOf(field.get(data));
+                    descriptor);
+            String v = String.valueOf(descriptor.getValue(data));
             p.setValue(v);
             parameter = p;
 
@@ -233,8 +199,8 @@ public class ParameterGroup<T> {
             VerifiedParameter p = new VerifiedParameter(
                     annotation.displayName(),
                     annotation.required(),
-                    field);
-            String v = (String) field.get(data);
+                    descriptor);
+            String v = (String) descriptor.getValue(data);
             p.setValue(v);
             parameter = p;
 
@@ -243,43 +209,43 @@ public class ParameterGroup<T> {
             LEDFlashPatternParameter p = new LEDFlashPatternParameter(
                     annotation.displayName(),
                     annotation.required(),
-                    field);
-            LEDFlashPattern v = (LEDFlashPattern) field.get(data);
+                    descriptor);
+            LEDFlashPattern v = (LEDFlashPattern) descriptor.getValue(data);
             p.setValue(v.getFlashPattern());
             parameter = p;
 
         } else if (type == IntensityValue.class) {
 
             final IntensityValue originalValue =
-                    (IntensityValue) field.get(data);
+                    (IntensityValue) descriptor.getValue(data);
 
             parameter = new IntensityValueParameter(
                     annotation.displayName(),
                     annotation.required(),
-                    field,
+                    descriptor,
                     originalValue);
 
         } else if (type == PositionalVariableFunction.class) {
 
             final PositionalVariableFunction originalFunction =
                     (PositionalVariableFunction)
-                            field.get(data);
+                            descriptor.getValue(data);
 
             parameter = new PositionalVariableFunctionParameter(
                     annotation.displayName(),
                     annotation.required(),
-                    field,
+                    descriptor,
                     originalFunction);
 
         } else if ((type == SingleVariableFunction.class) ||
                    (type == KinematicVariableFunction.class) ||
                    (type == BehaviorLimitedKinematicVariableFunction.class)) {
 
-            final SingleVariableFunction originalFunction = (SingleVariableFunction) field.get(data);
+            final SingleVariableFunction originalFunction = (SingleVariableFunction) descriptor.getValue(data);
 
             parameter = new SingleVariableFunctionParameter(annotation.displayName(),
                                                             annotation.required(),
-                                                            field,
+                                                            descriptor,
                                                             originalFunction,
                                                             annotation.inputUnits(),
                                                             getBigDecimalValue(annotation.minimum()),
@@ -291,11 +257,11 @@ public class ParameterGroup<T> {
         } else if (type == BehaviorLimitedKinematicVariableFunctionList.class) {
 
             final BehaviorLimitedKinematicVariableFunctionList originalList =
-                    (BehaviorLimitedKinematicVariableFunctionList) field.get(data);
+                    (BehaviorLimitedKinematicVariableFunctionList) descriptor.getValue(data);
 
             parameter = new BehaviorLimitedKinematicVariableFunctionListParameter(annotation.displayName(),
                                                                                   annotation.required(),
-                                                                                  field,
+                                                                                  descriptor,
                                                                                   annotation.listItemBaseName(),
                                                                                   originalList);
         }
@@ -320,23 +286,4 @@ public class ParameterGroup<T> {
         }
         return value;
     }
-
-    private class SortableAnnotationField
-            implements Comparable<SortableAnnotationField> {
-
-        public VenkmanParameter annotation;
-        public Field field;
-
-        private SortableAnnotationField(VenkmanParameter annotation,
-                                        Field field) {
-            this.annotation = annotation;
-            this.field = field;
-        }
-
-        @SuppressWarnings("NullableProblems")
-        @Override
-        public int compareTo(SortableAnnotationField o) {
-            return annotation.displayOrder() - o.annotation.displayOrder();
-        }
-    }
 }
@@ -17,7 +17,9 @@ import javax.swing.*;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
 import java.io.File;
 import java.math.BigDecimal;
 
@@ -211,28 +213,63 @@ public class PositionalVariableFunctionComponent {
             extends JPanel {
 
         private Dimension gradientSize;
-        private Color[][] gradient;
+        private PositionalVariableFunctionRaster raster;
+        private Point dragPoint;
 
         public ValuesPanel(Dimension gradientSize,
-                           boolean displayToolTips) {
+                           boolean isInteractive) {
             this.gradientSize = gradientSize;
+            this.raster = new PositionalVariableFunctionRaster(gradientSize.width,
+                                                               gradientSize.height);
             setBackground(Color.BLACK);
-            if (displayToolTips) {
+            if (isInteractive) {
                 setToolTipText("");
+                final MouseAdapter viewListener = new MouseAdapter() {
+                    @Override
+                    public void mouseWheelMoved(MouseWheelEvent e) {
+                        final double factor =
+                                Math.pow(ZOOM_FACTOR_PER_WHEEL_ROTATION,
+                                         -e.getWheelRotation());
+                        raster.zoom(factor, e.getX(), e.getY());
+                        repaint();
+                    }
+
+                    @Override
+                    public void mousePressed(MouseEvent e) {
+                        dragPoint = e.getPoint();
+                    }
+
+                    @Override
+                    public void mouseDragged(MouseEvent e) {
+                        if (dragPoint != null) {
+                            raster.pan(e.getX() - dragPoint.x,
+                                       e.getY() - dragPoint.y);
+                            dragPoint = e.getPoint();
+                            repaint();
+                        }
+                    }
+
+                    @Override
+                    public void mouseReleased(MouseEvent e) {
+                        dragPoint = null;
+                    }
+
+                    @Override
+                    public void mouseClicked(MouseEvent e) {
+                        if (e.getClickCount() == 2) {
+                            raster.resetView();
+                            repaint();
+                        }
+                    }
+                };
+                addMouseListener(viewListener);
+                addMouseMotionListener(viewListener);
+                addMouseWheelListener(viewListener);
             }
         }
 
         public void updateView(PositionalVariableFunction pvFunction) {
-            final double[][] arena =  pvFunction.getArena(gradientSize.width,
-                                                          gradientSize.height);
-            gradient = new Color[gradientSize.height][gradientSize.width];
-            int blue;
-            for (int y = 0; y < gradientSize.height; y++) {
-                for (int x = 0; x < gradientSize.width; x++) {
-                    blue = (int) ((arena[y][x] / 100) * 255);
-                    gradient[y][x] = new Color(0, 0, blue);
-                }
-            }
+            raster.setValues(pvFunction.getValues());
             repaint();
         }
 
@@ -256,27 +293,24 @@ public class PositionalVariableFunctionComponent {
             final Point point = event.getPoint();
             final PositionalVariableFunction pvFunction =
                     getPositionalVariableFunction();
-            final double x = (point.x * pvFunction.getMaximumVariableX()) /
-                             (double) gradientSize.width;
-            final double y = (point.y * pvFunction.getMaximumVariableY()) /
-                             (double) gradientSize.height;
+            final double x = raster.getViewX(point.x) *
+                             pvFunction.getMaximumVariableX();
+            final double y = raster.getViewY(point.y) *
+                             pvFunction.getMaximumVariableY();
             final double v = pvFunction.getValue(x, y);
+            String zoomText = "";
+            if (raster.getZoom() > 1.0) {
+                zoomText = " (zoom " + getScaledValue(raster.getZoom()) +
+                           "x, double click to reset)";
+            }
             return "(" + getScaledValue(x) + ", " + getScaledValue(y) +
-                   ") has intensity percentage " + getScaledValue(v);
+                   ") has intensity percentage " + getScaledValue(v) +
+                   zoomText;
         }
 
         public void paintComponent(Graphics g) {
             super.paintComponent(g);
-
-            if (gradient != null) {
-                Graphics2D g2d = (Graphics2D) g.create();
-                for (int y = 0; y < gradientSize.height; y++) {
-                    for (int x = 0; x < gradientSize.width; x++) {
-                        g2d.setPaint(gradient[y][x]);
-                        g2d.drawRect(x, y, 0, 0);
-                    }
-                }
-            }
+            g.drawImage(raster.getImage(), 0, 0, null);
         }
 
         private String getScaledValue(double value) {
@@ -303,4 +337,6 @@ public class PositionalVariableFunctionComponent {
                                            OutOfRangeErrorHandlingMethod.END_SESSION_FOR_MINIMUM_AND_MAXIMUM,
                                            new double[][] {{100},{0}});
 
+    private static final double ZOOM_FACTOR_PER_WHEEL_ROTATION = 1.25;
+
 }
\ No newline at end of file
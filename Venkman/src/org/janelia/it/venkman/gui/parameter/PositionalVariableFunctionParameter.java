@@ -10,7 +10,6 @@ package org.janelia.it.venkman.gui.parameter;
 import org.janelia.it.venkman.config.rules.PositionalVariableFunction;
 
 import java.awt.*;
-import java.lang.reflect.Field;
 
 /**
  * User interface for positional variable function parameters.
@@ -18,30 +17,36 @@ import java.lang.reflect.Field;
  * @author Eric Trautman
  */
 public class PositionalVariableFunctionParameter
-        extends AbstractExperimentParameter {
+        extends AbstractExperimentParameter
+        implements LazyComponentParameter {
 
+    private PositionalVariableFunction originalFunction;
     private PositionalVariableFunctionComponent component;
 
     public PositionalVariableFunctionParameter(String displayName,
                                                boolean required,
-                                               Field dataField,
+                                               ParameterDescriptor descriptor,
                                                PositionalVariableFunction originalFunction) {
 
-        super(displayName, required, dataField);
+        super(displayName, required, descriptor);
 
-        this.component =
-                new PositionalVariableFunctionComponent(originalFunction);
+        this.originalFunction = originalFunction;
     }
 
     @Override
     public Component getReadOnlyComponent() {
-        component.setEditable(false);
+        getFunctionComponent().setEditable(false);
         return getComponent();
     }
 
     @Override
     public Component getComponent() {
-        return component.getContentPanel();
+        return getFunctionComponent().getContentPanel();
+    }
+
+    @Override
+    public boolean isComponentCreated() {
+        return (component != null);
     }
 
     @Override
@@ -53,8 +58,20 @@ public class PositionalVariableFunctionParameter
     public void applyValue(Object object)
             throws IllegalArgumentException, IllegalAccessException {
         validate();
-        Field dataField = getDataField();
-        dataField.set(object, component.getPositionalVariableFunction());
+        final PositionalVariableFunction value;
+        if (component == null) {
+            value = originalFunction;
+        } else {
+            value = component.getPositionalVariableFunction();
+        }
+        getDescriptor().setValue(object, value);
+    }
+
+    private PositionalVariableFunctionComponent getFunctionComponent() {
+        if (component == null) {
+            component = new PositionalVariableFunctionComponent(originalFunction);
+        }
+        return component;
     }
 
 }
\ No newline at end of file
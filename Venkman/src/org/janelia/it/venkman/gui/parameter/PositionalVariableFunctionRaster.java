@@ -0,0 +1,373 @@
+/*
+ * Copyright (c) 2014 Howard Hughes Medical Institute.
+ * All rights reserved.
+ * Use is subject to Janelia Farm Research Campus Software Copyright 1.1
+ * license terms (http://license.janelia.org/license/jfrc_copyright_1_1.html).
+ */
+
+package org.janelia.it.venkman.gui.parameter;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Renders a positional variable function value matrix into a fixed size
+ * image that can simply be drawn whenever the owning component is painted.
+ *
+ * Intensities are written directly into the image's backing pixel array
+ * and are only recalculated when the values or the view (zoom and pan)
+ * change.  For matrices that are much larger than the image, a pyramid
+ * of box averaged (downsampled) copies of the matrix is built so that
+ * each rendered pixel is interpolated from the level whose resolution
+ * most closely matches the current view instead of from the full matrix.
+ *
+ * View coordinates are expressed as fractions (0 to 1) of the full
+ * matrix extent so that they can be mapped to any variable range.
+ *
+ * @author Eric Trautman
+ */
+public class PositionalVariableFunctionRaster {
+
+    /** Maximum supported zoom factor. */
+    public static final double MAX_ZOOM = 64.0;
+
+    private int width;
+    private int height;
+    private BufferedImage image;
+    private int[] pixels;
+
+    private List<double[][]> levels;
+    private int renderedLevel;
+
+    private double zoom;
+    private double viewOriginX;
+    private double viewOriginY;
+
+    /**
+     * Constructs an empty raster.
+     *
+     * @param  width   image width.
+     * @param  height  image height.
+     *
+     * @throws IllegalArgumentException
+     *   if either dimension is less than one.
+     */
+    public PositionalVariableFunctionRaster(int width,
+                                            int height)
+            throws IllegalArgumentException {
+
+        if ((width < 1) || (height < 1)) {
+            throw new IllegalArgumentException(
+                    "raster dimensions (" + width + "x" + height +
+                    ") must be greater than zero");
+        }
+
+        this.width = width;
+        this.height = height;
+        this.image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        this.pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        this.levels = new ArrayList<double[][]>();
+        this.renderedLevel = 0;
+        this.zoom = 1.0;
+        this.viewOriginX = 0;
+        this.viewOriginY = 0;
+    }
+
+    /**
+     * @return the rendered image (or a black image if no values have been set).
+     */
+    public BufferedImage getImage() {
+        return image;
+    }
+
+    /**
+     * Replaces the rendered values, resets the view, and re-renders the image.
+     *
+     * @param  values  function value matrix (indexed by row and then column)
+     *                 containing intensity percentages between 0 and 100.
+     *
+     * @throws IllegalArgumentException
+     *   if the matrix is empty.
+     */
+    public void setValues(double[][] values)
+            throws IllegalArgumentException {
+
+        if ((values == null) || (values.length == 0) || (values[0].length == 0)) {
+            throw new IllegalArgumentException("raster values must be specified");
+        }
+
+        levels.clear();
+        levels.add(values);
+
+        double[][] level = values;
+        while ((level[0].length > width) || (level.length > height)) {
+            level = downsample(level);
+            levels.add(level);
+        }
+
+        zoom = 1.0;
+        viewOriginX = 0;
+        viewOriginY = 0;
+        render();
+    }
+
+    /**
+     * @return the number of resolution levels built for the current values.
+     */
+    public int getLevelCount() {
+        return levels.size();
+    }
+
+    /**
+     * @return the resolution level used to render the current image
+     *         (0 is the full resolution matrix).
+     */
+    public int getRenderedLevel() {
+        return renderedLevel;
+    }
+
+    public double getZoom() {
+        return zoom;
+    }
+
+    /**
+     * Multiplies the current zoom by the specified factor keeping the
+     * matrix location under the specified pixel fixed.
+     *
+     * @param  factor  zoom multiplier (values less than one zoom out).
+     * @param  pixelX  x coordinate of the zoom anchor.
+     * @param  pixelY  y coordinate of the zoom anchor.
+     */
+    public void zoom(double factor,
+                     int pixelX,
+                     int pixelY) {
+
+        final double newZoom = Math.max(1.0, Math.min(MAX_ZOOM, zoom * factor));
+        if ((newZoom != zoom) && (levels.size() > 0)) {
+            final double anchorX = getViewX(pixelX);
+            final double anchorY = getViewY(pixelY);
+            zoom = newZoom;
+            viewOriginX = anchorX - (getPixelFraction(pixelX, width) / zoom);
+            viewOriginY = anchorY - (getPixelFraction(pixelY, height) / zoom);
+            clampViewOrigin();
+            render();
+        }
+    }
+
+    /**
+     * Moves the current view by the specified number of pixels.
+     *
+     * @param  deltaX  number of pixels to move the content right.
+     * @param  deltaY  number of pixels to move the content down.
+     */
+    public void pan(int deltaX,
+                    int deltaY) {
+
+        if ((zoom > 1.0) && (levels.size() > 0)) {
+            final double originalX = viewOriginX;
+            final double originalY = viewOriginY;
+            viewOriginX -= getPixelFraction(deltaX, width) / zoom;
+            viewOriginY -= getPixelFraction(deltaY, height) / zoom;
+            clampViewOrigin();
+            if ((originalX != viewOriginX) || (originalY != viewOriginY)) {
+                render();
+            }
+        }
+    }
+
+    /**
+     * Restores the full (unzoomed) view.
+     */
+    public void resetView() {
+        if ((zoom != 1.0) && (levels.size() > 0)) {
+            zoom = 1.0;
+            viewOriginX = 0;
+            viewOriginY = 0;
+            render();
+        }
+    }
+
+    /**
+     * @param  pixelX  image x coordinate.
+     *
+     * @return the fraction (0 to 1) of the full matrix width displayed
+     *         at the specified image x coordinate.
+     */
+    public double getViewX(int pixelX) {
+        return viewOriginX + (getPixelFraction(pixelX, width) / zoom);
+    }
+
+    /**
+     * @param  pixelY  image y coordinate.
+     *
+     * @return the fraction (0 to 1) of the full matrix height displayed
+     *         at the specified image y coordinate.
+     */
+    public double getViewY(int pixelY) {
+        return viewOriginY + (getPixelFraction(pixelY, height) / zoom);
+    }
+
+    /**
+     * @param  value  intensity percentage.
+     *
+     * @return the RGB color used to display the specified intensity.
+     */
+    public static int getRGB(double value) {
+        int blue = (int) ((value / 100) * 255);
+        if (blue < 0) {
+            blue = 0;
+        } else if (blue > 255) {
+            blue = 255;
+        }
+        return blue;
+    }
+
+    private void clampViewOrigin() {
+        final double maxOrigin = 1.0 - (1.0 / zoom);
+        viewOriginX = Math.max(0, Math.min(maxOrigin, viewOriginX));
+        viewOriginY = Math.max(0, Math.min(maxOrigin, viewOriginY));
+    }
+
+    private void render() {
+
+        final double[][] fullValues = levels.get(0);
+        final int fullColumnCount = fullValues[0].length;
+        final int fullRowCount = fullValues.length;
+
+        // number of full resolution cells covered by each pixel
+        final double columnsPerPixel =
+                (fullColumnCount - 1) / (zoom * Math.max(1, width - 1));
+        final double rowsPerPixel =
+                (fullRowCount - 1) / (zoom * Math.max(1, height - 1));
+        final double cellsPerPixel = Math.max(columnsPerPixel, rowsPerPixel);
+
+        int level = 0;
+        while ((level + 1 < levels.size()) && ((1 << (level + 1)) <= cellsPerPixel)) {
+            level++;
+        }
+        renderedLevel = level;
+
+        final double[][] values = levels.get(level);
+        final int scale = 1 << level;
+
+        // precalculate interpolation indexes and weights for each column and row
+        final int[] previousX = new int[width];
+        final int[] nextX = new int[width];
+        final double[] weightX = new double[width];
+        for (int x = 0; x < width; x++) {
+            setInterpolationCoordinates(getViewX(x) * (fullColumnCount - 1),
+                                        scale,
+                                        values[0].length,
+                                        x, previousX, nextX, weightX);
+        }
+
+        final int[] previousY = new int[height];
+        final int[] nextY = new int[height];
+        final double[] weightY = new double[height];
+        for (int y = 0; y < height; y++) {
+            setInterpolationCoordinates(getViewY(y) * (fullRowCount - 1),
+                                        scale,
+                                        values.length,
+                                        y, previousY, nextY, weightY);
+        }
+
+        double[] previousRow;
+        double[] nextRow;
+        double wx;
+        double wy;
+        double top;
+        double bottom;
+        int offset;
+        for (int y = 0; y < height; y++) {
+            previousRow = values[previousY[y]];
+            nextRow = values[nextY[y]];
+            wy = weightY[y];
+            offset = y * width;
+            for (int x = 0; x < width; x++) {
+                wx = weightX[x];
+                top = previousRow[previousX[x]] +
+                      (wx * (previousRow[nextX[x]] - previousRow[previousX[x]]));
+                bottom = nextRow[previousX[x]] +
+                         (wx * (nextRow[nextX[x]] - nextRow[previousX[x]]));
+                pixels[offset + x] = getRGB(top + (wy * (bottom - top)));
+            }
+        }
+    }
+
+    /**
+     * Maps a full resolution cell coordinate to the bracketing cell indexes
+     * (and interpolation weight) for a downsampled level.
+     * Level cell i covers full resolution cells i*scale to (i+1)*scale - 1,
+     * so its value is centered at i*scale + (scale-1)/2.
+     */
+    private static void setInterpolationCoordinates(double fullCoordinate,
+                                                    int scale,
+                                                    int levelCount,
+                                                    int index,
+                                                    int[] previous,
+                                                    int[] next,
+                                                    double[] weight) {
+        double c = (fullCoordinate - ((scale - 1) / 2.0)) / scale;
+        if (c < 0) {
+            c = 0;
+        } else if (c > levelCount - 1) {
+            c = levelCount - 1;
+        }
+        final int p = (int) c;
+        previous[index] = p;
+        if (p + 1 < levelCount) {
+            next[index] = p + 1;
+            weight[index] = c - p;
+        } else {
+            next[index] = p;
+            weight[index] = 0;
+        }
+    }
+
+    private static double getPixelFraction(int pixel,
+                                           int size) {
+        return (double) pixel / Math.max(1, size - 1);
+    }
+
+    /**
+     * @return a copy of the specified matrix with half the resolution
+     *         where each cell is the average of (up to) four source cells.
+     */
+    private static double[][] downsample(double[][] source) {
+        final int sourceRowCount = source.length;
+        final int sourceColumnCount = source[0].length;
+        final int rowCount = (sourceRowCount + 1) / 2;
+        final int columnCount = (sourceColumnCount + 1) / 2;
+        final double[][] target = new double[rowCount][columnCount];
+
+        int sourceRow;
+        int sourceColumn;
+        double sum;
+        int count;
+        for (int row = 0; row < rowCount; row++) {
+            sourceRow = row * 2;
+            for (int column = 0; column < columnCount; column++) {
+                sourceColumn = column * 2;
+                sum = source[sourceRow][sourceColumn];
+                count = 1;
+                if (sourceColumn + 1 < sourceColumnCount) {
+                    sum += source[sourceRow][sourceColumn + 1];
+                    count++;
+                }
+                if (sourceRow + 1 < sourceRowCount) {
+                    sum += source[sourceRow + 1][sourceColumn];
+                    count++;
+                    if (sourceColumn + 1 < sourceColumnCount) {
+                        sum += source[sourceRow + 1][sourceColumn + 1];
+                        count++;
+                    }
+                }
+                target[row][column] = sum / count;
+            }
+        }
+
+        return target;
+    }
+}
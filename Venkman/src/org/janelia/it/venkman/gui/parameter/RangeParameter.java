@@ -7,8 +7,6 @@
 
 package org.janelia.it.venkman.gui.parameter;
 
-import java.lang.reflect.Field;
-
 /**
  * Base user interface for parameters scoped with a range.
  *
@@ -22,10 +20,10 @@ public abstract class RangeParameter<T extends Comparable<T>>
 
     protected RangeParameter(String displayName,
                              boolean required,
-                             Field dataField,
+                             ParameterDescriptor descriptor,
                              T minimum,
                              T maximum) {
-        super(displayName, required, dataField);
+        super(displayName, required, descriptor);
         this.minimum = minimum;
         this.maximum = maximum;
     }
@@ -12,7 +12,6 @@ import org.janelia.it.venkman.config.rules.KinematicVariableFunction;
 import org.janelia.it.venkman.config.rules.SingleVariableFunction;
 
 import java.awt.*;
-import java.lang.reflect.Field;
 import java.math.BigDecimal;
 
 /**
@@ -21,14 +20,22 @@ import java.math.BigDecimal;
  * @author Eric Trautman
  */
 public class SingleVariableFunctionParameter
-        extends AbstractExperimentParameter {
+        extends AbstractExperimentParameter
+        implements LazyComponentParameter {
 
     private Class functionClass;
+    private SingleVariableFunction originalFunction;
+    private String inputUnits;
+    private BigDecimal minimumInputValue;
+    private BigDecimal maximumInputValue;
+    private String outputUnits;
+    private BigDecimal minimumOutputValue;
+    private BigDecimal maximumOutputValue;
     private SingleVariableFunctionComponent component;
 
     public SingleVariableFunctionParameter(String displayName,
                                            boolean required,
-                                           Field dataField,
+                                           ParameterDescriptor descriptor,
                                            SingleVariableFunction originalFunction,
                                            String inputUnits,
                                            BigDecimal minimumInputValue,
@@ -37,68 +44,39 @@ public class SingleVariableFunctionParameter
                                            BigDecimal minimumOutputValue,
                                            BigDecimal maximumOutputValue) {
 
-        super(displayName, required, dataField);
+        super(displayName, required, descriptor);
 
-        DecimalParameter min = new DecimalParameter("Minimum Input Value",
-                                                    true,
-                                                    null, // don't call apply!
-                                                    minimumInputValue,
-                                                    maximumInputValue);
-
-        DecimalParameter max = new DecimalParameter("Maximum Input Value",
-                                                    true,
-                                                    null, // don't call apply!
-                                                    minimumInputValue,
-                                                    maximumInputValue);
+        this.originalFunction = originalFunction;
+        this.inputUnits = inputUnits;
+        this.minimumInputValue = minimumInputValue;
+        this.maximumInputValue = maximumInputValue;
+        this.outputUnits = outputUnits;
+        this.minimumOutputValue = minimumOutputValue;
+        this.maximumOutputValue = maximumOutputValue;
 
         if (originalFunction instanceof BehaviorLimitedKinematicVariableFunction) {
             this.functionClass = BehaviorLimitedKinematicVariableFunction.class;
-            final BehaviorLimitedKinematicVariableFunction f =
-                    (BehaviorLimitedKinematicVariableFunction) originalFunction;
-            this.component = new SingleVariableFunctionComponent(originalFunction,
-                                                                 inputUnits,
-                                                                 min,
-                                                                 max,
-                                                                 outputUnits,
-                                                                 minimumOutputValue,
-                                                                 maximumOutputValue,
-                                                                 f.getVariable(),
-                                                                 f.getBehaviorModes(),
-                                                                 f.isAdditive());
-
         } else if (originalFunction instanceof KinematicVariableFunction) {
             this.functionClass = KinematicVariableFunction.class;
-            final KinematicVariableFunction f = (KinematicVariableFunction) originalFunction;
-            this.component = new SingleVariableFunctionComponent(originalFunction,
-                                                                 inputUnits,
-                                                                 min,
-                                                                 max,
-                                                                 outputUnits,
-                                                                 minimumOutputValue,
-                                                                 maximumOutputValue,
-                                                                 f.getVariable());
-
         } else {
             this.functionClass = SingleVariableFunction.class;
-            this.component = new SingleVariableFunctionComponent(originalFunction,
-                                                                 inputUnits,
-                                                                 min,
-                                                                 max,
-                                                                 outputUnits,
-                                                                 minimumOutputValue,
-                                                                 maximumOutputValue);
         }
     }
 
     @Override
     public Component getReadOnlyComponent() {
-        component.setEditable(false);
+        getFunctionComponent().setEditable(false);
         return getComponent();
     }
 
     @Override
     public Component getComponent() {
-        return component.getContentPanel();
+        return getFunctionComponent().getContentPanel();
+    }
+
+    @Override
+    public boolean isComponentCreated() {
+        return (component != null);
     }
 
     @Override
@@ -110,16 +88,73 @@ public class SingleVariableFunctionParameter
     public void applyValue(Object object)
             throws IllegalArgumentException, IllegalAccessException {
         validate();
-        Field dataField = getDataField();
         Object value;
-        if (this.functionClass.equals(BehaviorLimitedKinematicVariableFunction.class)) {
+        if (component == null) {
+            value = originalFunction;
+        } else if (this.functionClass.equals(BehaviorLimitedKinematicVariableFunction.class)) {
             value = component.getBehaviorLimitedKinematicVariableFunction();
         } else if (this.functionClass.equals(KinematicVariableFunction.class)) {
             value = component.getKinematicVariableFunction();
         } else {
             value = component.getSingleVariableFunction();
         }
-        dataField.set(object, value);
+        getDescriptor().setValue(object, value);
+    }
+
+    private SingleVariableFunctionComponent getFunctionComponent() {
+
+        if (component != null) {
+            return component;
+        }
+
+        DecimalParameter min = new DecimalParameter("Minimum Input Value",
+                                                    true,
+                                                    null, // don't call apply!
+                                                    minimumInputValue,
+                                                    maximumInputValue);
+
+        DecimalParameter max = new DecimalParameter("Maximum Input Value",
+                                                    true,
+                                                    null, // don't call apply!
+                                                    minimumInputValue,
+                                                    maximumInputValue);
+
+        if (this.functionClass.equals(BehaviorLimitedKinematicVariableFunction.class)) {
+            final BehaviorLimitedKinematicVariableFunction f =
+                    (BehaviorLimitedKinematicVariableFunction) originalFunction;
+            component = new SingleVariableFunctionComponent(originalFunction,
+                                                            inputUnits,
+                                                            min,
+                                                            max,
+                                                            outputUnits,
+                                                            minimumOutputValue,
+                                                            maximumOutputValue,
+                                                            f.getVariable(),
+                                                            f.getBehaviorModes(),
+                                                            f.isAdditive());
+
+        } else if (this.functionClass.equals(KinematicVariableFunction.class)) {
+            final KinematicVariableFunction f = (KinematicVariableFunction) originalFunction;
+            component = new SingleVariableFunctionComponent(originalFunction,
+                                                            inputUnits,
+                                                            min,
+                                                            max,
+                                                            outputUnits,
+                                                            minimumOutputValue,
+                                                            maximumOutputValue,
+                                                            f.getVariable());
+
+        } else {
+            component = new SingleVariableFunctionComponent(originalFunction,
+                                                            inputUnits,
+                                                            min,
+                                                            max,
+                                                            outputUnits,
+                                                            minimumOutputValue,
+                                                            maximumOutputValue);
+        }
+
+        return component;
     }
 
-}
\ No newline at end of file
+}
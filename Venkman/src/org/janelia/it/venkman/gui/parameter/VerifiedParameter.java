@@ -9,7 +9,6 @@ package org.janelia.it.venkman.gui.parameter;
 
 import javax.swing.*;
 import java.awt.*;
-import java.lang.reflect.Field;
 
 /**
  * Base user interface for parameters that can be required.
@@ -22,9 +21,9 @@ public class VerifiedParameter extends AbstractExperimentParameter {
 
     public VerifiedParameter(String displayName,
                              boolean required,
-                             Field dataField) {
+                             ParameterDescriptor descriptor) {
 
-        super(displayName, required, dataField);
+        super(displayName, required, descriptor);
         this.textField = new JTextField();
         final Dimension preferredSize = this.textField.getPreferredSize();
         this.textField.setPreferredSize(new Dimension(120,
@@ -57,8 +56,7 @@ public class VerifiedParameter extends AbstractExperimentParameter {
     public void applyValue(Object object)
             throws IllegalArgumentException, IllegalAccessException {
         validate();
-        Field dataField = getDataField();
-        dataField.set(object, getValue());
+        getDescriptor().setValue(object, getValue());
     }
 
     public String getValue() {
@@ -11,7 +11,8 @@ import javax.xml.bind.annotation.adapters.XmlAdapter;
 import java.util.regex.Pattern;
 
 /**
- * Converts double arrays to and from a comma separated value string.
+ * Converts double arrays to and from a comma separated value string
+ * (or a {@link FunctionTableStore} reference for large arrays).
  *
  * @author Eric Trautman
  */
@@ -23,6 +24,8 @@ public class DoubleArrayAdapter extends XmlAdapter<String, double[]> {
         double[] values;
         if (xmlString.length() == 0) {
             values = new double[0];
+        } else if (FunctionTableStore.isReference(xmlString)) {
+            values = FunctionTableStore.loadFromDefaultStore(xmlString)[0];
         } else {
             final String[] stringValues = CSV.split(xmlString);
             values = new double[stringValues.length];
@@ -36,15 +39,22 @@ public class DoubleArrayAdapter extends XmlAdapter<String, double[]> {
     @Override
     public String marshal(double[] values)
             throws Exception {
-        StringBuilder xml = new StringBuilder(values.length * 5);
-        if (values.length > 0) {
-            xml.append(String.valueOf(values[0]));
-            for (int i = 1; i < values.length; i++) {
-                xml.append(',');
-                xml.append(String.valueOf(values[i]));
+        final FunctionTableStore store = FunctionTableStore.getDefaultStore();
+        String xml;
+        if ((store != null) && store.isReferenceCandidate(values.length)) {
+            xml = store.save(new double[][] { values });
+        } else {
+            StringBuilder sb = new StringBuilder(values.length * 5);
+            if (values.length > 0) {
+                sb.append(String.valueOf(values[0]));
+                for (int i = 1; i < values.length; i++) {
+                    sb.append(',');
+                    sb.append(String.valueOf(values[i]));
+                }
             }
+            xml = sb.toString();
         }
-        return xml.toString();
+        return xml;
     }
 
     private static final Pattern CSV = Pattern.compile(",");
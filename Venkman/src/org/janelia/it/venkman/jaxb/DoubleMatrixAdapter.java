@@ -11,7 +11,8 @@ import javax.xml.bind.annotation.adapters.XmlAdapter;
 import java.util.regex.Pattern;
 
 /**
- * Converts double arrays to and from a comma separated value string.
+ * Converts double arrays to and from a comma separated value string
+ * (or a {@link FunctionTableStore} reference for large arrays).
  *
  * @author Eric Trautman
  */
@@ -24,6 +25,8 @@ public class DoubleMatrixAdapter
         double[][] values;
         if (xmlString.length() == 0) {
             values = new double[0][0];
+        } else if (FunctionTableStore.isReference(xmlString)) {
+            values = FunctionTableStore.loadFromDefaultStore(xmlString);
         } else {
             final String[] stringRows = PSV.split(xmlString);
             String[] stringCells = CSV.split(stringRows[0]);
@@ -43,8 +46,12 @@ public class DoubleMatrixAdapter
     @Override
     public String marshal(double[][] values)
             throws Exception {
+        final FunctionTableStore store = FunctionTableStore.getDefaultStore();
         String xml;
-        if (values.length > 0) {
+        if ((values.length > 0) && (store != null) &&
+            store.isReferenceCandidate(values.length * values[0].length)) {
+            xml = store.save(values);
+        } else if (values.length > 0) {
             StringBuilder sb =
                     new StringBuilder(values.length * values[0].length * 5);
             double[] row;
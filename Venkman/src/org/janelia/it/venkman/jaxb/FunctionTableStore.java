@@ -0,0 +1,373 @@
+/*
+ * Copyright (c) 2014 Howard Hughes Medical Institute.
+ * All rights reserved.
+ * Use is subject to Janelia Farm Research Campus Software Copyright 1.1
+ * license terms (http://license.janelia.org/license/jfrc_copyright_1_1.html).
+ */
+
+package org.janelia.it.venkman.jaxb;
+
+import org.apache.log4j.Logger;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Content addressed store of binary function value tables.
+ *
+ * Large tables are written once to a binary "sidecar" file named by the
+ * SHA-1 hash of the table's dimensions and values so that every
+ * collection (and session log) that uses the same table references a
+ * single file.  Tables are loaded through a memory map and loaded
+ * instances are cached (by hash) and shared, so callers must treat
+ * tables returned by this store as read-only.
+ *
+ * When a default store has been registered, the {@link DoubleMatrixAdapter}
+ * and {@link DoubleArrayAdapter} marshal tables with at least
+ * {@link #getMinimumCellCount()} cells as references to this store
+ * instead of as delimited text.
+ *
+ * @author Eric Trautman
+ */
+public class FunctionTableStore {
+
+    /** Prefix for marshalled table references. */
+    public static final String REFERENCE_PREFIX = "sha1:";
+
+    /** Extension for table files. */
+    public static final String FILE_EXTENSION = ".table";
+
+    private static final int MAGIC_NUMBER = 0x56464E54; // VFNT
+    private static final int HEADER_LENGTH = 12;
+
+    private File directory;
+    private int minimumCellCount;
+    private ConcurrentMap<String, SoftReference<double[][]>> hashToTableMap;
+
+    /**
+     * Constructs a store.
+     *
+     * @param  directory         directory for table files
+     *                           (created when the first table is written).
+     * @param  minimumCellCount  minimum number of cells a table must contain
+     *                           before it is marshalled as a reference
+     *                           (or zero to only resolve existing references).
+     */
+    public FunctionTableStore(File directory,
+                              int minimumCellCount) {
+        this.directory = directory;
+        this.minimumCellCount = minimumCellCount;
+        this.hashToTableMap = new ConcurrentHashMap<String, SoftReference<double[][]>>();
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * @return minimum number of cells a table must contain before it is
+     *         marshalled as a reference (or zero if new references are
+     *         never created).
+     */
+    public int getMinimumCellCount() {
+        return minimumCellCount;
+    }
+
+    /**
+     * @param  cellCount  number of cells in a table.
+     *
+     * @return true if a table with the specified number of cells should
+     *         be marshalled as a reference; otherwise false.
+     */
+    public boolean isReferenceCandidate(int cellCount) {
+        return (minimumCellCount > 0) && (cellCount >= minimumCellCount);
+    }
+
+    /**
+     * @param  text  marshalled table text.
+     *
+     * @return true if the specified text is a table reference.
+     */
+    public static boolean isReference(String text) {
+        return text.startsWith(REFERENCE_PREFIX);
+    }
+
+    /**
+     * Saves the specified table (if it has not already been saved).
+     *
+     * @param  table  table to save.
+     *
+     * @return reference for the saved table.
+     *
+     * @throws IOException
+     *   if the table cannot be saved.
+     */
+    public String save(double[][] table)
+            throws IOException {
+
+        final String hash;
+        try {
+            hash = getHash(table);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+        final File file = getFile(hash);
+
+        if (! file.exists()) {
+            if (! directory.exists()) {
+                //noinspection ResultOfMethodCallIgnored
+                directory.mkdirs();
+            }
+            final File tempFile = File.createTempFile(hash, ".tmp", directory);
+            try {
+                write(table, tempFile);
+                if (! tempFile.renameTo(file) && (! file.exists())) {
+                    throw new IOException("failed to rename " + tempFile.getAbsolutePath() +
+                                          " to " + file.getAbsolutePath());
+                }
+                LOG.info("save: wrote " + file.getAbsolutePath());
+            } finally {
+                if (tempFile.exists()) {
+                    //noinspection ResultOfMethodCallIgnored
+                    tempFile.delete();
+                }
+            }
+        }
+
+        return REFERENCE_PREFIX + hash;
+    }
+
+    /**
+     * @param  reference  table reference.
+     *
+     * @return the shared (read-only) table for the specified reference.
+     *
+     * @throws IOException
+     *   if the table cannot be loaded.
+     */
+    public double[][] load(String reference)
+            throws IOException {
+
+        if (! isReference(reference)) {
+            throw new IOException("invalid table reference '" + reference + "'");
+        }
+
+        final String hash = reference.substring(REFERENCE_PREFIX.length());
+        double[][] table = getCachedTable(hash);
+        if (table == null) {
+            // serialize misses so that concurrent loads share one instance
+            synchronized (this) {
+                table = getCachedTable(hash);
+                if (table == null) {
+                    table = read(getFile(hash));
+                    hashToTableMap.put(hash, new SoftReference<double[][]>(table));
+                }
+            }
+        }
+        return table;
+    }
+
+    @Override
+    public String toString() {
+        return "FunctionTableStore{" +
+               "directory=" + directory.getAbsolutePath() +
+               ", minimumCellCount=" + minimumCellCount +
+               '}';
+    }
+
+    /**
+     * @param  text  marshalled table text.
+     *
+     * @return the table loaded from the default store.
+     *
+     * @throws IOException
+     *   if no default store has been registered or the table cannot be loaded.
+     */
+    public static double[][] loadFromDefaultStore(String text)
+            throws IOException {
+        final FunctionTableStore store = defaultStore;
+        if (store == null) {
+            throw new IOException("table reference '" + text +
+                                  "' cannot be resolved because a function table " +
+                                  "store has not been registered");
+        }
+        return store.load(text);
+    }
+
+    /**
+     * @return the store used by the table adapters or null if
+     *         no store has been registered.
+     */
+    public static FunctionTableStore getDefaultStore() {
+        return defaultStore;
+    }
+
+    /**
+     * @param  store  store to be used by the table adapters
+     *                (or null to always marshal tables as text).
+     */
+    public static void setDefaultStore(FunctionTableStore store) {
+        defaultStore = store;
+    }
+
+    /**
+     * @param  table  table to hash.
+     *
+     * @return hex encoded SHA-1 hash of the table's dimensions and values.
+     *
+     * @throws IllegalArgumentException
+     *   if the table's rows do not all contain the same number of values.
+     */
+    public static String getHash(double[][] table)
+            throws IllegalArgumentException {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 digest is not available", e);
+        }
+
+        final int columnCount = getColumnCount(table);
+        final ByteBuffer buffer = ByteBuffer.allocate(Math.max(8, columnCount * 8));
+        buffer.putInt(table.length);
+        buffer.putInt(columnCount);
+        digest.update(buffer.array(), 0, 8);
+
+        for (double[] row : table) {
+            buffer.clear();
+            buffer.asDoubleBuffer().put(row);
+            digest.update(buffer.array(), 0, row.length * 8);
+        }
+
+        final byte[] bytes = digest.digest();
+        final StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(HEX_DIGITS[(b >> 4) & 0xF]);
+            sb.append(HEX_DIGITS[b & 0xF]);
+        }
+        return sb.toString();
+    }
+
+    private double[][] getCachedTable(String hash) {
+        double[][] table = null;
+        final SoftReference<double[][]> reference = hashToTableMap.get(hash);
+        if (reference != null) {
+            table = reference.get();
+        }
+        return table;
+    }
+
+    private File getFile(String hash) {
+        return new File(directory, hash + FILE_EXTENSION);
+    }
+
+    /**
+     * @return the number of values in each of the table's rows.
+     *
+     * @throws IllegalArgumentException
+     *   if the table's rows do not all contain the same number of values.
+     */
+    private static int getColumnCount(double[][] table)
+            throws IllegalArgumentException {
+        int columnCount = 0;
+        if (table.length > 0) {
+            columnCount = table[0].length;
+            for (int i = 1; i < table.length; i++) {
+                if (table[i].length != columnCount) {
+                    throw new IllegalArgumentException(
+                            "table rows must all contain " + columnCount +
+                            " values but row " + i + " contains " +
+                            table[i].length + " values");
+                }
+            }
+        }
+        return columnCount;
+    }
+
+    private static void write(double[][] table,
+                              File file)
+            throws IOException {
+
+        final int columnCount = getColumnCount(table);
+        final FileOutputStream out = new FileOutputStream(file);
+        try {
+            final FileChannel channel = out.getChannel();
+            final ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+            header.putInt(MAGIC_NUMBER);
+            header.putInt(table.length);
+            header.putInt(columnCount);
+            header.flip();
+            writeFully(channel, header);
+
+            final ByteBuffer rowBuffer = ByteBuffer.allocate(columnCount * 8);
+            for (double[] row : table) {
+                rowBuffer.clear();
+                rowBuffer.asDoubleBuffer().put(row);
+                writeFully(channel, rowBuffer);
+            }
+            channel.force(true);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static void writeFully(FileChannel channel,
+                                   ByteBuffer buffer)
+            throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static double[][] read(File file)
+            throws IOException {
+
+        final FileInputStream in = new FileInputStream(file);
+        try {
+            final FileChannel channel = in.getChannel();
+            final long length = channel.size();
+            if (length < HEADER_LENGTH) {
+                throw new IOException("table file " + file.getAbsolutePath() +
+                                      " is truncated");
+            }
+
+            final MappedByteBuffer buffer =
+                    channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+            final int magicNumber = buffer.getInt();
+            final int rowCount = buffer.getInt();
+            final int columnCount = buffer.getInt();
+            if ((magicNumber != MAGIC_NUMBER) || (rowCount < 0) || (columnCount < 0) ||
+                (length != HEADER_LENGTH + ((long) rowCount * columnCount * 8))) {
+                throw new IOException("table file " + file.getAbsolutePath() +
+                                      " is invalid or truncated");
+            }
+
+            final DoubleBuffer values = buffer.asDoubleBuffer();
+            final double[][] table = new double[rowCount][columnCount];
+            for (double[] row : table) {
+                values.get(row);
+            }
+            return table;
+
+        } finally {
+            in.close();
+        }
+    }
+
+    private static volatile FunctionTableStore defaultStore;
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private static final Logger LOG = Logger.getLogger(FunctionTableStore.class);
+}
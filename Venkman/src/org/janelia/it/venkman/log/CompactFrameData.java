@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) 2014 Howard Hughes Medical Institute.
+ * All rights reserved.
+ * Use is subject to Janelia Farm Research Campus Software Copyright 1.1
+ * license terms (http://license.janelia.org/license/jfrc_copyright_1_1.html).
+ */
+
+package org.janelia.it.venkman.log;
+
+import org.janelia.it.venkman.data.LarvaSkeleton;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+
+/**
+ * Log entry for a frame whose derived data was not logged.
+ * Only the original tracker skeleton is kept since all derived data can be
+ * recalculated from the skeletons of the frame and its predecessors.
+ * The frame's stimulus list is the same as the list for the previously
+ * logged frame (see {@link FrameLoggingPolicy}).
+ *
+ * @author Eric Trautman
+ */
+@XmlRootElement
+@XmlAccessorType(XmlAccessType.FIELD)
+public class CompactFrameData {
+
+    @XmlElement
+    private LarvaSkeleton skeleton;
+
+    /**
+     * No-arg constructor needed for JAXB.
+     */
+    @SuppressWarnings({"UnusedDeclaration"})
+    private CompactFrameData() {
+    }
+
+    public CompactFrameData(LarvaSkeleton skeleton) {
+        this.skeleton = skeleton;
+    }
+
+    public LarvaSkeleton getSkeleton() {
+        return skeleton;
+    }
+
+    public long getTime() {
+        return skeleton.getCaptureTime();
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) 2014 Howard Hughes Medical Institute.
+ * All rights reserved.
+ * Use is subject to Janelia Farm Research Campus Software Copyright 1.1
+ * license terms (http://license.janelia.org/license/jfrc_copyright_1_1.html).
+ */
+
+package org.janelia.it.venkman.log;
+
+import org.janelia.it.venkman.config.rules.LEDArrayStimulus;
+import org.janelia.it.venkman.config.rules.LEDStimulus;
+import org.janelia.it.venkman.config.rules.Stimulus;
+import org.janelia.it.venkman.data.LarvaBehaviorMode;
+import org.janelia.it.venkman.data.LarvaFrameData;
+
+import java.util.List;
+
+/**
+ * Decides whether each frame of a session is logged in full or as a
+ * {@link CompactFrameData} entry that only contains the frame's skeleton.
+ *
+ * Frames are logged in full when the behavior mode changes, when the
+ * stimulus list changes, when a frame is skipped because the tracker
+ * coordinates jumped, and every Nth frame.  All other frames are logged
+ * in compact form.  Since compact frames keep the original tracker
+ * skeleton and only omit an unchanged stimulus list, imported logs
+ * can still be reprocessed and {@link LogReader} can recalculate the
+ * derived data for compact frames.
+ *
+ * Instances keep state for the frames of a single session and are
+ * not thread safe.
+ *
+ * @author Eric Trautman
+ */
+public class FrameLoggingPolicy {
+
+    private int fullFrameInterval;
+
+    private int framesSinceFullFrame;
+    private LarvaBehaviorMode previousBehaviorMode;
+    private long[] previousStimulusValues;
+    private int previousStimulusValueCount;
+    private long[] stimulusValues;
+    private int stimulusValueCount;
+
+    private long fullFrameCount;
+    private long compactFrameCount;
+
+    /**
+     * Constructs a policy.
+     *
+     * @param  fullFrameInterval  maximum number of frames between full
+     *                            frames (1 or less logs every frame in full).
+     */
+    public FrameLoggingPolicy(int fullFrameInterval) {
+        this.fullFrameInterval = fullFrameInterval;
+        this.framesSinceFullFrame = 0;
+        this.previousBehaviorMode = null;
+        this.previousStimulusValues = new long[16];
+        this.previousStimulusValueCount = -1;
+        this.stimulusValues = new long[16];
+        this.stimulusValueCount = -1;
+        this.fullFrameCount = 0;
+        this.compactFrameCount = 0;
+    }
+
+    /**
+     * @return policy built from the venkman-log-full-frame-interval
+     *         system property (defaults to logging every frame in full).
+     */
+    public static FrameLoggingPolicy getDefault() {
+        return new FrameLoggingPolicy(
+                Integer.getInteger("venkman-log-full-frame-interval", 1));
+    }
+
+    /**
+     * @return true if frames may be logged in compact form.
+     */
+    public boolean isTiered() {
+        return fullFrameInterval > 1;
+    }
+
+    /**
+     * @param  frameData  data (with derived values and stimulus)
+     *                    for the next frame in the session.
+     *
+     * @return the object that should be logged for the frame
+     *         (the frame data itself or a compact frame entry).
+     */
+    public Object getLogEntry(LarvaFrameData frameData) {
+
+        Object logEntry = frameData;
+
+        final boolean isStimulusKnown = setStimulusValues(frameData.getStimulusList());
+
+        if (isTiered() &&
+            (previousBehaviorMode != null) &&
+            (framesSinceFullFrame < (fullFrameInterval - 1)) &&
+            (frameData.getBehaviorMode() == previousBehaviorMode) &&
+            (frameData.getJumpFramesSkipped() == null) &&
+            isStimulusKnown &&
+            isStimulusUnchanged()) {
+
+            logEntry = new CompactFrameData(frameData.getSkeleton());
+            framesSinceFullFrame++;
+            compactFrameCount++;
+
+        } else {
+
+            framesSinceFullFrame = 0;
+            fullFrameCount++;
+
+        }
+
+        previousBehaviorMode = frameData.getBehaviorMode();
+        if (isStimulusKnown) {
+            swapStimulusValues();
+        } else {
+            previousStimulusValueCount = -1;
+        }
+
+        return logEntry;
+    }
+
+    public long getFullFrameCount() {
+        return fullFrameCount;
+    }
+
+    public long getCompactFrameCount() {
+        return compactFrameCount;
+    }
+
+    @Override
+    public String toString() {
+        return "FrameLoggingPolicy{" +
+               "fullFrameInterval=" + fullFrameInterval +
+               ", fullFrameCount=" + fullFrameCount +
+               ", compactFrameCount=" + compactFrameCount +
+               '}';
+    }
+
+    /**
+     * Copies the values of the specified stimulus list so that changes can
+     * be detected even if rules reuse (and modify) stimulus instances.
+     *
+     * @return true if all values were copied; false if the list contains
+     *         an unknown stimulus type (whose changes cannot be detected).
+     */
+    private boolean setStimulusValues(List<? extends Stimulus> stimulusList) {
+        boolean isKnown = true;
+        stimulusValueCount = 0;
+        if (stimulusList == null) {
+            addStimulusValue(-1);
+        } else {
+            addStimulusValue(stimulusList.size());
+            for (Stimulus stimulus : stimulusList) {
+                if (stimulus instanceof LEDStimulus) {
+                    addStimulusValues((LEDStimulus) stimulus);
+                } else if (stimulus instanceof LEDArrayStimulus) {
+                    final LEDArrayStimulus arrayStimulus = (LEDArrayStimulus) stimulus;
+                    addStimulusValue(Double.doubleToLongBits(arrayStimulus.getX()));
+                    addStimulusValue(Double.doubleToLongBits(arrayStimulus.getY()));
+                    addStimulusValue(Double.doubleToLongBits(arrayStimulus.getWidth()));
+                    addStimulusValue(Double.doubleToLongBits(arrayStimulus.getHeight()));
+                    final List<LEDStimulus> ledList = arrayStimulus.getStimulusList();
+                    addStimulusValue(ledList.size());
+                    for (LEDStimulus ledStimulus : ledList) {
+                        addStimulusValues(ledStimulus);
+                    }
+                } else {
+                    isKnown = false;
+                    break;
+                }
+            }
+        }
+        return isKnown;
+    }
+
+    private void addStimulusValues(LEDStimulus stimulus) {
+        addStimulusValue(Double.doubleToLongBits(stimulus.getIntensityPercentage()));
+        addStimulusValue(stimulus.getDuration());
+    }
+
+    private void addStimulusValue(long value) {
+        if (stimulusValueCount == stimulusValues.length) {
+            final long[] expandedValues = new long[stimulusValues.length * 2];
+            System.arraycopy(stimulusValues, 0, expandedValues, 0, stimulusValueCount);
+            stimulusValues = expandedValues;
+        }
+        stimulusValues[stimulusValueCount] = value;
+        stimulusValueCount++;
+    }
+
+    private boolean isStimulusUnchanged() {
+        boolean isUnchanged = (stimulusValueCount == previousStimulusValueCount);
+        for (int i = 0; isUnchanged && (i < stimulusValueCount); i++) {
+            isUnchanged = (stimulusValues[i] == previousStimulusValues[i]);
+        }
+        return isUnchanged;
+    }
+
+    private void swapStimulusValues() {
+        final long[] values = previousStimulusValues;
+        previousStimulusValues = stimulusValues;
+        previousStimulusValueCount = stimulusValueCount;
+        stimulusValues = values;
+        stimulusValueCount = -1;
+    }
+}
@@ -0,0 +1,496 @@
+/*
+ * Copyright (c) 2014 Howard Hughes Medical Institute.
+ * All rights reserved.
+ * Use is subject to Janelia Farm Research Campus Software Copyright 1.1
+ * license terms (http://license.janelia.org/license/jfrc_copyright_1_1.html).
+ */
+
+package org.janelia.it.venkman.log;
+
+import org.janelia.it.venkman.config.rules.LEDArrayStimulus;
+import org.janelia.it.venkman.config.rules.LEDStimulus;
+import org.janelia.it.venkman.config.rules.Stimulus;
+import org.janelia.it.venkman.data.LarvaFrameData;
+import org.janelia.it.venkman.data.LarvaSkeleton;
+import org.janelia.it.venkman.data.TrackerPoint;
+import org.janelia.it.venkman.rules.RuleData;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * Writes the high volume log entries ({@link LarvaFrameData},
+ * {@link CompactFrameData}, {@link LEDStimulus}, {@link LEDArrayStimulus},
+ * and {@link RuleData}) without JAXB.
+ *
+ * The written XML has the same structure and formatting as the
+ * (formatted fragment) output of the JAXB marshaller so that logs
+ * remain readable by {@link LogReader} and other downstream tools.
+ * Each entry is assembled in a reusable byte buffer and then written
+ * to the output stream with a single call.
+ *
+ * Instances are not thread safe.
+ *
+ * @author Eric Trautman
+ */
+public class LogEntryXmlWriter {
+
+    private byte[] buffer;
+    private int length;
+
+    public LogEntryXmlWriter() {
+        this.buffer = new byte[4096];
+        this.length = 0;
+    }
+
+    /**
+     * @param  logObject  object to be logged.
+     *
+     * @return true if this writer can write the specified object;
+     *         otherwise false (the object should be marshalled by JAXB).
+     */
+    public boolean isSupported(Object logObject) {
+        boolean isSupported = false;
+        if (logObject instanceof LarvaFrameData) {
+            isSupported = true;
+            final List<? extends Stimulus> stimulusList =
+                    ((LarvaFrameData) logObject).getStimulusList();
+            if (stimulusList != null) {
+                for (Stimulus stimulus : stimulusList) {
+                    if (! isSupported(stimulus)) {
+                        isSupported = false;
+                        break;
+                    }
+                }
+            }
+        } else if ((logObject instanceof CompactFrameData) ||
+                   (logObject instanceof LEDStimulus) ||
+                   (logObject instanceof LEDArrayStimulus) ||
+                   (logObject instanceof RuleData)) {
+            isSupported = true;
+        }
+        return isSupported;
+    }
+
+    /**
+     * Writes the specified object.
+     *
+     * @param  logObject  object to write
+     *                    (must be {@link #isSupported supported}).
+     * @param  out        stream to write to.
+     *
+     * @throws IllegalArgumentException
+     *   if the object is not supported.
+     *
+     * @throws IOException
+     *   if the object cannot be written to the stream.
+     */
+    public void write(Object logObject,
+                      OutputStream out)
+            throws IllegalArgumentException, IOException {
+
+        length = 0;
+        appendNewLine();
+
+        if (logObject instanceof LarvaFrameData) {
+            appendFrameData((LarvaFrameData) logObject);
+        } else if (logObject instanceof CompactFrameData) {
+            appendCompactFrameData((CompactFrameData) logObject);
+        } else if (logObject instanceof RuleData) {
+            appendRuleData((RuleData) logObject);
+        } else if (logObject instanceof Stimulus) {
+            appendStimulus((Stimulus) logObject, 0);
+        } else {
+            throw new IllegalArgumentException("unsupported log object type: " +
+                                               logObject.getClass().getName());
+        }
+
+        appendNewLine();
+        out.write(buffer, 0, length);
+    }
+
+    private void appendFrameData(LarvaFrameData frameData) {
+
+        append("<larvaFrameData");
+        if (frameData.getBehaviorMode() != null) {
+            appendAttribute("behaviorMode", frameData.getBehaviorMode().name());
+        }
+        appendAttribute("bodyAngleSpeed", frameData.getBodyAngleSpeed());
+        appendAttribute("smoothedBodyAngleSpeed", frameData.getSmoothedBodyAngleSpeed());
+        appendAttribute("headAngleSpeed", frameData.getHeadAngleSpeed());
+        appendAttribute("smoothedHeadAngleSpeed", frameData.getSmoothedHeadAngleSpeed());
+        appendAttribute("tailSpeed", frameData.getTailSpeed());
+        appendAttribute("midpointSpeed", frameData.getMidpointSpeed());
+        appendAttribute("headSpeed", frameData.getHeadSpeed());
+        appendAttribute("centroidSpeed", frameData.getCentroidSpeed());
+        appendAttribute("tailSpeedDotBodyAngle", frameData.getTailSpeedDotBodyAngle());
+        appendAttribute("smoothedTailSpeedDotBodyAngle", frameData.getSmoothedTailSpeedDotBodyAngle());
+        appendAttribute("timeSinceLastBehaviorModeChange", frameData.getTimeSinceLastBehaviorModeChange());
+        if (frameData.getTimeStopped() != null) {
+            appendAttribute("timeStopped", frameData.getTimeStopped());
+        }
+        if (frameData.getTimeBackingUp() != null) {
+            appendAttribute("timeBackingUp", frameData.getTimeBackingUp());
+        }
+        if (frameData.getJumpFramesSkipped() != null) {
+            appendAttribute("jumpFramesSkipped", frameData.getJumpFramesSkipped());
+        }
+        appendAttribute("derivedMaxLength", frameData.getDerivedMaxLength());
+        if (frameData.getPercentageOfMaxLength() != null) {
+            appendAttribute("percentageOfMaxLength", frameData.getPercentageOfMaxLength());
+        }
+        if (frameData.getTrackId() != null) {
+            appendEscapedAttribute("trackId", frameData.getTrackId());
+        }
+
+        final LarvaSkeleton skeleton = frameData.getSkeleton();
+        final LarvaSkeleton skippedSkeleton = frameData.getSkippedSkeleton();
+        final List<? extends Stimulus> stimulusList = frameData.getStimulusList();
+        if ((skeleton == null) && (skippedSkeleton == null) &&
+            ((stimulusList == null) || (stimulusList.size() == 0))) {
+            append("/>");
+        } else {
+            append('>');
+            if (skeleton != null) {
+                appendSkeleton("skeleton", skeleton);
+            }
+            if (skippedSkeleton != null) {
+                appendSkeleton("skippedSkeleton", skippedSkeleton);
+            }
+            if (stimulusList != null) {
+                for (Stimulus stimulus : stimulusList) {
+                    appendStimulus(stimulus, 1);
+                }
+            }
+            appendNewLine();
+            append("</larvaFrameData>");
+        }
+    }
+
+    private void appendCompactFrameData(CompactFrameData frameData) {
+        final LarvaSkeleton skeleton = frameData.getSkeleton();
+        if (skeleton == null) {
+            append("<compactFrameData/>");
+        } else {
+            append("<compactFrameData>");
+            appendSkeleton("skeleton", skeleton);
+            appendNewLine();
+            append("</compactFrameData>");
+        }
+    }
+
+    private void appendSkeleton(String elementName,
+                                LarvaSkeleton skeleton) {
+        appendNewLine();
+        appendIndent(1);
+        append('<');
+        append(elementName);
+        appendAttribute("captureTime", skeleton.getCaptureTime());
+        appendAttribute("length", skeleton.getLength());
+        appendAttribute("headToBodyAngle", skeleton.getHeadToBodyAngle());
+        appendAttribute("tailBearing", skeleton.getTailBearing());
+        append('>');
+        appendPoint("head", skeleton.getHead());
+        appendPoint("midpoint", skeleton.getMidpoint());
+        appendPoint("tail", skeleton.getTail());
+        appendPoint("centroid", skeleton.getCentroid());
+        appendNewLine();
+        appendIndent(1);
+        append("</");
+        append(elementName);
+        append('>');
+    }
+
+    private void appendPoint(String elementName,
+                             TrackerPoint point) {
+        if (point != null) {
+            appendNewLine();
+            appendIndent(2);
+            append('<');
+            append(elementName);
+            appendAttribute("x", point.getX());
+            appendAttribute("y", point.getY());
+            append("/>");
+        }
+    }
+
+    private void appendStimulus(Stimulus stimulus,
+                                int depth) {
+        if (stimulus instanceof LEDStimulus) {
+            appendLedStimulus((LEDStimulus) stimulus, depth);
+        } else if (stimulus instanceof LEDArrayStimulus) {
+            appendLedArrayStimulus((LEDArrayStimulus) stimulus, depth);
+        } else {
+            throw new IllegalArgumentException("unsupported stimulus type: " +
+                                               stimulus.getClass().getName());
+        }
+    }
+
+    private void appendLedStimulus(LEDStimulus stimulus,
+                                   int depth) {
+        if (depth > 0) {
+            appendNewLine();
+            appendIndent(depth);
+        }
+        append("<ledStimulus>");
+        appendNewLine();
+        appendIndent(depth + 1);
+        append("<intensityPercentage>");
+        append(stimulus.getIntensityPercentage());
+        append("</intensityPercentage>");
+        appendNewLine();
+        appendIndent(depth + 1);
+        append("<duration>");
+        append(stimulus.getDuration());
+        append("</duration>");
+        appendNewLine();
+        appendIndent(depth);
+        append("</ledStimulus>");
+    }
+
+    private void appendLedArrayStimulus(LEDArrayStimulus stimulus,
+                                        int depth) {
+        if (depth > 0) {
+            appendNewLine();
+            appendIndent(depth);
+        }
+        append("<ledArrayStimulus");
+        appendAttribute("x", stimulus.getX());
+        appendAttribute("y", stimulus.getY());
+        appendAttribute("width", stimulus.getWidth());
+        appendAttribute("height", stimulus.getHeight());
+        final List<LEDStimulus> stimulusList = stimulus.getStimulusList();
+        if ((stimulusList == null) || (stimulusList.size() == 0)) {
+            append("/>");
+        } else {
+            append('>');
+            for (LEDStimulus ledStimulus : stimulusList) {
+                appendLedStimulus(ledStimulus, depth + 1);
+            }
+            appendNewLine();
+            appendIndent(depth);
+            append("</ledArrayStimulus>");
+        }
+    }
+
+    private void appendRuleData(RuleData ruleData) {
+        append("<ruleData");
+        if (ruleData.getValue() != null) {
+            appendEscapedAttribute("value", ruleData.getValue());
+        }
+        if (ruleData.getName() != null) {
+            appendEscapedAttribute("name", ruleData.getName());
+        }
+        appendAttribute("captureTime", ruleData.getCaptureTime());
+        append("/>");
+    }
+
+    private void appendAttribute(String name,
+                                 String value) {
+        append(' ');
+        append(name);
+        append("=\"");
+        append(value);
+        append('"');
+    }
+
+    private void appendAttribute(String name,
+                                 double value) {
+        append(' ');
+        append(name);
+        append("=\"");
+        append(value);
+        append('"');
+    }
+
+    private void appendAttribute(String name,
+                                 long value) {
+        append(' ');
+        append(name);
+        append("=\"");
+        append(value);
+        append('"');
+    }
+
+    private void appendEscapedAttribute(String name,
+                                        String value) {
+        append(' ');
+        append(name);
+        append("=\"");
+
+        final int valueLength = value.length();
+        int codePoint;
+        for (int i = 0; i < valueLength; i += Character.charCount(codePoint)) {
+            codePoint = value.codePointAt(i);
+            switch (codePoint) {
+                case '&':  append("&amp;");  break;
+                case '<':  append("&lt;");   break;
+                case '>':  append("&gt;");   break;
+                case '"':  append("&quot;"); break;
+                case '\n': append("&#xA;");  break;
+                case '\r': append("&#xD;");  break;
+                case '\t': append("&#x9;");  break;
+                default:   appendCodePoint(codePoint);
+            }
+        }
+
+        append('"');
+    }
+
+    private void appendNewLine() {
+        append('\n');
+    }
+
+    private void appendIndent(int depth) {
+        for (int i = 0; i < depth; i++) {
+            append("    ");
+        }
+    }
+
+    /**
+     * Appends the specified ASCII text.
+     */
+    private void append(String text) {
+        final int textLength = text.length();
+        ensureCapacity(textLength);
+        for (int i = 0; i < textLength; i++) {
+            buffer[length++] = (byte) text.charAt(i);
+        }
+    }
+
+    private void append(char c) {
+        ensureCapacity(1);
+        buffer[length++] = (byte) c;
+    }
+
+    private void appendCodePoint(int codePoint) {
+        ensureCapacity(4);
+        if (codePoint < 0x80) {
+            buffer[length++] = (byte) codePoint;
+        } else if (codePoint < 0x800) {
+            buffer[length++] = (byte) (0xC0 | (codePoint >> 6));
+            buffer[length++] = (byte) (0x80 | (codePoint & 0x3F));
+        } else if (codePoint < 0x10000) {
+            buffer[length++] = (byte) (0xE0 | (codePoint >> 12));
+            buffer[length++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+            buffer[length++] = (byte) (0x80 | (codePoint & 0x3F));
+        } else {
+            buffer[length++] = (byte) (0xF0 | (codePoint >> 18));
+            buffer[length++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+            buffer[length++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+            buffer[length++] = (byte) (0x80 | (codePoint & 0x3F));
+        }
+    }
+
+    private void append(long value) {
+        if (value == Long.MIN_VALUE) {
+            append(String.valueOf(value));
+        } else {
+            ensureCapacity(20);
+            if (value < 0) {
+                buffer[length++] = '-';
+            }
+            appendDigits(Math.abs(value), 0);
+        }
+    }
+
+    /**
+     * Appends the specified value in the same form as
+     * {@link Double#toString(double)} (and the JAXB marshaller).
+     *
+     * Values with a short decimal representation (like most tracker
+     * coordinates) are formatted directly from a scaled long.
+     * All other values fall back to {@link Double#toString(double)}.
+     */
+    private void append(double value) {
+
+        final double abs = Math.abs(value);
+        int fractionDigits = -1;
+        long scaled = 0;
+
+        if ((abs >= MIN_FAST_VALUE) && (abs < MAX_FAST_VALUE)) {
+            // Since both the scaled long and the power of ten are exact
+            // doubles, the correctly rounded quotient equals the value
+            // only if parsing the decimal form returns the same value.
+            for (int i = 0; i < POWERS_OF_TEN.length; i++) {
+                scaled = Math.round(abs * POWERS_OF_TEN[i]);
+                if ((scaled < MAX_EXACT_LONG) && ((scaled / POWERS_OF_TEN[i]) == abs)) {
+                    fractionDigits = i;
+                    break;
+                }
+            }
+        }
+
+        if (value == 0) {
+            append((Double.doubleToRawLongBits(value) < 0) ? "-0.0" : "0.0");
+        } else if (fractionDigits < 0) {
+            if (Double.isNaN(value)) {
+                append("NaN");
+            } else if (Double.isInfinite(value)) {
+                append(value > 0 ? "INF" : "-INF");
+            } else {
+                append(Double.toString(value));
+            }
+        } else {
+            ensureCapacity(32);
+            if (value < 0) {
+                buffer[length++] = '-';
+            }
+            if (fractionDigits == 0) {
+                appendDigits(scaled, 0);
+                buffer[length++] = '.';
+                buffer[length++] = '0';
+            } else {
+                appendDigits(scaled, fractionDigits);
+            }
+        }
+    }
+
+    /**
+     * Appends the digits of the specified non-negative value,
+     * inserting a decimal point before the specified number of
+     * fraction digits (and padding with leading zeros as needed).
+     */
+    private void appendDigits(long value,
+                              int fractionDigits) {
+        final int start = length;
+        int digitCount = 0;
+        do {
+            if ((digitCount == fractionDigits) && (digitCount > 0)) {
+                buffer[length++] = '.';
+            }
+            buffer[length++] = (byte) ('0' + (value % 10));
+            value = value / 10;
+            digitCount++;
+        } while ((value > 0) || (digitCount <= fractionDigits));
+
+        // digits were appended in reverse order
+        byte b;
+        for (int i = start, j = length - 1; i < j; i++, j--) {
+            b = buffer[i];
+            buffer[i] = buffer[j];
+            buffer[j] = b;
+        }
+    }
+
+    private void ensureCapacity(int additionalBytes) {
+        final int requiredLength = length + additionalBytes;
+        if (requiredLength > buffer.length) {
+            final byte[] expandedBuffer =
+                    new byte[Math.max(requiredLength, buffer.length * 2)];
+            System.arraycopy(buffer, 0, expandedBuffer, 0, length);
+            buffer = expandedBuffer;
+        }
+    }
+
+    /** Double.toString only uses plain decimal notation within this range. */
+    private static final double MIN_FAST_VALUE = 1.0e-3;
+    private static final double MAX_FAST_VALUE = 1.0e7;
+
+    private static final long MAX_EXACT_LONG = 1L << 53;
+
+    private static final double[] POWERS_OF_TEN = {
+            1.0e0, 1.0e1, 1.0e2, 1.0e3, 1.0e4, 1.0e5, 1.0e6, 1.0e7, 1.0e8
+    };
+}
@@ -10,7 +10,15 @@ package org.janelia.it.venkman.log;
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
 import javax.xml.bind.Unmarshaller;
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
 
 /**
  * Utility for reading a log file and parse its contents into
@@ -23,21 +31,324 @@ public class LogReader {
     private File logFile;
     private LogSession session;
 
+    /**
+     * @param  logFile  log file to read (for segmented logs, any of the
+     *                  session's segment or index files may be specified).
+     */
     public LogReader(File logFile) {
-        this.logFile = logFile;
+        this.logFile = LogSegmentIndex.getLogFile(logFile);
         this.session = null;
     }
 
+    /**
+     * @param  file  file to check.
+     *
+     * @return true if the specified file is a readable log file
+     *         or one of the files written for a segmented log.
+     */
+    public static boolean isReadableLogFile(File file) {
+        final File logFile = LogSegmentIndex.getLogFile(file);
+        return logFile.getName().endsWith(".xml") &&
+               (logFile.canRead() || LogSegmentIndex.getIndexFile(logFile).canRead());
+    }
+
+    /**
+     * Reads the log file.  Logs written in segments are read using the
+     * segment index so that complete entries in a segment that was not
+     * closed (e.g. because of a crash) are recovered.
+     *
+     * @throws JAXBException
+     *   if the log cannot be read or parsed.
+     */
     public void read() throws JAXBException {
+        read(Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    /**
+     * Reads the session data and the frames captured within the specified
+     * time range.  For logs with indexed blocks, only the blocks that
+     * contain session data or frames within the range are read
+     * (and decompressed).  For logs that contain compact frames
+     * (see {@link FrameLoggingPolicy}), all frames captured before the
+     * end of the range are read so that derived data for those frames
+     * can be recalculated.
+     *
+     * @param  startTime  capture time of first frame to read (inclusive).
+     * @param  stopTime   capture time of last frame to read (inclusive).
+     *
+     * @throws JAXBException
+     *   if the log cannot be read or parsed.
+     */
+    public void read(long startTime,
+                     long stopTime) throws JAXBException {
+
         JAXBContext context = JAXBContext.newInstance(LogSession.class);
         Unmarshaller unmarshaller = context.createUnmarshaller();
-        Object o = unmarshaller.unmarshal(logFile);
-        if (o instanceof LogSession) {
-             session = (LogSession) o;
+
+        readSession(startTime, stopTime, unmarshaller);
+
+        if (session != null) {
+            final boolean isRangeRequest =
+                    (startTime != Long.MIN_VALUE) || (stopTime != Long.MAX_VALUE);
+            if (session.hasCompactFrames()) {
+                if (startTime != Long.MIN_VALUE) {
+                    // derived data for compact frames can only be
+                    // recalculated with the prior frame history
+                    readSession(Long.MIN_VALUE, stopTime, unmarshaller);
+                }
+                session.expandCompactFrames();
+            }
+            if (isRangeRequest) {
+                session.retainFrames(startTime, stopTime);
+            }
         }
     }
 
+    /**
+     * Reads the frames captured within the time range specified by the
+     * venkman-log-start-time and venkman-log-stop-time system properties
+     * (see {@link #read(long, long)}).  The entire log is read if neither
+     * property is set.
+     *
+     * @throws JAXBException
+     *   if the log cannot be read or parsed.
+     */
+    public void readConfiguredRange() throws JAXBException {
+        read(Long.getLong("venkman-log-start-time", Long.MIN_VALUE),
+             Long.getLong("venkman-log-stop-time", Long.MAX_VALUE));
+    }
+
     public LogSession getSession() {
         return session;
     }
+
+    /**
+     * Reads the session data and (at least) the frames captured within the
+     * specified time range and resolves the session's parameter snapshots.
+     */
+    private void readSession(long startTime,
+                             long stopTime,
+                             Unmarshaller unmarshaller)
+            throws JAXBException {
+
+        final LogSegmentIndex index;
+        try {
+            index = LogSegmentIndex.read(logFile);
+        } catch (IOException e) {
+            throw new JAXBException("failed to read segment index for " +
+                                    logFile.getAbsolutePath(), e);
+        }
+
+        session = null;
+        if (index == null) {
+            Object o = unmarshaller.unmarshal(logFile);
+            if (o instanceof LogSession) {
+                session = (LogSession) o;
+            }
+        } else {
+            for (int i = 0; i < index.getSegmentCount(); i++) {
+                addSegment(readSegment(index, i, startTime, stopTime, unmarshaller));
+            }
+        }
+
+        if (session != null) {
+            session.resolveParameterSnapshots(
+                    ParameterSnapshotStore.forLogDirectory(
+                            logFile.getAbsoluteFile().getParentFile()),
+                    unmarshaller);
+        }
+    }
+
+    private void addSegment(LogSession segmentSession) {
+        if (session == null) {
+            session = segmentSession;
+        } else if (segmentSession != null) {
+            session.append(segmentSession);
+        }
+    }
+
+    private LogSession readSegment(LogSegmentIndex index,
+                                   int segment,
+                                   long startTime,
+                                   long stopTime,
+                                   Unmarshaller unmarshaller)
+            throws JAXBException {
+
+        final File segmentFile = index.getSegmentFile(segment);
+        final List<LogSegmentIndex.Block> blocks = index.getBlocks(segment);
+        final boolean isRangeRequest =
+                (startTime != Long.MIN_VALUE) || (stopTime != Long.MAX_VALUE);
+
+        Object o = null;
+        if (index.isCompressed(segment) || (isRangeRequest && (blocks.size() > 0))) {
+
+            final List<LogSegmentIndex.Block> neededBlocks =
+                    new ArrayList<LogSegmentIndex.Block>(blocks.size());
+            for (LogSegmentIndex.Block block : blocks) {
+                if (block.isNeededForRange(startTime, stopTime)) {
+                    neededBlocks.add(block);
+                }
+            }
+
+            try {
+                final BlockInputStream in =
+                        new BlockInputStream(segmentFile,
+                                             index.isCompressed(segment),
+                                             neededBlocks);
+                try {
+                    o = unmarshaller.unmarshal(in);
+                } finally {
+                    in.close();
+                }
+            } catch (IOException e) {
+                throw new JAXBException("failed to read " + segmentFile.getAbsolutePath(), e);
+            }
+
+        } else if (index.isClosed(segment)) {
+
+            o = unmarshaller.unmarshal(segmentFile);
+
+        } else if (index.getReadableLength(segment) > 0) {
+
+            // only parse complete entries (up to the last checkpoint)
+            // and supply the missing footer
+            final byte[] footer = FOOTER.getBytes();
+            final byte[] bytes;
+            try {
+                final long readableLength = index.getReadableLength(segment);
+                bytes = new byte[(int) readableLength + footer.length];
+                final RandomAccessFile file = new RandomAccessFile(segmentFile, "r");
+                try {
+                    file.readFully(bytes, 0, (int) readableLength);
+                } finally {
+                    file.close();
+                }
+            } catch (IOException e) {
+                throw new JAXBException("failed to read " + segmentFile.getAbsolutePath(), e);
+            }
+            System.arraycopy(footer, 0, bytes, bytes.length - footer.length, footer.length);
+            o = unmarshaller.unmarshal(new ByteArrayInputStream(bytes));
+        }
+
+        LogSession segmentSession = null;
+        if (o instanceof LogSession) {
+            segmentSession = (LogSession) o;
+        }
+        return segmentSession;
+    }
+
+    private static final String HEADER = "<logSession>\n";
+    private static final String FOOTER = "\n</logSession>\n";
+
+    /**
+     * Streams a session document assembled from a list of segment blocks,
+     * reading (and decompressing) one block at a time.
+     */
+    private static class BlockInputStream extends InputStream {
+
+        private RandomAccessFile file;
+        private boolean isCompressed;
+        private List<LogSegmentIndex.Block> blocks;
+        private int nextBlock;
+        private byte[] buffer;
+        private int position;
+        private boolean isFooterLoaded;
+        private Inflater inflater;
+
+        public BlockInputStream(File segmentFile,
+                                boolean isCompressed,
+                                List<LogSegmentIndex.Block> blocks)
+                throws IOException {
+            this.file = new RandomAccessFile(segmentFile, "r");
+            this.isCompressed = isCompressed;
+            this.blocks = blocks;
+            this.nextBlock = 0;
+            this.buffer = HEADER.getBytes();
+            this.position = 0;
+            this.isFooterLoaded = false;
+            this.inflater = isCompressed ? new Inflater() : null;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int value = -1;
+            if (loadBuffer()) {
+                value = buffer[position++] & 0xff;
+            }
+            return value;
+        }
+
+        @Override
+        public int read(byte[] b,
+                        int off,
+                        int len) throws IOException {
+            int count = -1;
+            if (loadBuffer()) {
+                count = Math.min(len, buffer.length - position);
+                System.arraycopy(buffer, position, b, off, count);
+                position += count;
+            }
+            return count;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (inflater != null) {
+                inflater.end();
+                inflater = null;
+            }
+            file.close();
+        }
+
+        /**
+         * @return true if the buffer contains unread bytes;
+         *         false if the end of the stream has been reached.
+         */
+        private boolean loadBuffer() throws IOException {
+            boolean hasData = true;
+            while (hasData && (position == buffer.length)) {
+                if (nextBlock < blocks.size()) {
+                    buffer = readBlock(blocks.get(nextBlock));
+                    nextBlock++;
+                } else if (! isFooterLoaded) {
+                    buffer = FOOTER.getBytes();
+                    isFooterLoaded = true;
+                } else {
+                    hasData = false;
+                }
+                if (hasData) {
+                    position = 0;
+                }
+            }
+            return hasData;
+        }
+
+        private byte[] readBlock(LogSegmentIndex.Block block) throws IOException {
+            final byte[] storedBytes = new byte[block.getLength()];
+            file.seek(block.getOffset());
+            file.readFully(storedBytes);
+
+            byte[] bytes = storedBytes;
+            if (isCompressed) {
+                bytes = new byte[block.getUncompressedLength()];
+                inflater.reset();
+                inflater.setInput(storedBytes);
+                try {
+                    int count = 0;
+                    while (count < bytes.length) {
+                        final int inflatedCount = inflater.inflate(bytes, count, bytes.length - count);
+                        if ((inflatedCount == 0) && (inflater.finished() || inflater.needsInput())) {
+                            throw new IOException("compressed block at offset " + block.getOffset() +
+                                                  " is truncated");
+                        }
+                        count += inflatedCount;
+                    }
+                } catch (DataFormatException e) {
+                    throw new IOException("compressed block at offset " + block.getOffset() +
+                                          " is invalid", e);
+                }
+            }
+            return bytes;
+        }
+    }
 }
@@ -0,0 +1,426 @@
+/*
+ * Copyright (c) 2014 Howard Hughes Medical Institute.
+ * All rights reserved.
+ * Use is subject to Janelia Farm Research Campus Software Copyright 1.1
+ * license terms (http://license.janelia.org/license/jfrc_copyright_1_1.html).
+ */
+
+package org.janelia.it.venkman.log;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Index of the segment files that make up a session log.
+ *
+ * The first segment of a session is written to the original log file and
+ * later segments are written to sibling files with a segment number suffix.
+ * Each segment is a complete log session document once it is closed.
+ * The log thread appends a line to the index file each time it flushes a
+ * checkpoint (recording the number of complete bytes written to the current
+ * segment) and each time it closes a segment.  This allows readers to
+ * recover everything up to the last checkpoint of a segment that was not
+ * closed (e.g. because the process crashed) without scanning the segment.
+ *
+ * A block entry is also written at each checkpoint to record the location
+ * and the capture time range of the entries written since the previous
+ * checkpoint as well as whether those entries include session data
+ * (parameters or parameter updates) that is needed for any frame range.  Segments can optionally be compressed, in which case each
+ * block is deflated independently and the segment file only contains the
+ * compressed blocks (without the session header and footer).  Block entries
+ * allow readers to load only the blocks for a specific frame range.
+ *
+ * @author Eric Trautman
+ */
+public class LogSegmentIndex {
+
+    /** Suffix appended to the log file name to name the index file. */
+    public static final String INDEX_SUFFIX = ".index";
+
+    /** Suffix appended to the log file name to name later segments. */
+    public static final String SEGMENT_SUFFIX = ".segment-";
+
+    /** Index entry type for checkpoints. */
+    public static final String CHECKPOINT = "checkpoint";
+
+    /** Index entry type for closed segments. */
+    public static final String CLOSED = "closed";
+
+    /** Index entry type written when a compressed segment is opened. */
+    public static final String COMPRESSED = "compressed";
+
+    /** Index entry type for uncompressed blocks. */
+    public static final String BLOCK = "block";
+
+    /** Index entry type for compressed blocks. */
+    public static final String DEFLATED_BLOCK = "deflated";
+
+    /** Suffix appended to segment file names for compressed segments. */
+    public static final String DEFLATED_SUFFIX = ".deflated";
+
+    /**
+     * Location and capture time range for a block of
+     * complete log entries within a segment.
+     */
+    public static class Block {
+
+        private long offset;
+        private int length;
+        private int uncompressedLength;
+        private int frameCount;
+        private long firstFrameTime;
+        private long lastFrameTime;
+        private boolean hasSessionData;
+
+        public Block(long offset,
+                     int length,
+                     int uncompressedLength,
+                     int frameCount,
+                     long firstFrameTime,
+                     long lastFrameTime,
+                     boolean hasSessionData) {
+            this.offset = offset;
+            this.length = length;
+            this.uncompressedLength = uncompressedLength;
+            this.frameCount = frameCount;
+            this.firstFrameTime = firstFrameTime;
+            this.lastFrameTime = lastFrameTime;
+            this.hasSessionData = hasSessionData;
+        }
+
+        /** @return offset of the block within the segment file. */
+        public long getOffset() {
+            return offset;
+        }
+
+        /** @return number of bytes stored in the segment file for the block. */
+        public int getLength() {
+            return length;
+        }
+
+        /** @return number of bytes in the (decompressed) block. */
+        public int getUncompressedLength() {
+            return uncompressedLength;
+        }
+
+        /** @return number of frames logged in the block. */
+        public int getFrameCount() {
+            return frameCount;
+        }
+
+        /**
+         * @return earliest capture time of the frames (and rule data)
+         *         logged in the block.
+         */
+        public long getFirstFrameTime() {
+            return firstFrameTime;
+        }
+
+        /**
+         * @return latest capture time of the frames (and rule data)
+         *         logged in the block.
+         */
+        public long getLastFrameTime() {
+            return lastFrameTime;
+        }
+
+        /**
+         * @return true if the block contains session data (parameters or
+         *         parameter updates) that applies to frames outside
+         *         the block's time range.
+         */
+        public boolean hasSessionData() {
+            return hasSessionData;
+        }
+
+        /**
+         * @param  startTime  start of the time range (inclusive).
+         * @param  stopTime   end of the time range (inclusive).
+         *
+         * @return true if the block must be read to load all data for
+         *         frames within the specified range (blocks with session
+         *         data or without frames are always needed).
+         */
+        public boolean isNeededForRange(long startTime,
+                                        long stopTime) {
+            return hasSessionData ||
+                   (frameCount == 0) ||
+                   ((firstFrameTime <= stopTime) && (lastFrameTime >= startTime));
+        }
+    }
+
+    private File logFile;
+    private List<Long> readableLengths;
+    private List<Boolean> closedSegments;
+    private List<Boolean> compressedSegments;
+    private List<List<Block>> segmentBlocks;
+
+    private LogSegmentIndex(File logFile) {
+        this.logFile = logFile;
+        this.readableLengths = new ArrayList<Long>();
+        this.closedSegments = new ArrayList<Boolean>();
+        this.compressedSegments = new ArrayList<Boolean>();
+        this.segmentBlocks = new ArrayList<List<Block>>();
+    }
+
+    /**
+     * @param  sessionFile  any file written for a session log
+     *                      (log file, segment, or index).
+     *
+     * @return the log file (first segment name) for the session.
+     */
+    public static File getLogFile(File sessionFile) {
+        String name = sessionFile.getAbsolutePath();
+        if (name.endsWith(INDEX_SUFFIX)) {
+            name = name.substring(0, name.length() - INDEX_SUFFIX.length());
+        }
+        if (name.endsWith(DEFLATED_SUFFIX)) {
+            name = name.substring(0, name.length() - DEFLATED_SUFFIX.length());
+        }
+        final int segmentStart = name.lastIndexOf(SEGMENT_SUFFIX);
+        if (segmentStart > 0) {
+            name = name.substring(0, segmentStart);
+        }
+        return new File(name);
+    }
+
+    /**
+     * @param  logFile  log file (first segment) for a session.
+     *
+     * @return the index file for the specified log.
+     */
+    public static File getIndexFile(File logFile) {
+        return new File(logFile.getAbsolutePath() + INDEX_SUFFIX);
+    }
+
+    /**
+     * @param  logFile  log file (first segment) for a session.
+     * @param  segment  segment number.
+     *
+     * @return the file for the specified segment.
+     */
+    public static File getSegmentFile(File logFile,
+                                      int segment) {
+        return getSegmentFile(logFile, segment, false);
+    }
+
+    /**
+     * @param  logFile     log file (first segment) for a session.
+     * @param  segment     segment number.
+     * @param  compressed  indicates whether the segment is compressed.
+     *
+     * @return the file for the specified segment.
+     */
+    public static File getSegmentFile(File logFile,
+                                      int segment,
+                                      boolean compressed) {
+        String name = logFile.getAbsolutePath();
+        if (segment > 0) {
+            name = name + SEGMENT_SUFFIX + String.format("%04d", segment);
+        }
+        if (compressed) {
+            name = name + DEFLATED_SUFFIX;
+        }
+        return new File(name);
+    }
+
+    /**
+     * @param  segment  segment number.
+     * @param  type     entry type ({@link #CHECKPOINT}, {@link #CLOSED},
+     *                  or {@link #COMPRESSED}).
+     * @param  length   number of complete bytes in the segment.
+     *
+     * @return index line for the specified entry.
+     */
+    public static String getEntry(int segment,
+                                  String type,
+                                  long length) {
+        return type + ' ' + segment + ' ' + length + '\n';
+    }
+
+    /**
+     * @param  segment     segment number.
+     * @param  compressed  indicates whether the block is compressed.
+     * @param  block       block to index.
+     *
+     * @return index line for the specified block.
+     */
+    public static String getBlockEntry(int segment,
+                                       boolean compressed,
+                                       Block block) {
+        return (compressed ? DEFLATED_BLOCK : BLOCK) + ' ' + segment + ' ' +
+               block.getOffset() + ' ' + block.getLength() + ' ' +
+               block.getUncompressedLength() + ' ' + block.getFrameCount() + ' ' +
+               block.getFirstFrameTime() + ' ' + block.getLastFrameTime() + ' ' +
+               (block.hasSessionData() ? 1 : 0) + '\n';
+    }
+
+    /**
+     * Reads the index for the specified log.
+     *
+     * @param  logFile  log file (first segment) for a session.
+     *
+     * @return the index or null if the log does not have an index
+     *         (e.g. because it was written before logs were segmented).
+     *
+     * @throws IOException
+     *   if the index cannot be read.
+     */
+    public static LogSegmentIndex read(File logFile)
+            throws IOException {
+
+        LogSegmentIndex index = null;
+        final File indexFile = getIndexFile(logFile);
+        if (indexFile.exists()) {
+            index = new LogSegmentIndex(logFile);
+            final StringBuilder content = new StringBuilder();
+            final FileReader reader = new FileReader(indexFile);
+            try {
+                final char[] buffer = new char[4096];
+                int count;
+                while ((count = reader.read(buffer)) != -1) {
+                    content.append(buffer, 0, count);
+                }
+            } finally {
+                reader.close();
+            }
+
+            // ignore partially written (unterminated) last line
+            final int completeLength = content.lastIndexOf("\n") + 1;
+            String[] fields;
+            try {
+                for (String line : content.substring(0, completeLength).split("\n")) {
+                    fields = line.split(" ");
+                    if (fields.length == 3) {
+                        index.addEntry(fields[0],
+                                       Integer.parseInt(fields[1]),
+                                       Long.parseLong(fields[2]));
+                    } else if ((fields.length == 8) || (fields.length == 9)) {
+                        // blocks indexed without a session data flag are
+                        // conservatively assumed to contain session data
+                        index.addBlock(Integer.parseInt(fields[1]),
+                                       DEFLATED_BLOCK.equals(fields[0]),
+                                       new Block(Long.parseLong(fields[2]),
+                                                 Integer.parseInt(fields[3]),
+                                                 Integer.parseInt(fields[4]),
+                                                 Integer.parseInt(fields[5]),
+                                                 Long.parseLong(fields[6]),
+                                                 Long.parseLong(fields[7]),
+                                                 (fields.length == 8) ||
+                                                 (Integer.parseInt(fields[8]) != 0)));
+                    }
+                }
+            } catch (NumberFormatException e) {
+                throw new IOException("invalid entry in " + indexFile.getAbsolutePath(), e);
+            }
+        }
+        return index;
+    }
+
+    /**
+     * @return number of segments in the log.
+     */
+    public int getSegmentCount() {
+        return readableLengths.size();
+    }
+
+    /**
+     * @param  segment  segment number.
+     *
+     * @return the file for the specified segment.
+     */
+    public File getSegmentFile(int segment) {
+        return getSegmentFile(logFile, segment, isCompressed(segment));
+    }
+
+    /**
+     * @param  segment  segment number.
+     *
+     * @return true if the segment is compressed.
+     */
+    public boolean isCompressed(int segment) {
+        return compressedSegments.get(segment);
+    }
+
+    /**
+     * @param  segment  segment number.
+     *
+     * @return the indexed blocks for the segment (in file order).
+     *         Logs written before blocks were indexed have no blocks.
+     */
+    public List<Block> getBlocks(int segment) {
+        return segmentBlocks.get(segment);
+    }
+
+    /**
+     * @return total number of frames in all indexed blocks.
+     */
+    public int getFrameCount() {
+        int frameCount = 0;
+        for (List<Block> blocks : segmentBlocks) {
+            for (Block block : blocks) {
+                frameCount += block.getFrameCount();
+            }
+        }
+        return frameCount;
+    }
+
+    /**
+     * @param  segment  segment number.
+     *
+     * @return true if the segment was closed (is a complete document).
+     */
+    public boolean isClosed(int segment) {
+        return closedSegments.get(segment);
+    }
+
+    /**
+     * @param  segment  segment number.
+     *
+     * @return number of bytes at the start of the segment that contain
+     *         complete log entries.
+     */
+    public long getReadableLength(int segment) {
+        return readableLengths.get(segment);
+    }
+
+    @Override
+    public String toString() {
+        return "LogSegmentIndex{" +
+               "logFile=" + logFile.getAbsolutePath() +
+               ", segmentCount=" + getSegmentCount() +
+               '}';
+    }
+
+    private void addEntry(String type,
+                          int segment,
+                          long length) {
+        addSegments(segment);
+        if (COMPRESSED.equals(type)) {
+            compressedSegments.set(segment, true);
+        } else {
+            readableLengths.set(segment, length);
+            closedSegments.set(segment, CLOSED.equals(type));
+        }
+    }
+
+    private void addBlock(int segment,
+                          boolean isCompressed,
+                          Block block) {
+        addSegments(segment);
+        compressedSegments.set(segment, isCompressed);
+        segmentBlocks.get(segment).add(block);
+    }
+
+    private void addSegments(int lastSegment) {
+        while (readableLengths.size() <= lastSegment) {
+            readableLengths.add(0L);
+            closedSegments.add(false);
+            compressedSegments.add(false);
+            segmentBlocks.add(new ArrayList<Block>());
+        }
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2014 Howard Hughes Medical Institute.
+ * All rights reserved.
+ * Use is subject to Janelia Farm Research Campus Software Copyright 1.1
+ * license terms (http://license.janelia.org/license/jfrc_copyright_1_1.html).
+ */
+
+package org.janelia.it.venkman.log;
+
+/**
+ * Controls when a session log is rolled to a new segment,
+ * when written data is forced (fsync-ed) to disk, and
+ * whether segments are compressed.
+ *
+ * @author Eric Trautman
+ */
+public class LogSegmentPolicy {
+
+    /** Controls when written log data is forced to disk. */
+    public enum SyncMode {
+        /** Data is flushed to the operating system but never forced to disk. */
+        NONE,
+        /** Data is forced to disk when each segment is closed. */
+        SEGMENT,
+        /** Data is forced to disk at every checkpoint. */
+        CHECKPOINT
+    }
+
+    /** Default maximum number of bytes written to a segment before rolling. */
+    public static final long DEFAULT_MAX_SEGMENT_BYTES = 64 * 1024 * 1024;
+
+    private long maxSegmentBytes;
+    private long maxSegmentMilliseconds;
+    private SyncMode syncMode;
+    private boolean compressed;
+
+    /**
+     * Constructs a policy.
+     *
+     * @param  maxSegmentBytes         number of bytes written to a segment
+     *                                 before rolling (or zero to never roll
+     *                                 based upon size).
+     * @param  maxSegmentMilliseconds  number of milliseconds a segment is
+     *                                 written before rolling (or zero to
+     *                                 never roll based upon time).
+     * @param  syncMode                controls when data is forced to disk.
+     */
+    public LogSegmentPolicy(long maxSegmentBytes,
+                            long maxSegmentMilliseconds,
+                            SyncMode syncMode) {
+        this(maxSegmentBytes, maxSegmentMilliseconds, syncMode, false);
+    }
+
+    /**
+     * Constructs a policy.
+     *
+     * @param  maxSegmentBytes         number of bytes written to a segment
+     *                                 before rolling (or zero to never roll
+     *                                 based upon size).
+     * @param  maxSegmentMilliseconds  number of milliseconds a segment is
+     *                                 written before rolling (or zero to
+     *                                 never roll based upon time).
+     * @param  syncMode                controls when data is forced to disk.
+     * @param  compressed              indicates whether each block of
+     *                                 entries should be compressed.
+     */
+    public LogSegmentPolicy(long maxSegmentBytes,
+                            long maxSegmentMilliseconds,
+                            SyncMode syncMode,
+                            boolean compressed) {
+        this.maxSegmentBytes = maxSegmentBytes;
+        this.maxSegmentMilliseconds = maxSegmentMilliseconds;
+        this.syncMode = syncMode;
+        this.compressed = compressed;
+    }
+
+    /**
+     * @return policy built from the venkman-log-segment-bytes,
+     *         venkman-log-segment-milliseconds, venkman-log-sync,
+     *         and venkman-log-compress system properties.
+     */
+    public static LogSegmentPolicy getDefault() {
+        final String syncName = System.getProperty("venkman-log-sync",
+                                                   SyncMode.SEGMENT.name());
+        return new LogSegmentPolicy(
+                Long.getLong("venkman-log-segment-bytes", DEFAULT_MAX_SEGMENT_BYTES),
+                Long.getLong("venkman-log-segment-milliseconds", 0L),
+                SyncMode.valueOf(syncName.toUpperCase()),
+                Boolean.getBoolean("venkman-log-compress"));
+    }
+
+    public SyncMode getSyncMode() {
+        return syncMode;
+    }
+
+    public boolean isCompressed() {
+        return compressed;
+    }
+
+    /**
+     * @param  segmentBytes         number of bytes written to the current segment.
+     * @param  segmentMilliseconds  number of milliseconds the current segment
+     *                              has been written.
+     *
+     * @return true if the current segment should be closed and
+     *         a new segment started; otherwise false.
+     */
+    public boolean isRollRequired(long segmentBytes,
+                                  long segmentMilliseconds) {
+        return ((maxSegmentBytes > 0) && (segmentBytes >= maxSegmentBytes)) ||
+               ((maxSegmentMilliseconds > 0) && (segmentMilliseconds >= maxSegmentMilliseconds));
+    }
+
+    @Override
+    public String toString() {
+        return "LogSegmentPolicy{" +
+               "maxSegmentBytes=" + maxSegmentBytes +
+               ", maxSegmentMilliseconds=" + maxSegmentMilliseconds +
+               ", syncMode=" + syncMode +
+               ", compressed=" + compressed +
+               '}';
+    }
+}
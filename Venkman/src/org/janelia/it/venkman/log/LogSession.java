@@ -7,6 +7,7 @@
 
 package org.janelia.it.venkman.log;
 
+import org.apache.log4j.Logger;
 import org.janelia.it.venkman.config.Configuration;
 import org.janelia.it.venkman.config.LarvaBehaviorParameters;
 import org.janelia.it.venkman.config.rules.LEDStimulus;
@@ -20,11 +21,15 @@ import org.janelia.it.venkman.rules.RuleData;
 import org.janelia.it.venkman.rules.ScaledRunIntensity;
 import org.janelia.it.venkman.rules.ScaledRunIntensityWithRandomDelay;
 
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Unmarshaller;
 import javax.xml.bind.annotation.XmlElement;
 import javax.xml.bind.annotation.XmlElementRef;
 import javax.xml.bind.annotation.XmlElementRefs;
 import javax.xml.bind.annotation.XmlRootElement;
+import javax.xml.bind.annotation.XmlTransient;
 import java.util.ArrayList;
+import java.util.LinkedList;
 import java.util.List;
 
 /**
@@ -53,36 +58,77 @@ public class LogSession {
                     })
     private LarvaStimulusRules larvaStimulusRules;
     
+    @XmlElement
+    private List<ParameterSnapshot> parameterSnapshot;
+
     @XmlElement
     private List<LarvaFrameData> larvaFrameData;
 
+    @XmlElement
+    private List<CompactFrameData> compactFrameData;
+
     @XmlElement
     private List<LEDStimulus> ledStimulus;
 
     @XmlElement
     private List<RuleData> ruleData;
 
+    @XmlTransient
+    private List<ParameterUpdate> parameterUpdate;
+
     public LogSession() {
         this.configuration = null;
         this.larvaBehaviorParameters = null;
         this.larvaStimulusRules = null;
+        this.parameterSnapshot = new ArrayList<ParameterSnapshot>();
         this.larvaFrameData = new ArrayList<LarvaFrameData>();
+        this.compactFrameData = new ArrayList<CompactFrameData>();
         this.ledStimulus = new ArrayList<LEDStimulus>();
         this.ruleData = new ArrayList<RuleData>();
+        this.parameterUpdate = new ArrayList<ParameterUpdate>();
     }
 
+    /**
+     * @return the configuration in effect when the session was opened
+     *         (see {@link #getParameterUpdateList} for later updates).
+     */
     public Configuration getConfiguration() {
         return configuration;
     }
 
+    /**
+     * @return the behavior parameters in effect when the session was opened
+     *         (see {@link #getParameterUpdateList} for later updates).
+     */
     public LarvaBehaviorParameters getLarvaBehaviorParameters() {
         return larvaBehaviorParameters;
     }
 
+    /**
+     * @return the stimulus rules in effect when the session was opened
+     *         (see {@link #getParameterUpdateList} for later updates).
+     */
     public LarvaStimulusRules getLarvaStimulusRules() {
         return larvaStimulusRules;
     }
 
+    /**
+     * @return the parameters in effect after each update made while the
+     *         session was running (in capture time order).
+     *         The list is populated when parameter snapshots are resolved.
+     */
+    public List<ParameterUpdate> getParameterUpdateList() {
+        return parameterUpdate;
+    }
+
+    /**
+     * @return references to parameter collections saved
+     *         outside of the log file.
+     */
+    public List<ParameterSnapshot> getParameterSnapshotList() {
+        return parameterSnapshot;
+    }
+
     public List<LarvaFrameData> getFrameDataList() {
         return larvaFrameData;
     }
@@ -94,4 +140,220 @@ public class LogSession {
     public List<RuleData> getRuleDataList() {
         return ruleData;
     }
+
+    /**
+     * Appends the data from a later segment of the same session log
+     * to this session.
+     *
+     * @param  segment  session data from a later log segment.
+     */
+    void append(LogSession segment) {
+        if (configuration == null) {
+            configuration = segment.configuration;
+        }
+        if (larvaBehaviorParameters == null) {
+            larvaBehaviorParameters = segment.larvaBehaviorParameters;
+        }
+        if (larvaStimulusRules == null) {
+            larvaStimulusRules = segment.larvaStimulusRules;
+        }
+        parameterSnapshot.addAll(segment.parameterSnapshot);
+        larvaFrameData.addAll(segment.larvaFrameData);
+        compactFrameData.addAll(segment.compactFrameData);
+        ledStimulus.addAll(segment.ledStimulus);
+        ruleData.addAll(segment.ruleData);
+    }
+
+    /**
+     * Removes all frames (and rule data) captured outside of the
+     * specified time range.
+     *
+     * @param  startTime  start of the time range (inclusive).
+     * @param  stopTime   end of the time range (inclusive).
+     */
+    void retainFrames(long startTime,
+                      long stopTime) {
+        final List<LarvaFrameData> retainedFrames =
+                new ArrayList<LarvaFrameData>(larvaFrameData.size());
+        long time;
+        for (LarvaFrameData frameData : larvaFrameData) {
+            time = frameData.getTime();
+            if ((time >= startTime) && (time <= stopTime)) {
+                retainedFrames.add(frameData);
+            }
+        }
+        larvaFrameData = retainedFrames;
+
+        final List<RuleData> retainedRuleData = new ArrayList<RuleData>(ruleData.size());
+        for (RuleData data : ruleData) {
+            time = data.getCaptureTime();
+            if ((time >= startTime) && (time <= stopTime)) {
+                retainedRuleData.add(data);
+            }
+        }
+        ruleData = retainedRuleData;
+    }
+
+    /**
+     * @return true if the session contains compact frames that have
+     *         not been expanded.
+     */
+    boolean hasCompactFrames() {
+        return compactFrameData.size() > 0;
+    }
+
+    /**
+     * Replaces all compact frames with full frames whose derived data
+     * is recalculated (in capture time order) from the frame history
+     * using the behavior parameters that were in effect when each frame
+     * was captured.  Each expanded frame inherits the stimulus list of
+     * the frame that preceded it.  Parameter snapshots must be resolved
+     * before calling this method.
+     */
+    void expandCompactFrames() {
+
+        LarvaBehaviorParameters parameters =
+                ParameterUpdate.getDerivationParameters(larvaBehaviorParameters,
+                                                        larvaStimulusRules);
+        int updateIndex = 0;
+        long time;
+
+        final List<LarvaFrameData> frames =
+                new ArrayList<LarvaFrameData>(larvaFrameData.size() +
+                                              compactFrameData.size());
+        final LinkedList<LarvaFrameData> frameHistory = new LinkedList<LarvaFrameData>();
+        int compactIndex = 0;
+        for (LarvaFrameData frameData : larvaFrameData) {
+            while ((compactIndex < compactFrameData.size()) &&
+                   (compactFrameData.get(compactIndex).getTime() < frameData.getTime())) {
+                time = compactFrameData.get(compactIndex).getTime();
+                for (; (updateIndex < parameterUpdate.size()) &&
+                       (parameterUpdate.get(updateIndex).getLastFrameTime() < time);
+                       updateIndex++) {
+                    parameters = parameterUpdate.get(updateIndex).getDerivationParameters();
+                }
+                addExpandedFrame(compactFrameData.get(compactIndex), parameters, frameHistory, frames);
+                compactIndex++;
+            }
+            // frames for other tracks in multi-larva sessions are always
+            // logged in full and are not part of the default track history
+            if (frameData.getTrackId() == null) {
+                frameHistory.addFirst(frameData);
+            }
+            frames.add(frameData);
+        }
+        for (; compactIndex < compactFrameData.size(); compactIndex++) {
+            time = compactFrameData.get(compactIndex).getTime();
+            for (; (updateIndex < parameterUpdate.size()) &&
+                   (parameterUpdate.get(updateIndex).getLastFrameTime() < time);
+                   updateIndex++) {
+                parameters = parameterUpdate.get(updateIndex).getDerivationParameters();
+            }
+            addExpandedFrame(compactFrameData.get(compactIndex), parameters, frameHistory, frames);
+        }
+
+        larvaFrameData = frames;
+        compactFrameData = new ArrayList<CompactFrameData>();
+    }
+
+    /**
+     * Loads each referenced parameter collection from the specified store
+     * and assigns it to this session as if it had been logged inline.
+     * Snapshots logged for parameter updates (those with a last frame
+     * time) are collected into the session's parameter update list
+     * instead.  Parameters contained inline within a snapshot are
+     * unmarshalled directly.
+     * Snapshots that cannot be loaded (e.g. because the snapshot file
+     * was not copied along with the log) are skipped with a warning
+     * and keep null parameters so that the rest of the log is still
+     * readable.
+     *
+     * @param  store         store containing the referenced collections.
+     * @param  unmarshaller  unmarshaller that knows the parameter classes.
+     */
+    void resolveParameterSnapshots(ParameterSnapshotStore store,
+                                   Unmarshaller unmarshaller) {
+
+        parameterUpdate = new ArrayList<ParameterUpdate>();
+        ParameterUpdate update = null;
+        Object parameters;
+        for (ParameterSnapshot snapshot : parameterSnapshot) {
+            try {
+                if (snapshot.getInlineParameters() == null) {
+                    parameters = store.load(snapshot.getHash(), unmarshaller);
+                } else {
+                    parameters = unmarshaller.unmarshal(snapshot.getInlineParameters());
+                }
+            } catch (JAXBException e) {
+                LOG.warn("resolveParameterSnapshots: skipping unreadable snapshot " +
+                         snapshot.getHash(), e);
+                continue;
+            }
+            if (snapshot.getLastFrameTime() != null) {
+                update = getUpdate(update, snapshot.getLastFrameTime());
+            }
+            if (parameters instanceof Configuration) {
+                if (update == null) {
+                    configuration = (Configuration) parameters;
+                } else {
+                    update.setConfiguration((Configuration) parameters);
+                }
+            } else if (parameters instanceof LarvaBehaviorParameters) {
+                if (update == null) {
+                    larvaBehaviorParameters = (LarvaBehaviorParameters) parameters;
+                } else {
+                    update.setLarvaBehaviorParameters((LarvaBehaviorParameters) parameters);
+                }
+            } else if (parameters instanceof LarvaStimulusRules) {
+                if (update == null) {
+                    larvaStimulusRules = (LarvaStimulusRules) parameters;
+                } else {
+                    update.setLarvaStimulusRules((LarvaStimulusRules) parameters);
+                }
+            } else {
+                LOG.warn("resolveParameterSnapshots: skipping snapshot " + snapshot.getHash() +
+                         " with unsupported type " + parameters.getClass().getName());
+                continue;
+            }
+            snapshot.setParameters(parameters);
+        }
+    }
+
+    /**
+     * @return the update for the specified last frame time, creating it
+     *         (from the most recently effective parameters) if necessary.
+     */
+    private ParameterUpdate getUpdate(ParameterUpdate currentUpdate,
+                                      long lastFrameTime) {
+        ParameterUpdate update = currentUpdate;
+        if (update == null) {
+            update = new ParameterUpdate(lastFrameTime,
+                                         configuration,
+                                         larvaBehaviorParameters,
+                                         larvaStimulusRules);
+            parameterUpdate.add(update);
+        } else if (update.getLastFrameTime() != lastFrameTime) {
+            update = new ParameterUpdate(lastFrameTime,
+                                         update.getConfiguration(),
+                                         update.getLarvaBehaviorParameters(),
+                                         update.getLarvaStimulusRules());
+            parameterUpdate.add(update);
+        }
+        return update;
+    }
+
+    private void addExpandedFrame(CompactFrameData compactFrame,
+                                  LarvaBehaviorParameters parameters,
+                                  LinkedList<LarvaFrameData> frameHistory,
+                                  List<LarvaFrameData> frames) {
+        final LarvaFrameData frameData = new LarvaFrameData(compactFrame.getSkeleton());
+        frameData.calculateDerivedData(frameHistory, parameters);
+        if (frameHistory.size() > 0) {
+            frameData.setStimulusList(frameHistory.getFirst().getStimulusList());
+        }
+        frameHistory.addFirst(frameData);
+        frames.add(frameData);
+    }
+
+    private static final Logger LOG = Logger.getLogger(LogSession.class);
 }
@@ -7,23 +7,38 @@
 
 package org.janelia.it.venkman.log;
 
+import org.janelia.it.venkman.data.LarvaFrameData;
 import org.janelia.it.venkman.jaxb.MarshallerCache;
+import org.janelia.it.venkman.rules.RuleData;
+
+import org.xml.sax.SAXException;
 
 import javax.xml.bind.JAXBException;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.zip.Deflater;
 
 /**
  * This thread handles the writing of log objects to a log file without
  * blocking other more important tracker processing threads.
  * The thread's {@link #interrupt} method should be called
  *
+ * Logs are written in segments (see {@link LogSegmentIndex}) that are
+ * rolled and synced to disk as specified by a {@link LogSegmentPolicy}.
+ * Each write of buffered entries is a checkpoint that is recorded in the
+ * segment index so that logs can be read after a crash.
+ *
  * @author Eric Trautman
  */
 public class LogThread extends Thread {
@@ -61,9 +76,60 @@ public class LogThread extends Thread {
     /** The log file output stream. */
     private OutputStream out;
 
+    /** The unbuffered stream for the current segment (used to sync to disk). */
+    private FileOutputStream segmentOut;
+
+    /** Number of bytes written to the current segment (including any previous content). */
+    private long segmentLength;
+
+    /** The segment index output stream. */
+    private FileOutputStream indexOut;
+
+    /** Controls when segments are rolled and data is synced to disk. */
+    private LogSegmentPolicy segmentPolicy;
+
+    /** The number of the current segment. */
+    private int segment;
+
+    /** The time the current segment was started. */
+    private long segmentStartTime;
+
+    /** Segment offset of the first entry written since the last checkpoint. */
+    private long blockStart;
+
+    /** Number of frames written since the last checkpoint. */
+    private int blockFrameCount;
+
+    /** Indicates whether any capture times were recorded since the last checkpoint. */
+    private boolean hasBlockTimes;
+
+    /** Earliest capture time of frames and rule data written since the last checkpoint. */
+    private long blockFirstFrameTime;
+
+    /** Latest capture time of frames and rule data written since the last checkpoint. */
+    private long blockLastFrameTime;
+
+    /**
+     * Indicates whether parameters or parameter updates
+     * were written since the last checkpoint.
+     */
+    private boolean blockHasSessionData;
+
+    /** Buffer for the current block of a compressed segment. */
+    private ByteArrayOutputStream blockOut;
+
+    /** Compresses blocks for compressed segments. */
+    private Deflater deflater;
+
     /** Cache of JAXB marshaller instances. */
     private MarshallerCache marshallerCache;
 
+    /** Writer for high volume entries that bypasses JAXB. */
+    private LogEntryXmlWriter entryWriter;
+
+    /** Store for parameter collections referenced by the log file. */
+    private ParameterSnapshotStore snapshotStore;
+
     /**
      * Constructs a logger with the specified parameters.
      *
@@ -83,6 +149,36 @@ public class LogThread extends Thread {
                      int millisecondsBetweenWriteAttempts,
                      File logDirectoryPath,
                      String sessionId) {
+        this(numberOfItemsToBufferBeforeWrite,
+             millisecondsBetweenWriteAttempts,
+             logDirectoryPath,
+             sessionId,
+             LogSegmentPolicy.getDefault());
+    }
+
+    /**
+     * Constructs a logger with the specified parameters.
+     *
+     * @param  numberOfItemsToBufferBeforeWrite  number of log objects to
+     *                                           buffer before attempting
+     *                                           a write.
+     *
+     * @param  millisecondsBetweenWriteAttempts  number of milliseconds that
+     *                                           the write thread should wait
+     *                                           between each write attempt.
+     *
+     * @param  logDirectoryPath  path of log file parent directory.
+     *
+     * @param  sessionId         id of session being logged.
+     *
+     * @param  segmentPolicy     controls when segments are rolled and
+     *                           data is synced to disk.
+     */
+    public LogThread(int numberOfItemsToBufferBeforeWrite,
+                     int millisecondsBetweenWriteAttempts,
+                     File logDirectoryPath,
+                     String sessionId,
+                     LogSegmentPolicy segmentPolicy) {
         this.numberOfItemsToBufferBeforeWrite =
                 numberOfItemsToBufferBeforeWrite;
         this.millisecondsBetweenWriteAttempts =
@@ -99,6 +195,10 @@ public class LogThread extends Thread {
         this.queue = new ConcurrentLinkedQueue<Object>();
         this.bufferedLogObjects = new ArrayList<Object>();
         this.marshallerCache = new MarshallerCache();
+        this.entryWriter = new LogEntryXmlWriter();
+        this.snapshotStore = ParameterSnapshotStore.forLogDirectory(logDirectoryPath);
+        this.segmentPolicy = segmentPolicy;
+        this.segment = 0;
     }
 
     public String getLogFilePathAndName() {
@@ -124,7 +224,9 @@ public class LogThread extends Thread {
             // poll for log items as they get added to the queue by clients
             int numberOfItems;
             Object logObject;
-            while (! isInterrupted()) {
+            // check the current thread instead of this thread in case
+            // this loop is being run by another (e.g. virtual) thread
+            while (! Thread.currentThread().isInterrupted()) {
 
                 // limit number of items processed in each loop
                 // (call to size() is slow because of traversal but that's ok)
@@ -179,14 +281,196 @@ public class LogThread extends Thread {
      *   if any errors occur while writing to the log file.
      */
     private void open() throws IOException {
-        out = new BufferedOutputStream(
-                new FileOutputStream(logFilePathAndName, true));
+        final File logFile = new File(logFilePathAndName);
+        indexOut = new FileOutputStream(LogSegmentIndex.getIndexFile(logFile), true);
+        openSegment();
+    }
+
+    /**
+     * Open the output stream for the current segment and
+     * write the segment header.
+     *
+     * @throws IOException
+     *   if any errors occur while writing to the segment file.
+     */
+    private void openSegment() throws IOException {
+        final boolean isCompressed = segmentPolicy.isCompressed();
+        final File segmentFile =
+                LogSegmentIndex.getSegmentFile(new File(logFilePathAndName),
+                                               segment,
+                                               isCompressed);
+        segmentLength = segmentFile.length();
+        segmentOut = new FileOutputStream(segmentFile, true);
+        segmentStartTime = System.currentTimeMillis();
+
+        if (isCompressed) {
+            // compressed segments only contain blocks of entries
+            // (readers supply the session header and footer)
+            if (blockOut == null) {
+                blockOut = new ByteArrayOutputStream(256 * 1024);
+                deflater = new Deflater(Deflater.BEST_SPEED);
+            }
+            out = blockOut;
+            writeIndexEntry(LogSegmentIndex.COMPRESSED, 0);
+        } else {
+            openPlainSegment();
+        }
+
+        blockStart = segmentLength;
+        checkpoint();
+    }
+
+    private void openPlainSegment() throws IOException {
+        // track offsets with a counter instead of the file channel
+        // because channel operations fail when this thread is interrupted
+        out = new BufferedOutputStream(new FilterOutputStream(segmentOut) {
+            @Override
+            public void write(int b) throws IOException {
+                super.out.write(b);
+                segmentLength++;
+            }
+
+            @Override
+            public void write(byte[] b,
+                              int off,
+                              int len) throws IOException {
+                super.out.write(b, off, len);
+                segmentLength += len;
+            }
+        });
 
         StringBuilder sb = new StringBuilder();
         sb.append("<logSession startTime='");
         sb.append(LogDateFormats.DEFAULT.format(sessionStartTime));
+        sb.append("' segment='");
+        sb.append(segment);
         sb.append("'>\n");
         out.write(sb.toString().getBytes());
+        out.flush();
+    }
+
+    /**
+     * Writes the segment footer, closes the current segment,
+     * and records the segment's final length in the index.
+     *
+     * @throws IOException
+     *   if any errors occur while writing to the segment file.
+     */
+    private void closeSegment() throws IOException {
+        if (segmentPolicy.isCompressed()) {
+            writeCompressedBlock();
+        } else {
+            out.write("\n</logSession>\n".getBytes());
+            out.flush();
+        }
+        if (segmentPolicy.getSyncMode() != LogSegmentPolicy.SyncMode.NONE) {
+            segmentOut.getFD().sync();
+        }
+        out.close();
+        segmentOut.close();
+        out = null;
+        writeIndexEntry(LogSegmentIndex.CLOSED, segmentLength);
+    }
+
+    /**
+     * Flushes all written entries and records the current segment
+     * length (the end of the last complete entry) in the index.
+     *
+     * @throws IOException
+     *   if any errors occur while writing to the segment file.
+     */
+    private void checkpoint() throws IOException {
+
+        final boolean isCompressed = segmentPolicy.isCompressed();
+        final int uncompressedLength;
+        if (isCompressed) {
+            uncompressedLength = writeCompressedBlock();
+        } else {
+            out.flush();
+            uncompressedLength = (int) (segmentLength - blockStart);
+        }
+
+        if (segmentPolicy.getSyncMode() == LogSegmentPolicy.SyncMode.CHECKPOINT) {
+            segmentOut.getFD().sync();
+        }
+
+        if (segmentLength > blockStart) {
+            final LogSegmentIndex.Block block =
+                    new LogSegmentIndex.Block(blockStart,
+                                              (int) (segmentLength - blockStart),
+                                              uncompressedLength,
+                                              blockFrameCount,
+                                              blockFirstFrameTime,
+                                              blockLastFrameTime,
+                                              blockHasSessionData);
+            writeIndexLine(LogSegmentIndex.getBlockEntry(segment, isCompressed, block));
+        }
+        writeIndexLine(LogSegmentIndex.getEntry(segment, LogSegmentIndex.CHECKPOINT, segmentLength));
+
+        blockStart = segmentLength;
+        blockFrameCount = 0;
+        hasBlockTimes = false;
+        blockHasSessionData = false;
+    }
+
+    /**
+     * Compresses the current block (if it contains any entries)
+     * and writes it to the segment file.
+     *
+     * @return number of uncompressed bytes in the block.
+     *
+     * @throws IOException
+     *   if any errors occur while writing to the segment file.
+     */
+    private int writeCompressedBlock() throws IOException {
+        final int uncompressedLength = blockOut.size();
+        if (uncompressedLength > 0) {
+            final byte[] buffer = new byte[64 * 1024];
+            deflater.reset();
+            deflater.setInput(blockOut.toByteArray());
+            deflater.finish();
+            int count;
+            while (! deflater.finished()) {
+                count = deflater.deflate(buffer);
+                segmentOut.write(buffer, 0, count);
+                segmentLength += count;
+            }
+            blockOut.reset();
+        }
+        return uncompressedLength;
+    }
+
+    private void recordFrame(long time) {
+        recordTime(time);
+        blockFrameCount++;
+    }
+
+    /**
+     * Widens the current block's time range to include the specified
+     * capture time.  Rule data may be logged after later frames
+     * (e.g. by shadow rules), so times are not assumed to be ordered.
+     */
+    private void recordTime(long time) {
+        if (hasBlockTimes) {
+            blockFirstFrameTime = Math.min(blockFirstFrameTime, time);
+            blockLastFrameTime = Math.max(blockLastFrameTime, time);
+        } else {
+            blockFirstFrameTime = time;
+            blockLastFrameTime = time;
+            hasBlockTimes = true;
+        }
+    }
+
+    private void writeIndexEntry(String type,
+                                 long length) throws IOException {
+        writeIndexLine(LogSegmentIndex.getEntry(segment, type, length));
+    }
+
+    private void writeIndexLine(String line) throws IOException {
+        indexOut.write(line.getBytes());
+        if (segmentPolicy.getSyncMode() == LogSegmentPolicy.SyncMode.CHECKPOINT) {
+            indexOut.getFD().sync();
+        }
     }
 
     /**
@@ -202,12 +486,90 @@ public class LogThread extends Thread {
             throws JAXBException, IOException {
 
         for (Object logObject : bufferedLogObjects) {
-            marshallerCache.marshal(logObject, out);
+            if (logObject instanceof LarvaFrameData) {
+                recordFrame(((LarvaFrameData) logObject).getTime());
+            } else if (logObject instanceof CompactFrameData) {
+                recordFrame(((CompactFrameData) logObject).getTime());
+            } else if (logObject instanceof RuleData) {
+                final RuleData ruleData = (RuleData) logObject;
+                if (RuleData.PARAMETERS_UPDATE_NAME.equals(ruleData.getName())) {
+                    blockHasSessionData = true;
+                } else {
+                    recordTime(ruleData.getCaptureTime());
+                }
+            } else if (logObject instanceof ParameterSnapshot) {
+                blockHasSessionData = true;
+            }
+            if (logObject instanceof ParameterSnapshot) {
+                writeSnapshot((ParameterSnapshot) logObject);
+            } else if (entryWriter.isSupported(logObject)) {
+                entryWriter.write(logObject, out);
+            } else {
+                marshallerCache.marshal(logObject, out);
+            }
         }
 
         if (bufferedLogObjects.size() > 0) {
-            out.flush();
+            checkpoint();
             bufferedLogObjects.clear();
+
+            if (segmentPolicy.isRollRequired(
+                    segmentLength,
+                    System.currentTimeMillis() - segmentStartTime)) {
+                closeSegment();
+                segment++;
+                openSegment();
+            }
+        }
+    }
+
+    /**
+     * Saves the snapshot's parameters in the snapshot store and writes
+     * a reference to them in the log file.  If the parameters cannot be
+     * saved, they are written inline (in the log file) instead.
+     * Inline parameters for updates are written within the snapshot
+     * so that readers still know which frames they apply to.
+     *
+     * @param  snapshot  snapshot to write.
+     *
+     * @throws JAXBException
+     *   if JAXB cannot marshall the parameters.
+     *
+     * @throws IOException
+     *   if data cannot be written to the log file.
+     */
+    private void writeSnapshot(ParameterSnapshot snapshot)
+            throws JAXBException, IOException {
+
+        final ByteArrayOutputStream parametersOut = new ByteArrayOutputStream(64 * 1024);
+        marshallerCache.marshal(snapshot.getParameters(), parametersOut);
+        final byte[] xml = parametersOut.toByteArray();
+
+        try {
+            snapshot.setHash(snapshotStore.save(xml));
+            marshallerCache.marshal(snapshot, out);
+        } catch (IOException e) {
+            System.err.println("Rules Plugin Log Thread: failed to save " +
+                               "parameter snapshot in " +
+                               snapshotStore.getDirectory().getAbsolutePath() +
+                               ", logging parameters inline");
+            e.printStackTrace(System.err);
+            if (snapshot.getLastFrameTime() == null) {
+                out.write(xml);
+            } else {
+                final DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+                factory.setNamespaceAware(true);
+                try {
+                    snapshot.setInlineParameters(
+                            factory.newDocumentBuilder().parse(
+                                    new ByteArrayInputStream(xml)).getDocumentElement());
+                } catch (ParserConfigurationException pce) {
+                    throw new JAXBException("failed to parse parameters for inline update", pce);
+                } catch (SAXException se) {
+                    throw new JAXBException("failed to parse parameters for inline update", se);
+                }
+                marshallerCache.marshal(snapshot, out);
+            }
         }
     }
 
@@ -254,14 +616,27 @@ public class LogThread extends Thread {
 
         if (out != null) {
             try {
-                out.write("\n</logSession>\n".getBytes());
-                out.close();
+                closeSegment();
             } catch (Throwable t) {
                 System.err.println("Rules Plugin Log Thread: could not close " +
                                    logFilePathAndName);
                 t.printStackTrace(System.err);
             }
         }
+
+        if (deflater != null) {
+            deflater.end();
+        }
+
+        if (indexOut != null) {
+            try {
+                indexOut.close();
+            } catch (Throwable t) {
+                System.err.println("Rules Plugin Log Thread: could not close index for " +
+                                   logFilePathAndName);
+                t.printStackTrace(System.err);
+            }
+        }
     }
 
 }
\ No newline at end of file
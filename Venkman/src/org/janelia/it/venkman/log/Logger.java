@@ -8,6 +8,8 @@
 package org.janelia.it.venkman.log;
 
 import java.io.File;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * <p>
@@ -37,9 +39,25 @@ public class Logger {
     /** The thread for writing to the log file. */
     private LogThread logThread;
 
+    /**
+     * Factory for the thread that runs the log thread's loop
+     * (or null to start the log thread itself).
+     */
+    private ThreadFactory threadFactory;
+
+    /** The thread running the log thread's loop once logging is started. */
+    private Thread runningThread;
+
     /** Indicates whether the logging has been stopped. */
     private Boolean loggingEnabled;
 
+    /**
+     * Guards logging state changes.  A lock is used instead of
+     * synchronized methods so that loggers used by virtual threads
+     * do not pin their carrier threads.
+     */
+    private final ReentrantLock lock;
+
     /**
      * The default number of log objects to buffer
      * before attempting a write.
@@ -95,11 +113,45 @@ public class Logger {
                   int millisecondsBetweenWriteAttempts,
                   File logDirectoryPath,
                   String sessionId) {
+        this(numberOfItemsToBufferBeforeWrite,
+             millisecondsBetweenWriteAttempts,
+             logDirectoryPath,
+             sessionId,
+             null);
+    }
+
+    /**
+     * Constructs a logger with the specified parameters.
+     *
+     * @param  numberOfItemsToBufferBeforeWrite  number of log objects to
+     *                                           buffer before attempting
+     *                                           a write.
+     *
+     * @param  millisecondsBetweenWriteAttempts  number of milliseconds that
+     *                                           the write thread should wait
+     *                                           between each write attempt.
+     *
+     * @param  logDirectoryPath  path of log file parent directory.
+     *
+     * @param  sessionId         id of session being logged.
+     *
+     * @param  threadFactory     factory for the thread that writes the
+     *                           log (e.g. a virtual thread factory) or
+     *                           null to use a dedicated platform thread.
+     */
+    public Logger(int numberOfItemsToBufferBeforeWrite,
+                  int millisecondsBetweenWriteAttempts,
+                  File logDirectoryPath,
+                  String sessionId,
+                  ThreadFactory threadFactory) {
         this.logThread = new LogThread(numberOfItemsToBufferBeforeWrite,
                                        millisecondsBetweenWriteAttempts,
                                        logDirectoryPath,
                                        sessionId);
+        this.threadFactory = threadFactory;
+        this.runningThread = null;
         this.loggingEnabled = null;
+        this.lock = new ReentrantLock();
     }
 
     /**
@@ -118,23 +170,71 @@ public class Logger {
      * @throws IllegalStateException
      *   if this logger has not been started or has already been stopped.
      */
-    public synchronized void log(Object logObject)
+    public void log(Object logObject)
             throws IllegalStateException {
 
-        // start up log thread if this is the first log request
-        if (loggingEnabled == null) {
-            logThread.start();
-            loggingEnabled = true;
-        }
+        lock.lock();
+        try {
+            // start up log thread if this is the first log request
+            if (loggingEnabled == null) {
+                if (threadFactory == null) {
+                    runningThread = logThread;
+                } else {
+                    runningThread = threadFactory.newThread(logThread);
+                }
+                runningThread.start();
+                loggingEnabled = true;
+            }
 
-        if (loggingEnabled) {
-            logThread.offer(logObject);
-        } else {
-            throw new IllegalStateException("logging disabled, cannot log " +
-                                            logObject);
+            if (loggingEnabled) {
+                logThread.offer(logObject);
+            } else {
+                throw new IllegalStateException("logging disabled, cannot log " +
+                                                logObject);
+            }
+        } finally {
+            lock.unlock();
         }
     }
 
+    /**
+     * Logs a reference to the specified parameter collection.
+     * The collection itself is saved (once) in the
+     * {@link ParameterSnapshotStore} for the log directory so that
+     * logs for sessions with the same parameters share a single copy.
+     *
+     * @param  parameters  JAXB annotated parameter collection to log.
+     *
+     * @throws IllegalStateException
+     *   if this logger has already been stopped.
+     */
+    public void logParameters(Object parameters)
+            throws IllegalStateException {
+        log(new ParameterSnapshot(parameters));
+    }
+
+    /**
+     * Logs a reference to a parameter collection that replaces
+     * previously logged parameters while the session is running
+     * (see {@link #logParameters}).  The capture time of the last frame
+     * processed with the replaced parameters is logged with the
+     * reference so that readers know which frames each collection
+     * applies to.
+     *
+     * @param  parameters     JAXB annotated parameter collection to log.
+     * @param  lastFrameTime  capture time of the last frame processed
+     *                        with the replaced parameters
+     *                        (or null if no frames have been processed).
+     *
+     * @throws IllegalStateException
+     *   if this logger has already been stopped.
+     */
+    public void logParameterUpdate(Object parameters,
+                                   Long lastFrameTime)
+            throws IllegalStateException {
+        log(new ParameterSnapshot(parameters, lastFrameTime));
+    }
+
     /**
      * Logs the specified message to the log file (with a timestamp).
      *
@@ -148,12 +248,48 @@ public class Logger {
      * Stops logging by flushing/writing any remaining logged data and
      * closing the log file.
      */
-    public synchronized void stopLogging() {
+    public void stopLogging() {
+
+        lock.lock();
+        try {
+            loggingEnabled = false;
+            if ((runningThread != null) && runningThread.isAlive()) {
+                runningThread.interrupt();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits for the log writer thread to finish writing all remaining
+     * logged data (and parameter snapshots) after logging has been stopped.
+     *
+     * @param  maxWaitMilliseconds  maximum number of milliseconds to wait.
+     *
+     * @return true if the writer thread has finished (or was never started);
+     *         otherwise false.
+     *
+     * @throws InterruptedException
+     *   if the calling thread is interrupted while waiting.
+     */
+    public boolean awaitTermination(long maxWaitMilliseconds)
+            throws InterruptedException {
+
+        final Thread thread;
+        lock.lock();
+        try {
+            thread = runningThread;
+        } finally {
+            lock.unlock();
+        }
 
-        loggingEnabled = false;
-        if (logThread.isAlive()) {
-            logThread.interrupt();
+        boolean isTerminated = true;
+        if (thread != null) {
+            thread.join(maxWaitMilliseconds);
+            isTerminated = ! thread.isAlive();
         }
+        return isTerminated;
     }
 
 }
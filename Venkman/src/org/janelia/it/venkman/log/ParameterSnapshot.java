@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2014 Howard Hughes Medical Institute.
+ * All rights reserved.
+ * Use is subject to Janelia Farm Research Campus Software Copyright 1.1
+ * license terms (http://license.janelia.org/license/jfrc_copyright_1_1.html).
+ */
+
+package org.janelia.it.venkman.log;
+
+import org.w3c.dom.Element;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlAnyElement;
+import javax.xml.bind.annotation.XmlAttribute;
+import javax.xml.bind.annotation.XmlRootElement;
+import javax.xml.bind.annotation.XmlTransient;
+
+/**
+ * Log entry that references a parameter collection saved in a
+ * {@link ParameterSnapshotStore} instead of containing the
+ * full (inline) collection.  Parameter updates that cannot be saved
+ * in the store contain the full collection so that their last frame
+ * time is not lost.
+ *
+ * @author Eric Trautman
+ */
+@XmlRootElement
+@XmlAccessorType(XmlAccessType.FIELD)
+public class ParameterSnapshot {
+
+    @XmlAttribute
+    private String hash;
+
+    @XmlAttribute
+    private Long lastFrameTime;
+
+    @XmlAnyElement
+    private Element inlineParameters;
+
+    @XmlTransient
+    private Object parameters;
+
+    /**
+     * No-arg constructor needed for JAXB.
+     */
+    @SuppressWarnings({"UnusedDeclaration"})
+    private ParameterSnapshot() {
+    }
+
+    /**
+     * @param  parameters  JAXB annotated parameter collection
+     *                     to be saved in the snapshot store.
+     */
+    public ParameterSnapshot(Object parameters) {
+        this(parameters, null);
+    }
+
+    /**
+     * @param  parameters     JAXB annotated parameter collection
+     *                        to be saved in the snapshot store.
+     *
+     * @param  lastFrameTime  capture time of the last frame processed
+     *                        with the parameters these replace
+     *                        (or null if the parameters were in effect
+     *                        when the session was opened).
+     */
+    public ParameterSnapshot(Object parameters,
+                             Long lastFrameTime) {
+        this.hash = null;
+        this.lastFrameTime = lastFrameTime;
+        this.inlineParameters = null;
+        this.parameters = parameters;
+    }
+
+    public String getHash() {
+        return hash;
+    }
+
+    public void setHash(String hash) {
+        this.hash = hash;
+    }
+
+    /**
+     * @return capture time of the last frame processed with the
+     *         parameters these replace (or null if the parameters were
+     *         in effect when the session was opened).
+     */
+    public Long getLastFrameTime() {
+        return lastFrameTime;
+    }
+
+    /**
+     * @return XML for the parameter collection when it is contained
+     *         in this snapshot instead of the snapshot store
+     *         (or null if the collection is in the store).
+     */
+    public Element getInlineParameters() {
+        return inlineParameters;
+    }
+
+    public void setInlineParameters(Element inlineParameters) {
+        this.inlineParameters = inlineParameters;
+    }
+
+    /**
+     * @return the referenced parameter collection
+     *         (or null if it has not been resolved).
+     */
+    public Object getParameters() {
+        return parameters;
+    }
+
+    public void setParameters(Object parameters) {
+        this.parameters = parameters;
+    }
+
+    @Override
+    public String toString() {
+        return "ParameterSnapshot{" +
+               "hash='" + hash + '\'' +
+               ", lastFrameTime=" + lastFrameTime +
+               '}';
+    }
+}
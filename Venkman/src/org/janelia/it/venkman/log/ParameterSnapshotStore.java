@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2014 Howard Hughes Medical Institute.
+ * All rights reserved.
+ * Use is subject to Janelia Farm Research Campus Software Copyright 1.1
+ * license terms (http://license.janelia.org/license/jfrc_copyright_1_1.html).
+ */
+
+package org.janelia.it.venkman.log;
+
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Unmarshaller;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Content addressed store of marshalled parameter collections.
+ *
+ * Each collection is written once to a file named by the SHA-1 hash of
+ * its marshalled XML so that the many session logs that use the same
+ * configuration, behavior parameters, and stimulus rules can reference
+ * a single copy instead of repeating the full collection in every log.
+ *
+ * @author Eric Trautman
+ */
+public class ParameterSnapshotStore {
+
+    /** Name of the store directory within a log directory. */
+    public static final String DIRECTORY_NAME = "parameter-snapshots";
+
+    /** Extension for snapshot files. */
+    public static final String FILE_EXTENSION = ".xml";
+
+    private File directory;
+    private Set<String> savedHashes;
+
+    /**
+     * Constructs a store.
+     *
+     * @param  directory  directory for snapshot files
+     *                    (created when the first snapshot is written).
+     */
+    public ParameterSnapshotStore(File directory) {
+        this.directory = directory;
+        this.savedHashes = Collections.synchronizedSet(new HashSet<String>());
+    }
+
+    /**
+     * @param  logDirectory  directory containing session logs.
+     *
+     * @return the store for logs in the specified directory.
+     */
+    public static ParameterSnapshotStore forLogDirectory(File logDirectory) {
+        return new ParameterSnapshotStore(new File(logDirectory, DIRECTORY_NAME));
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Saves the specified marshalled parameters (if they have not already been saved).
+     *
+     * @param  xml  marshalled parameter collection.
+     *
+     * @return hash of the saved parameters.
+     *
+     * @throws IOException
+     *   if the parameters cannot be saved.
+     */
+    public String save(byte[] xml)
+            throws IOException {
+
+        final String hash = getHash(xml);
+
+        if (! savedHashes.contains(hash)) {
+            final File file = getFile(hash);
+            if (! file.exists()) {
+                if (! directory.exists()) {
+                    // only create the store directory itself, a missing
+                    // log directory should cause the save to fail
+                    //noinspection ResultOfMethodCallIgnored
+                    directory.mkdir();
+                }
+                final File tempFile = File.createTempFile(hash, ".tmp", directory);
+                try {
+                    final FileOutputStream out = new FileOutputStream(tempFile);
+                    try {
+                        out.write(xml);
+                        out.getFD().sync();
+                    } finally {
+                        out.close();
+                    }
+                    if (! tempFile.renameTo(file) && (! file.exists())) {
+                        throw new IOException("failed to rename " + tempFile.getAbsolutePath() +
+                                              " to " + file.getAbsolutePath());
+                    }
+                } finally {
+                    if (tempFile.exists()) {
+                        //noinspection ResultOfMethodCallIgnored
+                        tempFile.delete();
+                    }
+                }
+            }
+            savedHashes.add(hash);
+        }
+
+        return hash;
+    }
+
+    /**
+     * @param  hash          hash of saved parameters.
+     * @param  unmarshaller  unmarshaller that knows the parameter classes.
+     *
+     * @return the parameter collection saved with the specified hash.
+     *
+     * @throws JAXBException
+     *   if the snapshot file is missing or cannot be parsed.
+     */
+    public Object load(String hash,
+                       Unmarshaller unmarshaller)
+            throws JAXBException {
+
+        final File file = getFile(hash);
+        if (! file.exists()) {
+            throw new JAXBException("parameter snapshot " + file.getAbsolutePath() +
+                                    " does not exist");
+        }
+        return unmarshaller.unmarshal(file);
+    }
+
+    @Override
+    public String toString() {
+        return "ParameterSnapshotStore{" +
+               "directory=" + directory.getAbsolutePath() +
+               '}';
+    }
+
+    /**
+     * @param  xml  marshalled parameter collection.
+     *
+     * @return hex encoded SHA-1 hash of the specified bytes.
+     */
+    public static String getHash(byte[] xml) {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 digest is not available", e);
+        }
+
+        final byte[] bytes = digest.digest(xml);
+        final StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(HEX_DIGITS[(b >> 4) & 0xF]);
+            sb.append(HEX_DIGITS[b & 0xF]);
+        }
+        return sb.toString();
+    }
+
+    private File getFile(String hash) {
+        return new File(directory, hash + FILE_EXTENSION);
+    }
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2014 Howard Hughes Medical Institute.
+ * All rights reserved.
+ * Use is subject to Janelia Farm Research Campus Software Copyright 1.1
+ * license terms (http://license.janelia.org/license/jfrc_copyright_1_1.html).
+ */
+
+package org.janelia.it.venkman.log;
+
+import org.janelia.it.venkman.config.Configuration;
+import org.janelia.it.venkman.config.LarvaBehaviorParameters;
+import org.janelia.it.venkman.rules.LarvaStimulusRules;
+
+/**
+ * The complete set of parameters in effect after session parameters
+ * were updated (hot-swapped) while a logged session was running.
+ * Each update applies to all frames captured after its last frame time
+ * (up to the next update).
+ *
+ * @author Eric Trautman
+ */
+public class ParameterUpdate {
+
+    private long lastFrameTime;
+    private Configuration configuration;
+    private LarvaBehaviorParameters larvaBehaviorParameters;
+    private LarvaStimulusRules larvaStimulusRules;
+
+    /**
+     * Constructs an update that initially retains all of the
+     * specified (previously effective) parameters.
+     *
+     * @param  lastFrameTime            capture time of the last frame
+     *                                  processed with the prior parameters.
+     * @param  configuration            prior configuration.
+     * @param  larvaBehaviorParameters  prior behavior parameters.
+     * @param  larvaStimulusRules       prior stimulus rules.
+     */
+    public ParameterUpdate(long lastFrameTime,
+                           Configuration configuration,
+                           LarvaBehaviorParameters larvaBehaviorParameters,
+                           LarvaStimulusRules larvaStimulusRules) {
+        this.lastFrameTime = lastFrameTime;
+        this.configuration = configuration;
+        this.larvaBehaviorParameters = larvaBehaviorParameters;
+        this.larvaStimulusRules = larvaStimulusRules;
+    }
+
+    /**
+     * @return capture time of the last frame processed with the
+     *         prior parameters.
+     */
+    public long getLastFrameTime() {
+        return lastFrameTime;
+    }
+
+    public Configuration getConfiguration() {
+        return configuration;
+    }
+
+    public LarvaBehaviorParameters getLarvaBehaviorParameters() {
+        return larvaBehaviorParameters;
+    }
+
+    public LarvaStimulusRules getLarvaStimulusRules() {
+        return larvaStimulusRules;
+    }
+
+    /**
+     * @return the behavior parameters (with any stimulus rule overrides
+     *         applied) used to derive frame data after this update.
+     */
+    public LarvaBehaviorParameters getDerivationParameters() {
+        return getDerivationParameters(larvaBehaviorParameters, larvaStimulusRules);
+    }
+
+    void setConfiguration(Configuration configuration) {
+        this.configuration = configuration;
+    }
+
+    void setLarvaBehaviorParameters(LarvaBehaviorParameters larvaBehaviorParameters) {
+        this.larvaBehaviorParameters = larvaBehaviorParameters;
+    }
+
+    void setLarvaStimulusRules(LarvaStimulusRules larvaStimulusRules) {
+        this.larvaStimulusRules = larvaStimulusRules;
+    }
+
+    @Override
+    public String toString() {
+        return "ParameterUpdate{" +
+               "lastFrameTime=" + lastFrameTime +
+               ", configuration=" + configuration +
+               '}';
+    }
+
+    /**
+     * @return the specified behavior parameters with any stimulus rule
+     *         overrides applied (or default parameters if none are specified).
+     */
+    static LarvaBehaviorParameters getDerivationParameters(LarvaBehaviorParameters behaviorParameters,
+                                                           LarvaStimulusRules stimulusRules) {
+        LarvaBehaviorParameters parameters = behaviorParameters;
+        if (parameters == null) {
+            parameters = new LarvaBehaviorParameters();
+        } else if (stimulusRules != null) {
+            parameters = stimulusRules.overrideBehaviorParameters(parameters);
+        }
+        return parameters;
+    }
+}
@@ -127,6 +127,10 @@ public class Message {
             case PROCESS_LARVA_SKELETON_REQUEST:
                 minimumNumberOfFields = 13;
                 break;
+            case PROCESS_LARVA_SKELETON_BATCH_REQUEST:
+            case PROCESS_MULTI_LARVA_SKELETON_REQUEST:
+                minimumNumberOfFields = 2;
+                break;
             case ARENA_BACKGROUND_REQUEST:
                 minimumNumberOfFields = 4;
                 break;
@@ -21,10 +21,15 @@ public enum MessageType {
     OPEN_SESSION_RESPONSE("open-session-response"),
     GET_SESSION_PARAMETERS_REQUEST("get-session-parameters-request"),
     GET_SESSION_PARAMETERS_RESPONSE("get-session-parameters-response"),
+    UPDATE_SESSION_PARAMETERS_REQUEST("update-session-parameters-request"),
     CLOSE_SESSION_REQUEST("close-session-request"),
     STATUS_RESPONSE("status-response"),
     PROCESS_LARVA_SKELETON_REQUEST("larva-skeleton-request"),
-    PROCESS_LARVA_SKELETON_RESPONSE("larva-skeleton-response");
+    PROCESS_LARVA_SKELETON_RESPONSE("larva-skeleton-response"),
+    PROCESS_LARVA_SKELETON_BATCH_REQUEST("larva-skeleton-batch-request"),
+    PROCESS_LARVA_SKELETON_BATCH_RESPONSE("larva-skeleton-batch-response"),
+    PROCESS_MULTI_LARVA_SKELETON_REQUEST("multi-larva-skeleton-request"),
+    PROCESS_MULTI_LARVA_SKELETON_RESPONSE("multi-larva-skeleton-response");
 
     private String name;
     private boolean isRequest;
@@ -23,4 +23,18 @@ public class OpenSessionResponse
         addField(sessionId);
     }
 
+    /**
+     * Constructs a response for a session that was warmed up when opened.
+     *
+     * @param  version             message version.
+     * @param  sessionId           identifies the opened session.
+     * @param  warmUpMilliseconds  number of milliseconds spent warming up.
+     */
+    public OpenSessionResponse(String version,
+                               String sessionId,
+                               long warmUpMilliseconds) {
+        this(version, sessionId);
+        addField(String.valueOf(warmUpMilliseconds));
+    }
+
 }
@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2014 Howard Hughes Medical Institute.
+ * All rights reserved.
+ * Use is subject to Janelia Farm Research Campus Software Copyright 1.1
+ * license terms (http://license.janelia.org/license/jfrc_copyright_1_1.html).
+ */
+
+package org.janelia.it.venkman.message;
+
+/**
+ * A response message for a process larva skeleton batch request.
+ *
+ * The response contains the number of frames in the batch followed by
+ * the results for each frame (in request order).  Each frame result
+ * contains the frame time, the motion state, the number of stimulus
+ * fields for the frame, and then the stimulus fields themselves
+ * (formatted exactly as they are in single frame responses).
+ *
+ * @author Eric Trautman
+ */
+public class ProcessLarvaSkeletonBatchResponse
+        extends ResponseMessage {
+
+    public ProcessLarvaSkeletonBatchResponse(String version,
+                                             int numberOfFrames) {
+        this(MessageType.PROCESS_LARVA_SKELETON_BATCH_RESPONSE,
+             version,
+             numberOfFrames);
+    }
+
+    protected ProcessLarvaSkeletonBatchResponse(MessageType type,
+                                                String version,
+                                                int numberOfFrames) {
+        super(type,
+              version,
+              STATUS_OK);
+        addField(String.valueOf(numberOfFrames));
+    }
+
+    /**
+     * Appends the results from a single frame response to this batch.
+     *
+     * @param  frameResponse  response for the next frame in the batch.
+     */
+    public void addFrameResponse(ProcessLarvaSkeletonResponse frameResponse) {
+        // skip the status code field
+        addField(frameResponse.getField(1)); // frame
+        addField(frameResponse.getField(2)); // motion state
+        final int numberOfStimulusFields = frameResponse.size() - 3;
+        addField(String.valueOf(numberOfStimulusFields));
+        for (int i = 3; i < frameResponse.size(); i++) {
+            addField(frameResponse.getField(i));
+        }
+    }
+
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright (c) 2014 Howard Hughes Medical Institute.
+ * All rights reserved.
+ * Use is subject to Janelia Farm Research Campus Software Copyright 1.1
+ * license terms (http://license.janelia.org/license/jfrc_copyright_1_1.html).
+ */
+
+package org.janelia.it.venkman.message;
+
+/**
+ * A response message for a process multi-larva skeleton request.
+ *
+ * The response contains the number of tracks in the frame followed by
+ * the results for each track (in request order).  Each track result
+ * contains the track id followed by the same fields used for each
+ * frame in a {@link ProcessLarvaSkeletonBatchResponse}.
+ *
+ * @author Eric Trautman
+ */
+public class ProcessMultiLarvaSkeletonResponse
+        extends ProcessLarvaSkeletonBatchResponse {
+
+    public ProcessMultiLarvaSkeletonResponse(String version,
+                                             int numberOfTracks) {
+        super(MessageType.PROCESS_MULTI_LARVA_SKELETON_RESPONSE,
+              version,
+              numberOfTracks);
+    }
+
+    /**
+     * Appends the results for the next track in the frame.
+     *
+     * @param  trackId        identifies the track.
+     * @param  trackResponse  response for the track's skeleton.
+     */
+    public void addTrackResponse(String trackId,
+                                 ProcessLarvaSkeletonResponse trackResponse) {
+        addField(trackId);
+        addFrameResponse(trackResponse);
+    }
+
+}
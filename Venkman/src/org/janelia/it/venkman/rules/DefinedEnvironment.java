@@ -9,6 +9,7 @@ package org.janelia.it.venkman.rules;
 
 import org.janelia.it.venkman.config.LarvaBehaviorParameters;
 import org.janelia.it.venkman.config.rules.BehaviorLimitedKinematicVariableFunctionList;
+import org.janelia.it.venkman.config.rules.KinematicVariable;
 import org.janelia.it.venkman.config.rules.LEDFlashPattern;
 import org.janelia.it.venkman.config.rules.LEDStimulus;
 import org.janelia.it.venkman.config.rules.NoiseGenerator;
@@ -27,7 +28,9 @@ import javax.xml.bind.annotation.XmlAccessorType;
 import javax.xml.bind.annotation.XmlElement;
 import javax.xml.bind.annotation.XmlRootElement;
 import javax.xml.bind.annotation.XmlTransient;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * Stimulus rule implementation for:
@@ -67,7 +70,8 @@ import java.util.List;
 @XmlRootElement
 @XmlAccessorType(XmlAccessType.FIELD)
 public class DefinedEnvironment
-        extends LedActivationDurationRule implements TrackerArenaProvider {
+        extends LedActivationDurationRule
+        implements TrackerArenaProvider, DerivedDataDependent, TransientStateCarrier {
 
     protected static final long DEFAULT_ORIENTATION_DERIVATION_DURATION = 15000;
     protected static final double DEFAULT_CENTROID_DISTANCE_FROM_CENTER = 0;
@@ -138,6 +142,10 @@ public class DefinedEnvironment
     @XmlTransient
     private double yOffset;
 
+    /** Reused for each frame's rotated positional variable point. */
+    @XmlTransient
+    private Calculator.MutablePoint rotatedVariablePoint = new Calculator.MutablePoint();
+
     @XmlTransient
     private double transformedX;
 
@@ -246,11 +254,13 @@ public class DefinedEnvironment
                     setTransformationParameters(captureTime, skeleton);
                 }
 
-                final TrackerPoint rotatedVariablePoint =
-                        Calculator.getRotatedPoint(
-                                positionalVariable.getValue(frameData), // originalPoint
-                                rotationAngleInRadians,
-                                rotationCenter);
+                final TrackerPoint originalPoint = positionalVariable.getValue(frameData);
+                Calculator.setRotatedPoint(originalPoint.getX(),
+                                           originalPoint.getY(),
+                                           rotationAngleInRadians,
+                                           rotationCenter.getX(),
+                                           rotationCenter.getY(),
+                                           rotatedVariablePoint);
                 transformedX = rotatedVariablePoint.getX() + xOffset;
                 transformedY = rotatedVariablePoint.getY() + yOffset;
 
@@ -297,6 +307,66 @@ public class DefinedEnvironment
         return intensityFunction.getArena(width, height);
     }
 
+    /**
+     * @return variables read by the configured intensity filters.
+     */
+    @Override
+    public Set<KinematicVariable> getKinematicVariableDependencies() {
+        final Set<KinematicVariable> variables = EnumSet.noneOf(KinematicVariable.class);
+        intensityFilterFunctionList.addVariables(variables);
+        return variables;
+    }
+
+    /**
+     * @return the variable used to index the intensity function.
+     */
+    @Override
+    public Set<PositionalVariable> getPositionalVariableDependencies() {
+        final Set<PositionalVariable> variables = EnumSet.noneOf(PositionalVariable.class);
+        if (intensityFunction.getVariable() != null) {
+            variables.add(intensityFunction.getVariable());
+        }
+        return variables;
+    }
+
+    /**
+     * Keeps the orientation transformation derived by the replaced rules
+     * if it was derived with the same orientation parameters (so that
+     * the virtual environment does not move when other parameters change).
+     * The carried over transformation is logged again so that it can be
+     * restored from the log.
+     *
+     * @param  replacedRules  the (initialized) rules being replaced.
+     *
+     * @return true if the transformation was carried over; otherwise false.
+     */
+    @Override
+    public boolean carryOverTransientState(LarvaStimulusRules replacedRules) {
+        boolean carriedOver = false;
+        if (replacedRules instanceof DefinedEnvironment) {
+            final DefinedEnvironment replaced = (DefinedEnvironment) replacedRules;
+            if (enableOrientationLogic &&
+                replaced.enableOrientationLogic &&
+                (replaced.positionalVariable != null) &&
+                (replaced.positionalVariable == intensityFunction.getVariable()) &&
+                (replaced.centroidDistanceFromArenaCenter == centroidDistanceFromArenaCenter) &&
+                (replaced.centeredOrientationOffsetInDegrees == centeredOrientationOffsetInDegrees) &&
+                replaced.arenaCenter.equals(arenaCenter)) {
+
+                positionalVariable = replaced.positionalVariable;
+                rotateTime = replaced.rotateTime;
+                rotationAngleInRadians = replaced.rotationAngleInRadians;
+                rotationCenter = replaced.rotationCenter;
+                xOffset = replaced.xOffset;
+                yOffset = replaced.yOffset;
+
+                logTransformationParameters(rotateTime);
+                carriedOver = true;
+            }
+        }
+        return carriedOver;
+    }
+
     public PositionalVariable getPositionalVariable() {
         return positionalVariable;
     }
@@ -491,14 +561,17 @@ public class DefinedEnvironment
                 actualCentroid.getX() - actualTail.getX();
         final double transformedTailYOffset =
                 actualCentroid.getY() - actualTail.getY();
-        final TrackerPoint transformedMidpoint =
-                new TrackerPoint(
-                        (actualMidpoint.getX() + transformedTailXOffset),
-                        (actualMidpoint.getY()) + transformedTailYOffset);
-
-        if (Calculator.isCoordinateLeftOfVector(transformedMidpoint,
-                                                actualCentroid,
-                                                arenaCenter)) {
+        final double transformedMidpointX =
+                actualMidpoint.getX() + transformedTailXOffset;
+        final double transformedMidpointY =
+                actualMidpoint.getY() + transformedTailYOffset;
+
+        if (Calculator.isCoordinateLeftOfVector(transformedMidpointX,
+                                                transformedMidpointY,
+                                                actualCentroid.getX(),
+                                                actualCentroid.getY(),
+                                                arenaCenter.getX(),
+                                                arenaCenter.getY())) {
             rotationAngleInRadians = absoluteRotationAngleInRadians;
         } else {
             rotationAngleInRadians = -absoluteRotationAngleInRadians;
@@ -520,6 +593,10 @@ public class DefinedEnvironment
         xOffset = transformedCentroid.getX() - actualCentroid.getX();
         yOffset = transformedCentroid.getY() - actualCentroid.getY();
 
+        logTransformationParameters(captureTime);
+    }
+
+    private void logTransformationParameters(long captureTime) {
         logRuleData(captureTime,
                     ROTATION_CENTER_DATA_NAME,
                     rotationCenter.toString());
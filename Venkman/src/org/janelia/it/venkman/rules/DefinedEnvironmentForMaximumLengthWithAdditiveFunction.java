@@ -10,6 +10,7 @@ package org.janelia.it.venkman.rules;
 import org.janelia.it.venkman.config.LarvaBehaviorParameters;
 import org.janelia.it.venkman.config.rules.BehaviorLimitedKinematicVariableFunctionList;
 import org.janelia.it.venkman.config.rules.IntensityValue;
+import org.janelia.it.venkman.config.rules.KinematicVariable;
 import org.janelia.it.venkman.config.rules.LEDFlashPattern;
 import org.janelia.it.venkman.config.rules.LEDStimulus;
 import org.janelia.it.venkman.config.rules.PositionalVariableFunction;
@@ -22,6 +23,7 @@ import javax.xml.bind.annotation.XmlAccessorType;
 import javax.xml.bind.annotation.XmlElement;
 import javax.xml.bind.annotation.XmlRootElement;
 import java.util.List;
+import java.util.Set;
 
 /**
  * Stimulus rule implementation for:
@@ -186,6 +188,13 @@ public class DefinedEnvironmentForMaximumLengthWithAdditiveFunction
         return list;
     }
 
+    @Override
+    public Set<KinematicVariable> getKinematicVariableDependencies() {
+        final Set<KinematicVariable> variables = super.getKinematicVariableDependencies();
+        variables.add(KinematicVariable.PERCENTAGE_OF_MAX_LENGTH);
+        return variables;
+    }
+
     @Override
     protected List<LEDStimulus> getDefaultStimulus() {
         return getStimulusList(defaultIntensityPercentage.getValue());
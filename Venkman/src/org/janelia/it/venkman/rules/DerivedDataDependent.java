@@ -0,0 +1,38 @@
+/*
+ * Copyright (c) 2014 Howard Hughes Medical Institute.
+ * All rights reserved.
+ * Use is subject to Janelia Farm Research Campus Software Copyright 1.1
+ * license terms (http://license.janelia.org/license/jfrc_copyright_1_1.html).
+ */
+
+package org.janelia.it.venkman.rules;
+
+import org.janelia.it.venkman.config.rules.KinematicVariable;
+import org.janelia.it.venkman.config.rules.PositionalVariable;
+
+import java.util.Set;
+
+/**
+ * Optional interface for stimulus rules that can identify the frame data
+ * they read when determining stimulus.  The frame processing pipeline uses
+ * these dependencies to skip calculations that no rule (or log entry)
+ * needs.  Rules that do not implement this interface are assumed to read
+ * every kinematic variable.  The behavior mode is always derived, so it
+ * does not need to be declared.
+ *
+ * @author Eric Trautman
+ */
+public interface DerivedDataDependent {
+
+    /**
+     * @return the kinematic variables read by this rule's configured
+     *         functions and filters.
+     */
+    public Set<KinematicVariable> getKinematicVariableDependencies();
+
+    /**
+     * @return the positional variables read by this rule.
+     */
+    public Set<PositionalVariable> getPositionalVariableDependencies();
+
+}
@@ -8,7 +8,9 @@
 package org.janelia.it.venkman.rules;
 
 import org.janelia.it.venkman.config.LarvaBehaviorParameters;
+import org.janelia.it.venkman.config.rules.KinematicVariable;
 import org.janelia.it.venkman.config.rules.LEDStimulus;
+import org.janelia.it.venkman.config.rules.PositionalVariable;
 import org.janelia.it.venkman.config.rules.Stimulus;
 import org.janelia.it.venkman.data.LarvaFrameData;
 import org.janelia.it.venkman.log.Logger;
@@ -19,7 +21,9 @@ import javax.xml.bind.annotation.XmlElement;
 import javax.xml.bind.annotation.XmlRootElement;
 import javax.xml.bind.annotation.XmlTransient;
 import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * Simply spits out stimulus imported from another file.
@@ -35,7 +39,7 @@ import java.util.List;
  */
 @XmlRootElement
 @XmlAccessorType(XmlAccessType.FIELD)
-public class ImportedStimulus implements LarvaStimulusRules {
+public class ImportedStimulus implements LarvaStimulusRules, DerivedDataDependent {
 
     @SuppressWarnings({"FieldCanBeLocal", "UnusedDeclaration"})
     @XmlElement
@@ -97,6 +101,19 @@ public class ImportedStimulus implements LarvaStimulusRules {
         return behaviorParameters;
     }
 
+    /**
+     * @return an empty set since imported stimulus is selected by frame index.
+     */
+    @Override
+    public Set<KinematicVariable> getKinematicVariableDependencies() {
+        return EnumSet.noneOf(KinematicVariable.class);
+    }
+
+    @Override
+    public Set<PositionalVariable> getPositionalVariableDependencies() {
+        return EnumSet.noneOf(PositionalVariable.class);
+    }
+
     @Override
     public List<? extends Stimulus> determineStimulus(List<LarvaFrameData> frameHistory,
                                                       LarvaBehaviorParameters behaviorParameters) {
@@ -33,6 +33,9 @@ public class RuleData {
     public static final String PRIMARY_NAME = "primary";
     public static final String ALTERNATE_NAME = "alternate";
 
+    /** Name for data logged when session parameters are updated. */
+    public static final String PARAMETERS_UPDATE_NAME = "parameters update";
+
     @XmlAttribute
     private String value;
 
@@ -10,9 +10,11 @@ package org.janelia.it.venkman.rules;
 import org.janelia.it.venkman.config.LarvaBehaviorParameters;
 import org.janelia.it.venkman.config.rules.BehaviorLimitedKinematicVariableFunctionList;
 import org.janelia.it.venkman.config.rules.IntensityValue;
+import org.janelia.it.venkman.config.rules.KinematicVariable;
 import org.janelia.it.venkman.config.rules.LEDFlashPattern;
 import org.janelia.it.venkman.config.rules.LEDStimulus;
 import org.janelia.it.venkman.config.rules.NoiseGenerator;
+import org.janelia.it.venkman.config.rules.PositionalVariable;
 import org.janelia.it.venkman.config.rules.SingleVariableFunction;
 import org.janelia.it.venkman.data.LarvaFrameData;
 import org.janelia.it.venkman.gui.parameter.annotation.VenkmanParameter;
@@ -23,8 +25,10 @@ import javax.xml.bind.annotation.XmlAccessorType;
 import javax.xml.bind.annotation.XmlElement;
 import javax.xml.bind.annotation.XmlRootElement;
 import javax.xml.bind.annotation.XmlTransient;
+import java.util.EnumSet;
 import java.util.List;
 import java.util.Random;
+import java.util.Set;
 
 /**
  * Stimulus rule implementation for:
@@ -72,7 +76,7 @@ import java.util.Random;
 @XmlRootElement
 @XmlAccessorType(XmlAccessType.FIELD)
 public class ScaledRunIntensity
-        extends LedActivationDurationRule {
+        extends LedActivationDurationRule implements DerivedDataDependent, TransientStateCarrier {
 
     public static IntensityValue DEFAULT_NON_RUN_INTENSITY_VALUE =
             new IntensityValue(0.0);
@@ -238,6 +242,58 @@ public class ScaledRunIntensity
         currentSignalToNoiseRatio = nonRunSignalToNoiseRatio;
     }
 
+    /**
+     * @return variables read by the configured intensity filters
+     *         (run intensity is otherwise based upon behavior mode alone).
+     */
+    @Override
+    public Set<KinematicVariable> getKinematicVariableDependencies() {
+        final Set<KinematicVariable> variables = EnumSet.noneOf(KinematicVariable.class);
+        intensityFilterFunctionList.addVariables(variables);
+        return variables;
+    }
+
+    @Override
+    public Set<PositionalVariable> getPositionalVariableDependencies() {
+        return EnumSet.noneOf(PositionalVariable.class);
+    }
+
+    /**
+     * Continues any run in progress (and the current random function
+     * selection) from replaced rules of the same type so that a
+     * parameter update is not treated as a new run onset.
+     *
+     * @param  replacedRules  the (initialized) rules being replaced.
+     *
+     * @return true if any state was carried over; otherwise false.
+     */
+    @Override
+    public boolean carryOverTransientState(LarvaStimulusRules replacedRules) {
+        boolean carriedOver = false;
+        if ((replacedRules != null) && (replacedRules.getClass() == getClass())) {
+            final ScaledRunIntensity replaced = (ScaledRunIntensity) replacedRules;
+
+            if (isRandomFunctionSelectionActive && replaced.isRandomFunctionSelectionActive) {
+                randomFunctionSelectionTime = replaced.randomFunctionSelectionTime;
+                useAlternateFunction = replaced.useAlternateFunction;
+                carriedOver = (randomFunctionSelectionTime != null);
+            }
+
+            if (replaced.runOnsetTime != null) {
+                runOnsetTime = replaced.runOnsetTime;
+                if (useAlternateFunction) {
+                    currentRunIntensityScalingFunction = alternateRunIntensityScalingFunction;
+                    currentSignalToNoiseRatio = alternateRunSignalToNoiseRatio;
+                } else {
+                    currentRunIntensityScalingFunction = runIntensityScalingFunction;
+                    currentSignalToNoiseRatio = runSignalToNoiseRatio;
+                }
+                carriedOver = true;
+            }
+        }
+        return carriedOver;
+    }
+
     public long getMillisecondsDelay() {
         return millisecondsDelay;
     }
@@ -103,6 +103,21 @@ public class ScaledRunIntensityWithRandomDelay
         return "Elongation of runs/induction of turns through synthesis of positive/negative olfactory experiences with random delay.";
     }
 
+    /**
+     * Also keeps the delay drawn for any run in progress
+     * (limited by this rule's maximum delay).
+     */
+    @Override
+    public boolean carryOverTransientState(LarvaStimulusRules replacedRules) {
+        final boolean carriedOver = super.carryOverTransientState(replacedRules);
+        if (carriedOver) {
+            final long replacedDelay =
+                    ((ScaledRunIntensityWithRandomDelay) replacedRules).getMillisecondsDelay();
+            setMillisecondsDelay((int) Math.min(replacedDelay, maximumMillisecondsDelay));
+        }
+        return carriedOver;
+    }
+
     @Override
     protected void startRun(long time) {
         super.startRun(time);
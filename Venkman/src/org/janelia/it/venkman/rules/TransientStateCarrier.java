@@ -0,0 +1,32 @@
+/*
+ * Copyright (c) 2014 Howard Hughes Medical Institute.
+ * All rights reserved.
+ * Use is subject to Janelia Farm Research Campus Software Copyright 1.1
+ * license terms (http://license.janelia.org/license/jfrc_copyright_1_1.html).
+ */
+
+package org.janelia.it.venkman.rules;
+
+/**
+ * Optional interface for stimulus rules that can continue from the
+ * transient (per-session) state of the rules they replace when session
+ * parameters are updated without reopening the session.  Rules that do
+ * not implement this interface start with fresh transient state.
+ *
+ * @author Eric Trautman
+ */
+public interface TransientStateCarrier {
+
+    /**
+     * Copies any transient state that is compatible with this rule's
+     * parameters from the rules being replaced.  This is called after
+     * this rule has been initialized and before it is used to determine
+     * stimulus.
+     *
+     * @param  replacedRules  the (initialized) rules being replaced.
+     *
+     * @return true if any state was carried over; otherwise false.
+     */
+    public boolean carryOverTransientState(LarvaStimulusRules replacedRules);
+
+}
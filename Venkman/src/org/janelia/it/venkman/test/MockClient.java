@@ -21,7 +21,9 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.io.Reader;
 import java.io.StringReader;
@@ -44,27 +46,75 @@ public class MockClient {
     private int port;
     private File commandFile;
     private String sid;
+    private int batchSize;
 
     public MockClient(int port,
                       File commandFile,
                       String sid) {
+        this(commandFile, sid);
         this.port = port;
+    }
+
+    protected MockClient(File commandFile,
+                         String sid) {
+        this.port = -1;
         this.commandFile = commandFile;
         if (sid == null) {
             this.sid = "sid-0";
         } else {
             this.sid = sid;
         }
+        this.batchSize = 1;
+    }
+
+    /**
+     * @param  batchSize  number of logged frames to send in each
+     *                    batch request when replaying a log
+     *                    (or 1 to send each frame in its own request).
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
     }
 
     public void run() throws IOException {
         Socket socket = null;
         try {
             socket = new Socket("localhost", port);
-            PrintWriter socketOut =
-                    new PrintWriter(socket.getOutputStream(), true);
-            BufferedReader socketIn = new BufferedReader(
-                    new InputStreamReader(socket.getInputStream()));
+            run(socket.getInputStream(),
+                socket.getOutputStream(),
+                "port " + port);
+        } finally {
+            try {
+                if (socket != null) {
+                    socket.close();
+                }
+            } catch (IOException e) {
+                System.out.println("\n\nignoring socket close exception\n\n");
+                e.printStackTrace();
+            }
+
+        }
+    }
+
+    /**
+     * Sends commands to the server connected to the specified streams
+     * and prints (or checks) the responses.
+     *
+     * @param  in                     stream of server responses.
+     * @param  out                    stream for client requests.
+     * @param  connectionDescription  description of the connection
+     *                                (for console messages).
+     *
+     * @throws IOException
+     *   if the streams cannot be read or written.
+     */
+    protected void run(InputStream in,
+                       OutputStream out,
+                       String connectionDescription)
+            throws IOException {
+        try {
+            PrintWriter serverOut = new PrintWriter(out, true);
+            BufferedReader serverIn = new BufferedReader(new InputStreamReader(in));
             Reader reader;
             BufferedReader systemIn;
 
@@ -79,7 +129,7 @@ public class MockClient {
             }
             systemIn = new BufferedReader(reader);
 
-            System.out.println("connected to port " + port);
+            System.out.println("connected to " + connectionDescription);
 
             final long startTime = System.currentTimeMillis();
             long requestCount = 0;
@@ -100,8 +150,8 @@ public class MockClient {
                 message = systemIn.readLine();
                 if ((message != null) && (message.length() > 0)) {
                     message = replaceFrameTime(message);
-                    socketOut.println(message);
-                    response = socketIn.readLine();
+                    serverOut.println(message);
+                    response = serverIn.readLine();
                     if (! importedCommandsFromLog) {
                         System.out.println("received response: " + response);
                     } else if (!response.contains(successfulResponseStatusCode)) {
@@ -124,16 +174,6 @@ public class MockClient {
 
         } catch (InterruptedException e) {
             e.printStackTrace();
-        } finally {
-            try {
-                if (socket != null) {
-                    socket.close();
-                }
-            } catch (IOException e) {
-                System.out.println("\n\nignoring socket close exception\n\n");
-                e.printStackTrace();
-            }
-
         }
     }
 
@@ -164,37 +204,65 @@ public class MockClient {
 
         List<LarvaFrameData> frameDataList = session.getFrameDataList();
 
-        String values[] = new String[13];
-        values[0] = sid;
-        List<String> valueList = Arrays.asList(values);
-        Message skeletonMessage =
-                new Message(MessageType.PROCESS_LARVA_SKELETON_REQUEST,
-                            VERSION_1,
-                            valueList);
-        LarvaSkeleton skeleton;
-        for (LarvaFrameData frameData : frameDataList) {
-            skeleton = frameData.getSkeleton();
-
-            values[1] = String.valueOf(skeleton.getCaptureTime());
-            values[2] = String.valueOf(skeleton.getHead().getX());
-            values[3] = String.valueOf(skeleton.getHead().getY());
-            values[4] = String.valueOf(skeleton.getMidpoint().getX());
-            values[5] = String.valueOf(skeleton.getMidpoint().getY());
-            values[6] = String.valueOf(skeleton.getTail().getX());
-            values[7] = String.valueOf(skeleton.getTail().getY());
-            values[8] = String.valueOf(skeleton.getLength());
-            values[9] = String.valueOf(skeleton.getCentroid().getX());
-            values[10] = String.valueOf(skeleton.getCentroid().getY());
-            values[11] = String.valueOf(skeleton.getHeadToBodyAngle());
-            values[12] = String.valueOf(skeleton.getTailBearing());
-
-            commands.append(skeletonMessage.toString());
-            commands.append("\n");
+        if (batchSize > 1) {
+            appendBatchCommands(frameDataList, commands);
+        } else {
+            String values[] = new String[13];
+            values[0] = sid;
+            List<String> valueList = Arrays.asList(values);
+            Message skeletonMessage =
+                    new Message(MessageType.PROCESS_LARVA_SKELETON_REQUEST,
+                                VERSION_1,
+                                valueList);
+            for (LarvaFrameData frameData : frameDataList) {
+                setSkeletonValues(frameData.getSkeleton(), values, 1);
+                commands.append(skeletonMessage.toString());
+                commands.append("\n");
+            }
         }
 
         return new StringReader(commands.toString());
     }
 
+    private void appendBatchCommands(List<LarvaFrameData> frameDataList,
+                                     StringBuilder commands) {
+        final int numberOfFrames = frameDataList.size();
+        String values[];
+        int frameCount;
+        for (int start = 0; start < numberOfFrames; start += batchSize) {
+            frameCount = Math.min(batchSize, numberOfFrames - start);
+            values = new String[2 + (frameCount * 12)];
+            values[0] = sid;
+            values[1] = String.valueOf(frameCount);
+            for (int i = 0; i < frameCount; i++) {
+                setSkeletonValues(frameDataList.get(start + i).getSkeleton(),
+                                  values,
+                                  2 + (i * 12));
+            }
+            commands.append(new Message(MessageType.PROCESS_LARVA_SKELETON_BATCH_REQUEST,
+                                        VERSION_1,
+                                        Arrays.asList(values)).toString());
+            commands.append("\n");
+        }
+    }
+
+    private void setSkeletonValues(LarvaSkeleton skeleton,
+                                   String[] values,
+                                   int firstValue) {
+        values[firstValue] = String.valueOf(skeleton.getCaptureTime());
+        values[firstValue + 1] = String.valueOf(skeleton.getHead().getX());
+        values[firstValue + 2] = String.valueOf(skeleton.getHead().getY());
+        values[firstValue + 3] = String.valueOf(skeleton.getMidpoint().getX());
+        values[firstValue + 4] = String.valueOf(skeleton.getMidpoint().getY());
+        values[firstValue + 5] = String.valueOf(skeleton.getTail().getX());
+        values[firstValue + 6] = String.valueOf(skeleton.getTail().getY());
+        values[firstValue + 7] = String.valueOf(skeleton.getLength());
+        values[firstValue + 8] = String.valueOf(skeleton.getCentroid().getX());
+        values[firstValue + 9] = String.valueOf(skeleton.getCentroid().getY());
+        values[firstValue + 10] = String.valueOf(skeleton.getHeadToBodyAngle());
+        values[firstValue + 11] = String.valueOf(skeleton.getTailBearing());
+    }
+
     public static void main(String[] args) {
         try {
             if (args.length > 0) {
@@ -208,11 +276,14 @@ public class MockClient {
                     }
                 }
                 MockClient client = new MockClient(port, commandFile, sid);
+                if (args.length > 3) {
+                    client.setBatchSize(Integer.parseInt(args[3]));
+                }
                 client.run();
             } else {
                 System.out.println("\n\nUSAGE: java -cp venkman.jar " +
                                    MockClient.class.getName() +
-                                   " <port> [command file] [sid]\n\n");
+                                   " <port> [command file] [sid] [log replay batch size]\n\n");
             }
         } catch (Exception e) {
             System.out.println("\n\nException caught, stopping client ...\n\n");
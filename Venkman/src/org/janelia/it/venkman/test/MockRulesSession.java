@@ -78,8 +78,8 @@ public class MockRulesSession extends RulesSession {
     }
 
     @Override
-    public ResponseMessage processLarvaSkeleton(LarvaSkeleton skeleton,
-                                                String version) {
+    public ProcessLarvaSkeletonResponse processLarvaSkeleton(LarvaSkeleton skeleton,
+                                                             String version) {
 
         index++;
         if (index >= skeletonResponses.size()) {
@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2014 Howard Hughes Medical Institute.
+ * All rights reserved.
+ * Use is subject to Janelia Farm Research Campus Software Copyright 1.1
+ * license terms (http://license.janelia.org/license/jfrc_copyright_1_1.html).
+ */
+
+package org.janelia.it.venkman.test;
+
+import org.janelia.it.venkman.SharedMemoryChannel;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Mock rules client that connects to a
+ * {@link org.janelia.it.venkman.SharedMemoryRulesServer}.
+ * It serves as the reference implementation of the tracker side
+ * of a {@link SharedMemoryChannel}.
+ *
+ * @author Eric Trautman
+ */
+public class SharedMemoryClient extends MockClient {
+
+    private File channelFile;
+    private SharedMemoryChannel.WaitMode waitMode;
+
+    public SharedMemoryClient(File channelFile,
+                              SharedMemoryChannel.WaitMode waitMode,
+                              File commandFile,
+                              String sid) {
+        super(commandFile, sid);
+        this.channelFile = channelFile;
+        this.waitMode = waitMode;
+    }
+
+    @Override
+    public void run() throws IOException {
+        final SharedMemoryChannel channel =
+                SharedMemoryChannel.open(channelFile, waitMode, CONNECT_TIMEOUT);
+        try {
+            run(channel.getClientInputStream(),
+                channel.getClientOutputStream(),
+                channel.toString());
+        } finally {
+            channel.getClientOutputStream().close();
+            channel.getClientInputStream().close();
+            channel.close();
+        }
+    }
+
+    public static void main(String[] args) {
+        try {
+            if (args.length > 0) {
+                final File channelFile = new File(args[0]);
+                File commandFile = null;
+                String sid = null;
+                SharedMemoryChannel.WaitMode waitMode = SharedMemoryChannel.WaitMode.PARK;
+                if (args.length > 1) {
+                    commandFile = new File(args[1]);
+                    if (args.length > 2) {
+                        sid = args[2];
+                        if (args.length > 3) {
+                            waitMode = SharedMemoryChannel.WaitMode.valueOf(args[3].toUpperCase());
+                        }
+                    }
+                }
+                SharedMemoryClient client =
+                        new SharedMemoryClient(channelFile, waitMode, commandFile, sid);
+                client.run();
+            } else {
+                System.out.println("\n\nUSAGE: java -cp venkman.jar " +
+                                   SharedMemoryClient.class.getName() +
+                                   " <channel file> [command file] [sid] [spin|park]\n\n");
+            }
+        } catch (Exception e) {
+            System.out.println("\n\nException caught, stopping client ...\n\n");
+            e.printStackTrace();
+        }
+    }
+
+    private static final long CONNECT_TIMEOUT = 30000;
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2014 Howard Hughes Medical Institute.
+ * All rights reserved.
+ * Use is subject to Janelia Farm Research Campus Software Copyright 1.1
+ * license terms (http://license.janelia.org/license/jfrc_copyright_1_1.html).
+ */
+
+package org.janelia.it.venkman;
+
+import org.janelia.it.venkman.config.LarvaBehaviorParameters;
+import org.janelia.it.venkman.data.BehaviorModeComparison;
+import org.janelia.it.venkman.data.LarvaFrameData;
+import org.janelia.it.venkman.data.LarvaSkeleton;
+import org.janelia.it.venkman.data.TrackerPoint;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Tests the {@link BehaviorParameterSweep} class.
+ *
+ * @author Eric Trautman
+ */
+public class BehaviorParameterSweepTest {
+
+    @Test
+    public void testDeriveModesMatchesFullHistory() throws Exception {
+
+        final LarvaBehaviorParameters parameters = new LarvaBehaviorParameters();
+        final LarvaSkeleton[] skeletons = getSkeletons();
+
+        final byte[] modes =
+                BehaviorParameterSweep.deriveModes(skeletons, parameters);
+
+        final LinkedList<LarvaFrameData> frameHistory =
+                new LinkedList<LarvaFrameData>();
+        LarvaFrameData frameData;
+        for (int i = 0; i < skeletons.length; i++) {
+            frameData = new LarvaFrameData(skeletons[i].getClone());
+            frameData.calculateDerivedData(frameHistory, parameters);
+            frameHistory.addFirst(frameData);
+            Assert.assertEquals("invalid mode for frame " + i,
+                                frameData.getBehaviorMode(),
+                                BehaviorModeComparison.decode(modes[i]));
+        }
+    }
+
+    @Test
+    public void testRun() throws Exception {
+
+        final LarvaBehaviorParameters referenceParameters =
+                new LarvaBehaviorParameters();
+        final LarvaSkeleton[] skeletons = getSkeletons();
+
+        // reference frames are derived with default parameters
+        final List<LarvaFrameData> referenceFrames =
+                new ArrayList<LarvaFrameData>(skeletons.length);
+        final LinkedList<LarvaFrameData> frameHistory =
+                new LinkedList<LarvaFrameData>();
+        LarvaFrameData frameData;
+        for (LarvaSkeleton skeleton : skeletons) {
+            frameData = new LarvaFrameData(skeleton.getClone());
+            frameData.calculateDerivedData(frameHistory, referenceParameters);
+            frameHistory.addFirst(frameData);
+            referenceFrames.add(frameData);
+        }
+
+        final double referenceValue = referenceParameters.getMinHeadAngleForCasting();
+        final BehaviorParameterSweep sweep =
+                new BehaviorParameterSweep(new LarvaBehaviorParameters(), 2);
+        sweep.addReferenceRun("synthetic", referenceFrames);
+        sweep.addParameterValues("minHeadAngleForCasting",
+                                 new double[] { 80.0, referenceValue, 1.0 });
+        sweep.addParameterValues("maxJumpFramesToSkip",
+                                 new double[] { 1, 3 });
+
+        Assert.assertEquals("invalid combination count",
+                            6, sweep.getCombinationCount());
+
+        final List<BehaviorParameterSweep.Result> results = sweep.run();
+
+        Assert.assertEquals("invalid number of results", 6, results.size());
+
+        final BehaviorParameterSweep.Result best = results.get(0);
+        Assert.assertEquals("best result should match reference",
+                            100.0, best.getSimilarityPercentage(), 0.0001);
+        Assert.assertEquals("best result has invalid score",
+                            1.0, best.getScore(), 0.0001);
+        Assert.assertEquals("best result has invalid parameter value",
+                            referenceValue,
+                            best.getParameters().getMinHeadAngleForCasting(),
+                            0.0001);
+
+        final BehaviorParameterSweep.Result worst = results.get(results.size() - 1);
+        Assert.assertTrue("worst result should differ from reference",
+                          worst.getScore() < best.getScore());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownParameter() throws Exception {
+        final BehaviorParameterSweep sweep =
+                new BehaviorParameterSweep(new LarvaBehaviorParameters(), 1);
+        sweep.addParameterValues("noSuchParameter", new double[] { 1.0 });
+    }
+
+    @Test
+    public void testParseValues() throws Exception {
+        validateValues("list", new double[] { 1.0, 1.5, 3.0 },
+                       BehaviorParameterSweep.parseValues("1.0, 1.5,3"));
+        validateValues("range", new double[] { 0.1, 0.2, 0.3 },
+                       BehaviorParameterSweep.parseValues("0.1:0.3:0.1"));
+    }
+
+    private static void validateValues(String context,
+                                       double[] expected,
+                                       double[] actual) {
+        Assert.assertEquals("invalid number of " + context + " values",
+                            expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++) {
+            Assert.assertEquals("invalid " + context + " value " + i,
+                                expected[i], actual[i], 0.0001);
+        }
+    }
+
+    /**
+     * @return skeletons for a larva that runs, stops and casts
+     *         its head from side to side, and then runs again.
+     */
+    private static LarvaSkeleton[] getSkeletons() {
+        final int frameCount = 300;
+        final LarvaSkeleton[] skeletons = new LarvaSkeleton[frameCount];
+        double x = 0;
+        double headAngle;
+        double radians;
+        for (int i = 0; i < frameCount; i++) {
+            if ((i >= 100) && (i < 200)) {
+                headAngle = 60.0 * Math.sin((i - 100) * Math.PI / 25.0);
+            } else {
+                headAngle = 0;
+                x += 0.05;
+            }
+            radians = Math.toRadians(headAngle);
+            skeletons[i] = new LarvaSkeleton(i * 33,
+                                             new TrackerPoint(x + 1 + Math.cos(radians),
+                                                              Math.sin(radians)),
+                                             new TrackerPoint(x + 1, 0),
+                                             new TrackerPoint(x, 0),
+                                             2.0,
+                                             new TrackerPoint(x + 1, 0),
+                                             headAngle,
+                                             0);
+        }
+        return skeletons;
+    }
+}
@@ -0,0 +1,261 @@
+/*
+ * Copyright (c) 2014 Howard Hughes Medical Institute.
+ * All rights reserved.
+ * Use is subject to Janelia Farm Research Campus Software Copyright 1.1
+ * license terms (http://license.janelia.org/license/jfrc_copyright_1_1.html).
+ */
+
+package org.janelia.it.venkman;
+
+import org.apache.log4j.Logger;
+import org.janelia.it.venkman.config.Configuration;
+import org.janelia.it.venkman.config.ConfigurationManager;
+import org.janelia.it.venkman.config.LarvaBehaviorParameters;
+import org.janelia.it.venkman.config.ParameterCollectionCategory;
+import org.janelia.it.venkman.config.ParameterCollectionId;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Opens hundreds of simulated tracker sessions with a {@link RulesServer}
+ * using platform threads and (if supported by the JVM) virtual threads and
+ * reports the thread count, memory use, and request latency for each mode.
+ *
+ * These tests open hundreds of sockets and take several seconds to run,
+ * so they are skipped unless the venkman-scalability-tests system
+ * property is set to true.
+ *
+ * @author Eric Trautman
+ */
+public class RulesServerScalabilityTest {
+
+    private static final int NUMBER_OF_SESSIONS = 200;
+    private static final int FRAMES_PER_SESSION = 10;
+
+    private TestWorkingDirectory testDirectory;
+
+    @Before
+    public void setUp() throws Exception {
+        Assume.assumeTrue(Boolean.getBoolean("venkman-scalability-tests"));
+        testDirectory = new TestWorkingDirectory();
+        final ConfigurationManager manager = testDirectory.getManager();
+        final ParameterCollectionId behaviorId =
+                new ParameterCollectionId(ParameterCollectionCategory.BEHAVIOR,
+                                          "scale",
+                                          "behavior");
+        manager.saveCollection(behaviorId, new LarvaBehaviorParameters());
+        final ParameterCollectionId configId =
+                new ParameterCollectionId(ParameterCollectionCategory.CONFIGURATION,
+                                          "scale",
+                                          "configuration");
+        manager.saveCollection(configId, new Configuration(configId, behaviorId, null));
+    }
+
+    @After
+    public void tearDown() {
+        if (testDirectory != null) {
+            testDirectory.delete();
+        }
+    }
+
+    @Test
+    public void testPlatformThreadSessions() throws Exception {
+        final Result result = runSessions(new RecordingThreadFactory(false, 0));
+        Assert.assertTrue("platform sessions should use at least one thread per session, " + result,
+                          result.threadCount >= NUMBER_OF_SESSIONS);
+    }
+
+    @Test
+    public void testVirtualThreadSessions() throws Exception {
+        final int carrierThreads = 4;
+        final RecordingThreadFactory factory = new RecordingThreadFactory(true, carrierThreads);
+        final Result result = runSessions(factory);
+        if (factory.isVirtual()) {
+            Assert.assertTrue("virtual sessions should not need a platform thread per session, " + result,
+                              result.threadCount < NUMBER_OF_SESSIONS);
+        }
+    }
+
+    private Result runSessions(RecordingThreadFactory factory)
+            throws Exception {
+
+        final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        final int initialThreadCount = threadBean.getThreadCount();
+
+        final RulesServer server = new RulesServer(0, testDirectory.getDirectory(), factory);
+        final Thread serverThread = new Thread(server);
+        serverThread.start();
+
+        int port = server.getLocalPort();
+        for (int i = 0; (port == -1) && (i < 500); i++) {
+            Thread.sleep(10);
+            port = server.getLocalPort();
+        }
+        Assert.assertTrue("server did not start listening", port != -1);
+
+        final Socket[] sockets = new Socket[NUMBER_OF_SESSIONS];
+        final PrintWriter[] writers = new PrintWriter[NUMBER_OF_SESSIONS];
+        final BufferedReader[] readers = new BufferedReader[NUMBER_OF_SESSIONS];
+        final long[] latencies = new long[NUMBER_OF_SESSIONS * FRAMES_PER_SESSION];
+        final Result result = new Result(factory);
+
+        try {
+            for (int i = 0; i < NUMBER_OF_SESSIONS; i++) {
+                sockets[i] = new Socket("localhost", port);
+                sockets[i].setTcpNoDelay(true);
+                writers[i] = new PrintWriter(sockets[i].getOutputStream(), true);
+                readers[i] = new BufferedReader(new InputStreamReader(sockets[i].getInputStream()));
+                assertOk(sendRequest(writers[i], readers[i],
+                                     "<open-session-request,1,1.0.0,scale/configuration>"));
+            }
+
+            String response;
+            long startTime;
+            int latencyCount = 0;
+            for (int frame = 0; frame < FRAMES_PER_SESSION; frame++) {
+                for (int i = 0; i < NUMBER_OF_SESSIONS; i++) {
+                    startTime = System.nanoTime();
+                    response = sendRequest(writers[i], readers[i],
+                                           "<larva-skeleton-request,1,sid-" + i + "," +
+                                           (frame * 33) + ",4,5,6,7,8,9,10,11,12,13,14>");
+                    latencies[latencyCount] = System.nanoTime() - startTime;
+                    latencyCount++;
+                    assertOk(response);
+                }
+            }
+
+            // all sessions are open (and logging) at this point
+            result.threadCount = threadBean.getThreadCount() - initialThreadCount;
+            System.gc();
+            final Runtime runtime = Runtime.getRuntime();
+            result.usedMemory = runtime.totalMemory() - runtime.freeMemory();
+
+            for (int i = 0; i < NUMBER_OF_SESSIONS; i++) {
+                assertOk(sendRequest(writers[i], readers[i], "<close-session-request,1,sid-" + i + ">"));
+            }
+
+        } finally {
+            for (Socket socket : sockets) {
+                if (socket != null) {
+                    socket.close();
+                }
+            }
+            server.stop();
+            serverThread.join();
+            server.getConfigurationManager().close();
+        }
+
+        // sessions wait for their log writers to finish when they close,
+        // so all logs are complete once every session thread has finished
+        Assert.assertTrue("sessions did not finish", factory.joinAll(10000));
+
+        Arrays.sort(latencies);
+        result.latencies = latencies;
+
+        LOG.info("runSessions: " + NUMBER_OF_SESSIONS + " sessions, " + result);
+
+        return result;
+    }
+
+    private static String sendRequest(PrintWriter writer,
+                                      BufferedReader reader,
+                                      String request)
+            throws Exception {
+        writer.println(request);
+        return reader.readLine();
+    }
+
+    private static void assertOk(String response) {
+        Assert.assertNotNull("missing response", response);
+        Assert.assertTrue("invalid response: " + response, response.contains(",200,"));
+    }
+
+    /** Records created threads so that they can be joined. */
+    private static class RecordingThreadFactory
+            extends SessionThreadFactory {
+
+        private final List<Thread> threads;
+
+        public RecordingThreadFactory(boolean useVirtualThreads,
+                                      int maximumCarrierThreads) {
+            super(useVirtualThreads, maximumCarrierThreads);
+            this.threads = new ArrayList<Thread>();
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            final Thread thread = super.newThread(runnable);
+            synchronized (threads) {
+                threads.add(thread);
+            }
+            return thread;
+        }
+
+        /**
+         * @return true if all recorded threads finished within the
+         *         specified number of milliseconds.
+         */
+        public boolean joinAll(long maxWaitMilliseconds)
+                throws InterruptedException {
+            final List<Thread> threadsCopy;
+            synchronized (threads) {
+                threadsCopy = new ArrayList<Thread>(threads);
+            }
+            final long stopTime = System.currentTimeMillis() + maxWaitMilliseconds;
+            boolean allFinished = true;
+            for (Thread thread : threadsCopy) {
+                thread.join(Math.max(1, stopTime - System.currentTimeMillis()));
+                allFinished = allFinished && (! thread.isAlive());
+            }
+            return allFinished;
+        }
+    }
+
+    private static class Result {
+
+        private SessionThreadFactory factory;
+        private int threadCount;
+        private long usedMemory;
+        private long[] latencies;
+
+        public Result(SessionThreadFactory factory) {
+            this.factory = factory;
+        }
+
+        private long getPercentileMicroseconds(double percentile) {
+            final int index = Math.min(latencies.length - 1,
+                                       (int) (latencies.length * percentile));
+            return latencies[index] / 1000;
+        }
+
+        @Override
+        public String toString() {
+            final StringBuilder sb = new StringBuilder();
+            sb.append(factory);
+            sb.append(": added ").append(threadCount).append(" platform threads");
+            sb.append(", used memory ").append(usedMemory / (1024 * 1024)).append(" MB");
+            if (latencies != null) {
+                sb.append(", latency p50=").append(getPercentileMicroseconds(0.5));
+                sb.append("us p90=").append(getPercentileMicroseconds(0.9));
+                sb.append("us p99=").append(getPercentileMicroseconds(0.99));
+                sb.append("us max=").append(getPercentileMicroseconds(1.0)).append("us");
+            }
+            return sb.toString();
+        }
+    }
+
+    private static final Logger LOG = Logger.getLogger(RulesServerScalabilityTest.class);
+}
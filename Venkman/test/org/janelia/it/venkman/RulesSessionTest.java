@@ -17,6 +17,11 @@ import org.janelia.it.venkman.config.rules.BehaviorLimitedKinematicVariableFunct
 import org.janelia.it.venkman.config.rules.IntensityValue;
 import org.janelia.it.venkman.config.rules.LEDFlashPattern;
 import org.janelia.it.venkman.config.rules.SingleVariableFunction;
+import org.janelia.it.venkman.data.LarvaFrameData;
+import org.janelia.it.venkman.log.LogReader;
+import org.janelia.it.venkman.log.LogSession;
+import org.janelia.it.venkman.log.ParameterUpdate;
+import org.janelia.it.venkman.rules.RuleData;
 import org.janelia.it.venkman.rules.ScaledRunIntensity;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
@@ -24,7 +29,12 @@ import org.junit.Test;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import static org.janelia.it.venkman.rules.ScaledRunIntensity.DEFAULT_NON_RUN_INTENSITY_VALUE;
 
@@ -38,6 +48,7 @@ public class RulesSessionTest {
 
     private static TestWorkingDirectory testDirectory;
     private static ConfigurationManager manager;
+    private static List<RulesSession> sessions = new ArrayList<RulesSession>();
 
     @BeforeClass
     public static void setUp() throws Exception {
@@ -66,6 +77,23 @@ public class RulesSessionTest {
                                                       new SingleVariableFunction(),
                                                       0.0,
                                                       new BehaviorLimitedKinematicVariableFunctionList()));
+        final ParameterCollectionId updatedStimulusId =
+                new ParameterCollectionId(ParameterCollectionCategory.STIMULUS,
+                                          "group-s",
+                                          "name-s2");
+        manager.saveCollection(updatedStimulusId,
+                               new ScaledRunIntensity(new LEDFlashPattern(),
+                                                      new IntensityValue(50.0),
+                                                      0.0,
+                                                      new IntensityValue(0.0),
+                                                      0,
+                                                      new SingleVariableFunction(),
+                                                      0.0,
+                                                      false,
+                                                      0,
+                                                      new SingleVariableFunction(),
+                                                      0.0,
+                                                      new BehaviorLimitedKinematicVariableFunctionList()));
         final ParameterCollectionId configId =
                 new ParameterCollectionId(ParameterCollectionCategory.CONFIGURATION,
                                           "test",
@@ -77,7 +105,12 @@ public class RulesSessionTest {
     }
 
     @AfterClass
-    public static void tearDown() {
+    public static void tearDown() throws Exception {
+        // make sure log writers are done with the directory before deleting it
+        for (RulesSession session : sessions) {
+            Assert.assertTrue("log writer for " + session + " did not finish",
+                              session.awaitLogTermination(5000));
+        }
         testDirectory.delete();
     }
 
@@ -95,10 +128,7 @@ public class RulesSessionTest {
         ByteArrayOutputStream out = new ByteArrayOutputStream();
 
 
-        RulesSession session = new RulesSession(sessionId,
-                                                in,
-                                                out,
-                                                manager);
+        RulesSession session = newSession(sessionId, in, out);
         session.run();
 
         final String expectedOutData =
@@ -112,4 +142,232 @@ public class RulesSessionTest {
         Assert.assertEquals("invalid response messages",
                             expectedOutData, out.toString());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testRunWithBatch() throws Exception {
+        final String sessionId = "test-session-2";
+        final String inData =
+                "<open-session-request,1,1.0.0,test/configuration-a>\n" +
+                "<larva-skeleton-batch-request,1,test-session-2,2," +
+                "22,4,5,6,7,8,9,10,11,12,13,14," +
+                "33,4,5,6,7,8,9,10,11,12,13,14>\n" +
+                "<larva-skeleton-batch-request,1,test-session-2,2," +
+                "44,4,5,6,7,8,9,10,11,12,13,14>\n" +
+                // second frame is malformed, so first frame should not be processed
+                "<larva-skeleton-batch-request,1,test-session-2,2," +
+                "44,104,105,106,107,108,109,110,111,112,113,114," +
+                "55,4,5,6,7,8,x,10,11,12,13,14>\n" +
+                "<larva-skeleton-request,1,test-session-2,44,4,5,6,7,8,9,10,11,12,13,14>\n" +
+                "<close-session-request,1,test-session-2>\n";
+        final InputStream in = new ByteArrayInputStream(inData.getBytes());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        RulesSession session = newSession(sessionId, in, out);
+        session.run();
+
+        final String expectedOutData =
+                "<open-session-response,1,200,test-session-2>\n" +
+                "<larva-skeleton-batch-response,1,200,2,22,stop,2,0.0,60,33,cast-right,2,0.0,60>\n" +
+                "<status-response,1,400,invalid request: count of 2 requires 28 fields but message has 16 fields>\n" +
+                "<status-response,1,400,For input string: \"x\">\n" +
+                "<larva-skeleton-response,1,200,44,cast-right,0.0,60>\n" +
+                "<status-response,1,200,closed session test-session-2>\n";
+
+        Assert.assertEquals("invalid response messages",
+                            expectedOutData, out.toString());
+
+        Assert.assertTrue("log writer did not finish", session.awaitLogTermination(5000));
+        final LogReader reader = new LogReader(new File(session.getLogFilePathAndName()));
+        reader.read();
+        final List<LarvaFrameData> frames = reader.getSession().getFrameDataList();
+        Assert.assertEquals("frames from rejected batch should not be processed",
+                            3, frames.size());
+        Assert.assertEquals("invalid head x for last frame",
+                            4.0, frames.get(2).getSkeleton().getHead().getX(), 0.0);
+    }
+
+    @Test
+    public void testRunWithMultipleLarvae() {
+        final String sessionId = "test-session-3";
+        final String inData =
+                "<open-session-request,1,1.0.0,test/configuration-a>\n" +
+                "<multi-larva-skeleton-request,1,test-session-3,2," +
+                "a,22,4,5,6,7,8,9,10,11,12,13,14," +
+                "b,22,4,5,6,7,8,9,10,11,12,13,14>\n" +
+                "<multi-larva-skeleton-request,1,test-session-3,2," +
+                "b,33,4,5,6,7,8,9,10,11,12,13,14," +
+                "a,33,4,5,6,7,8,9,10,11,12,13,14>\n" +
+                "<multi-larva-skeleton-request,1,test-session-3,2," +
+                "a,44,4,5,6,7,8,9,10,11,12,13,14," +
+                "a,44,4,5,6,7,8,9,10,11,12,13,14>\n" +
+                "<close-session-request,1,test-session-3>\n";
+
+        final String expectedOutData =
+                "<open-session-response,1,200,test-session-3>\n" +
+                "<multi-larva-skeleton-response,1,200,2," +
+                "a,22,stop,2,0.0,60,b,22,stop,2,0.0,60>\n" +
+                "<multi-larva-skeleton-response,1,200,2," +
+                "b,33,cast-right,2,0.0,60,a,33,cast-right,2,0.0,60>\n" +
+                "<status-response,1,400,invalid request: track 'a' is specified more than once>\n" +
+                "<status-response,1,200,closed session test-session-3>\n";
+
+        // sequential and parallel processing should produce the same responses
+        for (int parallelTrackThreshold : new int[] {100, 1}) {
+            final InputStream in = new ByteArrayInputStream(inData.getBytes());
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+            RulesSession session = newSession(sessionId, in, out);
+            session.setParallelTrackThreshold(parallelTrackThreshold);
+            session.run();
+
+            Assert.assertEquals("invalid response messages for threshold " + parallelTrackThreshold,
+                                expectedOutData, out.toString());
+        }
+    }
+
+    @Test
+    public void testRunWithWarmUp() {
+        final String sessionId = "test-session-4";
+        final String inData =
+                "<open-session-request,1,1.0.0,test/configuration-a>\n" +
+                "<larva-skeleton-request,1,test-session-4,22,4,5,6,7,8,9,10,11,12,13,14>\n" +
+                "<larva-skeleton-request,1,test-session-4,33,4,5,6,7,8,9,10,11,12,13,14>\n" +
+                "<close-session-request,1,test-session-4>\n";
+        final InputStream in = new ByteArrayInputStream(inData.getBytes());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        RulesSession session = newSession(sessionId, in, out);
+        session.setSessionWarmUp(new SessionWarmUp(500));
+        session.run();
+
+        final String[] responses = out.toString().split("\n");
+        Assert.assertEquals("invalid number of responses", 4, responses.length);
+        Assert.assertTrue("open response should include warm-up time but was " + responses[0],
+                          responses[0].matches("<open-session-response,1,200,test-session-4,\\d+>"));
+
+        // warm-up should not change the state of the real session
+        Assert.assertEquals("invalid first skeleton response",
+                            "<larva-skeleton-response,1,200,22,stop,0.0,60>", responses[1]);
+        Assert.assertEquals("invalid second skeleton response",
+                            "<larva-skeleton-response,1,200,33,cast-right,0.0,60>", responses[2]);
+    }
+
+    @Test
+    public void testRunWithShadowRules() {
+        final String sessionId = "test-session-5";
+        final String inData =
+                "<open-session-request,1,1.0.0,test/configuration-a>\n" +
+                "<larva-skeleton-request,1,test-session-5,22,4,5,6,7,8,9,10,11,12,13,14>\n" +
+                "<larva-skeleton-request,1,test-session-5,33,4,5,6,7,8,9,10,11,12,13,14>\n" +
+                "<close-session-request,1,test-session-5>\n";
+        final InputStream in = new ByteArrayInputStream(inData.getBytes());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        RulesSession session = newSession(sessionId, in, out);
+        session.addShadowStimulusRules(
+                "copy",
+                manager.getStimulusRules(ParameterCollectionId.getStimulusId("group-s/name-s")));
+        session.addShadowStimulusRules("failing",
+                                       new ShadowRulesEvaluatorTest.FailingRules());
+        session.run();
+
+        // shadow rules (even failing ones) should never change responses
+        final String expectedOutData =
+                "<open-session-response,1,200,test-session-5>\n" +
+                "<larva-skeleton-response,1,200,22,stop,0.0,60>\n" +
+                "<larva-skeleton-response,1,200,33,cast-right,0.0,60>\n" +
+                "<status-response,1,200,closed session test-session-5>\n";
+
+        Assert.assertEquals("invalid response messages",
+                            expectedOutData, out.toString());
+    }
+
+    @Test
+    public void testRunWithParameterUpdates() {
+        final String sessionId = "test-session-6";
+        final String inData =
+                "<update-session-parameters-request,1,test-session-6,stimulus,group-s/name-s2>\n" +
+                "<open-session-request,1,1.0.0,test/configuration-a>\n" +
+                "<larva-skeleton-request,1,test-session-6,22,4,5,6,7,8,9,10,11,12,13,14>\n" +
+                "<update-session-parameters-request,1,test-session-6,stimulus,group-s/name-s2>\n" +
+                "<larva-skeleton-request,1,test-session-6,33,4,5,6,7,8,9,10,11,12,13,14>\n" +
+                "<update-session-parameters-request,1,test-session-6,behavior,group-b/name-b>\n" +
+                "<update-session-parameters-request,1,test-session-6,stimulus,group-s/missing>\n" +
+                "<update-session-parameters-request,1,test-session-6,configuration,test/configuration-a>\n" +
+                "<close-session-request,1,test-session-6>\n";
+        final InputStream in = new ByteArrayInputStream(inData.getBytes());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        RulesSession session = newSession(sessionId, in, out);
+        session.run();
+
+        // frame history is retained, so the second frame is still a cast
+        // but now uses the updated non-run intensity
+        final String expectedOutData =
+                "<status-response,1,400,invalid request: parameters cannot be updated before session is opened>\n" +
+                "<open-session-response,1,200,test-session-6>\n" +
+                "<larva-skeleton-response,1,200,22,stop,0.0,60>\n" +
+                "<status-response,1,200,updated stimulus parameters group-s/name-s2 (transient state reset) for session test-session-6>\n" +
+                "<larva-skeleton-response,1,200,33,cast-right,50.0,60>\n" +
+                "<status-response,1,200,updated behavior parameters group-b/name-b for session test-session-6>\n" +
+                "<status-response,1,404,invalid update session parameters request: stimulus parameters 'group-s/missing' not found>\n" +
+                "<status-response,1,400,invalid request: parameter category 'configuration' must be 'behavior' or 'stimulus'>\n" +
+                "<status-response,1,200,closed session test-session-6>\n";
+
+        Assert.assertEquals("invalid response messages",
+                            expectedOutData, out.toString());
+    }
+
+    @Test
+    public void testRunWithParameterUpdatesForMultipleLarvae() throws Exception {
+        final String sessionId = "test-session-7";
+        final String inData =
+                "<open-session-request,1,1.0.0,test/configuration-a>\n" +
+                "<multi-larva-skeleton-request,1,test-session-7,2," +
+                "a,22,4,5,6,7,8,9,10,11,12,13,14," +
+                "b,22,4,5,6,7,8,9,10,11,12,13,14>\n" +
+                "<update-session-parameters-request,1,test-session-7,stimulus,group-s/name-s2>\n" +
+                "<multi-larva-skeleton-request,1,test-session-7,2," +
+                "a,33,4,5,6,7,8,9,10,11,12,13,14," +
+                "b,33,4,5,6,7,8,9,10,11,12,13,14>\n" +
+                "<update-session-parameters-request,1,test-session-7,behavior,group-b/name-b>\n" +
+                "<close-session-request,1,test-session-7>\n";
+        final InputStream in = new ByteArrayInputStream(inData.getBytes());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        RulesSession session = newSession(sessionId, in, out);
+        session.run();
+
+        Assert.assertTrue("log writer did not finish", session.awaitLogTermination(5000));
+        final LogReader reader = new LogReader(new File(session.getLogFilePathAndName()));
+        reader.read();
+        final LogSession logSession = reader.getSession();
+
+        final List<ParameterUpdate> updateList = logSession.getParameterUpdateList();
+        Assert.assertEquals("invalid number of updates", 2, updateList.size());
+        Assert.assertEquals("invalid last frame time for stimulus update",
+                            22, updateList.get(0).getLastFrameTime());
+        Assert.assertEquals("invalid last frame time for behavior update",
+                            33, updateList.get(1).getLastFrameTime());
+        Assert.assertNotSame("stimulus update should not replace initial rules",
+                             logSession.getLarvaStimulusRules(),
+                             updateList.get(0).getLarvaStimulusRules());
+
+        final List<Long> updateTimes = new ArrayList<Long>();
+        for (RuleData ruleData : logSession.getRuleDataList()) {
+            if (RuleData.PARAMETERS_UPDATE_NAME.equals(ruleData.getName())) {
+                updateTimes.add(ruleData.getCaptureTime());
+            }
+        }
+        Assert.assertEquals("invalid update rule data capture times",
+                            Arrays.asList(22L, 33L), updateTimes);
+    }
+
+    private static RulesSession newSession(String sessionId,
+                                           InputStream in,
+                                           OutputStream out) {
+        final RulesSession session = new RulesSession(sessionId, in, out, manager);
+        sessions.add(session);
+        return session;
+    }
+}
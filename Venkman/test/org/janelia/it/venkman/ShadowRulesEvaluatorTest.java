@@ -0,0 +1,206 @@
+/*
+ * Copyright (c) 2014 Howard Hughes Medical Institute.
+ * All rights reserved.
+ * Use is subject to Janelia Farm Research Campus Software Copyright 1.1
+ * license terms (http://license.janelia.org/license/jfrc_copyright_1_1.html).
+ */
+
+package org.janelia.it.venkman;
+
+import org.janelia.it.venkman.config.LarvaBehaviorParameters;
+import org.janelia.it.venkman.config.rules.LEDStimulus;
+import org.janelia.it.venkman.config.rules.Stimulus;
+import org.janelia.it.venkman.data.LarvaFrameData;
+import org.janelia.it.venkman.data.LarvaSkeleton;
+import org.janelia.it.venkman.data.TrackerPoint;
+import org.janelia.it.venkman.log.Logger;
+import org.janelia.it.venkman.rules.LarvaStimulusRules;
+import org.janelia.it.venkman.rules.RuleData;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests the {@link ShadowRulesEvaluator} class.
+ *
+ * @author Eric Trautman
+ */
+public class ShadowRulesEvaluatorTest {
+
+    @Test
+    public void testEvaluate() throws Exception {
+
+        final RecordingLogger sessionLogger = new RecordingLogger();
+        final ShadowRulesEvaluator evaluator =
+                new ShadowRulesEvaluator("test-shadow-1", sessionLogger, 10);
+        evaluator.addRules("a", new ConstantRules(null));
+        evaluator.addRules("b", new FailingRules());
+
+        // frames submitted before start should be ignored
+        Assert.assertFalse("frame should not be queued before start",
+                           evaluator.submit(getFrameData(11), "1"));
+
+        evaluator.start(new LarvaBehaviorParameters(), new File("."));
+
+        final LarvaFrameData frameData = getFrameData(22);
+        Assert.assertTrue("frame should be queued",
+                          evaluator.submit(frameData, "1"));
+        Assert.assertTrue("frame should be queued",
+                          evaluator.submit(getFrameData(33), "1"));
+
+        evaluator.stop(5000);
+
+        Assert.assertNull("session frame stimulus should not be changed",
+                          frameData.getStimulusList());
+        Assert.assertEquals("invalid evaluated count",
+                            2, evaluator.getEvaluatedFrameCount());
+        Assert.assertEquals("invalid dropped count",
+                            0, evaluator.getDroppedFrameCount());
+        Assert.assertEquals("invalid failure count",
+                            2, evaluator.getFailureCount());
+
+        final List<Object> entries = sessionLogger.getEntries();
+        Assert.assertEquals("invalid number of log entries (" + entries + ")",
+                            4, entries.size());
+
+        RuleData ruleData = (RuleData) entries.get(0);
+        Assert.assertEquals("invalid rule data name for " + ruleData,
+                            "shadow a rule data", ruleData.getName());
+
+        ruleData = (RuleData) entries.get(1);
+        Assert.assertEquals("invalid rule data name for " + ruleData,
+                            "shadow a", ruleData.getName());
+        Assert.assertEquals("invalid rule data value for " + ruleData,
+                            "<larva-skeleton-response,1,200,22,stop,10.0,30>",
+                            ruleData.getValue());
+    }
+
+    @Test
+    public void testDropsFramesWhenQueueIsFull() throws Exception {
+
+        final CountDownLatch latch = new CountDownLatch(1);
+        final ShadowRulesEvaluator evaluator =
+                new ShadowRulesEvaluator("test-shadow-2", new RecordingLogger(), 2);
+        evaluator.addRules("slow", new ConstantRules(latch));
+        evaluator.start(new LarvaBehaviorParameters(), new File("."));
+
+        int queuedCount = 0;
+        for (int i = 0; i < 10; i++) {
+            if (evaluator.submit(getFrameData(i * 30), "1")) {
+                queuedCount++;
+            }
+        }
+
+        latch.countDown();
+        evaluator.stop(5000);
+
+        // worker may have taken the first frame before it blocked
+        Assert.assertTrue("invalid queued count " + queuedCount,
+                          (queuedCount == 2) || (queuedCount == 3));
+        Assert.assertEquals("invalid dropped count",
+                            10 - queuedCount, evaluator.getDroppedFrameCount());
+        Assert.assertEquals("invalid evaluated count",
+                            queuedCount, evaluator.getEvaluatedFrameCount());
+    }
+
+    private static LarvaFrameData getFrameData(long captureTime) {
+        final TrackerPoint point = new TrackerPoint(1, 2);
+        return new LarvaFrameData(
+                new LarvaSkeleton(captureTime, point, point, point, 3, point, 0, 0));
+    }
+
+    /** Rules that always fail. */
+    public static class FailingRules
+            extends ConstantRules {
+
+        public FailingRules() {
+            super(null);
+        }
+
+        @Override
+        public List<? extends Stimulus> determineStimulus(List<LarvaFrameData> frameHistory,
+                                                          LarvaBehaviorParameters behaviorParameters) {
+            throw new IllegalStateException("failing rules always fail");
+        }
+    }
+
+    /** Rules that always return the same stimulus (optionally waiting first). */
+    static class ConstantRules
+            implements LarvaStimulusRules {
+
+        private CountDownLatch latch;
+        private Logger logger;
+
+        public ConstantRules(CountDownLatch latch) {
+            this.latch = latch;
+        }
+
+        @Override
+        public String getCode() {
+            return "constant";
+        }
+
+        @Override
+        public String getDescription() {
+            return "constant";
+        }
+
+        @Override
+        public boolean supportsVersion(String version) {
+            return true;
+        }
+
+        @Override
+        public void init(Logger logger) {
+            this.logger = logger;
+        }
+
+        @Override
+        public LarvaBehaviorParameters overrideBehaviorParameters(LarvaBehaviorParameters behaviorParameters) {
+            return behaviorParameters;
+        }
+
+        @Override
+        public List<? extends Stimulus> determineStimulus(List<LarvaFrameData> frameHistory,
+                                                          LarvaBehaviorParameters behaviorParameters) {
+            if (latch != null) {
+                try {
+                    latch.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+            final LarvaFrameData frameData = frameHistory.get(0);
+            logger.log(new RuleData(frameData.getTime(), "rule data", "x"));
+            return Collections.singletonList(new LEDStimulus(10.0, 30));
+        }
+    }
+
+    /** Collects logged entries instead of writing them. */
+    static class RecordingLogger
+            extends Logger {
+
+        private final List<Object> entries;
+
+        public RecordingLogger() {
+            super(new File("."), "recording");
+            this.entries = new ArrayList<Object>();
+        }
+
+        public synchronized List<Object> getEntries() {
+            return new ArrayList<Object>(entries);
+        }
+
+        @Override
+        public synchronized void log(Object logObject)
+                throws IllegalStateException {
+            entries.add(logObject);
+        }
+    }
+}
@@ -0,0 +1,260 @@
+/*
+ * Copyright (c) 2014 Howard Hughes Medical Institute.
+ * All rights reserved.
+ * Use is subject to Janelia Farm Research Campus Software Copyright 1.1
+ * license terms (http://license.janelia.org/license/jfrc_copyright_1_1.html).
+ */
+
+package org.janelia.it.venkman;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+
+/**
+ * Tests the {@link SharedMemoryChannel} class.
+ *
+ * @author Eric Trautman
+ */
+public class SharedMemoryChannelTest {
+
+    private TestWorkingDirectory testDirectory;
+    private File channelFile;
+
+    @Before
+    public void setUp() throws Exception {
+        testDirectory = new TestWorkingDirectory();
+        channelFile = new File(testDirectory.getDirectory(), "channel");
+    }
+
+    @After
+    public void tearDown() {
+        testDirectory.delete();
+    }
+
+    @Test
+    public void testLinesWrapAroundRing() throws Exception {
+
+        final SharedMemoryChannel serverChannel =
+                SharedMemoryChannel.create(channelFile, 64, SharedMemoryChannel.WaitMode.SPIN);
+        final SharedMemoryChannel clientChannel =
+                SharedMemoryChannel.open(channelFile, SharedMemoryChannel.WaitMode.PARK, 1000);
+
+        final int numberOfLines = 2000;
+        final Thread clientThread = new Thread() {
+            @Override
+            public void run() {
+                final PrintWriter out =
+                        new PrintWriter(clientChannel.getClientOutputStream(), true);
+                for (int i = 0; i < numberOfLines; i++) {
+                    out.println(getLine(i));
+                }
+                out.close();
+            }
+        };
+        clientThread.start();
+
+        final BufferedReader in = new BufferedReader(
+                new InputStreamReader(serverChannel.getServerInputStream()));
+        for (int i = 0; i < numberOfLines; i++) {
+            Assert.assertEquals("invalid line " + i, getLine(i), in.readLine());
+        }
+        Assert.assertNull("stream should end after writer is closed", in.readLine());
+        in.close();
+
+        clientThread.join();
+        clientChannel.close();
+        serverChannel.close();
+    }
+
+    @Test
+    public void testChannelIsReusedForSessions() throws Exception {
+
+        final SharedMemoryChannel serverChannel =
+                SharedMemoryChannel.create(channelFile, 64, SharedMemoryChannel.WaitMode.SPIN);
+        Assert.assertEquals("invalid generation for first session",
+                            1, serverChannel.getGeneration());
+
+        for (int session = 0; session < 3; session++) {
+
+            if (session > 0) {
+                serverChannel.startSession();
+            }
+
+            final SharedMemoryChannel clientChannel =
+                    SharedMemoryChannel.open(channelFile, SharedMemoryChannel.WaitMode.PARK, 1000);
+            Assert.assertEquals("invalid client generation for session " + session,
+                                session + 1, clientChannel.getGeneration());
+
+            final PrintWriter out = new PrintWriter(clientChannel.getClientOutputStream(), true);
+            out.println(getLine(session));
+            out.close();
+
+            final BufferedReader in = new BufferedReader(
+                    new InputStreamReader(serverChannel.getServerInputStream()));
+            Assert.assertEquals("invalid line for session " + session,
+                                getLine(session), in.readLine());
+            Assert.assertNull("stream should end after writer is closed for session " + session,
+                              in.readLine());
+            in.close();
+            clientChannel.close();
+        }
+
+        serverChannel.close();
+    }
+
+    @Test
+    public void testSecondClientIsRejected() throws Exception {
+
+        final SharedMemoryChannel serverChannel =
+                SharedMemoryChannel.create(channelFile, 64, SharedMemoryChannel.WaitMode.PARK);
+        final SharedMemoryChannel clientChannel =
+                SharedMemoryChannel.open(channelFile, SharedMemoryChannel.WaitMode.PARK, 1000);
+        try {
+            SharedMemoryChannel.open(channelFile, SharedMemoryChannel.WaitMode.PARK, 1000);
+            Assert.fail("second client should not be able to attach to session");
+        } catch (java.io.IOException e) {
+            Assert.assertTrue("invalid exception message: " + e.getMessage(),
+                              e.getMessage().contains("already attached"));
+        }
+
+        serverChannel.startSession();
+        try {
+            clientChannel.getClientOutputStream().write(1);
+            clientChannel.getClientOutputStream().flush();
+            Assert.fail("first client should not be able to write to new session");
+        } catch (java.io.IOException e) {
+            Assert.assertTrue("invalid exception message: " + e.getMessage(),
+                              e.getMessage().contains("new session"));
+        }
+        clientChannel.close();
+
+        final SharedMemoryChannel nextClientChannel =
+                SharedMemoryChannel.open(channelFile, SharedMemoryChannel.WaitMode.PARK, 1000);
+        Assert.assertEquals("invalid generation for next client",
+                            2, nextClientChannel.getGeneration());
+        nextClientChannel.close();
+        serverChannel.close();
+    }
+
+    @Test
+    public void testStoppedClientIsDetected() throws Exception {
+
+        final SharedMemoryChannel serverChannel =
+                SharedMemoryChannel.create(channelFile, 64, SharedMemoryChannel.WaitMode.SPIN);
+        serverChannel.setPeerTimeout(500);
+        final SharedMemoryChannel clientChannel =
+                SharedMemoryChannel.open(channelFile, SharedMemoryChannel.WaitMode.PARK, 1000);
+
+        final PrintWriter out = new PrintWriter(clientChannel.getClientOutputStream(), true);
+        out.println(getLine(0));
+        // simulate a client crash by stopping its heartbeat without closing its streams
+        clientChannel.close();
+
+        final BufferedReader in = new BufferedReader(
+                new InputStreamReader(serverChannel.getServerInputStream()));
+        Assert.assertEquals("invalid line", getLine(0), in.readLine());
+        try {
+            in.readLine();
+            Assert.fail("read should fail after client heartbeat stops");
+        } catch (java.io.IOException e) {
+            Assert.assertTrue("invalid exception message: " + e.getMessage(),
+                              e.getMessage().contains("no heartbeat"));
+        }
+        in.close();
+        serverChannel.close();
+    }
+
+    @Test
+    public void testStopEndsServerSession() throws Exception {
+
+        final SharedMemoryRulesServer server =
+                new SharedMemoryRulesServer(channelFile,
+                                            testDirectory.getDirectory(),
+                                            SharedMemoryChannel.WaitMode.PARK);
+        final Thread serverThread = new Thread(server);
+        serverThread.start();
+
+        // attach a client that never sends a request
+        final SharedMemoryChannel clientChannel =
+                SharedMemoryChannel.open(channelFile, SharedMemoryChannel.WaitMode.PARK, 5000);
+
+        server.stop();
+        serverThread.join(5000);
+        Assert.assertFalse("server should stop while waiting for a request",
+                           serverThread.isAlive());
+        Assert.assertEquals("client should see the end of responses",
+                            -1, clientChannel.getClientInputStream().read());
+        clientChannel.close();
+    }
+
+    @Test
+    public void testOpenTimeout() throws Exception {
+        try {
+            SharedMemoryChannel.open(channelFile, SharedMemoryChannel.WaitMode.PARK, 10);
+            Assert.fail("open should time out for missing channel file");
+        } catch (java.io.IOException e) {
+            Assert.assertTrue("invalid exception message: " + e.getMessage(),
+                              e.getMessage().contains("timed out"));
+        }
+    }
+
+    @Test
+    public void testRulesSessionResponsesMatchStreams() throws Exception {
+
+        final String requests =
+                "<list-configurations-request,1>\n" +
+                "<close-session-request,1,sid-0>\n";
+
+        final ByteArrayOutputStream expectedOut = new ByteArrayOutputStream();
+        new RulesSession("sid-0",
+                         new ByteArrayInputStream(requests.getBytes()),
+                         expectedOut,
+                         testDirectory.getManager()).run();
+
+        final SharedMemoryChannel serverChannel =
+                SharedMemoryChannel.create(channelFile,
+                                           SharedMemoryChannel.DEFAULT_RING_CAPACITY,
+                                           SharedMemoryChannel.WaitMode.PARK);
+        final RulesSession session = new RulesSession("sid-0",
+                                                      serverChannel.getServerInputStream(),
+                                                      serverChannel.getServerOutputStream(),
+                                                      testDirectory.getManager());
+        final Thread sessionThread = new Thread(session);
+        sessionThread.start();
+
+        final SharedMemoryChannel clientChannel =
+                SharedMemoryChannel.open(channelFile, SharedMemoryChannel.WaitMode.PARK, 1000);
+        final PrintWriter out = new PrintWriter(clientChannel.getClientOutputStream(), true);
+        final BufferedReader in = new BufferedReader(
+                new InputStreamReader(clientChannel.getClientInputStream()));
+        final StringBuilder responses = new StringBuilder();
+        for (String request : requests.split("\n")) {
+            out.println(request);
+            responses.append(in.readLine()).append('\n');
+        }
+        Assert.assertNull("stream should end after session is closed", in.readLine());
+
+        sessionThread.join();
+        out.close();
+        in.close();
+        clientChannel.close();
+        serverChannel.close();
+
+        Assert.assertEquals("invalid responses",
+                            expectedOut.toString().replace(System.getProperty("line.separator"), "\n"),
+                            responses.toString());
+    }
+
+    private static String getLine(int i) {
+        return "<larva-skeleton-request,1,sid-0," + i + ",4,5,6,7,8,9,10,11,12,13,14>";
+    }
+}
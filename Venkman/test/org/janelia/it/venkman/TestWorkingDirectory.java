@@ -41,7 +41,12 @@ public class TestWorkingDirectory {
         return manager;
     }
 
+    public File getDirectory() {
+        return directory;
+    }
+
     public void delete() {
+        manager.close();
         ConfigurationManager.recursiveDelete(directory);
         manager = null;
     }
@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) 2014 Howard Hughes Medical Institute.
+ * All rights reserved.
+ * Use is subject to Janelia Farm Research Campus Software Copyright 1.1
+ * license terms (http://license.janelia.org/license/jfrc_copyright_1_1.html).
+ */
+
+package org.janelia.it.venkman;
+
+import org.janelia.it.venkman.config.LarvaBehaviorParameters;
+import org.janelia.it.venkman.log.LogMessage;
+import org.janelia.it.venkman.rules.RuleData;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.List;
+
+/**
+ * Tests the {@link TrackLogger} class.
+ *
+ * @author Eric Trautman
+ */
+public class TrackLoggerTest {
+
+    @Test
+    public void testLog() throws Exception {
+
+        final ShadowRulesEvaluatorTest.RecordingLogger sessionLogger =
+                new ShadowRulesEvaluatorTest.RecordingLogger();
+        final TrackLogger trackLogger = new TrackLogger(sessionLogger, new File("."), "a");
+
+        trackLogger.log(new RuleData(22, RuleData.INTENSITY_FUNCTION_NAME, "x"));
+        trackLogger.logParameters(new LarvaBehaviorParameters());
+        trackLogger.logMessage("test");
+
+        final List<Object> entries = sessionLogger.getEntries();
+        Assert.assertEquals("invalid number of log entries (" + entries + ")",
+                            2, entries.size());
+
+        final RuleData ruleData = (RuleData) entries.get(0);
+        Assert.assertEquals("invalid rule data name for " + ruleData,
+                            "track a " + RuleData.INTENSITY_FUNCTION_NAME, ruleData.getName());
+        Assert.assertEquals("invalid rule data capture time for " + ruleData,
+                            22, ruleData.getCaptureTime());
+        Assert.assertEquals("invalid rule data value for " + ruleData,
+                            "x", ruleData.getValue());
+
+        Assert.assertTrue("message should be logged but found " + entries.get(1),
+                          entries.get(1) instanceof LogMessage);
+        Assert.assertTrue("message should be prefixed with track id but found " + entries.get(1),
+                          entries.get(1).toString().contains("message='track a test'"));
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2014 Howard Hughes Medical Institute.
+ * All rights reserved.
+ * Use is subject to Janelia Farm Research Campus Software Copyright 1.1
+ * license terms (http://license.janelia.org/license/jfrc_copyright_1_1.html).
+ */
+
+package org.janelia.it.venkman.config;
+
+import junit.framework.Assert;
+import org.janelia.it.venkman.TestWorkingDirectory;
+import org.janelia.it.venkman.config.rules.LEDFlashPattern;
+import org.janelia.it.venkman.rules.DefinedEnvironment;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.List;
+
+/**
+ * Tests the {@link ConfigurationCatalog} class.
+ *
+ * @author Eric Trautman
+ */
+public class ConfigurationCatalogTest {
+
+    private static final String GROUP = "catalog-group";
+
+    private TestWorkingDirectory testDirectory;
+    private ConfigurationManager manager;
+
+    @Before
+    public void setUp() throws Exception {
+        testDirectory = new TestWorkingDirectory();
+        manager = testDirectory.getManager();
+    }
+
+    @After
+    public void tearDown() {
+        testDirectory.delete();
+    }
+
+    @Test
+    public void testIndexIsPersistedAndReloaded() throws Exception {
+
+        final ParameterCollectionId stimulusId =
+                new ParameterCollectionId(ParameterCollectionCategory.STIMULUS, GROUP, "s1");
+        final DefinedEnvironment rules =
+                new DefinedEnvironment(new LEDFlashPattern("33"), null, 0.0);
+        manager.saveCollection(stimulusId, rules);
+
+        final ParameterCollectionId configurationId =
+                new ParameterCollectionId(ParameterCollectionCategory.CONFIGURATION, GROUP, "c1");
+        manager.saveCollection(configurationId,
+                               new Configuration(configurationId, null, stimulusId));
+
+        final File indexFile = new File(testDirectory.getDirectory(),
+                                        ConfigurationCatalog.INDEX_FILE_NAME);
+        Assert.assertTrue("index file not created", indexFile.exists());
+
+        manager.close();
+
+        final ConfigurationManager reloadedManager =
+                new ConfigurationManager(testDirectory.getDirectory());
+        try {
+            final List<String> names = reloadedManager.getConfigurationNames("1");
+            Assert.assertEquals("invalid configuration names after reload, names=" + names,
+                                1, names.size());
+            Assert.assertEquals("invalid rules code after reload",
+                                rules.getCode(),
+                                reloadedManager.getStimulusRulesCode(stimulusId));
+            Assert.assertEquals("invalid number of configurations for unsupported version",
+                                0, reloadedManager.getConfigurationNames("99").size());
+        } finally {
+            reloadedManager.close();
+        }
+    }
+
+    @Test
+    public void testReferences() throws Exception {
+
+        final ParameterCollectionId behaviorId =
+                new ParameterCollectionId(ParameterCollectionCategory.BEHAVIOR, GROUP, "b1");
+        manager.saveCollection(behaviorId, new LarvaBehaviorParameters());
+
+        final ParameterCollectionId configurationId =
+                new ParameterCollectionId(ParameterCollectionCategory.CONFIGURATION, GROUP, "c1");
+        manager.saveCollection(configurationId,
+                               new Configuration(configurationId, behaviorId, null));
+
+        try {
+            manager.deleteCollection(ParameterCollectionCategory.BEHAVIOR,
+                                     behaviorId.getFullName());
+            Assert.fail("referenced behavior collection should not be deleted");
+        } catch (IllegalArgumentException e) {
+            Assert.assertTrue("invalid message: " + e.getMessage(),
+                              e.getMessage().contains(configurationId.getFullName()));
+        }
+
+        manager.deleteCollection(ParameterCollectionCategory.CONFIGURATION,
+                                 configurationId.getFullName());
+        manager.deleteCollection(ParameterCollectionCategory.BEHAVIOR,
+                                 behaviorId.getFullName());
+
+        Assert.assertEquals("behavior collection should be removed from index",
+                            0,
+                            manager.getCollectionNamesInGroup(ParameterCollectionCategory.BEHAVIOR,
+                                                              GROUP).size());
+    }
+
+    @Test
+    public void testExternalChangesAreIndexed() throws Exception {
+
+        final ParameterCollectionId behaviorId =
+                new ParameterCollectionId(ParameterCollectionCategory.BEHAVIOR, GROUP, "b1");
+        manager.saveCollection(behaviorId, new LarvaBehaviorParameters());
+
+        // simulate another process adding a collection
+        final File groupDirectory =
+                new File(new File(testDirectory.getDirectory(),
+                                  ParameterCollectionCategory.BEHAVIOR.getName()),
+                         GROUP);
+        final File copy = new File(groupDirectory, "b2.xml");
+        final File original = new File(groupDirectory, "b1.xml");
+        Assert.assertTrue("failed to copy " + original.getAbsolutePath(),
+                          original.renameTo(copy));
+
+        List<String> names = null;
+        for (int i = 0; i < 100; i++) {
+            names = manager.getCollectionNamesInGroup(ParameterCollectionCategory.BEHAVIOR,
+                                                      GROUP);
+            if ((names.size() == 1) && names.get(0).endsWith("b2")) {
+                break;
+            }
+            Thread.sleep(100);
+        }
+
+        Assert.assertEquals("external rename not indexed, names=" + names,
+                            GROUP + "/b2", names.get(0));
+    }
+}
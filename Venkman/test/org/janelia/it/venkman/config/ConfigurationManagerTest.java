@@ -24,6 +24,8 @@ import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import java.io.File;
+import java.util.Arrays;
 import java.util.List;
 
 import static org.janelia.it.venkman.rules.ScaledRunIntensity.DEFAULT_NON_RUN_INTENSITY_VALUE;
@@ -477,6 +479,24 @@ public class ConfigurationManagerTest {
                             parameters.getMinHeadAngleForCasting(),
                             retrievedParameters.getMinHeadAngleForCasting());
 
+        // save again to replace the existing file
+        parameters.setMinHeadAngleForCasting(13.0);
+        manager.saveCollection(id, parameters);
+
+        Assert.assertEquals("invalid minimum head angle for casting after replacement",
+                            parameters.getMinHeadAngleForCasting(),
+                            manager.getBehaviorParameters(id).getMinHeadAngleForCasting());
+
+        final File groupDirectory =
+                new File(new File(testDirectory.getDirectory(),
+                                  id.getCategory().getName()),
+                         id.getGroupName());
+        final String[] fileNames = groupDirectory.list();
+        Assert.assertNotNull("missing " + groupDirectory, fileNames);
+        Assert.assertEquals("temporary file not removed from " + groupDirectory +
+                            ", names are " + Arrays.asList(fileNames),
+                            1, fileNames.length);
+
         return id;
     }
 
@@ -12,6 +12,11 @@ import org.junit.Assert;
 import org.junit.Test;
 
 import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.Random;
 
 /**
  * Tests the {@link MatrixFile} class.
@@ -65,6 +70,174 @@ public class MatrixFileTest {
         }
     }
 
+    @Test
+    public void testMappedParseMatchesDelimitedParse()
+            throws Exception {
+
+        final File largeFile = File.createTempFile("matrix-", ".txt");
+        largeFile.deleteOnExit();
+        final Random random = new Random(11);
+        final int rowCount = 400;
+        final int columnCount = 300;
+        final PrintWriter out = new PrintWriter(new FileWriter(largeFile));
+        try {
+            double value;
+            for (int row = 0; row < rowCount; row++) {
+                out.print("  ");
+                for (int column = 0; column < columnCount; column++) {
+                    value = random.nextDouble() * 100;
+                    switch (column % 4) {
+                        case 0:  out.printf("%.7e ", value); break;
+                        case 1:  out.print(value + ","); break;
+                        case 2:  out.print(-value + "\t"); break;
+                        default: out.print((int) value + " "); break;
+                    }
+                }
+                out.print("\r\n");
+            }
+        } finally {
+            out.close();
+        }
+
+        final File[] files = {
+                new File("test/matlab-10x10-windows.txt"),
+                new File("test/matlab-10x10-unix.txt"),
+                largeFile
+        };
+
+        for (File file : files) {
+            final MatrixFile mappedFile = new MatrixFile(file);
+            // equivalent (possessive) expression forces the line by line parser
+            final MatrixFile delimitedFile = new MatrixFile(file, "[\\s,]++");
+
+            final double[][] mappedValues = mappedFile.getValues();
+            final double[][] delimitedValues = delimitedFile.getValues();
+            Assert.assertEquals("invalid number of rows for " + file,
+                                delimitedFile.getNumberOfRows(),
+                                mappedFile.getNumberOfRows());
+            Assert.assertEquals("invalid number of columns for " + file,
+                                delimitedFile.getNumberOfColumns(),
+                                mappedFile.getNumberOfColumns());
+            for (int row = 0; row < mappedValues.length; row++) {
+                for (int column = 0; column < mappedValues[row].length; column++) {
+                    Assert.assertEquals("invalid value for row " + row +
+                                        " column " + column + " of " + file,
+                                        Double.doubleToLongBits(delimitedValues[row][column]),
+                                        Double.doubleToLongBits(mappedValues[row][column]));
+                }
+            }
+            Assert.assertEquals("invalid minimum for " + file,
+                                delimitedFile.getMinimumValue(),
+                                mappedFile.getMinimumValue(), 0.0);
+            Assert.assertEquals("invalid maximum for " + file,
+                                delimitedFile.getMaximumValue(),
+                                mappedFile.getMaximumValue(), 0.0);
+        }
+    }
+
+    @Test
+    public void testMappedParseErrorMessages()
+            throws Exception {
+
+        final File file = File.createTempFile("matrix-", ".txt");
+        file.deleteOnExit();
+
+        // errors in later rows are reported for the first failed row
+        writeRows(file, 500, 3, 300, "1 2");
+        assertErrorContains(file, "Row 300 contains 2 elements");
+
+        writeRows(file, 500, 3, 450, "1 x2 3");
+        assertErrorContains(file, "Row 450 column 2 contains invalid value 'x2'");
+    }
+
+    @Test
+    public void testMappedParseMatchesDelimitedParseForLineEdgeCases()
+            throws Exception {
+
+        final String[] contents = {
+                "1 2 3\r4 5 6\r",         // carriage return line endings
+                "1 2 3\r\n4 5 6",          // windows line endings without final terminator
+                "1 2,\n , ,\n 3\t4 \r\n",  // trailing delimiter and delimiter only line
+                "1 2\n\n3 4\n",            // blank line
+                "1 2\n3 4\n\n",            // trailing blank line
+                ",1,2\n3,4\n",             // leading delimiter
+                "\n",                     // only a blank line
+                ", ,\n"                   // only delimiters
+        };
+
+        final File file = File.createTempFile("matrix-", ".txt");
+        file.deleteOnExit();
+
+        for (String content : contents) {
+            final FileWriter out = new FileWriter(file);
+            try {
+                out.write(content);
+            } finally {
+                out.close();
+            }
+
+            final String description = "'" + content.replace("\r", "\\r").replace("\n", "\\n") + "'";
+            final String mappedResult = getParseResult(file, MatrixFile.DEFAULT_DELIMITER);
+            // equivalent (possessive) expression forces the line by line parser
+            final String delimitedResult = getParseResult(file, "[\\s,]++");
+            Assert.assertEquals("mapped parse differs for " + description,
+                                delimitedResult, mappedResult);
+        }
+    }
+
+    /**
+     * @return the parsed values or the parse error message for the specified file.
+     */
+    private static String getParseResult(File file,
+                                         String delimiter) {
+        String result;
+        try {
+            final MatrixFile matrixFile = new MatrixFile(file, delimiter);
+            final StringBuilder sb = new StringBuilder();
+            for (double[] row : matrixFile.getValues()) {
+                sb.append(Arrays.toString(row)).append('\n');
+            }
+            result = sb.toString();
+        } catch (IllegalArgumentException e) {
+            result = e.getMessage();
+        }
+        return result;
+    }
+
+    private static void writeRows(File file,
+                                  int rowCount,
+                                  int columnCount,
+                                  int badRowNumber,
+                                  String badRow)
+            throws IOException {
+        final PrintWriter out = new PrintWriter(new FileWriter(file));
+        try {
+            for (int row = 1; row <= rowCount; row++) {
+                if (row == badRowNumber) {
+                    out.println(badRow);
+                } else {
+                    for (int column = 0; column < columnCount; column++) {
+                        out.print(row + " ");
+                    }
+                    out.println();
+                }
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    private static void assertErrorContains(File file,
+                                            String expectedMessage) {
+        try {
+            new MatrixFile(file);
+            Assert.fail("invalid matrix file should cause exception");
+        } catch (IllegalArgumentException e) {
+            Assert.assertTrue("invalid message '" + e.getMessage() + "'",
+                              e.getMessage().contains(expectedMessage));
+        }
+    }
+
     @Test(expected = IllegalArgumentException.class)
     public void testMissingFile() {
         new MatrixFile(new File("missing-file.txt"));
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2014 Howard Hughes Medical Institute.
+ * All rights reserved.
+ * Use is subject to Janelia Farm Research Campus Software Copyright 1.1
+ * license terms (http://license.janelia.org/license/jfrc_copyright_1_1.html).
+ */
+
+package org.janelia.it.venkman.data;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import static org.janelia.it.venkman.data.LarvaBehaviorMode.*;
+
+/**
+ * Tests the {@link BehaviorBoutIndex} class.
+ *
+ * @author Eric Trautman
+ */
+public class BehaviorBoutIndexTest {
+
+    @Test
+    public void testBoutLookup() throws Exception {
+
+        final LarvaBehaviorMode[] modes = {
+                RUN, RUN, RUN, STOP, CAST_LEFT, CAST_LEFT, RUN, RUN
+        };
+        final BehaviorBoutIndex index =
+                new BehaviorBoutIndex(getTimes(modes.length), encode(modes));
+
+        Assert.assertEquals("invalid bout count", 4, index.getBoutCount());
+
+        final int[] expectedBouts = { 0, 0, 0, 1, 2, 2, 3, 3 };
+        for (int i = 0; i < expectedBouts.length; i++) {
+            Assert.assertEquals("invalid bout for frame " + i,
+                                expectedBouts[i], index.getBoutIndex(i));
+        }
+
+        Assert.assertEquals("invalid bout for negative frame",
+                            -1, index.getBoutIndex(-1));
+        Assert.assertEquals("invalid bout for frame past end",
+                            -1, index.getBoutIndex(modes.length));
+
+        Assert.assertEquals("invalid start", 4, index.getStart(2));
+        Assert.assertEquals("invalid stop", 5, index.getStop(2));
+        Assert.assertEquals("invalid mode", CAST_LEFT, index.getMode(2));
+        Assert.assertEquals("invalid frame count", 2, index.getFrameCount(2));
+    }
+
+    @Test
+    public void testBoutStatistics() throws Exception {
+
+        final LarvaBehaviorMode[] modes = {
+                RUN, RUN, RUN, STOP, RUN, RUN, null, null
+        };
+        final BehaviorBoutIndex index =
+                new BehaviorBoutIndex(getTimes(modes.length), encode(modes));
+
+        // durations are measured to the start of the next bout
+        Assert.assertEquals("invalid first run duration",
+                            300, index.getDuration(0));
+        Assert.assertEquals("invalid final bout duration",
+                            100, index.getDuration(3));
+
+        final BehaviorBoutIndex.BoutStatistics runStatistics =
+                index.getBoutStatistics(RUN);
+        Assert.assertEquals("invalid run bout count",
+                            2, runStatistics.getBoutCount());
+        Assert.assertEquals("invalid run frame count",
+                            5, runStatistics.getFrameCount());
+        Assert.assertEquals("invalid run total duration",
+                            500, runStatistics.getTotalDuration());
+        Assert.assertEquals("invalid run mean duration",
+                            250.0, runStatistics.getMeanDuration(), 0.0001);
+        Assert.assertEquals("invalid run minimum duration",
+                            200, runStatistics.getMinimumDuration());
+        Assert.assertEquals("invalid run maximum duration",
+                            300, runStatistics.getMaximumDuration());
+
+        // frames without a mode are treated as ignored
+        Assert.assertEquals("invalid ignore bout count",
+                            1, index.getBoutStatistics(IGNORE).getBoutCount());
+        Assert.assertEquals("invalid back up bout count",
+                            0, index.getBoutStatistics(BACK_UP).getBoutCount());
+    }
+
+    @Test
+    public void testEmptyIndex() throws Exception {
+        final BehaviorBoutIndex index =
+                new BehaviorBoutIndex(new long[0], new byte[0]);
+        Assert.assertEquals("invalid bout count", 0, index.getBoutCount());
+        Assert.assertEquals("invalid bout for first frame",
+                            -1, index.getBoutIndex(0));
+    }
+
+    private static long[] getTimes(int count) {
+        final long[] times = new long[count];
+        for (int i = 0; i < count; i++) {
+            times[i] = i * 100;
+        }
+        return times;
+    }
+
+    private static byte[] encode(LarvaBehaviorMode[] modes) {
+        final byte[] encoded = new byte[modes.length];
+        for (int i = 0; i < modes.length; i++) {
+            encoded[i] = BehaviorModeComparison.encode(modes[i]);
+        }
+        return encoded;
+    }
+}
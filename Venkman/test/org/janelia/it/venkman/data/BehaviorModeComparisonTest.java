@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2014 Howard Hughes Medical Institute.
+ * All rights reserved.
+ * Use is subject to Janelia Farm Research Campus Software Copyright 1.1
+ * license terms (http://license.janelia.org/license/jfrc_copyright_1_1.html).
+ */
+
+package org.janelia.it.venkman.data;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import static org.janelia.it.venkman.data.LarvaBehaviorMode.*;
+
+/**
+ * Tests the {@link BehaviorModeComparison} class.
+ *
+ * @author Eric Trautman
+ */
+public class BehaviorModeComparisonTest {
+
+    @Test
+    public void testIndexAlignedDifferences() throws Exception {
+
+        final LarvaBehaviorMode[] actual = {
+                RUN, RUN, STOP, STOP, RUN, CAST_LEFT, CAST_LEFT, RUN, IGNORE, RUN
+        };
+        final LarvaBehaviorMode[] expected = {
+                RUN, RUN, RUN,  RUN,  RUN, SAMPLING,  BACK_UP,   RUN, STOP,   STOP
+        };
+
+        final long[] times = getTimes(actual.length, 0, 33);
+        final BehaviorModeComparison comparison =
+                new BehaviorModeComparison(times, encode(actual),
+                                           times, encode(expected),
+                                           BehaviorModeComparison.DEFAULT_MAX_ALIGNMENT_MILLISECONDS);
+
+        // differences: 2, 3 (stop vs run), 6 (cast vs back-up), 9 (run vs stop)
+        // frame 5 is equivalent (cast vs sampling), frame 8 is ignored
+        Assert.assertEquals("invalid difference count",
+                            4, comparison.getDifferenceCount());
+        Assert.assertEquals("invalid similarity",
+                            60.0, comparison.getSimilarityPercentage(), 0.0001);
+
+        Assert.assertEquals("invalid next from start",
+                            2, comparison.getNextDifference(0));
+        Assert.assertEquals("invalid next from middle of difference",
+                            6, comparison.getNextDifference(2));
+        Assert.assertEquals("invalid next from end of difference",
+                            6, comparison.getNextDifference(3));
+        Assert.assertEquals("invalid next after 6",
+                            9, comparison.getNextDifference(6));
+        Assert.assertEquals("invalid next at end",
+                            -1, comparison.getNextDifference(9));
+
+        Assert.assertEquals("invalid previous from end",
+                            6, comparison.getPreviousDifference(9));
+        Assert.assertEquals("invalid previous from 6",
+                            2, comparison.getPreviousDifference(6));
+        Assert.assertEquals("invalid previous from middle of difference",
+                            -1, comparison.getPreviousDifference(3));
+        Assert.assertEquals("invalid previous from 5",
+                            2, comparison.getPreviousDifference(5));
+
+        Assert.assertEquals("invalid difference start",
+                            2, comparison.getDifferenceStart(3));
+    }
+
+    @Test
+    public void testTimeAlignment() throws Exception {
+
+        // actual captured at 30 fps, expected captured at 15 fps
+        final LarvaBehaviorMode[] actual = {
+                RUN, RUN, RUN, RUN, STOP, STOP, STOP, STOP
+        };
+        final LarvaBehaviorMode[] expected = {
+                RUN,      RUN,      RUN,      STOP
+        };
+
+        final BehaviorModeComparison comparison =
+                new BehaviorModeComparison(getTimes(actual.length, 1000, 33),
+                                           encode(actual),
+                                           getTimes(expected.length, 1000, 66),
+                                           encode(expected),
+                                           BehaviorModeComparison.DEFAULT_MAX_ALIGNMENT_MILLISECONDS);
+
+        Assert.assertEquals("invalid aligned count",
+                            8, comparison.getAlignedFrameCount());
+        Assert.assertEquals("invalid alignment for frame 3",
+                            1, comparison.getAlignedExpectedIndex(3));
+        Assert.assertEquals("invalid alignment for frame 4",
+                            2, comparison.getAlignedExpectedIndex(4));
+
+        // actual frames 4 and 5 (stop) align with expected frame 2 (run)
+        Assert.assertEquals("invalid difference count",
+                            2, comparison.getDifferenceCount());
+        Assert.assertTrue("frame 4 should differ", comparison.hasDifference(4));
+        Assert.assertFalse("frame 6 should not differ", comparison.hasDifference(6));
+    }
+
+    @Test
+    public void testUnalignedFramesAreSkipped() throws Exception {
+
+        // frames 3 and 4 are more than 50ms past the last expected frame
+        final LarvaBehaviorMode[] actual = { RUN, STOP, RUN, STOP, STOP };
+        final LarvaBehaviorMode[] expected = { RUN, RUN };
+
+        final BehaviorModeComparison comparison =
+                new BehaviorModeComparison(getTimes(actual.length, 0, 33),
+                                           encode(actual),
+                                           getTimes(expected.length, 0, 33),
+                                           encode(expected),
+                                           BehaviorModeComparison.DEFAULT_MAX_ALIGNMENT_MILLISECONDS);
+
+        Assert.assertEquals("invalid aligned count",
+                            3, comparison.getAlignedFrameCount());
+        Assert.assertEquals("invalid alignment for frame 3",
+                            -1, comparison.getAlignedExpectedIndex(3));
+        Assert.assertEquals("invalid unaligned count",
+                            2, comparison.getUnalignedFrameCount());
+        Assert.assertEquals("invalid difference count",
+                            1, comparison.getDifferenceCount());
+        Assert.assertEquals("similarity should only include aligned frames",
+                            66.6667, comparison.getSimilarityPercentage(), 0.0001);
+    }
+
+    @Test
+    public void testConfusionMatrixAndModeStatistics() throws Exception {
+
+        final LarvaBehaviorMode[] actual = {
+                RUN, RUN, RUN, STOP, CAST_LEFT, CAST_RIGHT
+        };
+        final LarvaBehaviorMode[] expected = {
+                RUN, RUN, STOP, RUN, SAMPLING, SAMPLING
+        };
+
+        final long[] times = getTimes(actual.length, 0, 33);
+        final BehaviorModeComparison comparison =
+                new BehaviorModeComparison(times, encode(actual),
+                                           times, encode(expected),
+                                           BehaviorModeComparison.DEFAULT_MAX_ALIGNMENT_MILLISECONDS);
+
+        final int[][] matrix = comparison.getConfusionMatrix();
+        Assert.assertEquals("invalid run/run count",
+                            2, matrix[RUN.ordinal()][RUN.ordinal()]);
+        Assert.assertEquals("invalid stop/run count",
+                            1, matrix[STOP.ordinal()][RUN.ordinal()]);
+        Assert.assertEquals("invalid sampling/cast-left count",
+                            1, matrix[SAMPLING.ordinal()][CAST_LEFT.ordinal()]);
+
+        final BehaviorModeComparison.ModeStatistics runStats =
+                comparison.getModeStatistics(RUN);
+        Assert.assertEquals("invalid run true positives",
+                            2, runStats.getTruePositives());
+        Assert.assertEquals("invalid run false positives",
+                            1, runStats.getFalsePositives());
+        Assert.assertEquals("invalid run false negatives",
+                            1, runStats.getFalseNegatives());
+        Assert.assertEquals("invalid run F1",
+                            (2.0 * 2) / ((2.0 * 2) + 1 + 1),
+                            runStats.getF1Score(), 0.0001);
+
+        final BehaviorModeComparison.ModeStatistics castStats =
+                comparison.getModeStatistics(CAST_LEFT);
+        Assert.assertEquals("sampling should match cast left",
+                            1.0, castStats.getPrecision(), 0.0001);
+    }
+
+    private static long[] getTimes(int count,
+                                   long start,
+                                   long interval) {
+        final long[] times = new long[count];
+        for (int i = 0; i < count; i++) {
+            times[i] = start + (i * interval);
+        }
+        return times;
+    }
+
+    private static byte[] encode(LarvaBehaviorMode[] modes) {
+        final byte[] encoded = new byte[modes.length];
+        for (int i = 0; i < modes.length; i++) {
+            encoded[i] = BehaviorModeComparison.encode(modes[i]);
+        }
+        return encoded;
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright (c) 2014 Howard Hughes Medical Institute.
+ * All rights reserved.
+ * Use is subject to Janelia Farm Research Campus Software Copyright 1.1
+ * license terms (http://license.janelia.org/license/jfrc_copyright_1_1.html).
+ */
+
+package org.janelia.it.venkman.data;
+
+import org.janelia.it.venkman.config.LarvaBehaviorParameters;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.LinkedList;
+import java.util.Random;
+
+/**
+ * Tests the {@link BulkKinematics} class.
+ *
+ * @author Eric Trautman
+ */
+public class BulkKinematicsTest {
+
+    @Test
+    public void testDeriveMatchesFrameByFrameDerivation() throws Exception {
+
+        final LarvaSkeleton[] skeletons = getSkeletons();
+        final BulkKinematics kinematics = new BulkKinematics(skeletons);
+
+        Assert.assertEquals("invalid size", skeletons.length, kinematics.size());
+
+        final LarvaBehaviorParameters defaultParameters = new LarvaBehaviorParameters();
+        validateDerivation("default", skeletons, kinematics, defaultParameters);
+
+        final LarvaBehaviorParameters sensitiveParameters = new LarvaBehaviorParameters();
+        sensitiveParameters.setMinBehaviorModeDuration(100);
+        sensitiveParameters.setMinHeadAngleForCasting(10.0);
+        sensitiveParameters.setMinCentroidSpeedToFlagJump(20.0);
+        sensitiveParameters.setMaxJumpFramesToSkip(2);
+        validateDerivation("sensitive", skeletons, kinematics, sensitiveParameters);
+    }
+
+    @Test
+    public void testDeriveEmptyRun() throws Exception {
+        final BulkKinematics kinematics = new BulkKinematics(new LarvaSkeleton[0]);
+        final BulkKinematics.Result result = kinematics.derive(new LarvaBehaviorParameters());
+        Assert.assertEquals("invalid number of modes",
+                            0, result.getBehaviorModes().length);
+    }
+
+    private void validateDerivation(String context,
+                                    LarvaSkeleton[] skeletons,
+                                    BulkKinematics kinematics,
+                                    LarvaBehaviorParameters parameters) {
+
+        final BulkKinematics.Result result = kinematics.derive(parameters);
+
+        final LinkedList<LarvaFrameData> frameHistory = new LinkedList<LarvaFrameData>();
+        LarvaFrameData frameData;
+        String frameContext;
+        int skippedCount = 0;
+        int modeChangeCount = 0;
+        for (int i = 0; i < skeletons.length; i++) {
+
+            frameData = new LarvaFrameData(skeletons[i].getClone());
+            frameData.calculateDerivedData(frameHistory, parameters);
+
+            frameContext = context + " frame " + i + " has invalid ";
+
+            Assert.assertEquals(frameContext + "behavior mode",
+                                frameData.getBehaviorMode(), result.getBehaviorModes()[i]);
+            assertIdentical(frameContext + "body angle speed",
+                            frameData.getBodyAngleSpeed(), result.getBodyAngleSpeed()[i]);
+            assertIdentical(frameContext + "smoothed body angle speed",
+                            frameData.getSmoothedBodyAngleSpeed(),
+                            result.getSmoothedBodyAngleSpeed()[i]);
+            assertIdentical(frameContext + "head angle speed",
+                            frameData.getHeadAngleSpeed(), result.getHeadAngleSpeed()[i]);
+            assertIdentical(frameContext + "smoothed head angle speed",
+                            frameData.getSmoothedHeadAngleSpeed(),
+                            result.getSmoothedHeadAngleSpeed()[i]);
+            assertIdentical(frameContext + "tail speed",
+                            frameData.getTailSpeed(), result.getTailSpeed()[i]);
+            assertIdentical(frameContext + "midpoint speed",
+                            frameData.getMidpointSpeed(), result.getMidpointSpeed()[i]);
+            assertIdentical(frameContext + "head speed",
+                            frameData.getHeadSpeed(), result.getHeadSpeed()[i]);
+            assertIdentical(frameContext + "centroid speed",
+                            frameData.getCentroidSpeed(), result.getCentroidSpeed()[i]);
+            assertIdentical(frameContext + "dot product",
+                            frameData.getTailSpeedDotBodyAngle(),
+                            result.getTailSpeedDotBodyAngle()[i]);
+            assertIdentical(frameContext + "smoothed dot product",
+                            frameData.getSmoothedTailSpeedDotBodyAngle(),
+                            result.getSmoothedTailSpeedDotBodyAngle()[i]);
+            assertIdentical(frameContext + "derived max length",
+                            frameData.getDerivedMaxLength(), result.getDerivedMaxLength()[i]);
+
+            if (frameData.getPercentageOfMaxLength() == null) {
+                Assert.assertTrue(frameContext + "percentage of max length",
+                                  Double.isNaN(result.getPercentageOfMaxLength()[i]));
+            } else {
+                assertIdentical(frameContext + "percentage of max length",
+                                frameData.getPercentageOfMaxLength(),
+                                result.getPercentageOfMaxLength()[i]);
+            }
+
+            if (frameData.getJumpFramesSkipped() == null) {
+                Assert.assertEquals(frameContext + "jump frames skipped",
+                                    0, result.getJumpFramesSkipped()[i]);
+            } else {
+                Assert.assertEquals(frameContext + "jump frames skipped",
+                                    frameData.getJumpFramesSkipped().intValue(),
+                                    result.getJumpFramesSkipped()[i]);
+                skippedCount++;
+            }
+
+            if ((i > 0) &&
+                (frameData.getBehaviorMode() != frameHistory.getFirst().getBehaviorMode())) {
+                modeChangeCount++;
+            }
+
+            frameHistory.addFirst(frameData);
+        }
+
+        // make sure the synthetic run exercises the interesting cases
+        Assert.assertTrue(context + " run should have skipped frames", skippedCount > 0);
+        Assert.assertTrue(context + " run should have mode changes", modeChangeCount > 2);
+    }
+
+    private static void assertIdentical(String message,
+                                        double expected,
+                                        double actual) {
+        Assert.assertEquals(message,
+                            Double.doubleToLongBits(expected),
+                            Double.doubleToLongBits(actual));
+    }
+
+    /**
+     * @return skeletons for a larva that wanders (crossing the tail
+     *         bearing branch point), casts, and has periodic tracker jumps
+     *         (including runs of jumps that exceed the skip limit).
+     */
+    private static LarvaSkeleton[] getSkeletons() {
+        final Random random = new Random(48);
+        final int frameCount = 600;
+        final LarvaSkeleton[] skeletons = new LarvaSkeleton[frameCount];
+
+        long time = 0;
+        double x = 50;
+        double y = 50;
+        double bearing = 150.0;
+        double headAngle;
+        double jumpOffset;
+        for (int i = 0; i < frameCount; i++) {
+
+            if ((i % 150) > 100) {
+                headAngle = 50.0 * Math.sin((i % 150) * Math.PI / 20.0);
+            } else {
+                headAngle = random.nextGaussian() * 3.0;
+                bearing = bearing + 0.8 + (random.nextGaussian() * 0.5);
+                if (bearing > 180.0) {
+                    bearing = bearing - 360.0;
+                }
+                final double radians = Math.toRadians(bearing);
+                x = x - (0.05 * Math.cos(radians));
+                y = y - (0.05 * Math.sin(radians));
+            }
+
+            if (((i % 97) == 0) || ((i >= 400) && (i < 408))) {
+                jumpOffset = 25.0;
+            } else {
+                jumpOffset = 0;
+            }
+
+            final double radians = Math.toRadians(bearing);
+            final double length = 2.0 + (random.nextDouble() * 0.2);
+            final TrackerPoint tail = new TrackerPoint(x + jumpOffset, y);
+            final TrackerPoint midpoint =
+                    new TrackerPoint(tail.getX() - (Math.cos(radians) * length / 2),
+                                     tail.getY() - (Math.sin(radians) * length / 2));
+            final double headRadians = radians + Math.toRadians(headAngle);
+            final TrackerPoint head =
+                    new TrackerPoint(midpoint.getX() - (Math.cos(headRadians) * length / 2),
+                                     midpoint.getY() - (Math.sin(headRadians) * length / 2));
+
+            skeletons[i] = new LarvaSkeleton(time,
+                                             head,
+                                             midpoint,
+                                             tail,
+                                             length,
+                                             midpoint,
+                                             headAngle,
+                                             bearing);
+
+            time = time + 30 + random.nextInt(8);
+        }
+
+        return skeletons;
+    }
+}
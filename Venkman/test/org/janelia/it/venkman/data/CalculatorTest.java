@@ -13,6 +13,7 @@ import org.junit.Test;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Random;
 
 import static org.janelia.it.venkman.TestUtilities.getScaledValue;
 
@@ -407,4 +408,128 @@ public class CalculatorTest {
         }
     }
 
+    @Test
+    public void testVariantsMatchBaselineFormulas() {
+
+        final Random random = new Random(47);
+        final Calculator.MutablePoint mutablePoint = new Calculator.MutablePoint();
+
+        TrackerPoint a;
+        TrackerPoint b;
+        TrackerPoint c;
+        TrackerPoint d;
+        double angle;
+        TrackerPoint expectedPoint;
+        double expectedDotProduct;
+        boolean expectedIsLeft;
+        for (int i = 0; i < 1000; i++) {
+            a = new TrackerPoint(random.nextDouble() * 200, random.nextDouble() * 200);
+            b = new TrackerPoint(random.nextDouble() * 200, random.nextDouble() * 200);
+            c = new TrackerPoint(random.nextDouble() * 200, random.nextDouble() * 200);
+            d = new TrackerPoint(random.nextDouble() * 200, random.nextDouble() * 200);
+            angle = (random.nextDouble() * 360) - 180;
+
+            expectedPoint = getBaselineUnitVectorPoint(angle);
+            Assert.assertEquals("invalid unit vector for angle " + angle,
+                                expectedPoint, Calculator.getUnitVectorPointForTrackerAngle(angle));
+            Calculator.setUnitVectorPointForTrackerAngle(angle, mutablePoint);
+            Assert.assertEquals("invalid mutable unit vector for angle " + angle,
+                                expectedPoint, mutablePoint.toTrackerPoint());
+
+            expectedDotProduct = getBaselineDotProduct(a, b, c, d);
+            Assert.assertEquals("invalid dot product for " + a + b + c + d,
+                                expectedDotProduct,
+                                Calculator.getDotProduct(a, b, c, d),
+                                0.0);
+            Assert.assertEquals("invalid primitive dot product for " + a + b + c + d,
+                                expectedDotProduct,
+                                Calculator.getDotProduct(a.getX(), a.getY(),
+                                                         b.getX(), b.getY(),
+                                                         c.getX(), c.getY(),
+                                                         d.getX(), d.getY()),
+                                0.0);
+
+            expectedIsLeft = isBaselineCoordinateLeftOfVector(a, b, c);
+            Assert.assertEquals("invalid left of vector result for " + a + b + c,
+                                expectedIsLeft,
+                                Calculator.isCoordinateLeftOfVector(a, b, c));
+            Assert.assertEquals("invalid primitive left of vector result for " + a + b + c,
+                                expectedIsLeft,
+                                Calculator.isCoordinateLeftOfVector(a.getX(), a.getY(),
+                                                                    b.getX(), b.getY(),
+                                                                    c.getX(), c.getY()));
+
+            expectedPoint = getBaselineRotatedPoint(a, Math.toRadians(angle), b);
+            Assert.assertEquals("invalid rotation of " + a + " around " + b,
+                                expectedPoint,
+                                Calculator.getRotatedPoint(a, Math.toRadians(angle), b));
+            Calculator.setRotatedPoint(a.getX(), a.getY(),
+                                       Math.toRadians(angle),
+                                       b.getX(), b.getY(),
+                                       mutablePoint);
+            Assert.assertEquals("invalid mutable rotation of " + a + " around " + b,
+                                expectedPoint, mutablePoint.toTrackerPoint());
+        }
+    }
+
+    // The baseline methods below are copies of the original (point based)
+    // Calculator implementations.  They are used to verify that the
+    // allocation-free variants still produce identical results.
+
+    static TrackerPoint getBaselineUnitVectorPoint(double angleInDegrees) {
+        final double translatedAngleInDegrees;
+        if (angleInDegrees < 0.0) {
+            translatedAngleInDegrees = 180.0 + angleInDegrees;
+        } else {
+            translatedAngleInDegrees = angleInDegrees - 180.0;
+        }
+        final double angleInRadians = Math.toRadians(translatedAngleInDegrees);
+        return new TrackerPoint(Math.cos(angleInRadians),
+                                Math.sin(angleInRadians));
+    }
+
+    static double getBaselineDotProduct(TrackerPoint vectorAStart,
+                                        TrackerPoint vectorAStop,
+                                        TrackerPoint vectorBStart,
+                                        TrackerPoint vectorBStop) {
+
+        final double vectorADeltaX = vectorAStop.getX() - vectorAStart.getX();
+        final double vectorADeltaY = vectorAStop.getY() - vectorAStart.getY();
+
+        final double vectorBDeltaX = vectorBStop.getX() - vectorBStart.getX();
+        final double vectorBDeltaY = vectorBStop.getY() - vectorBStart.getY();
+
+        return (vectorADeltaX * vectorBDeltaX) +
+               (vectorADeltaY * vectorBDeltaY);
+    }
+
+    private static boolean isBaselineCoordinateLeftOfVector(TrackerPoint coordinate,
+                                                            TrackerPoint vectorStart,
+                                                            TrackerPoint vectorStop) {
+        final double Ax = vectorStart.getX();
+        final double Ay = vectorStart.getY();
+        final double Bx = vectorStop.getX();
+        final double By = vectorStop.getY();
+        final double product =
+                ((Bx - Ax) * (coordinate.getY() - Ay)) -
+                ((By - Ay) * (coordinate.getX() - Ax));
+
+        return (product < 0.0);
+    }
+
+    private static TrackerPoint getBaselineRotatedPoint(TrackerPoint originalPoint,
+                                                        double angleInRadians,
+                                                        TrackerPoint rotationCenter) {
+
+        final double deltaX = originalPoint.getX() - rotationCenter.getX();
+        final double deltaY = originalPoint.getY() - rotationCenter.getY();
+        final double rotatedX = rotationCenter.getX() +
+                                (Math.cos(angleInRadians) * deltaX) -
+                                (Math.sin(angleInRadians) * deltaY);
+        final double rotatedY = rotationCenter.getY() +
+                                (Math.sin(angleInRadians) * deltaX) +
+                                (Math.cos(angleInRadians) * deltaY);
+        return new TrackerPoint(rotatedX, rotatedY);
+    }
+
 }
\ No newline at end of file
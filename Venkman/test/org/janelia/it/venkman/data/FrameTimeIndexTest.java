@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2014 Howard Hughes Medical Institute.
+ * All rights reserved.
+ * Use is subject to Janelia Farm Research Campus Software Copyright 1.1
+ * license terms (http://license.janelia.org/license/jfrc_copyright_1_1.html).
+ */
+
+package org.janelia.it.venkman.data;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the {@link FrameTimeIndex} class.
+ *
+ * @author Eric Trautman
+ */
+public class FrameTimeIndexTest {
+
+    @Test
+    public void testSeek() throws Exception {
+
+        final FrameTimeIndex index =
+                new FrameTimeIndex(new long[] { 100, 133, 166, 166, 200, 300 });
+
+        Assert.assertEquals("invalid last frame before start",
+                            -1, index.getLastFrameAtOrBefore(99));
+        Assert.assertEquals("invalid last frame at exact time",
+                            1, index.getLastFrameAtOrBefore(133));
+        Assert.assertEquals("invalid last frame between times",
+                            1, index.getLastFrameAtOrBefore(150));
+        Assert.assertEquals("invalid last frame for duplicate times",
+                            3, index.getLastFrameAtOrBefore(166));
+        Assert.assertEquals("invalid last frame after end",
+                            5, index.getLastFrameAtOrBefore(999));
+
+        Assert.assertEquals("invalid first frame at or after duplicate time",
+                            2, index.getFirstFrameAtOrAfter(166));
+        Assert.assertEquals("invalid first frame after duplicate time",
+                            4, index.getFirstFrameAfter(166));
+        Assert.assertEquals("invalid first frame after end",
+                            6, index.getFirstFrameAfter(300));
+
+        Assert.assertEquals("invalid nearest frame before start",
+                            0, index.getNearestFrame(0));
+        Assert.assertEquals("invalid nearest frame (closer to later)",
+                            1, index.getNearestFrame(130));
+        Assert.assertEquals("invalid nearest frame (tie)",
+                            4, index.getNearestFrame(250));
+        Assert.assertEquals("invalid nearest frame after end",
+                            5, index.getNearestFrame(999));
+    }
+
+    @Test
+    public void testFrameRange() throws Exception {
+
+        final FrameTimeIndex index =
+                new FrameTimeIndex(new long[] { 0, 33, 66, 100, 133 });
+
+        int[] range = index.getFrameRange(30, 100);
+        Assert.assertNotNull("range should be found", range);
+        Assert.assertEquals("invalid first frame", 1, range[0]);
+        Assert.assertEquals("invalid last frame", 3, range[1]);
+
+        range = index.getFrameRange(34, 65);
+        Assert.assertNull("range between frames should be empty", range);
+
+        range = index.getFrameRange(100, 30);
+        Assert.assertNull("inverted range should be empty", range);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnorderedTimes() throws Exception {
+        new FrameTimeIndex(new long[] { 0, 33, 20 });
+    }
+}
@@ -9,12 +9,16 @@ package org.janelia.it.venkman.data;
 
 import org.janelia.it.venkman.TestUtilities;
 import org.janelia.it.venkman.config.LarvaBehaviorParameters;
+import org.janelia.it.venkman.config.rules.KinematicVariable;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.EnumSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Random;
+import java.util.Set;
 
 import static org.janelia.it.venkman.TestUtilities.getScaledValue;
 
@@ -278,6 +282,77 @@ public class LarvaFrameDataTest {
                             getScaledValue(currentFrame.getCentroidSpeed()));
     }
 
+    @Test
+    public void testTailSpeedDotBodyAngleMatchesBaselineFormula() throws Exception {
+
+        final Random random = new Random(47);
+        final LinkedList<LarvaFrameData> history = new LinkedList<LarvaFrameData>();
+        double x = 100.0;
+        double y = 100.0;
+        LarvaFrameData frameData;
+        LarvaFrameData previousFrameData;
+        TrackerPoint previousTail;
+        TrackerPoint tail;
+        double expected;
+        for (int i = 0; i < 200; i++) {
+            x += (random.nextDouble() - 0.5) * 0.4;
+            y += (random.nextDouble() - 0.5) * 0.4;
+            frameData = new LarvaFrameData(
+                    new LarvaSkeleton(i * 33,
+                                      new TrackerPoint(x + 2.0, y),
+                                      new TrackerPoint(x + 1.0, y),
+                                      new TrackerPoint(x, y),
+                                      2.0,
+                                      new TrackerPoint(x + 1.0, y),
+                                      (random.nextDouble() * 360) - 180,
+                                      (random.nextDouble() * 360) - 180));
+            frameData.calculateDerivedData(history, parameters);
+
+            if (history.size() > 0) {
+                previousFrameData = history.getFirst();
+                previousTail = previousFrameData.getSkeleton().getTail();
+                tail = frameData.getSkeleton().getTail();
+                expected = CalculatorTest.getBaselineDotProduct(
+                        previousTail,
+                        tail,
+                        Calculator.ORIGIN,
+                        CalculatorTest.getBaselineUnitVectorPoint(frameData.getBodyAngle()));
+                Assert.assertEquals("invalid tail speed dot body angle for frame " + i,
+                                    expected, frameData.getTailSpeedDotBodyAngle(), 0.0);
+            }
+
+            history.addFirst(frameData);
+        }
+    }
+
+    @Test
+    public void testCalculateDeferredVelocities() throws Exception {
+
+        frameHistory.add(previousFrame);
+
+        final Set<KinematicVariable> requiredVariables =
+                EnumSet.of(KinematicVariable.PERCENTAGE_OF_MAX_LENGTH);
+        currentFrame.calculateDerivedData(frameHistory, parameters, requiredVariables);
+
+        Assert.assertEquals("head velocity should not be calculated until needed",
+                            0.0, currentFrame.getHeadSpeed(), 0.0);
+        Assert.assertEquals("invalid centroid velocity calculated",
+                            getScaledValue(33.33),
+                            getScaledValue(currentFrame.getCentroidSpeed()));
+
+        currentFrame.calculateDeferredData();
+
+        Assert.assertEquals("invalid deferred tail velocity calculated",
+                            getScaledValue(33.33),
+                            getScaledValue(currentFrame.getTailSpeed()));
+        Assert.assertEquals("invalid deferred mid point velocity calculated",
+                            getScaledValue(33.33),
+                            getScaledValue(currentFrame.getMidpointSpeed()));
+        Assert.assertEquals("invalid deferred head velocity calculated",
+                            getScaledValue(33.33),
+                            getScaledValue(currentFrame.getHeadSpeed()));
+    }
+
     @Test
     public void testDetectBackwardsMotion() throws Exception {
 
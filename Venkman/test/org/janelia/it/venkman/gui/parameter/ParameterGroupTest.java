@@ -8,10 +8,14 @@
 package org.janelia.it.venkman.gui.parameter;
 
 import org.janelia.it.venkman.config.LarvaBehaviorParameters;
+import org.janelia.it.venkman.config.rules.PositionalVariableFunction;
+import org.janelia.it.venkman.rules.DefinedEnvironment;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.List;
+
 /**
  * Tests the {@link ParameterGroup} class.
  *
@@ -50,4 +54,39 @@ public class ParameterGroupTest {
 
     }
 
+    @Test
+    public void testDescriptorsAreCached() throws Exception {
+        final List<ParameterDescriptor> descriptors =
+                ParameterDescriptor.getDescriptors(LarvaBehaviorParameters.class);
+        Assert.assertTrue("descriptors missing", descriptors.size() > 0);
+        Assert.assertSame("descriptors should be cached",
+                          descriptors,
+                          ParameterDescriptor.getDescriptors(LarvaBehaviorParameters.class));
+    }
+
+    @Test
+    public void testLazyComponentIsNotCreatedUntilNeeded() throws Exception {
+        DefinedEnvironment data = new DefinedEnvironment();
+        final PositionalVariableFunction originalFunction =
+                data.getIntensityFunction();
+
+        ParameterGroup<DefinedEnvironment> group =
+                new ParameterGroup<DefinedEnvironment>(data);
+
+        int lazyCount = 0;
+        for (ExperimentParameter p : group.getParameterList()) {
+            if (p instanceof LazyComponentParameter) {
+                Assert.assertFalse(p.getDisplayName() + " component should not be created",
+                                   ((LazyComponentParameter) p).isComponentCreated());
+                lazyCount++;
+            }
+        }
+        Assert.assertTrue("no lazy parameters found", lazyCount > 0);
+
+        group.applyParameters();
+
+        Assert.assertSame("original function should be retained",
+                          originalFunction, data.getIntensityFunction());
+    }
+
 }
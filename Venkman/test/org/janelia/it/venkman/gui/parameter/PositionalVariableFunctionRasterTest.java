@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2014 Howard Hughes Medical Institute.
+ * All rights reserved.
+ * Use is subject to Janelia Farm Research Campus Software Copyright 1.1
+ * license terms (http://license.janelia.org/license/jfrc_copyright_1_1.html).
+ */
+
+package org.janelia.it.venkman.gui.parameter;
+
+import org.janelia.it.venkman.config.rules.OutOfRangeErrorHandlingMethod;
+import org.janelia.it.venkman.config.rules.PositionalVariable;
+import org.janelia.it.venkman.config.rules.PositionalVariableFunction;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * Tests the {@link PositionalVariableFunctionRaster} class.
+ *
+ * @author Eric Trautman
+ */
+public class PositionalVariableFunctionRasterTest {
+
+    @Test
+    public void testUnzoomedImageMatchesArena() throws Exception {
+
+        final double[][] values = getGradientValues(5, 7);
+        final PositionalVariableFunction function =
+                new PositionalVariableFunction(PositionalVariable.HEAD,
+                                               400,
+                                               400,
+                                               OutOfRangeErrorHandlingMethod.END_SESSION_FOR_MINIMUM_AND_MAXIMUM,
+                                               values);
+        final int width = 60;
+        final int height = 40;
+        final double[][] arena = function.getArena(width, height);
+
+        final PositionalVariableFunctionRaster raster =
+                new PositionalVariableFunctionRaster(width, height);
+        raster.setValues(values);
+
+        Assert.assertEquals("small matrix should not be downsampled",
+                            1, raster.getLevelCount());
+
+        final BufferedImage image = raster.getImage();
+        int expected;
+        int actual;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                expected = PositionalVariableFunctionRaster.getRGB(arena[y][x]);
+                actual = image.getRGB(x, y) & 0xffffff;
+                Assert.assertTrue("invalid color for (" + x + ", " + y +
+                                  "), expected " + expected + " but was " + actual,
+                                  Math.abs(expected - actual) <= 1);
+            }
+        }
+    }
+
+    @Test
+    public void testDownsampledLevels() throws Exception {
+
+        final double[][] values = getGradientValues(1000, 800);
+        final PositionalVariableFunctionRaster raster =
+                new PositionalVariableFunctionRaster(100, 100);
+        raster.setValues(values);
+
+        // 1000 -> 500 -> 250 -> 125 -> 63
+        Assert.assertEquals("invalid level count",
+                            5, raster.getLevelCount());
+        Assert.assertEquals("invalid unzoomed level",
+                            3, raster.getRenderedLevel());
+
+        // gradient runs from 0 (left) to 100 (right)
+        final BufferedImage image = raster.getImage();
+        Assert.assertEquals("invalid left color",
+                            0, image.getRGB(0, 50) & 0xff, 1);
+        Assert.assertEquals("invalid right color",
+                            255, image.getRGB(99, 50) & 0xff, 1);
+
+        raster.zoom(16, 0, 0);
+        Assert.assertEquals("invalid zoomed level",
+                            0, raster.getRenderedLevel());
+        Assert.assertEquals("invalid zoomed right view",
+                            1.0 / 16, raster.getViewX(99), 0.0001);
+        Assert.assertTrue("zoomed right color should be dim",
+                          (image.getRGB(99, 50) & 0xff) < 20);
+    }
+
+    @Test
+    public void testZoomAndPan() throws Exception {
+
+        final PositionalVariableFunctionRaster raster =
+                new PositionalVariableFunctionRaster(101, 101);
+        raster.setValues(getGradientValues(11, 11));
+
+        raster.pan(10, 10);
+        Assert.assertEquals("unzoomed view should not pan",
+                            0.0, raster.getViewX(0), 0.0001);
+
+        // zoom around center keeps center fixed
+        raster.zoom(2, 50, 50);
+        Assert.assertEquals("invalid zoom", 2.0, raster.getZoom(), 0.0001);
+        Assert.assertEquals("invalid center after zoom",
+                            0.5, raster.getViewX(50), 0.0001);
+        Assert.assertEquals("invalid origin after zoom",
+                            0.25, raster.getViewX(0), 0.0001);
+
+        // pan content right by 50 pixels moves view left by a quarter
+        raster.pan(50, 0);
+        Assert.assertEquals("invalid origin after pan",
+                            0.0, raster.getViewX(0), 0.0001);
+
+        // pan is clamped to matrix bounds
+        raster.pan(-1000, -1000);
+        Assert.assertEquals("invalid clamped x origin",
+                            0.5, raster.getViewX(0), 0.0001);
+        Assert.assertEquals("invalid clamped y origin",
+                            0.5, raster.getViewY(0), 0.0001);
+
+        raster.zoom(1000, 0, 0);
+        Assert.assertEquals("zoom should be limited",
+                            PositionalVariableFunctionRaster.MAX_ZOOM,
+                            raster.getZoom(), 0.0001);
+
+        raster.resetView();
+        Assert.assertEquals("invalid zoom after reset",
+                            1.0, raster.getZoom(), 0.0001);
+        Assert.assertEquals("invalid origin after reset",
+                            0.0, raster.getViewX(0), 0.0001);
+    }
+
+    /**
+     * @return matrix with values that increase from 0 in the first
+     *         column to 100 in the last column.
+     */
+    private static double[][] getGradientValues(int columnCount,
+                                                int rowCount) {
+        final double[][] values = new double[rowCount][columnCount];
+        for (int row = 0; row < rowCount; row++) {
+            for (int column = 0; column < columnCount; column++) {
+                values[row][column] = (100.0 * column) / (columnCount - 1);
+            }
+        }
+        return values;
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2014 Howard Hughes Medical Institute.
+ * All rights reserved.
+ * Use is subject to Janelia Farm Research Campus Software Copyright 1.1
+ * license terms (http://license.janelia.org/license/jfrc_copyright_1_1.html).
+ */
+
+package org.janelia.it.venkman.jaxb;
+
+import org.janelia.it.venkman.TestWorkingDirectory;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Tests the {@link FunctionTableStore} class.
+ *
+ * @author Eric Trautman
+ */
+public class FunctionTableStoreTest {
+
+    private TestWorkingDirectory testDirectory;
+    private FunctionTableStore store;
+
+    @Before
+    public void setUp() throws Exception {
+        testDirectory = new TestWorkingDirectory();
+        store = new FunctionTableStore(new File(testDirectory.getDirectory(), "tables"), 100);
+        FunctionTableStore.setDefaultStore(store);
+    }
+
+    @After
+    public void tearDown() {
+        FunctionTableStore.setDefaultStore(null);
+        testDirectory.delete();
+    }
+
+    @Test
+    public void testSaveAndLoad() throws Exception {
+
+        final double[][] table = getTable(20, 30);
+        final String reference = store.save(table);
+        Assert.assertTrue("invalid reference " + reference,
+                          FunctionTableStore.isReference(reference));
+
+        // identical content is only stored once
+        final String secondReference = store.save(getTable(20, 30));
+        Assert.assertEquals("identical tables should have same reference",
+                            reference, secondReference);
+        final File[] files = store.getDirectory().listFiles();
+        Assert.assertNotNull("store directory not created", files);
+        Assert.assertEquals("invalid number of table files", 1, files.length);
+
+        final double[][] loadedTable = store.load(reference);
+        Assert.assertEquals("invalid row count", table.length, loadedTable.length);
+        for (int row = 0; row < table.length; row++) {
+            for (int column = 0; column < table[row].length; column++) {
+                Assert.assertEquals("invalid value for row " + row + " column " + column,
+                                    table[row][column], loadedTable[row][column], 0.0);
+            }
+        }
+
+        Assert.assertSame("loaded tables should be shared",
+                          loadedTable, store.load(reference));
+
+        final double[][] differentTable = getTable(20, 30);
+        differentTable[3][4] = -1;
+        Assert.assertFalse("different tables should have different references",
+                           reference.equals(store.save(differentTable)));
+    }
+
+    @Test
+    public void testJaggedTablesAreRejected() throws Exception {
+
+        final double[][][] jaggedTables = {
+                { {1, 2, 3}, {4, 5} },     // shorter later row
+                { {1}, {2, 3}, {4, 5, 6} } // longer later rows
+        };
+
+        for (double[][] table : jaggedTables) {
+            try {
+                FunctionTableStore.getHash(table);
+                Assert.fail("jagged table should not be hashed");
+            } catch (IllegalArgumentException e) {
+                Assert.assertTrue("invalid message: " + e.getMessage(),
+                                  e.getMessage().contains("table rows must all contain"));
+            }
+
+            try {
+                store.save(table);
+                Assert.fail("jagged table should not be saved");
+            } catch (IOException e) {
+                Assert.assertTrue("invalid message: " + e.getMessage(),
+                                  e.getMessage().contains("table rows must all contain"));
+            }
+        }
+
+        Assert.assertFalse("no table files should be written",
+                           store.getDirectory().exists());
+    }
+
+    @Test
+    public void testAdapters() throws Exception {
+
+        final DoubleMatrixAdapter matrixAdapter = new DoubleMatrixAdapter();
+
+        final double[][] smallTable = getTable(2, 3);
+        final String smallXml = matrixAdapter.marshal(smallTable);
+        Assert.assertFalse("small table should be marshalled as text",
+                           FunctionTableStore.isReference(smallXml));
+
+        final double[][] largeTable = getTable(20, 30);
+        final String largeXml = matrixAdapter.marshal(largeTable);
+        Assert.assertTrue("large table should be marshalled as reference",
+                          FunctionTableStore.isReference(largeXml));
+        Assert.assertEquals("invalid unmarshalled value",
+                            largeTable[19][29],
+                            matrixAdapter.unmarshal(largeXml)[19][29], 0.0);
+
+        final DoubleArrayAdapter arrayAdapter = new DoubleArrayAdapter();
+        final double[] largeArray = largeTable[0];
+        final String arrayXml = arrayAdapter.marshal(new double[150]);
+        Assert.assertTrue("large array should be marshalled as reference",
+                          FunctionTableStore.isReference(arrayXml));
+        Assert.assertEquals("invalid unmarshalled array length",
+                            150, arrayAdapter.unmarshal(arrayXml).length);
+        Assert.assertFalse("small array should be marshalled as text",
+                           FunctionTableStore.isReference(arrayAdapter.marshal(largeArray)));
+
+        FunctionTableStore.setDefaultStore(null);
+        try {
+            matrixAdapter.unmarshal(largeXml);
+            Assert.fail("reference should not be resolved without a store");
+        } catch (Exception e) {
+            Assert.assertTrue("invalid exception message: " + e.getMessage(),
+                              e.getMessage().contains("has not been registered"));
+        }
+    }
+
+    private static double[][] getTable(int rowCount,
+                                       int columnCount) {
+        final double[][] table = new double[rowCount][columnCount];
+        for (int row = 0; row < rowCount; row++) {
+            for (int column = 0; column < columnCount; column++) {
+                table[row][column] = (row * 1.5) + (column / 7.0);
+            }
+        }
+        return table;
+    }
+}
@@ -0,0 +1,282 @@
+/*
+ * Copyright (c) 2014 Howard Hughes Medical Institute.
+ * All rights reserved.
+ * Use is subject to Janelia Farm Research Campus Software Copyright 1.1
+ * license terms (http://license.janelia.org/license/jfrc_copyright_1_1.html).
+ */
+
+package org.janelia.it.venkman.log;
+
+import org.janelia.it.venkman.TestWorkingDirectory;
+import org.janelia.it.venkman.config.LarvaBehaviorParameters;
+import org.janelia.it.venkman.config.rules.LEDStimulus;
+import org.janelia.it.venkman.config.rules.Stimulus;
+import org.janelia.it.venkman.data.LarvaBehaviorMode;
+import org.janelia.it.venkman.data.LarvaFrameData;
+import org.janelia.it.venkman.data.LarvaSkeleton;
+import org.janelia.it.venkman.data.TrackerPoint;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Tests the {@link FrameLoggingPolicy} class and the expansion of
+ * compact frames by {@link LogReader}.
+ *
+ * @author Eric Trautman
+ */
+public class FrameLoggingPolicyTest {
+
+    private TestWorkingDirectory testDirectory;
+
+    @Before
+    public void setUp() throws Exception {
+        testDirectory = new TestWorkingDirectory();
+    }
+
+    @After
+    public void tearDown() {
+        testDirectory.delete();
+    }
+
+    @Test
+    public void testGetLogEntry() throws Exception {
+
+        final FrameLoggingPolicy policy = new FrameLoggingPolicy(3);
+        final LEDStimulus stimulus = new LEDStimulus(10.0, 30);
+        final List<LEDStimulus> stimulusList = stimulus.toList();
+
+        final boolean[] expectedFullFrames = {
+                true, false, false,  // interval
+                true,                // interval
+                true,                // behavior mode change
+                true, false, false,  // stimulus change (for reused instance)
+                true, false, false   // interval
+        };
+
+        LarvaFrameData frameData;
+        for (int i = 0; i < expectedFullFrames.length; i++) {
+            frameData = new LarvaFrameData(getSkeleton(i * 100, i, 0));
+            if (i >= 4) {
+                frameData.setValuesForTesting(LarvaBehaviorMode.RUN, 0);
+            }
+            if (i == 5) {
+                stimulus.addIntensityPercentage(5.0);
+            }
+            frameData.setStimulusList(stimulusList);
+
+            final Object logEntry = policy.getLogEntry(frameData);
+            if (expectedFullFrames[i]) {
+                Assert.assertSame("frame " + i + " should be logged in full",
+                                  frameData, logEntry);
+            } else {
+                Assert.assertTrue("frame " + i + " should be logged in compact form",
+                                  logEntry instanceof CompactFrameData);
+                Assert.assertSame("invalid skeleton for compact frame " + i,
+                                  frameData.getSkeleton(),
+                                  ((CompactFrameData) logEntry).getSkeleton());
+            }
+        }
+
+        Assert.assertEquals("invalid full frame count", 5, policy.getFullFrameCount());
+        Assert.assertEquals("invalid compact frame count", 6, policy.getCompactFrameCount());
+
+        final FrameLoggingPolicy fullPolicy = new FrameLoggingPolicy(1);
+        frameData = new LarvaFrameData(getSkeleton(0, 0, 0));
+        for (int i = 0; i < 3; i++) {
+            Assert.assertSame("all frames should be logged in full when policy is not tiered",
+                              frameData, fullPolicy.getLogEntry(frameData));
+        }
+    }
+
+    @Test
+    public void testReadExpandsCompactFrames() throws Exception {
+
+        final LarvaBehaviorParameters parameters = new LarvaBehaviorParameters();
+        final FrameLoggingPolicy policy = new FrameLoggingPolicy(10);
+        final LogThread logThread =
+                new LogThread(0, 10, testDirectory.getManager().getLogDirectory(), "tiered");
+        logThread.start();
+
+        final Random random = new Random(11);
+        final LinkedList<LarvaFrameData> frameHistory = new LinkedList<LarvaFrameData>();
+        final List<LarvaFrameData> originalFrames = new ArrayList<LarvaFrameData>();
+        double x = 100.0;
+        double y = 100.0;
+        LarvaFrameData frameData;
+        for (int i = 0; i < 500; i++) {
+            x += random.nextDouble() * 0.4;
+            y += (random.nextDouble() - 0.5) * 0.4;
+            frameData = new LarvaFrameData(getSkeleton(i * 33, x, y));
+            frameData.calculateDerivedData(frameHistory, parameters);
+            frameHistory.addFirst(frameData);
+            frameData.setStimulusList(new LEDStimulus((i / 50) * 10.0, 33).toList());
+            originalFrames.add(frameData);
+            logThread.offer(policy.getLogEntry(frameData));
+        }
+        logThread.interrupt();
+        logThread.join();
+
+        Assert.assertTrue("some frames should be compact", policy.getCompactFrameCount() > 0);
+
+        final LogReader reader = new LogReader(new File(logThread.getLogFilePathAndName()));
+        reader.read();
+        final List<LarvaFrameData> readFrames = reader.getSession().getFrameDataList();
+        Assert.assertEquals("invalid number of frames read",
+                            originalFrames.size(), readFrames.size());
+
+        LarvaFrameData original;
+        LarvaFrameData read;
+        for (int i = 0; i < originalFrames.size(); i++) {
+            original = originalFrames.get(i);
+            read = readFrames.get(i);
+            Assert.assertEquals("invalid time for frame " + i,
+                                original.getTime(), read.getTime());
+            Assert.assertEquals("invalid behavior mode for frame " + i,
+                                original.getBehaviorMode(), read.getBehaviorMode());
+            Assert.assertEquals("invalid smoothed body angle speed for frame " + i,
+                                original.getSmoothedBodyAngleSpeed(),
+                                read.getSmoothedBodyAngleSpeed(), 0.0);
+            Assert.assertEquals("invalid smoothed tail speed dot body angle for frame " + i,
+                                original.getSmoothedTailSpeedDotBodyAngle(),
+                                read.getSmoothedTailSpeedDotBodyAngle(), 0.0);
+            Assert.assertEquals("invalid head speed for frame " + i,
+                                original.getHeadSpeed(), read.getHeadSpeed(), 0.0);
+            Assert.assertEquals("invalid stimulus for frame " + i,
+                                getIntensity(original), getIntensity(read), 0.0);
+        }
+
+        final LogReader rangeReader = new LogReader(new File(logThread.getLogFilePathAndName()));
+        rangeReader.read(3300, 6600);
+        Assert.assertEquals("invalid number of frames read for range",
+                            101, rangeReader.getSession().getFrameDataList().size());
+    }
+
+    @Test
+    public void testReadExpandsCompactFramesWithParameterUpdate() throws Exception {
+
+        final LarvaBehaviorParameters originalParameters = new LarvaBehaviorParameters();
+        final LarvaBehaviorParameters updatedParameters = new LarvaBehaviorParameters();
+        updatedParameters.setDotProductThresholdForStraightModes(100.0);
+
+        final FrameLoggingPolicy policy = new FrameLoggingPolicy(10);
+        final LogThread logThread =
+                new LogThread(0, 10, testDirectory.getManager().getLogDirectory(), "update");
+        logThread.start();
+        logThread.offer(new ParameterSnapshot(originalParameters));
+
+        final int updateIndex = 255;
+        final Random random = new Random(11);
+        final LinkedList<LarvaFrameData> frameHistory = new LinkedList<LarvaFrameData>();
+        final LinkedList<LarvaFrameData> originalHistory = new LinkedList<LarvaFrameData>();
+        final List<LarvaFrameData> originalFrames = new ArrayList<LarvaFrameData>();
+        final List<LarvaFrameData> unchangedFrames = new ArrayList<LarvaFrameData>();
+        LarvaBehaviorParameters parameters = originalParameters;
+        double x = 100.0;
+        double y = 100.0;
+        LarvaSkeleton skeleton;
+        LarvaFrameData frameData;
+        for (int i = 0; i < 500; i++) {
+            if (i == updateIndex) {
+                parameters = updatedParameters;
+                logThread.offer(new ParameterSnapshot(updatedParameters,
+                                                      frameHistory.getFirst().getTime()));
+            }
+            x += random.nextDouble() * 0.4;
+            y += (random.nextDouble() - 0.5) * 0.4;
+            skeleton = getSkeleton(i * 33, x, y);
+
+            frameData = new LarvaFrameData(skeleton);
+            frameData.calculateDerivedData(frameHistory, parameters);
+            frameHistory.addFirst(frameData);
+            frameData.setStimulusList(new LEDStimulus(10.0, 33).toList());
+            originalFrames.add(frameData);
+            logThread.offer(policy.getLogEntry(frameData));
+
+            frameData = new LarvaFrameData(skeleton);
+            frameData.calculateDerivedData(originalHistory, originalParameters);
+            originalHistory.addFirst(frameData);
+            unchangedFrames.add(frameData);
+        }
+        logThread.interrupt();
+        logThread.join();
+
+        final LogReader reader = new LogReader(new File(logThread.getLogFilePathAndName()));
+        reader.read();
+        final LogSession session = reader.getSession();
+
+        Assert.assertEquals("invalid number of parameter updates",
+                            1, session.getParameterUpdateList().size());
+        final ParameterUpdate update = session.getParameterUpdateList().get(0);
+        Assert.assertEquals("invalid update last frame time",
+                            (updateIndex - 1) * 33, update.getLastFrameTime());
+        Assert.assertEquals("invalid updated threshold",
+                            100.0,
+                            update.getLarvaBehaviorParameters().getDotProductThresholdForStraightModes(),
+                            0.0);
+        Assert.assertEquals("session should report original parameters",
+                            originalParameters.getDotProductThresholdForStraightModes(),
+                            session.getLarvaBehaviorParameters().getDotProductThresholdForStraightModes(),
+                            0.0);
+
+        final List<LarvaFrameData> readFrames = session.getFrameDataList();
+        Assert.assertEquals("invalid number of frames read",
+                            originalFrames.size(), readFrames.size());
+
+        int compactFramesBeforeUpdate = 0;
+        int compactFramesAfterUpdate = 0;
+        int changedModeCount = 0;
+        LarvaFrameData original;
+        LarvaFrameData read;
+        for (int i = 0; i < originalFrames.size(); i++) {
+            original = originalFrames.get(i);
+            read = readFrames.get(i);
+            Assert.assertEquals("invalid behavior mode for frame " + i,
+                                original.getBehaviorMode(), read.getBehaviorMode());
+            if (read != original) {
+                if (i < updateIndex) {
+                    compactFramesBeforeUpdate++;
+                } else {
+                    compactFramesAfterUpdate++;
+                }
+            }
+            if (original.getBehaviorMode() != unchangedFrames.get(i).getBehaviorMode()) {
+                Assert.assertTrue("frame " + i + " before update should not be changed",
+                                  i >= updateIndex);
+                changedModeCount++;
+            }
+        }
+
+        Assert.assertTrue("some frames before the update should be compact",
+                          compactFramesBeforeUpdate > 0);
+        Assert.assertTrue("some frames after the update should be compact",
+                          compactFramesAfterUpdate > 0);
+        Assert.assertTrue("update should change some behavior modes",
+                          changedModeCount > 0);
+    }
+
+    private static LarvaSkeleton getSkeleton(long time,
+                                             double x,
+                                             double y) {
+        return new LarvaSkeleton(time,
+                                 new TrackerPoint(x + 2.0, y),
+                                 new TrackerPoint(x + 1.0, y),
+                                 new TrackerPoint(x, y),
+                                 2.0,
+                                 new TrackerPoint(x + 1.0, y),
+                                 0.0,
+                                 90.0);
+    }
+
+    private static double getIntensity(LarvaFrameData frameData) {
+        final Stimulus stimulus = frameData.getStimulusList().get(0);
+        return ((LEDStimulus) stimulus).getIntensityPercentage();
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2014 Howard Hughes Medical Institute.
+ * All rights reserved.
+ * Use is subject to Janelia Farm Research Campus Software Copyright 1.1
+ * license terms (http://license.janelia.org/license/jfrc_copyright_1_1.html).
+ */
+
+package org.janelia.it.venkman.log;
+
+import org.janelia.it.venkman.config.rules.LEDStimulus;
+import org.janelia.it.venkman.data.LarvaFrameData;
+import org.janelia.it.venkman.data.LarvaSkeleton;
+import org.janelia.it.venkman.data.TrackerPoint;
+import org.janelia.it.venkman.jaxb.MarshallerCache;
+import org.janelia.it.venkman.rules.RuleData;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.Unmarshaller;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.util.Random;
+
+/**
+ * Tests the {@link LogEntryXmlWriter} class.
+ *
+ * @author Eric Trautman
+ */
+public class LogEntryXmlWriterTest {
+
+    private LogEntryXmlWriter writer;
+    private MarshallerCache marshallerCache;
+
+    @Before
+    public void setUp() throws Exception {
+        writer = new LogEntryXmlWriter();
+        marshallerCache = new MarshallerCache();
+    }
+
+    @Test
+    public void testFrameDataMatchesJAXB() throws Exception {
+
+        final String xml =
+                "<larvaFrameData behaviorMode=\"CAST_LEFT\" bodyAngleSpeed=\"0.30000000000000004\" " +
+                "smoothedBodyAngleSpeed=\"-1.5E-5\" headAngleSpeed=\"1.0E10\" " +
+                "smoothedHeadAngleSpeed=\"123.456789\" tailSpeed=\"-0.0\" midpointSpeed=\"NaN\" " +
+                "headSpeed=\"INF\" centroidSpeed=\"0.001\" tailSpeedDotBodyAngle=\"9999999.5\" " +
+                "smoothedTailSpeedDotBodyAngle=\"-2.718281828459045\" " +
+                "timeSinceLastBehaviorModeChange=\"-33\" timeStopped=\"66\" timeBackingUp=\"0\" " +
+                "jumpFramesSkipped=\"2\" derivedMaxLength=\"6.805315\" percentageOfMaxLength=\"97.5\">" +
+                "<skeleton captureTime=\"1030\" length=\"6.805315\" headToBodyAngle=\"-24.323909\" tailBearing=\"-122.914875\">" +
+                "<head x=\"201.004671\" y=\"206.426326\"/><midpoint x=\"201.626262\" y=\"203.703781\"/>" +
+                "<tail x=\"201.122126\" y=\"201.217655\"/><centroid x=\"201.579341\" y=\"203.822857\"/>" +
+                "</skeleton>" +
+                "<skippedSkeleton captureTime=\"1000\" length=\"2.0\" headToBodyAngle=\"0.0\" tailBearing=\"90.0\">" +
+                "<head x=\"0.0\" y=\"2.0\"/><midpoint x=\"0.0\" y=\"1.0\"/>" +
+                "<tail x=\"0.0\" y=\"0.0\"/><centroid x=\"0.0\" y=\"1.0\"/>" +
+                "</skippedSkeleton>" +
+                "<ledArrayStimulus x=\"1.0\" y=\"2.0\" width=\"3.0\" height=\"4.0\">" +
+                "<ledStimulus><intensityPercentage>12.5</intensityPercentage><duration>30</duration></ledStimulus>" +
+                "<ledStimulus><intensityPercentage>0.0</intensityPercentage><duration>1000</duration></ledStimulus>" +
+                "</ledArrayStimulus>" +
+                "</larvaFrameData>";
+
+        final LarvaFrameData frameData = (LarvaFrameData) unmarshal(LarvaFrameData.class, xml);
+        Assert.assertTrue("frame data should be supported", writer.isSupported(frameData));
+        Assert.assertEquals("written frame data differs from JAXB output",
+                            getJAXBText(frameData), getWriterText(frameData));
+
+        final LarvaFrameData simpleFrameData =
+                (LarvaFrameData) unmarshal(LarvaFrameData.class,
+                                           "<larvaFrameData behaviorMode=\"RUN\"/>");
+        Assert.assertEquals("written simple frame data differs from JAXB output",
+                            getJAXBText(simpleFrameData), getWriterText(simpleFrameData));
+
+        final LarvaFrameData trackFrameData =
+                (LarvaFrameData) unmarshal(LarvaFrameData.class,
+                                           "<larvaFrameData behaviorMode=\"RUN\" " +
+                                           "percentageOfMaxLength=\"50.0\" trackId=\"a&amp;b\"/>");
+        Assert.assertEquals("written track frame data differs from JAXB output",
+                            getJAXBText(trackFrameData), getWriterText(trackFrameData));
+    }
+
+    @Test
+    public void testOtherEntriesMatchJAXB() throws Exception {
+
+        final Object[] entries = {
+                new RuleData(5, "a&\"<b>", "tab\tnew\nline\r\u00e9\u4e2d\ud83d\ude00"),
+                new RuleData(-1, RuleData.INTENSITY_FUNCTION_NAME, "42.5"),
+                new LEDStimulus(1e-5, 3),
+                new LEDStimulus(100.0, 0)
+        };
+
+        for (Object entry : entries) {
+            Assert.assertTrue(entry + " should be supported", writer.isSupported(entry));
+            Assert.assertEquals("written entry differs from JAXB output for " + entry,
+                                getJAXBText(entry), getWriterText(entry));
+        }
+
+        Assert.assertFalse("log messages should not be supported",
+                           writer.isSupported(new LogMessage("test")));
+    }
+
+    @Test
+    public void testRandomValuesRoundTrip() throws Exception {
+
+        final JAXBContext context = JAXBContext.newInstance(LarvaFrameData.class);
+        final Unmarshaller unmarshaller = context.createUnmarshaller();
+        final Random random = new Random(17);
+        final double[] scales = { 1.0e-9, 1.0e-4, 1.0, 1.0e3, 1.0e6, 1.0e12 };
+
+        double x;
+        double y;
+        double scale;
+        LarvaFrameData frameData;
+        LarvaFrameData parsedFrameData;
+        for (int i = 0; i < 2000; i++) {
+            scale = scales[i % scales.length];
+            x = (random.nextDouble() - 0.5) * scale;
+            // use short decimal values for half of the points
+            y = Math.round(random.nextDouble() * 1000000) / 1000.0;
+            if (i % 2 == 0) {
+                x = Math.round(x * 1000) / 1000.0;
+            }
+
+            final TrackerPoint point = new TrackerPoint(x, y);
+            frameData = new LarvaFrameData(
+                    new LarvaSkeleton(i, point, point, point, y, point, x, -y));
+
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            writer.write(frameData, out);
+            parsedFrameData = (LarvaFrameData)
+                    unmarshaller.unmarshal(new ByteArrayInputStream(out.toByteArray()));
+
+            final LarvaSkeleton skeleton = parsedFrameData.getSkeleton();
+            Assert.assertEquals("invalid x for " + x + ", xml is " + out,
+                                x, skeleton.getHead().getX(), 0.0);
+            Assert.assertEquals("invalid y for " + y + ", xml is " + out,
+                                y, skeleton.getCentroid().getY(), 0.0);
+            Assert.assertEquals("invalid length for " + y + ", xml is " + out,
+                                y, skeleton.getLength(), 0.0);
+            Assert.assertEquals("invalid tail bearing for " + (-y) + ", xml is " + out,
+                                -y, skeleton.getTailBearing(), 0.0);
+        }
+    }
+
+    private String getJAXBText(Object entry)
+            throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        marshallerCache.marshal(entry, out);
+        return out.toString("UTF-8");
+    }
+
+    private String getWriterText(Object entry)
+            throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writer.write(entry, out);
+        return out.toString("UTF-8");
+    }
+
+    private static Object unmarshal(Class<?> clazz,
+                                    String xml)
+            throws Exception {
+        final JAXBContext context = JAXBContext.newInstance(clazz);
+        final Unmarshaller unmarshaller = context.createUnmarshaller();
+        return unmarshaller.unmarshal(new StringReader(xml));
+    }
+}
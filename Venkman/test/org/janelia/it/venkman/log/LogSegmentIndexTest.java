@@ -0,0 +1,240 @@
+/*
+ * Copyright (c) 2014 Howard Hughes Medical Institute.
+ * All rights reserved.
+ * Use is subject to Janelia Farm Research Campus Software Copyright 1.1
+ * license terms (http://license.janelia.org/license/jfrc_copyright_1_1.html).
+ */
+
+package org.janelia.it.venkman.log;
+
+import org.janelia.it.venkman.TestWorkingDirectory;
+import org.janelia.it.venkman.config.LarvaBehaviorParameters;
+import org.janelia.it.venkman.data.LarvaFrameData;
+import org.janelia.it.venkman.data.LarvaSkeleton;
+import org.janelia.it.venkman.data.TrackerPoint;
+import org.janelia.it.venkman.rules.RuleData;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.util.List;
+
+/**
+ * Tests the {@link LogSegmentIndex} class and reading of segmented logs.
+ *
+ * @author Eric Trautman
+ */
+public class LogSegmentIndexTest {
+
+    private TestWorkingDirectory testDirectory;
+    private File logDirectory;
+
+    @Before
+    public void setUp() throws Exception {
+        testDirectory = new TestWorkingDirectory();
+        logDirectory = testDirectory.getManager().getLogDirectory();
+    }
+
+    @After
+    public void tearDown() {
+        testDirectory.delete();
+    }
+
+    @Test
+    public void testReadMultipleSegments() throws Exception {
+
+        // roll after every write
+        final LogSegmentPolicy policy =
+                new LogSegmentPolicy(1, 0, LogSegmentPolicy.SyncMode.NONE);
+        final File logFile = writeLog("multi", policy, 4);
+
+        final LogSegmentIndex index = LogSegmentIndex.read(logFile);
+        Assert.assertNotNull("index not written", index);
+        Assert.assertTrue("log should have multiple segments but has " +
+                          index.getSegmentCount(),
+                          index.getSegmentCount() > 1);
+        for (int i = 0; i < index.getSegmentCount(); i++) {
+            Assert.assertTrue("segment " + i + " should be closed", index.isClosed(i));
+        }
+
+        validateRuleData(logFile, 4);
+    }
+
+    @Test
+    public void testReadTruncatedSegment() throws Exception {
+
+        final LogSegmentPolicy policy =
+                new LogSegmentPolicy(0, 0, LogSegmentPolicy.SyncMode.CHECKPOINT);
+        final File logFile = writeLog("truncated", policy, 3);
+
+        // simulate a crash by removing the closed entry from the index
+        // and leaving a partially written entry in the segment
+        final File indexFile = LogSegmentIndex.getIndexFile(logFile);
+        final String indexContent = readFile(indexFile);
+        final String crashedIndexContent =
+                indexContent.substring(0, indexContent.lastIndexOf(LogSegmentIndex.CLOSED)) +
+                LogSegmentIndex.CHECKPOINT + " 0 9"; // partially written line
+        final FileWriter indexWriter = new FileWriter(indexFile);
+        indexWriter.write(crashedIndexContent);
+        indexWriter.close();
+
+        final FileOutputStream logOut = new FileOutputStream(logFile, true);
+        logOut.write("<ruleData value=\"partial".getBytes());
+        logOut.close();
+
+        final LogSegmentIndex index = LogSegmentIndex.read(logFile);
+        Assert.assertNotNull("index not found", index);
+        Assert.assertEquals("invalid segment count", 1, index.getSegmentCount());
+        Assert.assertFalse("segment should not be closed", index.isClosed(0));
+
+        validateRuleData(logFile, 3);
+    }
+
+    @Test
+    public void testReadCompressedFrameRange() throws Exception {
+
+        // roll after every other write
+        final LogSegmentPolicy policy =
+                new LogSegmentPolicy(1, 0, LogSegmentPolicy.SyncMode.NONE, true);
+        final LogThread logThread =
+                new LogThread(0, 10, logDirectory, "compressed", policy);
+        logThread.start();
+        for (int i = 0; i < 6; i++) {
+            for (int j = 0; j < 10; j++) {
+                final long time = (i * 10 + j) * 100;
+                logThread.offer(new LarvaFrameData(
+                        new LarvaSkeleton(time, POINT, POINT, POINT, 1.0, POINT, 0.0, 90.0)));
+            }
+            Thread.sleep(50);
+        }
+        logThread.interrupt();
+        logThread.join();
+
+        final File logFile = new File(logThread.getLogFilePathAndName());
+        Assert.assertFalse("uncompressed log file should not exist", logFile.exists());
+        final File compressedFile =
+                LogSegmentIndex.getSegmentFile(logFile, 0, true);
+        Assert.assertTrue("compressed log file " + compressedFile.getAbsolutePath() +
+                          " should exist", compressedFile.exists());
+        Assert.assertTrue("compressed file should be readable log file",
+                          LogReader.isReadableLogFile(compressedFile));
+
+        final LogSegmentIndex index = LogSegmentIndex.read(logFile);
+        Assert.assertNotNull("index not written", index);
+        Assert.assertEquals("invalid indexed frame count", 60, index.getFrameCount());
+        Assert.assertTrue("segment 0 should be compressed", index.isCompressed(0));
+
+        LogReader reader = new LogReader(compressedFile);
+        reader.read();
+        List<LarvaFrameData> frameDataList = reader.getSession().getFrameDataList();
+        Assert.assertEquals("invalid number of frames read", 60, frameDataList.size());
+        for (int i = 0; i < frameDataList.size(); i++) {
+            Assert.assertEquals("invalid time for frame " + i,
+                                i * 100, frameDataList.get(i).getTime());
+        }
+
+        reader = new LogReader(logFile);
+        reader.read(2050, 3000);
+        frameDataList = reader.getSession().getFrameDataList();
+        Assert.assertEquals("invalid number of frames read for range", 10, frameDataList.size());
+        Assert.assertEquals("invalid first frame time for range",
+                            2100, frameDataList.get(0).getTime());
+        Assert.assertEquals("invalid last frame time for range",
+                            3000, frameDataList.get(9).getTime());
+    }
+
+    @Test
+    public void testReadFrameRangeAfterParameterUpdate() throws Exception {
+
+        final LogSegmentPolicy policy =
+                new LogSegmentPolicy(1, 0, LogSegmentPolicy.SyncMode.NONE, true);
+        final LogThread logThread =
+                new LogThread(0, 10, logDirectory, "updated", policy);
+        logThread.start();
+        for (int i = 0; i < 3; i++) {
+            if (i == 0) {
+                logThread.offer(new ParameterSnapshot(new LarvaBehaviorParameters()));
+            } else if (i == 1) {
+                logThread.offer(new ParameterSnapshot(new LarvaBehaviorParameters(), 1000L));
+                logThread.offer(new RuleData(1000, RuleData.PARAMETERS_UPDATE_NAME, "test"));
+            }
+            for (int j = 0; j < 10; j++) {
+                final long time = (i * 10 + j + 1) * 100;
+                logThread.offer(new LarvaFrameData(
+                        new LarvaSkeleton(time, POINT, POINT, POINT, 1.0, POINT, 0.0, 90.0)));
+            }
+            Thread.sleep(50);
+        }
+        logThread.interrupt();
+        logThread.join();
+
+        final File logFile = new File(logThread.getLogFilePathAndName());
+        final LogReader reader = new LogReader(logFile);
+        reader.read(2500, 3000);
+        final LogSession session = reader.getSession();
+        Assert.assertEquals("invalid number of frames read for range",
+                            6, session.getFrameDataList().size());
+        Assert.assertNotNull("initial parameters should be read for range",
+                             session.getLarvaBehaviorParameters());
+        Assert.assertEquals("parameter update should be read for range",
+                            1, session.getParameterUpdateList().size());
+        Assert.assertEquals("invalid last frame time for update",
+                            1000, session.getParameterUpdateList().get(0).getLastFrameTime());
+    }
+
+    private File writeLog(String sessionId,
+                          LogSegmentPolicy policy,
+                          int numberOfEntries)
+            throws Exception {
+
+        final LogThread logThread =
+                new LogThread(0, 10, logDirectory, sessionId, policy);
+        logThread.start();
+        for (int i = 0; i < numberOfEntries; i++) {
+            logThread.offer(new RuleData(i, "test", String.valueOf(i)));
+            Thread.sleep(50);
+        }
+        logThread.interrupt();
+        logThread.join();
+
+        return new File(logThread.getLogFilePathAndName());
+    }
+
+    private void validateRuleData(File logFile,
+                                  int expectedCount)
+            throws Exception {
+
+        final LogReader reader = new LogReader(logFile);
+        reader.read();
+        final List<RuleData> ruleDataList = reader.getSession().getRuleDataList();
+        Assert.assertEquals("invalid number of entries read",
+                            expectedCount, ruleDataList.size());
+        for (int i = 0; i < expectedCount; i++) {
+            Assert.assertEquals("invalid capture time for entry " + i,
+                                i, ruleDataList.get(i).getCaptureTime());
+        }
+    }
+
+    private static final TrackerPoint POINT = new TrackerPoint(1.5, 2.5);
+
+    private String readFile(File file)
+            throws Exception {
+        final StringBuilder sb = new StringBuilder();
+        final FileReader reader = new FileReader(file);
+        try {
+            final char[] buffer = new char[1024];
+            int count;
+            while ((count = reader.read(buffer)) != -1) {
+                sb.append(buffer, 0, count);
+            }
+        } finally {
+            reader.close();
+        }
+        return sb.toString();
+    }
+}
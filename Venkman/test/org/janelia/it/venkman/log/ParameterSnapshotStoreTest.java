@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2014 Howard Hughes Medical Institute.
+ * All rights reserved.
+ * Use is subject to Janelia Farm Research Campus Software Copyright 1.1
+ * license terms (http://license.janelia.org/license/jfrc_copyright_1_1.html).
+ */
+
+package org.janelia.it.venkman.log;
+
+import org.janelia.it.venkman.TestWorkingDirectory;
+import org.janelia.it.venkman.config.Configuration;
+import org.janelia.it.venkman.config.ConfigurationManager;
+import org.janelia.it.venkman.config.LarvaBehaviorParameters;
+import org.janelia.it.venkman.config.ParameterCollectionCategory;
+import org.janelia.it.venkman.config.ParameterCollectionId;
+import org.janelia.it.venkman.rules.ScaledRunIntensity;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.List;
+
+/**
+ * Tests the {@link ParameterSnapshotStore} class.
+ *
+ * @author Eric Trautman
+ */
+public class ParameterSnapshotStoreTest {
+
+    private TestWorkingDirectory testDirectory;
+    private File logDirectory;
+
+    @Before
+    public void setUp() throws Exception {
+        testDirectory = new TestWorkingDirectory();
+        logDirectory = testDirectory.getManager().getLogDirectory();
+    }
+
+    @After
+    public void tearDown() {
+        testDirectory.delete();
+    }
+
+    @Test
+    public void testSnapshotsAreSharedAndResolved() throws Exception {
+
+        final Configuration configuration =
+                new Configuration(
+                        new ParameterCollectionId(ParameterCollectionCategory.CONFIGURATION,
+                                                  "group", "config"),
+                        new ParameterCollectionId(ParameterCollectionCategory.BEHAVIOR,
+                                                  "group", "behavior"),
+                        new ParameterCollectionId(ParameterCollectionCategory.STIMULUS,
+                                                  "group", "stimulus"));
+
+        final File firstLogFile = writeLog("a", configuration);
+        final File secondLogFile = writeLog("b", configuration);
+
+        final File snapshotDirectory =
+                new File(logDirectory, ParameterSnapshotStore.DIRECTORY_NAME);
+        final File[] snapshotFiles = snapshotDirectory.listFiles();
+        Assert.assertNotNull("snapshot directory not created", snapshotFiles);
+        Assert.assertEquals("identical parameters should only be saved once",
+                            3, snapshotFiles.length);
+
+        for (File logFile : new File[] { firstLogFile, secondLogFile }) {
+            final LogReader reader = new LogReader(logFile);
+            reader.read();
+            final LogSession session = reader.getSession();
+            Assert.assertEquals("invalid number of snapshots for " + logFile.getName(),
+                                3, session.getParameterSnapshotList().size());
+            Assert.assertNotNull("configuration not resolved for " + logFile.getName(),
+                                 session.getConfiguration());
+            Assert.assertEquals("invalid configuration id for " + logFile.getName(),
+                                configuration.getId().getFullName(),
+                                session.getConfiguration().getId().getFullName());
+            Assert.assertNotNull("behavior parameters not resolved for " + logFile.getName(),
+                                 session.getLarvaBehaviorParameters());
+            Assert.assertTrue("stimulus rules not resolved for " + logFile.getName(),
+                              session.getLarvaStimulusRules() instanceof ScaledRunIntensity);
+        }
+    }
+
+    @Test
+    public void testMissingSnapshot() throws Exception {
+
+        final File logFile = writeLog("c", new LarvaBehaviorParameters());
+
+        final ParameterSnapshotStore store =
+                ParameterSnapshotStore.forLogDirectory(logDirectory);
+        ConfigurationManager.recursiveDelete(store.getDirectory());
+
+        final LogReader reader = new LogReader(logFile);
+        reader.read();
+        final LogSession session = reader.getSession();
+        Assert.assertNotNull("log with missing snapshot should still be readable",
+                             session);
+        Assert.assertEquals("invalid number of snapshots",
+                            1, session.getParameterSnapshotList().size());
+        Assert.assertNull("missing snapshot should not be resolved",
+                          session.getParameterSnapshotList().get(0).getParameters());
+        Assert.assertNull("behavior parameters should not be resolved",
+                          session.getLarvaBehaviorParameters());
+    }
+
+    @Test
+    public void testInlineParameterUpdate() throws Exception {
+
+        // a file in place of the store directory prevents snapshots from being saved
+        final File blockingFile = new File(logDirectory, ParameterSnapshotStore.DIRECTORY_NAME);
+        Assert.assertTrue("failed to create " + blockingFile.getAbsolutePath(),
+                          blockingFile.createNewFile());
+
+        final LarvaBehaviorParameters updatedParameters = new LarvaBehaviorParameters();
+        updatedParameters.setMinBodyAngleSpeedForTurns(
+                updatedParameters.getMinBodyAngleSpeedForTurns() + 1);
+
+        final LogThread logThread = new LogThread(0, 10, logDirectory, "d");
+        logThread.start();
+        logThread.offer(new ParameterSnapshot(new LarvaBehaviorParameters()));
+        logThread.offer(new ParameterSnapshot(updatedParameters, 5L));
+        logThread.interrupt();
+        logThread.join();
+
+        final LogReader reader = new LogReader(new File(logThread.getLogFilePathAndName()));
+        reader.read();
+        final LogSession session = reader.getSession();
+        Assert.assertNotNull("inline initial parameters not read",
+                             session.getLarvaBehaviorParameters());
+        final List<ParameterUpdate> updateList = session.getParameterUpdateList();
+        Assert.assertEquals("inline update should not replace initial parameters",
+                            1, updateList.size());
+        Assert.assertEquals("invalid last frame time for inline update",
+                            5L, updateList.get(0).getLastFrameTime());
+        Assert.assertEquals("invalid inline update parameters",
+                            updatedParameters.getMinBodyAngleSpeedForTurns(),
+                            updateList.get(0).getLarvaBehaviorParameters().getMinBodyAngleSpeedForTurns(),
+                            0.0);
+    }
+
+    private File writeLog(String sessionId,
+                          Object parameters)
+            throws Exception {
+
+        final LogThread logThread = new LogThread(0, 10, logDirectory, sessionId);
+        logThread.start();
+        logThread.offer(new ParameterSnapshot(parameters));
+        if (parameters instanceof Configuration) {
+            logThread.offer(new ParameterSnapshot(new LarvaBehaviorParameters()));
+            logThread.offer(new ParameterSnapshot(new ScaledRunIntensity()));
+        }
+        logThread.offer(new LogMessage("test"));
+        logThread.interrupt();
+        logThread.join();
+
+        return new File(logThread.getLogFilePathAndName());
+    }
+}
@@ -65,6 +65,10 @@ public class MessageTest {
                         "<larva-skeleton-request,1,3,4,5,6,7,8,9,10,11,12,13,14,15>",
                         MessageType.PROCESS_LARVA_SKELETON_REQUEST,
                         "1", "3", "4", "5", "6", "7", "8", "9", "10", "11", "12", "13", "14", "15" },
+                {
+                        "<larva-skeleton-batch-request,1,session-a,1,4,5,6,7,8,9,10,11,12,13,14,15>",
+                        MessageType.PROCESS_LARVA_SKELETON_BATCH_REQUEST,
+                        "1", "session-a", "1", "4", "5", "6", "7", "8", "9", "10", "11", "12", "13", "14", "15" },
         };
 
         String request;
@@ -162,6 +166,29 @@ public class MessageTest {
                                "<larva-skeleton-response,2,200,33,run,11.0|22.0|33.0|44.0|55.0|66,1.0|2.0|3.0|4.0|5.0|6>");
     }
 
+    @Test
+    public void testProcessLarvaSkeletonBatchResponseToString() {
+        ProcessLarvaSkeletonBatchResponse response = new ProcessLarvaSkeletonBatchResponse("2", 2);
+        ProcessLarvaSkeletonResponse frameResponse = new ProcessLarvaSkeletonResponse("2", "33", "run");
+        new LEDArrayStimulus(11.0, 22.0, 33.0, 44.0, new LEDStimulus(55.0, 66).toList()).addFieldsToMessage(frameResponse);
+        response.addFrameResponse(frameResponse);
+        frameResponse = new ProcessLarvaSkeletonResponse("2", "66", "stop");
+        response.addFrameResponse(frameResponse);
+        validateResponseString(response,
+                               "<larva-skeleton-batch-response,2,200,2,33,run,1,11.0|22.0|33.0|44.0|55.0|66,66,stop,0>");
+    }
+
+    @Test
+    public void testProcessMultiLarvaSkeletonResponseToString() {
+        ProcessMultiLarvaSkeletonResponse response = new ProcessMultiLarvaSkeletonResponse("1", 2);
+        ProcessLarvaSkeletonResponse trackResponse = new ProcessLarvaSkeletonResponse("1", "33", "run");
+        new LEDStimulus(44.0, 55).addFieldsToMessage(trackResponse);
+        response.addTrackResponse("track-a", trackResponse);
+        response.addTrackResponse("track-b", new ProcessLarvaSkeletonResponse("1", "33", "stop"));
+        validateResponseString(response,
+                               "<multi-larva-skeleton-response,1,200,2,track-a,33,run,2,44.0,55,track-b,33,stop,0>");
+    }
+
     private void validateResponseString(ResponseMessage message,
                                         String expectedStringValue) {
         Assert.assertEquals(expectedStringValue, message.toString());
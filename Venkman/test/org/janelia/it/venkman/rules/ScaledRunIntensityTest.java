@@ -413,6 +413,56 @@ public class ScaledRunIntensityTest {
                              firstDelay, secondDelay);
     }
 
+    @Test
+    public void testCarryOverTransientState() {
+
+        rules = new ScaledRunIntensity(DURATION,
+                                       DEFAULT_NON_RUN_INTENSITY_VALUE,
+                                       0.0,
+                                       runIntensityPercentage,
+                                       millisecondsDelay,
+                                       svf,
+                                       0.0,
+                                       false,
+                                       0,
+                                       new SingleVariableFunction(),
+                                       0.0,
+                                       new BehaviorLimitedKinematicVariableFunctionList());
+        rules.init(new StandardOutLogger());
+
+        validateStimulus(LarvaBehaviorMode.RUN); // 0ms
+        validateStimulus(LarvaBehaviorMode.RUN); // 30ms
+
+        final ScaledRunIntensity replacedRules = rules;
+        runIntensityPercentage = new IntensityValue(40.0);
+        rules = new ScaledRunIntensity(DURATION,
+                                       DEFAULT_NON_RUN_INTENSITY_VALUE,
+                                       0.0,
+                                       runIntensityPercentage,
+                                       millisecondsDelay,
+                                       svf,
+                                       0.0,
+                                       false,
+                                       0,
+                                       new SingleVariableFunction(),
+                                       0.0,
+                                       new BehaviorLimitedKinematicVariableFunctionList());
+        rules.init(new StandardOutLogger());
+
+        Assert.assertTrue("run in progress should be carried over",
+                          rules.carryOverTransientState(replacedRules));
+
+        // scaling should continue from the original run onset
+        expectedIntensity = runIntensityPercentage.getValue() *
+                            SCALING_FACTORS[1];
+        validateStimulus(LarvaBehaviorMode.RUN); // 60ms (15ms + 45ms)
+
+        addFrame(LarvaBehaviorMode.TURN_LEFT);
+        rules.determineStimulus(frameHistory, null);
+        Assert.assertFalse("state should not be carried over between runs",
+                           new ScaledRunIntensity().carryOverTransientState(rules));
+    }
+
     private void validateStimulusForContinuousRun() {
         expectedIntensity = runIntensityPercentage.getValue();
 